@@ -0,0 +1,153 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.util.Locale;
+
+/**
+ * Deterministically generated sources for benchmarks, shaped like the files that dominate
+ * formatting time in real projects. None of them are formatted, so every step has work to do.
+ */
+public enum BenchmarkInputs {
+
+  /** A small value class. */
+  SMALL_POJO {
+    @Override
+    String source() {
+      final StringBuilder source = new StringBuilder();
+      source.append("package com.example.model;\n");
+      source.append("import java.util.Objects;\n");
+      source.append("public class Person {\n");
+      final String[] fields = {"firstName", "lastName", "email", "phone", "city"};
+      for (String field : fields) {
+        source.append("  private String ").append(field).append(";\n");
+      }
+      for (String field : fields) {
+        final String property = capitalize(field);
+        source.append("public String get").append(property).append("(){return ");
+        source.append(field).append(";}\n");
+        source.append("    public void set").append(property).append("(String ").append(field);
+        source.append(") { this.").append(field).append(" = ").append(field).append("; }\n");
+      }
+      source.append("@Override public boolean equals(Object o){if(this==o)return true;");
+      source.append("if(!(o instanceof Person))return false;Person that=(Person)o;return ");
+      for (int i = 0; i < fields.length; i++) {
+        source.append(i == 0 ? "" : "&&").append("Objects.equals(").append(fields[i]);
+        source.append(",that.").append(fields[i]).append(")");
+      }
+      source.append(";}\n@Override public int hashCode(){return Objects.hash(");
+      source.append(String.join(",", fields)).append(");}\n}\n");
+      return source.toString();
+    }
+  },
+
+  /** A large generated message class with a builder, like protobuf or Avro output. */
+  LARGE_GENERATED {
+    @Override
+    String source() {
+      final int fields = 300;
+      final StringBuilder source = new StringBuilder();
+      source.append("package com.example.generated;\n\n");
+      source.append("@javax.annotation.Generated(\"generator\")\n");
+      source.append("public final class Message implements java.io.Serializable {\n");
+      for (int i = 0; i < fields; i++) {
+        source.append("private final long field").append(i).append(";\n");
+      }
+      source.append("private Message(Builder builder) {\n");
+      for (int i = 0; i < fields; i++) {
+        source.append("this.field").append(i).append(" = builder.field").append(i).append(";\n");
+      }
+      source.append("}\n");
+      for (int i = 0; i < fields; i++) {
+        source.append("  /** Returns field ").append(i).append(". */\n");
+        source.append("public long getField").append(i).append("() { return field").append(i);
+        source.append("; }\n");
+      }
+      source.append("public static final class Builder {\n");
+      for (int i = 0; i < fields; i++) {
+        source.append("private long field").append(i).append(";\n");
+        source.append("public Builder setField").append(i).append("(long value) { this.field");
+        source.append(i).append(" = value; return this; }\n");
+      }
+      source.append("public Message build() { return new Message(this); }\n}\n}\n");
+      return source.toString();
+    }
+  },
+
+  /** A class with many imports, unsorted and partly unused. */
+  IMPORT_HEAVY {
+    @Override
+    String source() {
+      final int imports = 200;
+      final StringBuilder source = new StringBuilder();
+      source.append("package com.example.service;\n\n");
+      // Reverse order, so that sorting has to move every import.
+      for (int i = imports - 1; i >= 0; i--) {
+        source.append("import com.example.dependency").append(i % 20).append(".Type");
+        source.append(i).append(";\n");
+      }
+      source.append("import static com.example.Constants.*;\n");
+      source.append("public class Service {\n");
+      // Only every other import is used.
+      for (int i = 0; i < imports; i += 2) {
+        source.append("  private Type").append(i).append(" dependency").append(i).append(";\n");
+      }
+      source.append("/** Uses {@link Type1} in Javadoc only. */\n");
+      source.append("public void run() {\n");
+      for (int i = 0; i < imports; i += 2) {
+        source.append("dependency").append(i).append(".call();\n");
+      }
+      source.append("}\n}\n");
+      return source.toString();
+    }
+  },
+
+  /** A class with long string literals that need reflowing. */
+  LONG_STRINGS {
+    @Override
+    String source() {
+      final StringBuilder source = new StringBuilder();
+      source.append("package com.example.messages;\n\n");
+      source.append("public class Messages {\n");
+      for (int i = 0; i < 100; i++) {
+        source.append("  static final String MESSAGE_").append(i).append(" = \"");
+        for (int word = 0; word < 30; word++) {
+          source.append(String.format(Locale.ROOT, "word%02d ", (i + word) % 100));
+        }
+        source.append("\";\n");
+      }
+      source.append("}\n");
+      return source.toString();
+    }
+  };
+
+  abstract String source();
+
+  private static String capitalize(String name) {
+    return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+  }
+}
@@ -0,0 +1,101 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of running a trivial callable with {@link ForkingExecutor}, compared to running it
+ * in-process ({@code forkMode} {@code never}) and to starting a bare JVM with the same classpath.
+ * The difference between the fork and the bare JVM is the cost of the fork protocol: workspace,
+ * serialization, log channel and watchdog.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ForkBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class ForkMode {
+
+    @Param({"always", "never"})
+    public String forkMode;
+  }
+
+  @Benchmark
+  public Integer execute(ForkMode mode) throws Exception {
+    final Trivial callable = new Trivial();
+    if ("never".equals(mode.forkMode)) {
+      return callable.call();
+    }
+    try (ForkingExecutor executor = new ForkingExecutor(new SystemStreamLog())) {
+      return executor.execute(callable);
+    }
+  }
+
+  /** Starts a JVM that exits right away, with the classpath a fork gets. */
+  @Benchmark
+  public int jvmStartup() throws Exception {
+    final List<String> command = new ArrayList<>();
+    command.add(
+        new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(Exit.class.getName());
+    final Process process = new ProcessBuilder(command).inheritIO().start();
+    return process.waitFor();
+  }
+
+  static class Trivial implements SerializableCallable<Integer> {
+
+    @Override
+    public Integer call() {
+      return 42;
+    }
+  }
+
+  public static class Exit {
+
+    public static void main(String... args) {}
+  }
+}
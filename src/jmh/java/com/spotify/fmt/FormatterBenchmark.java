@@ -0,0 +1,105 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import com.google.googlejavaformat.java.JavaFormatterOptions;
+import com.google.googlejavaformat.java.JavaFormatterOptions.Style;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the formatting steps that {@link Formatter} runs on the content of each file, for
+ * every combination of style and skip flags. Reading and writing files is left out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FormatterBenchmark {
+
+  @Param({"SMALL_POJO", "LARGE_GENERATED", "IMPORT_HEAVY", "LONG_STRINGS"})
+  public BenchmarkInputs input;
+
+  @Param({"google", "aosp"})
+  public String style;
+
+  @Param({"false", "true"})
+  public boolean skipRemovingUnusedImports;
+
+  @Param({"false", "true"})
+  public boolean skipSortingImports;
+
+  @Param({"false", "true"})
+  public boolean skipReflowingLongStrings;
+
+  private String source;
+  private Formatter formatter;
+  private com.google.googlejavaformat.java.Formatter javaFormatter;
+  private Style javaStyle;
+  private PhaseTimer phases;
+
+  @Setup
+  public void setUp() {
+    source = input.source();
+    formatter =
+        new Formatter(
+            FormattingConfiguration.builder()
+                .style(style)
+                .filesNamePattern(".*\\.java")
+                .filesPathPattern(".*")
+                .processingLabel("benchmarked")
+                .skipRemovingUnusedImports(skipRemovingUnusedImports)
+                .skipSortingImports(skipSortingImports)
+                .skipReflowingLongStrings(skipReflowingLongStrings)
+                .build());
+    javaStyle = "aosp".equals(style) ? Style.AOSP : Style.GOOGLE;
+    javaFormatter =
+        new com.google.googlejavaformat.java.Formatter(
+            JavaFormatterOptions.builder().style(javaStyle).build());
+    phases = new PhaseTimer();
+  }
+
+  @Benchmark
+  public String formatSource() throws Exception {
+    final PhaseTimer.FileTimer timer = phases.startFile("Benchmark.java", source.length());
+    final String formatted = formatter.formatSource(source, javaFormatter, javaStyle, timer);
+    timer.finish(FormatFileEvent.NON_COMPLYING);
+    return formatted;
+  }
+}
@@ -0,0 +1,158 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of transporting the closure and the result of a forked execution with {@link Serialization},
+ * for modules of different sizes. {@link #serializedSize} reports the serialized sizes as counters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SerializationBenchmark {
+
+  /** Number of source directories in the closure and of files in the result. */
+  @Param({"1", "1000", "100000"})
+  public int files;
+
+  private FormattingConfiguration closure;
+  private FormattingResult result;
+
+  @Setup
+  public void setUp() throws Exception {
+    final List<File> directories = new ArrayList<>();
+    final List<String> paths = new ArrayList<>();
+    for (int i = 0; i < files; i++) {
+      directories.add(new File("/home/build/project/module" + i + "/src/main/java"));
+      paths.add("/home/build/project/src/main/java/com/example/package" + i % 100 + "/Class" + i);
+    }
+    closure =
+        FormattingConfiguration.builder()
+            .style("google")
+            .filesNamePattern(".*\\.java")
+            .filesPathPattern(".*")
+            .processingLabel("reformatted")
+            .directoriesToFormat(directories)
+            .build();
+    result =
+        FormattingResult.builder()
+            .processedFiles(paths)
+            .nonComplyingFiles(paths.subList(0, paths.size() / 10))
+            .build();
+  }
+
+  /** Serialized sizes, reported as secondary results next to the time of serializing once. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class SerializedSize {
+
+    public long closureBytes;
+    public long resultBytes;
+  }
+
+  @State(Scope.Thread)
+  public static class WorkspaceState {
+
+    Workspace workspace;
+
+    @Setup(Level.Iteration)
+    public void createWorkspace() throws IOException {
+      workspace = Workspace.create(new SystemStreamLog());
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteWorkspace() {
+      workspace.close();
+    }
+  }
+
+  /**
+   * Serializes once per run, so that the events counted by {@link SerializedSize}, which add up
+   * over invocations and iterations, are the sizes themselves.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @Warmup(iterations = 0)
+  @Measurement(iterations = 1)
+  public void serializedSize(SerializedSize size) throws Exception {
+    size.closureBytes = serialize(closure).length;
+    size.resultBytes = serialize(result).length;
+  }
+
+  @Benchmark
+  public Object closureRoundTripInMemory() throws Exception {
+    return Serialization.deserialize(new ByteArrayInputStream(serialize(closure)));
+  }
+
+  @Benchmark
+  public Object resultRoundTripInMemory() throws Exception {
+    return Serialization.deserialize(new ByteArrayInputStream(serialize(result)));
+  }
+
+  /** Round trip through the result file, as between a fork and the plugin. */
+  @Benchmark
+  public Object resultRoundTripThroughFile(WorkspaceState state) throws Exception {
+    final Workspace workspace = state.workspace;
+    Serialization.serialize(result, workspace.resultFile());
+    final Object deserialized = Serialization.deserialize(workspace.resultFile());
+    Files.delete(workspace.resultFile());
+    return deserialized;
+  }
+
+  private static byte[] serialize(Object object) throws SerializationException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Serialization.serialize(object, bytes);
+    return bytes.toByteArray();
+  }
+}
@@ -28,15 +28,25 @@ package com.spotify.fmt;
 
 import com.google.common.annotations.VisibleForTesting;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.stream.Collectors;
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
 
 public abstract class AbstractFMT extends AbstractMojo {
 
@@ -70,6 +80,76 @@ public abstract class AbstractFMT extends AbstractMojo {
   @Parameter(defaultValue = ".*", property = "filesPathPattern")
   private String filesPathPattern;
 
+  /**
+   * Files to format instead of walking the source directories, e.g. those that a build orchestrator
+   * knows have changed. Either paths, or {@code @} followed by the path of a file listing one path
+   * per line. Relative paths are relative to the directory Maven was started in. Files that are not
+   * in one of the source directories, or do not match {@code filesNamePattern} and {@code
+   * filesPathPattern}, are skipped.
+   */
+  @Parameter(property = "fmt.files")
+  private List<String> files;
+
+  @Parameter(defaultValue = "${session.executionRootDirectory}", readonly = true)
+  private File executionRootDirectory;
+
+  /**
+   * Number of shards to split the files to format into, e.g. to check a large repository on several
+   * CI workers at once. Each file belongs to exactly one shard, chosen by a stable hash of its path
+   * relative to its source directory, so all workers must run on the same sources. Each worker
+   * writes its result to {@code shardResultFile}, for the {@code merge} goal to combine.
+   */
+  @Parameter(defaultValue = "1", property = "fmt.shardCount")
+  private int shardCount;
+
+  /** Zero based index of the shard to format, below {@code shardCount}. */
+  @Parameter(defaultValue = "0", property = "fmt.shardIndex")
+  private int shardIndex;
+
+  /**
+   * Balances shards by file size rather than by number of files, for repositories with files of
+   * very different sizes. The shard of a file then depends on the sizes of all files.
+   */
+  @Parameter(defaultValue = "false", property = "fmt.shardBySize")
+  private boolean shardBySize;
+
+  /**
+   * File to write the result of this shard to when {@code shardCount} is more than one. Defaults to
+   * {@code fmt-<goal>-shard-<shardIndex>.ser} in the build directory.
+   */
+  @Parameter(property = "fmt.shardResultFile")
+  private File shardResultFile;
+
+  /**
+   * Manifest of the hashes of formatted files, meant to be committed with the sources. Files whose
+   * hash matches the manifest are not formatted again, so that a check of unchanged sources barely
+   * runs the formatter, even on a fresh checkout. The {@code format} goal adds the files it formats
+   * to the manifest, the {@code check} goal only reads it. Not used if not set.
+   */
+  @Parameter(property = "fmt.manifestFile")
+  private File manifestFile;
+
+  /**
+   * Takes the hashes of files tracked by git that have not changed since they were staged from the
+   * git index, so that files known to be formatted by the {@code manifestFile} or the {@code
+   * cacheDirectory} are not even read. Other files are read and hashed as usual. Not used without
+   * either of them.
+   */
+  @Parameter(defaultValue = "false", property = "fmt.useGitIndex")
+  private boolean useGitIndex;
+
+  /**
+   * Directory of a cache of formatted sources, shared by all modules, work trees and builds using
+   * it, such as {@code ${user.home}/.m2/fmt-cache}. Sources found in it are not formatted again.
+   * Not used if not set.
+   */
+  @Parameter(property = "fmt.cacheDirectory")
+  private File cacheDirectory;
+
+  /** Megabytes the cache is kept below by evicting the least recently used sources. */
+  @Parameter(defaultValue = "512", property = "fmt.cacheMaxSize")
+  private int cacheMaxSize;
+
   @Parameter(defaultValue = "false", property = "fmt.skip")
   private boolean skip = false;
 
@@ -102,6 +182,108 @@ public abstract class AbstractFMT extends AbstractMojo {
   @Parameter(defaultValue = "default", property = "fmt.forkMode")
   private String forkMode;
 
+  /**
+   * JVM arguments for the forked formatter process, replacing the heap, GC and compiler flags that
+   * are otherwise chosen from the CPU and memory limits of the build and the number of files to
+   * format.
+   */
+  @Parameter(property = "fmt.forkJvmArgs")
+  private List<String> forkJvmArgs;
+
+  /**
+   * Total number of formatting threads shared by all executions of the plugin in a build, so that
+   * parallel builds ({@code mvn -T}) do not run a formatter on every core for every module at once.
+   * Defaults to the number of CPUs available to the build, and is capped by it.
+   */
+  @Parameter(defaultValue = "0", property = "fmt.cpuBudget")
+  private int cpuBudget;
+
+  @Parameter(defaultValue = "${session.request.degreeOfConcurrency}", readonly = true)
+  private int degreeOfConcurrency;
+
+  /**
+   * File to write statistics of the run to, such as the time spent per phase and throughput, so
+   * that the cost of formatting can be charted across builds. Not written by default.
+   */
+  @Parameter(property = "fmt.reportFile")
+  private File reportFile;
+
+  /**
+   * Format of the {@code reportFile}: {@code json}, or {@code prometheus} for the Prometheus text
+   * file format.
+   */
+  @Parameter(defaultValue = "json", property = "fmt.reportFormat")
+  private String reportFormat;
+
+  /**
+   * Number of slowest files to list, with their size and the time spent per phase, at the end of
+   * the run and in the {@code reportFile}. Listed at info level in verbose mode, at debug level
+   * otherwise. Set to {@code 0} to not track per file timings.
+   */
+  @Parameter(defaultValue = "10", property = "fmt.slowestFiles")
+  private int slowestFiles;
+
+  /**
+   * Seconds between progress reports while formatting, with the number of files done, the rate and
+   * the estimated time remaining. Set to {@code 0} to only report when done.
+   */
+  @Parameter(defaultValue = "10", property = "fmt.progressInterval")
+  private int progressInterval;
+
+  /**
+   * Records the forked formatter with JDK Flight Recorder into {@code fmt-<goal>.jfr} in the build
+   * directory, including an event per file and formatting phase next to GC and JIT activity. Has no
+   * effect when not forking.
+   */
+  @Parameter(defaultValue = "false", property = "fmt.flightRecording")
+  private boolean flightRecording;
+
+  /**
+   * Seconds without any file finishing formatting after which formatting is considered stalled, and
+   * thread dumps showing the file each formatting thread is on are logged. Set to {@code 0} to not
+   * watch for stalls.
+   */
+  @Parameter(defaultValue = "300", property = "fmt.stallTimeout")
+  private int stallTimeout;
+
+  /** Whether to fail the build when formatting stalls, instead of only logging thread dumps. */
+  @Parameter(defaultValue = "false", property = "fmt.failOnStall")
+  private boolean failOnStall;
+
+  /**
+   * File to append OpenTelemetry trace spans of the execution to, in the OTLP JSON Lines format of
+   * the OpenTelemetry file exporter, e.g. to show the plugin in build trace views. Nothing is sent
+   * over the network. Not written by default.
+   */
+  @Parameter(property = "fmt.traceFile")
+  private File traceFile;
+
+  /**
+   * Environment variable holding the W3C trace context ({@code traceparent}) to trace the execution
+   * under. If it is not set, each execution starts a new trace.
+   */
+  @Parameter(defaultValue = "TRACEPARENT", property = "fmt.traceParentVariable")
+  private String traceParentVariable;
+
+  /** Fraction of files that get a span of their own when tracing, between 0 and 1. */
+  @Parameter(defaultValue = "0.01", property = "fmt.traceSampleRate")
+  private double traceSampleRate;
+
+  @Parameter(defaultValue = "${plugin.version}", readonly = true)
+  private String pluginVersion;
+
+  @Parameter(defaultValue = "${plugin.groupId}:${plugin.artifactId}", readonly = true)
+  private String pluginKey;
+
+  @Parameter(defaultValue = "${project.build.directory}", readonly = true)
+  private File buildDirectory;
+
+  @Parameter(defaultValue = "${project.artifactId}", readonly = true)
+  private String artifactId;
+
+  @Parameter(defaultValue = "${mojoExecution.mojoDescriptor.goal}", readonly = true)
+  private String goal;
+
   @Parameter(property = "plugin.artifactMap", required = true, readonly = true)
   private Map<String, Artifact> pluginArtifactMap;
 
@@ -111,6 +293,14 @@ public abstract class AbstractFMT extends AbstractMojo {
    */
   @VisibleForTesting boolean useDefaultClasspathWhenForking;
 
+  @Parameter(defaultValue = "${reactorProjects}", readonly = true)
+  private List<MavenProject> reactorProjects;
+
+  @Parameter(defaultValue = "${project}", readonly = true)
+  private MavenProject project;
+
+  private ReactorSources reactorSources;
+
   private FormattingResult result;
 
   /** execute. */
@@ -120,7 +310,7 @@ public abstract class AbstractFMT extends AbstractMojo {
       getLog().info("Skipping format check");
       return;
     }
-    if ("pom".equals(packaging)) {
+    if ("pom".equals(packaging) && !isAggregator()) {
       getLog().info("Skipping format check: project uses 'pom' packaging");
       return;
     }
@@ -128,30 +318,31 @@ public abstract class AbstractFMT extends AbstractMojo {
       getLog().info("Skipping sorting imports");
     }
     if (skipRemovingUnusedImports) {
-        getLog().info("Skipping removing unused imports");
-      }
+      getLog().info("Skipping removing unused imports");
+    }
     if (skipReflowingLongStrings) {
-        getLog().info("Skipping reflowing long strings");
-      }
-    List<File> directoriesToFormat = new ArrayList<>();
-    if (sourceDirectory.exists() && !skipSourceDirectory) {
-      directoriesToFormat.add(sourceDirectory);
-    } else {
-      handleMissingDirectory("Source", sourceDirectory);
+      getLog().info("Skipping reflowing long strings");
     }
-    if (testSourceDirectory.exists() && !skipTestSourceDirectory) {
-      directoriesToFormat.add(testSourceDirectory);
-    } else {
-      handleMissingDirectory("Test source", testSourceDirectory);
+    List<File> directoriesToFormat =
+        isAggregator() ? reactorDirectoriesToFormat() : directoriesToFormat();
+    List<File> filesToFormat = files != null && !files.isEmpty() ? filesToFormat() : null;
+    if (shardCount > 1 && (shardIndex < 0 || shardIndex >= shardCount)) {
+      throw new MojoFailureException(
+          "Invalid shardIndex: " + shardIndex + ", must be between 0 and " + (shardCount - 1));
     }
 
-    for (File additionalSourceDirectory : additionalSourceDirectories) {
-      if (additionalSourceDirectory.exists()) {
-        directoriesToFormat.add(additionalSourceDirectory);
-      } else {
-        handleMissingDirectory("Additional source", additionalSourceDirectory);
-      }
-    }
+    final Tracer tracer =
+        traceFile != null
+            ? Tracer.continueTrace(System.getenv(traceParentVariable), traceSampleRate)
+            : Tracer.disabled();
+    final Tracer.Span execution =
+        tracer
+            .start("fmt:" + (goal != null ? goal : getProcessingLabel()), null)
+            .attribute("maven.project", artifactId);
+
+    final ContainerLimits limits = ContainerLimits.detect();
+    final CpuBudget budget = CpuBudget.of(cpuBudget, limits.cpus());
+    final int threads = budget.threadsPerExecution(degreeOfConcurrency);
 
     FormattingConfiguration configuration =
         FormattingConfiguration.builder()
@@ -166,11 +357,39 @@ public abstract class AbstractFMT extends AbstractMojo {
             .skipReflowingLongStrings(skipReflowingLongStrings)
             .writeReformattedFiles(shouldWriteReformattedFiles())
             .processingLabel(getProcessingLabel())
+            .threads(threads)
+            .slowestFiles(slowestFiles)
+            .progressIntervalSeconds(progressInterval)
+            .traceParent(traceParent(tracer, execution))
+            .traceSampleRate(traceSampleRate)
+            .stallTimeoutSeconds(stallTimeout)
+            .failOnStall(failOnStall)
+            .filesToFormat(filesToFormat)
+            .shardIndex(shardIndex)
+            .shardCount(shardCount)
+            .shardBySize(shardBySize)
+            .manifestFile(manifestFile)
+            .useGitIndex(useGitIndex)
+            .cacheDirectory(cacheDirectory)
+            .cacheMaxBytes(cacheMaxSize * 1024L * 1024L)
             .build();
 
-    FormattingCallable formattingCallable = new FormattingCallable(configuration);
+    SerializableCallable<FormattingResult> formattingCallable = formattingCallable(configuration);
 
-    try {
+    if (!isLongRunning()) {
+      getLog()
+          .debug(
+              "Waiting for "
+                  + threads
+                  + " of "
+                  + budget.cpus()
+                  + " formatting threads (concurrent executions: "
+                  + degreeOfConcurrency
+                  + ")");
+    }
+    // Goals that keep running until stopped would hold their threads for hours, starving the
+    // other modules of a parallel build, so they only size themselves by the budget.
+    try (CpuBudget.Lease lease = isLongRunning() ? null : budget.acquire(threads)) {
       if (shouldFork()) {
         final List<String> classpath =
             pluginArtifactMap.values().stream()
@@ -179,22 +398,388 @@ public abstract class AbstractFMT extends AbstractMojo {
 
         try (ForkingExecutor executor =
             new ForkingExecutor(getLog())
+                .jvmProfile(
+                    forkedJvmProfile(directoriesToFormat, filesToFormat, limits, budget, threads))
                 .javaArgs(javaArgs())
                 .classpath(classpath)
                 .withDefaultClasspath(useDefaultClasspathWhenForking)) {
-          result = executor.execute(formattingCallable);
+          if (flightRecording) {
+            executor.flightRecording(flightRecordingFile());
+          }
+          final Tracer.Span fork = tracer.start("fmt.fork", execution.spanId());
+          final SerializableCallable<FormattingResult> forkedCallable =
+              formattingCallable(
+                  FormattingConfigurationBuilder.from(configuration)
+                      .traceParent(traceParent(tracer, fork))
+                      .build());
+          final long forkRequestedAtMillis = System.currentTimeMillis();
+          final long forkRequestedAtNanos = tracer.now();
+          result = withForkStartup(executor.execute(forkedCallable), forkRequestedAtMillis);
+          tracer.record(
+              "fmt.fork.startup",
+              fork.spanId(),
+              forkRequestedAtNanos,
+              Math.max(forkRequestedAtNanos, result.statistics().startedAtMillis() * 1_000_000),
+              Collections.emptyMap());
+          fork.end();
         }
 
       } else {
+        if (flightRecording) {
+          getLog().warn("Not forking, start Maven with -XX:StartFlightRecording to record it");
+        }
         result = formattingCallable.call();
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      execution.attribute("error", true).end();
+      writeTrace(tracer);
+      throw new MojoFailureException("Interrupted while waiting for formatting threads", e);
     } catch (Exception e) {
+      execution.attribute("error", true).end();
+      writeTrace(tracer);
       throw new MojoFailureException(e);
     }
 
+    tracer.addAll(result.spans());
+    execution
+        .attribute("fmt.files", result.processedFiles().size())
+        .attribute("fmt.non_complying_files", result.nonComplyingFiles().size())
+        .end();
+    writeTrace(tracer);
+
+    if (shardCount > 1) {
+      writeShardResult(result);
+    }
+
+    if (isAggregator()) {
+      logResultPerModule(result);
+    }
+
+    report(result);
+  }
+
+  /** Reports the result of formatting, and fails the build if the goal requires it. */
+  void report(FormattingResult result) throws MojoFailureException {
+    this.result = result;
+
+    logSlowestFiles(result.statistics().slowestFiles());
+
+    if (reportFile != null) {
+      writeReport(result);
+    }
+
     postExecute(result);
   }
 
+  /**
+   * Writes the result of this shard before failing on it, so that the {@code merge} goal can report
+   * on all shards.
+   */
+  private void writeShardResult(FormattingResult result) throws MojoFailureException {
+    final String goal = this.goal != null ? this.goal : getProcessingLabel();
+    final File file =
+        shardResultFile != null
+            ? shardResultFile
+            : new File(buildDirectory, ShardResult.fileName(goal, shardIndex));
+    try {
+      new ShardResult(goal, shardIndex, shardCount, result).write(file.toPath());
+      getLog().info("Wrote result of shard " + shardIndex + " of " + shardCount + " to " + file);
+    } catch (IOException | SerializationException e) {
+      throw new MojoFailureException("Failed to write shard result to " + file, e);
+    }
+  }
+
+  /** The build directory, where shards write their results by default. */
+  File buildDirectory() {
+    return buildDirectory;
+  }
+
+  /** The directory Maven was started in, which relative paths are resolved against. */
+  File executionRootDirectory() {
+    return executionRootDirectory != null ? executionRootDirectory : new File(".");
+  }
+
+  private static FormattingResult withForkStartup(
+      FormattingResult result, long forkRequestedAtMillis) {
+    final FormattingStatistics statistics = result.statistics();
+    return FormattingResultBuilder.from(result)
+        .statistics(
+            FormattingStatisticsBuilder.from(statistics)
+                .forkStartupMillis(
+                    Math.max(0, statistics.startedAtMillis() - forkRequestedAtMillis))
+                .build())
+        .build();
+  }
+
+  private static String traceParent(Tracer tracer, Tracer.Span parent) {
+    return tracer.isEnabled() ? tracer.traceParent(parent.spanId()) : null;
+  }
+
+  private void writeTrace(Tracer tracer) {
+    if (traceFile == null) {
+      return;
+    }
+    try {
+      new OtlpJsonExporter("fmt-maven-plugin", String.valueOf(pluginVersion))
+          .append(traceFile.toPath(), tracer.spans());
+    } catch (IOException e) {
+      getLog().warn("Failed to write trace to " + traceFile, e);
+    }
+  }
+
+  private Path flightRecordingFile() throws IOException {
+    final Path directory = buildDirectory.toPath();
+    Files.createDirectories(directory);
+    return directory.resolve("fmt-" + (goal != null ? goal : getProcessingLabel()) + ".jfr");
+  }
+
+  private void logSlowestFiles(List<FileTiming> files) {
+    if (files.isEmpty() || !(verbose || getLog().isDebugEnabled())) {
+      return;
+    }
+    final List<String> lines = new ArrayList<>();
+    lines.add("Slowest files:");
+    for (FileTiming file : files) {
+      final StringBuilder phases = new StringBuilder();
+      file.phaseNanos()
+          .forEach(
+              (phase, nanos) ->
+                  phases
+                      .append(phases.length() == 0 ? "" : ", ")
+                      .append(phase.name().toLowerCase(Locale.ROOT))
+                      .append(' ')
+                      .append(millis(nanos)));
+      lines.add(
+          String.format(
+              Locale.ROOT,
+              "  %s  %,d bytes  %s (%s)",
+              millis(file.totalNanos()),
+              file.bytes(),
+              file.path(),
+              phases));
+    }
+    for (String line : lines) {
+      if (verbose) {
+        getLog().info(line);
+      } else {
+        getLog().debug(line);
+      }
+    }
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.1f ms", nanos / 1e6);
+  }
+
+  private void writeReport(FormattingResult result) throws MojoFailureException {
+    if (!StatisticsReport.isSupportedFormat(reportFormat)) {
+      throw new MojoFailureException(
+          "Invalid reportFormat: " + reportFormat + ", must be `json` or `prometheus`");
+    }
+    try {
+      new StatisticsReport(artifactId, goal != null ? goal : getProcessingLabel(), result)
+          .write(reportFile.toPath(), reportFormat);
+      getLog().debug("Wrote " + reportFormat + " report to " + reportFile);
+    } catch (IOException e) {
+      getLog().warn("Failed to write report to " + reportFile, e);
+    }
+  }
+
+  private List<File> directoriesToFormat() throws MojoFailureException {
+    List<File> directoriesToFormat = new ArrayList<>();
+    if (sourceDirectory.exists() && !skipSourceDirectory) {
+      directoriesToFormat.add(sourceDirectory);
+    } else {
+      handleMissingDirectory("Source", sourceDirectory);
+    }
+    if (testSourceDirectory.exists() && !skipTestSourceDirectory) {
+      directoriesToFormat.add(testSourceDirectory);
+    } else {
+      handleMissingDirectory("Test source", testSourceDirectory);
+    }
+
+    for (File additionalSourceDirectory : additionalSourceDirectories) {
+      if (additionalSourceDirectory.exists()) {
+        directoriesToFormat.add(additionalSourceDirectory);
+      } else {
+        handleMissingDirectory("Additional source", additionalSourceDirectory);
+      }
+    }
+    return directoriesToFormat;
+  }
+
+  /** Expands the {@code files} parameter, reading the lists given as {@code @path}. */
+  private List<File> filesToFormat() throws MojoFailureException {
+    final File base = executionRootDirectory();
+    final List<File> filesToFormat = new ArrayList<>();
+    for (String file : files) {
+      if (!file.startsWith("@")) {
+        filesToFormat.add(resolve(base, file.trim()));
+        continue;
+      }
+      final File list = resolve(base, file.substring(1));
+      try {
+        for (String line : Files.readAllLines(list.toPath(), StandardCharsets.UTF_8)) {
+          if (!line.trim().isEmpty()) {
+            filesToFormat.add(resolve(base, line.trim()));
+          }
+        }
+      } catch (IOException e) {
+        throw new MojoFailureException("Failed to read list of files to format " + list, e);
+      }
+    }
+    getLog().debug("Formatting " + filesToFormat.size() + " listed files");
+    return filesToFormat;
+  }
+
+  private static File resolve(File base, String path) {
+    final File file = new File(path);
+    return file.isAbsolute() ? file : new File(base, path);
+  }
+
+  /**
+   * Collects the source directories of all projects in the reactor, so that a single execution
+   * formats the whole build with one shared work pool. The source, test source and additional
+   * source directories of each project are those its own configuration of the plugin would format,
+   * and projects whose configuration sets {@code skip} are left out. Projects configured with
+   * another style or other file patterns than this execution cannot share its run, and fail it.
+   */
+  private List<File> reactorDirectoriesToFormat() throws MojoFailureException {
+    reactorSources = new ReactorSources();
+    for (MavenProject reactorProject : reactorProjects) {
+      if ("pom".equals(reactorProject.getPackaging())) {
+        continue;
+      }
+      final List<Xpp3Dom> configurations = pluginConfigurations(reactorProject);
+      if (Boolean.parseBoolean(configuredValue(configurations, "skip", "false"))) {
+        getLog().debug("Skipping " + reactorProject.getArtifactId() + ": configured to skip");
+        continue;
+      }
+      requireSameConfiguration(reactorProject, configurations, "style", style);
+      requireSameConfiguration(
+          reactorProject, configurations, "filesNamePattern", filesNamePattern);
+      requireSameConfiguration(
+          reactorProject, configurations, "filesPathPattern", filesPathPattern);
+      if (!Boolean.parseBoolean(
+          configuredValue(
+              configurations, "skipSourceDirectory", String.valueOf(skipSourceDirectory)))) {
+        addReactorDirectory(
+            reactorProject,
+            configuredValue(
+                configurations, "sourceDirectory", reactorProject.getBuild().getSourceDirectory()));
+      }
+      if (!Boolean.parseBoolean(
+          configuredValue(
+              configurations,
+              "skipTestSourceDirectory",
+              String.valueOf(skipTestSourceDirectory)))) {
+        addReactorDirectory(
+            reactorProject,
+            configuredValue(
+                configurations,
+                "testSourceDirectory",
+                reactorProject.getBuild().getTestSourceDirectory()));
+      }
+      for (Xpp3Dom configuration : configurations) {
+        final Xpp3Dom directories = configuration.getChild("additionalSourceDirectories");
+        if (directories == null) {
+          continue;
+        }
+        for (Xpp3Dom directory : directories.getChildren()) {
+          addReactorDirectory(reactorProject, directory.getValue());
+        }
+      }
+    }
+    // Set for the execution root, or on the command line.
+    for (File additionalSourceDirectory : additionalSourceDirectories) {
+      if (additionalSourceDirectory.exists()) {
+        reactorSources.add(project.getArtifactId(), additionalSourceDirectory);
+      } else {
+        handleMissingDirectory("Additional source", additionalSourceDirectory);
+      }
+    }
+    return reactorSources.directories();
+  }
+
+  /**
+   * The configurations of this plugin in {@code reactorProject}, of the plugin and of each of its
+   * executions.
+   */
+  private List<Xpp3Dom> pluginConfigurations(MavenProject reactorProject) {
+    final List<Xpp3Dom> configurations = new ArrayList<>();
+    final Plugin plugin = reactorProject.getPlugin(pluginKey);
+    if (plugin == null) {
+      return configurations;
+    }
+    if (plugin.getConfiguration() instanceof Xpp3Dom) {
+      configurations.add((Xpp3Dom) plugin.getConfiguration());
+    }
+    for (PluginExecution execution : plugin.getExecutions()) {
+      if (execution.getConfiguration() instanceof Xpp3Dom) {
+        configurations.add((Xpp3Dom) execution.getConfiguration());
+      }
+    }
+    return configurations;
+  }
+
+  /** The value configured as {@code name} in {@code configurations}, or {@code fallback}. */
+  private static String configuredValue(
+      List<Xpp3Dom> configurations, String name, String fallback) {
+    for (Xpp3Dom configuration : configurations) {
+      final Xpp3Dom value = configuration.getChild(name);
+      if (value != null && value.getValue() != null) {
+        return value.getValue().trim();
+      }
+    }
+    return fallback;
+  }
+
+  private void requireSameConfiguration(
+      MavenProject reactorProject, List<Xpp3Dom> configurations, String name, String value)
+      throws MojoFailureException {
+    final String configured = configuredValue(configurations, name, value);
+    if (!configured.equals(value)) {
+      throw new MojoFailureException(
+          String.format(
+              "%s configures %s '%s' instead of '%s', run the format or check goal in it instead"
+                  + " of formatting it with the whole reactor, or set <skip>true</skip> in it",
+              reactorProject.getArtifactId(), name, configured, value));
+    }
+  }
+
+  private void addReactorDirectory(MavenProject reactorProject, String directory) {
+    if (directory == null || directory.trim().isEmpty()) {
+      return;
+    }
+    File file = new File(directory.trim());
+    if (!file.isAbsolute()) {
+      file = new File(reactorProject.getBasedir(), directory.trim());
+    }
+    if (file.exists()) {
+      reactorSources.add(reactorProject.getArtifactId(), file);
+    } else {
+      getLog()
+          .debug(
+              "Directory '" + file + "' of " + reactorProject.getArtifactId() + " does not exist");
+    }
+  }
+
+  private void logResultPerModule(FormattingResult result) {
+    Map<String, Integer> processed = reactorSources.countByModule(result.processedFiles());
+    Map<String, Integer> nonComplying = reactorSources.countByModule(result.nonComplyingFiles());
+    processed.forEach(
+        (module, count) ->
+            getLog()
+                .info(
+                    String.format(
+                        "%s: processed %d files (%d %s).",
+                        module,
+                        count,
+                        nonComplying.getOrDefault(module, 0),
+                        getProcessingLabel())));
+  }
+
   @VisibleForTesting
   boolean shouldFork() {
     switch (forkMode) {
@@ -209,6 +794,41 @@ public abstract class AbstractFMT extends AbstractMojo {
     }
   }
 
+  private ForkedJvmProfile forkedJvmProfile(
+      List<File> directoriesToFormat,
+      List<File> filesToFormat,
+      ContainerLimits limits,
+      CpuBudget budget,
+      int threads) {
+    if (forkJvmArgs != null && !forkJvmArgs.isEmpty()) {
+      return ForkedJvmProfile.custom(forkJvmArgs);
+    }
+    // Memory is shared by as many forks as can run at the same time within the CPU budget.
+    final int concurrentForks =
+        Math.max(1, Math.min(Math.max(1, degreeOfConcurrency), budget.cpus() / threads));
+    return ForkedJvmProfile.select(
+        new ContainerLimits(threads, limits.memoryBytes() / concurrentForks),
+        filesToFormat != null
+            ? filesToFormat.size()
+            : ForkedJvmProfile.estimateFileCount(directoriesToFormat, filesNamePattern));
+  }
+
+  /**
+   * Whether this goal formats the source directories of all projects in the reactor in a single
+   * execution rather than those of the current project.
+   */
+  protected boolean isAggregator() {
+    return false;
+  }
+
+  /**
+   * Whether this goal keeps running until it is stopped, rather than finishing after formatting the
+   * files once. Such goals do not wait for, nor hold, threads of the {@code cpuBudget}.
+   */
+  protected boolean isLongRunning() {
+    return false;
+  }
+
   /**
    * Post Execute action. It is called at the end of the execute method. Subclasses can add extra
    * checks.
@@ -237,6 +857,14 @@ public abstract class AbstractFMT extends AbstractMojo {
     }
   }
 
+  /**
+   * The callable that formats with {@code configuration}, in a fork or in-process. Goals that do
+   * more than a single pass over the sources run their loop in it, so that it runs in the fork.
+   */
+  SerializableCallable<FormattingResult> formattingCallable(FormattingConfiguration configuration) {
+    return new FormattingCallable(configuration);
+  }
+
   /** Whether to write reformatted files to disk. */
   protected abstract boolean shouldWriteReformattedFiles();
 
@@ -247,7 +875,8 @@ public abstract class AbstractFMT extends AbstractMojo {
    */
   protected abstract String getProcessingLabel();
 
-  private List<String> javaArgs() {
+  /** JVM arguments that google-java-format needs to access javac internals, also in benchmarks. */
+  static List<String> javaArgs() {
     // https://github.com/google/google-java-format/blame/13ca73ebbfa86f6aca5f86be16e6829de6d5014c/pom.xml#L238
     return Arrays.asList(
         "--add-exports", "jdk.compiler/com.sun.tools.javac.api=ALL-UNNAMED",
@@ -262,7 +891,8 @@ public abstract class AbstractFMT extends AbstractMojo {
         "--add-opens", "jdk.compiler/com.sun.tools.javac.comp=ALL-UNNAMED");
   }
 
-  private static class FormattingCallable implements SerializableCallable<FormattingResult> {
+  /** Formats with a {@link Formatter}, in whichever JVM it is called in. */
+  static class FormattingCallable implements SerializableCallable<FormattingResult> {
 
     private final FormattingConfiguration configuration;
 
@@ -273,8 +903,12 @@ public abstract class AbstractFMT extends AbstractMojo {
     @Override
     public FormattingResult call() {
       Logging.configure(configuration.debug());
-      Formatter formatter = new Formatter(configuration);
-      return formatter.format();
+      try {
+        Formatter formatter = new Formatter(configuration);
+        return formatter.format();
+      } finally {
+        Logging.flush();
+      }
     }
   }
 }
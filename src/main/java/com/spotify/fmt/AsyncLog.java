@@ -0,0 +1,209 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Hands log records to a single background thread through a {@link LogRingBuffer}, so that
+ * formatting threads neither wait for the console nor contend on its lock.
+ *
+ * <p>Messages may be given as a {@link Supplier}, in which case they are only built on the
+ * background thread. Such suppliers must only capture immutable state.
+ */
+class AsyncLog {
+
+  private static final int CAPACITY = 8192;
+  private static final long FLUSH_PARK_NANOS = 100_000;
+
+  private enum Level {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR
+  }
+
+  private static class Record {
+    final Level level;
+    final Object content;
+    final Throwable error;
+
+    Record(Level level, Object content, Throwable error) {
+      this.level = level;
+      this.content = content;
+      this.error = error;
+    }
+  }
+
+  private final LogRingBuffer<Record> ring = new LogRingBuffer<>(CAPACITY);
+
+  private volatile Log target;
+
+  private final Thread drainer;
+
+  /**
+   * Whether the drainer is parked, or about to park, on an empty ring. Set by the drainer before it
+   * polls the ring a last time, and read by producers after they offered, so that either the
+   * drainer sees the record or the producer sees that it has to wake it up.
+   */
+  private volatile boolean idle;
+
+  /** Number of records delivered to the target. Only written by the drainer. */
+  private volatile long delivered;
+
+  AsyncLog(Log target) {
+    this.target = target;
+    // Started eagerly, so that logging never takes a lock to start it.
+    this.drainer = new Thread(this::drain, "fmt-log-drainer");
+    drainer.setDaemon(true);
+    drainer.start();
+  }
+
+  Log target() {
+    return target;
+  }
+
+  /** Sends all further records to {@code target}, after delivering pending records. */
+  void target(Log target) {
+    flush();
+    this.target = target;
+  }
+
+  void debug(Object content, Throwable error) {
+    enqueue(new Record(Level.DEBUG, content, error));
+  }
+
+  void info(Object content, Throwable error) {
+    enqueue(new Record(Level.INFO, content, error));
+  }
+
+  void warn(Object content, Throwable error) {
+    enqueue(new Record(Level.WARN, content, error));
+  }
+
+  void error(Object content, Throwable error) {
+    enqueue(new Record(Level.ERROR, content, error));
+  }
+
+  /** Blocks until all records logged before this call have been delivered to the target. */
+  void flush() {
+    final long offered = ring.offered();
+    while (delivered < offered) {
+      LockSupport.unpark(drainer);
+      LockSupport.parkNanos(this, FLUSH_PARK_NANOS);
+    }
+  }
+
+  private void enqueue(Record record) {
+    while (!ring.offer(record)) {
+      // Full: let the drainer catch up rather than dropping the record.
+      LockSupport.unpark(drainer);
+      Thread.yield();
+    }
+    if (idle) {
+      LockSupport.unpark(drainer);
+    }
+  }
+
+  private void drain() {
+    while (true) {
+      Record record = ring.poll();
+      if (record == null) {
+        idle = true;
+        // Again, as a producer that offered before it saw idle set did not wake us up.
+        record = ring.poll();
+        if (record == null) {
+          LockSupport.park(this);
+          idle = false;
+          continue;
+        }
+        idle = false;
+      }
+      try {
+        deliver(record);
+      } catch (RuntimeException e) {
+        // Never let a failing message supplier stop the delivery of other records.
+      } finally {
+        delivered++;
+      }
+    }
+  }
+
+  private void deliver(Record record) {
+    final CharSequence content = content(record.content);
+    final Throwable error = record.error;
+    final Log target = this.target;
+    switch (record.level) {
+      case DEBUG:
+        if (error == null) {
+          target.debug(content);
+        } else if (content == null) {
+          target.debug(error);
+        } else {
+          target.debug(content, error);
+        }
+        break;
+      case INFO:
+        if (error == null) {
+          target.info(content);
+        } else if (content == null) {
+          target.info(error);
+        } else {
+          target.info(content, error);
+        }
+        break;
+      case WARN:
+        if (error == null) {
+          target.warn(content);
+        } else if (content == null) {
+          target.warn(error);
+        } else {
+          target.warn(content, error);
+        }
+        break;
+      default:
+        if (error == null) {
+          target.error(content);
+        } else if (content == null) {
+          target.error(error);
+        } else {
+          target.error(content, error);
+        }
+        break;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static CharSequence content(Object content) {
+    if (content instanceof Supplier) {
+      return ((Supplier<? extends CharSequence>) content).get();
+    }
+    return (CharSequence) content;
+  }
+}
@@ -0,0 +1,150 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * CPU and memory available to this process, taking cgroup (v1 and v2) limits into account so that a
+ * container with a CPU quota of 4 on a 96 core host is reported as having 4 CPUs.
+ */
+class ContainerLimits {
+
+  private static final Path CGROUP_ROOT = Paths.get("/sys/fs/cgroup");
+
+  /** cgroup v1 reports "no limit" as a very large page-aligned number rather than "max". */
+  private static final long UNLIMITED_MEMORY_THRESHOLD = Long.MAX_VALUE / 2;
+
+  private final int cpus;
+  private final long memoryBytes;
+
+  ContainerLimits(int cpus, long memoryBytes) {
+    this.cpus = cpus;
+    this.memoryBytes = memoryBytes;
+  }
+
+  static ContainerLimits detect() {
+    return detect(CGROUP_ROOT, Runtime.getRuntime().availableProcessors(), physicalMemory());
+  }
+
+  static ContainerLimits detect(Path cgroupRoot, int hostCpus, long hostMemoryBytes) {
+    int cpus = hostCpus;
+    long cpuQuota = cgroupCpuLimit(cgroupRoot);
+    if (cpuQuota > 0) {
+      cpus = (int) Math.max(1, Math.min(hostCpus, cpuQuota));
+    }
+    long memoryBytes = hostMemoryBytes;
+    long memoryLimit = cgroupMemoryLimit(cgroupRoot);
+    if (memoryLimit > 0 && (hostMemoryBytes <= 0 || memoryLimit < hostMemoryBytes)) {
+      memoryBytes = memoryLimit;
+    }
+    return new ContainerLimits(cpus, memoryBytes);
+  }
+
+  int cpus() {
+    return cpus;
+  }
+
+  /** Memory available to this process in bytes, or a non-positive value if unknown. */
+  long memoryBytes() {
+    return memoryBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "ContainerLimits{cpus=" + cpus + ", memoryBytes=" + memoryBytes + '}';
+  }
+
+  /** Returns the CPU limit rounded up to whole CPUs, or -1 if there is none. */
+  private static long cgroupCpuLimit(Path root) {
+    // cgroup v2: "<quota> <period>" or "max <period>"
+    String cpuMax = read(root.resolve("cpu.max"));
+    if (cpuMax != null) {
+      String[] parts = cpuMax.split("\\s+");
+      if (parts.length == 2 && !"max".equals(parts[0])) {
+        return ceilDiv(parseLong(parts[0]), parseLong(parts[1]));
+      }
+      return -1;
+    }
+    // cgroup v1: quota is -1 when unlimited
+    long quota = parseLong(read(root.resolve("cpu").resolve("cpu.cfs_quota_us")));
+    long period = parseLong(read(root.resolve("cpu").resolve("cpu.cfs_period_us")));
+    return ceilDiv(quota, period);
+  }
+
+  /** Returns the memory limit in bytes, or -1 if there is none. */
+  private static long cgroupMemoryLimit(Path root) {
+    String memoryMax = read(root.resolve("memory.max"));
+    if (memoryMax == null) {
+      memoryMax = read(root.resolve("memory").resolve("memory.limit_in_bytes"));
+    }
+    long limit = parseLong(memoryMax);
+    return limit > 0 && limit < UNLIMITED_MEMORY_THRESHOLD ? limit : -1;
+  }
+
+  private static long ceilDiv(long quota, long period) {
+    if (quota <= 0 || period <= 0) {
+      return -1;
+    }
+    return (quota + period - 1) / period;
+  }
+
+  private static long parseLong(String value) {
+    if (value == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static String read(Path file) {
+    if (!Files.isReadable(file)) {
+      return null;
+    }
+    try {
+      return new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static long physicalMemory() {
+    java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    if (os instanceof com.sun.management.OperatingSystemMXBean) {
+      return ((com.sun.management.OperatingSystemMXBean) os).getTotalMemorySize();
+    }
+    return -1;
+  }
+}
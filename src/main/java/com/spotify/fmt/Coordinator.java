@@ -0,0 +1,171 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Coordinator mojo that finds the files to format of all projects in the reactor and hands them out
+ * in batches to processes running the {@code worker} goal, see {@link FormattingCoordinator}.
+ * Reports on all files once they are formatted, and fails the build like {@code check} if {@code
+ * checkOnly} and some files are not formatted.
+ */
+@Mojo(name = "coordinator", aggregator = true, threadSafe = true)
+public class Coordinator extends Check {
+
+  /** Only check the files, like {@code check}, instead of reformatting them. */
+  @Parameter(defaultValue = "false", property = "fmt.checkOnly")
+  private boolean checkOnly;
+
+  /**
+   * Address to accept workers on. Only local workers can connect by default; set to {@code 0.0.0.0}
+   * for workers on other machines of a trusted network, as workers are not authenticated.
+   */
+  @Parameter(defaultValue = "localhost", property = "fmt.coordinatorHost")
+  private String coordinatorHost;
+
+  /** Port to accept workers on. */
+  @Parameter(defaultValue = "7345", property = "fmt.coordinatorPort")
+  private int coordinatorPort;
+
+  /** Number of files handed out to a worker at a time. */
+  @Parameter(defaultValue = "50", property = "fmt.batchSize")
+  private int batchSize;
+
+  /**
+   * Seconds without a heartbeat after which a worker is considered dead and its batch is handed out
+   * again, and without any worker connected after which the build fails.
+   */
+  @Parameter(defaultValue = "120", property = "fmt.workerTimeout")
+  private int workerTimeout;
+
+  /** Number of workers a batch may fail on, e.g. because they ran out of memory, before failing. */
+  @Parameter(defaultValue = "3", property = "fmt.maxBatchAttempts")
+  private int maxBatchAttempts;
+
+  @Override
+  SerializableCallable<FormattingResult> formattingCallable(FormattingConfiguration configuration) {
+    return new CoordinatorCallable(
+        configuration,
+        executionRootDirectory(),
+        coordinatorHost,
+        coordinatorPort,
+        batchSize,
+        maxBatchAttempts,
+        TimeUnit.SECONDS.toNanos(workerTimeout));
+  }
+
+  @Override
+  protected void postExecute(FormattingResult result) throws MojoFailureException {
+    if (checkOnly) {
+      super.postExecute(result);
+    }
+  }
+
+  @Override
+  protected boolean isAggregator() {
+    return true;
+  }
+
+  @Override
+  protected boolean isLongRunning() {
+    return true;
+  }
+
+  @Override
+  protected boolean shouldWriteReformattedFiles() {
+    return !checkOnly;
+  }
+
+  /**
+   * Provides the name of the label used when a non-formatted file is found.
+   *
+   * @return the label to use in the log
+   */
+  @Override
+  protected String getProcessingLabel() {
+    return checkOnly ? "non-complying" : "reformatted";
+  }
+
+  /** Runs a {@link FormattingCoordinator} until all files are formatted. */
+  static class CoordinatorCallable implements SerializableCallable<FormattingResult> {
+
+    private final FormattingConfiguration configuration;
+    private final File root;
+    private final String host;
+    private final int port;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long workerTimeoutNanos;
+
+    CoordinatorCallable(
+        FormattingConfiguration configuration,
+        File root,
+        String host,
+        int port,
+        int batchSize,
+        int maxAttempts,
+        long workerTimeoutNanos) {
+      this.configuration = configuration;
+      this.root = root;
+      this.host = host;
+      this.port = port;
+      this.batchSize = batchSize;
+      this.maxAttempts = maxAttempts;
+      this.workerTimeoutNanos = workerTimeoutNanos;
+    }
+
+    @Override
+    public FormattingResult call() throws IOException, InterruptedException {
+      Logging.configure(configuration.debug());
+      final Logger log = Logging.getLog();
+      try (FormattingCoordinator coordinator =
+          new FormattingCoordinator(
+              log,
+              root.toPath(),
+              batchSize,
+              maxAttempts,
+              workerTimeoutNanos,
+              configuration.writeReformattedFiles())) {
+        final List<File> files = new Formatter(configuration).filesToFormat();
+        final InetSocketAddress address = coordinator.start(new InetSocketAddress(host, port));
+        log.info("Waiting for workers on " + address);
+        Logging.flush();
+        return coordinator.run(files);
+      } finally {
+        Logging.flush();
+      }
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds the number of formatting threads used by all concurrently running executions of this
+ * plugin in the same Maven session.
+ *
+ * <p>The plugin class realm, and therefore this class, is shared by all modules of a build, so with
+ * {@code mvn -T} the executions of different modules draw their threads from the same budget
+ * instead of each forking a JVM that uses every core of the machine. Executions configured with the
+ * same budget share its threads, and every budget draws them from the budget of the machine's CPUs,
+ * so that executions configured with different budgets cannot together use more than the machine.
+ */
+class CpuBudget {
+
+  private static final Map<Integer, CpuBudget> MACHINES = new HashMap<>();
+
+  private final int cpus;
+  private final Semaphore available;
+
+  /** Budget of the machine that threads are also taken from, {@code null} for the machine's. */
+  private final CpuBudget machine;
+
+  /** Configured budgets below the CPUs of the machine, keyed by their CPUs. */
+  private final Map<Integer, CpuBudget> configured = new HashMap<>();
+
+  CpuBudget(int cpus) {
+    this(cpus, null);
+  }
+
+  private CpuBudget(int cpus, CpuBudget machine) {
+    if (cpus < 1) {
+      throw new IllegalArgumentException("CPU budget must be positive: " + cpus);
+    }
+    this.cpus = cpus;
+    this.available = new Semaphore(cpus, true);
+    this.machine = machine;
+  }
+
+  /**
+   * Returns the budget shared by all executions configured with {@code configuredCpus} threads on a
+   * machine with {@code machineCpus} CPUs. A non-positive {@code configuredCpus} means all of them.
+   */
+  static synchronized CpuBudget of(int configuredCpus, int machineCpus) {
+    final CpuBudget machine = MACHINES.computeIfAbsent(machineCpus, c -> new CpuBudget(c));
+    if (configuredCpus <= 0 || configuredCpus >= machineCpus) {
+      return machine;
+    }
+    return machine.configured.computeIfAbsent(configuredCpus, c -> new CpuBudget(c, machine));
+  }
+
+  int cpus() {
+    return cpus;
+  }
+
+  /**
+   * Number of threads a single execution should use so that {@code concurrentExecutions} executions
+   * together stay within this budget. Executions beyond the budget wait in {@link #acquire(int)}.
+   */
+  int threadsPerExecution(int concurrentExecutions) {
+    return Math.max(1, cpus / Math.max(1, concurrentExecutions));
+  }
+
+  /** Blocks until {@code threads} threads are available in this budget and the machine's. */
+  Lease acquire(int threads) throws InterruptedException {
+    final int granted = Math.min(Math.max(1, threads), cpus);
+    available.acquire(granted);
+    if (machine != null) {
+      try {
+        machine.available.acquire(granted);
+      } catch (InterruptedException e) {
+        available.release(granted);
+        throw e;
+      }
+    }
+    return new Lease(granted);
+  }
+
+  /** Threads taken from the budget, returned on {@link #close()}. */
+  class Lease implements AutoCloseable {
+
+    private final int threads;
+    private boolean released;
+
+    private Lease(int threads) {
+      this.threads = threads;
+    }
+
+    int threads() {
+      return threads;
+    }
+
+    @Override
+    public synchronized void close() {
+      if (!released) {
+        released = true;
+        if (machine != null) {
+          machine.available.release(threads);
+        }
+        available.release(threads);
+      }
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Daemon mojo that keeps a formatter running behind a local socket for editors and git hooks, see
+ * {@link FormattingDaemon} for the protocol. Runs until a client shuts it down or it has been idle
+ * for {@code daemonIdleTimeout}.
+ */
+@Mojo(name = "daemon", threadSafe = true)
+public class Daemon extends AbstractFMT {
+
+  /**
+   * Unix domain socket to listen on, unless {@code daemonPort} is set. The path has to be short
+   * enough for the platform, about 100 characters.
+   */
+  @Parameter(
+      defaultValue = "${project.build.directory}/fmt-daemon.sock",
+      property = "fmt.daemonSocket")
+  private File daemonSocket;
+
+  /** Loopback TCP port to listen on instead of the Unix domain socket. */
+  @Parameter(defaultValue = "0", property = "fmt.daemonPort")
+  private int daemonPort;
+
+  /** Seconds without requests after which the daemon shuts down. Set to {@code 0} to never. */
+  @Parameter(defaultValue = "3600", property = "fmt.daemonIdleTimeout")
+  private int daemonIdleTimeout;
+
+  /** Only check files sent with {@code FILE} requests, instead of reformatting them. */
+  @Parameter(defaultValue = "false", property = "fmt.checkOnly")
+  private boolean checkOnly;
+
+  @Override
+  SerializableCallable<FormattingResult> formattingCallable(FormattingConfiguration configuration) {
+    return new DaemonCallable(
+        configuration, daemonSocket, daemonPort, TimeUnit.SECONDS.toNanos(daemonIdleTimeout));
+  }
+
+  @Override
+  protected boolean isLongRunning() {
+    return true;
+  }
+
+  @Override
+  protected boolean shouldWriteReformattedFiles() {
+    return !checkOnly;
+  }
+
+  /**
+   * Provides the name of the label used when a non-formatted file is found.
+   *
+   * @return the label to use in the log
+   */
+  @Override
+  protected String getProcessingLabel() {
+    return checkOnly ? "non-complying" : "reformatted";
+  }
+
+  /** Runs a {@link FormattingDaemon} until it shuts down, in whichever JVM it is called in. */
+  static class DaemonCallable implements SerializableCallable<FormattingResult> {
+
+    private final FormattingConfiguration configuration;
+    private final File socket;
+    private final int port;
+    private final long idleTimeoutNanos;
+
+    DaemonCallable(
+        FormattingConfiguration configuration, File socket, int port, long idleTimeoutNanos) {
+      this.configuration = configuration;
+      this.socket = socket;
+      this.port = port;
+      this.idleTimeoutNanos = idleTimeoutNanos;
+    }
+
+    @Override
+    public FormattingResult call() throws IOException {
+      Logging.configure(configuration.debug());
+      final Logger log = Logging.getLog();
+      try (FormattingDaemon daemon = new FormattingDaemon(log, configuration, idleTimeoutNanos)) {
+        if (port <= 0 && socket.getParentFile() != null) {
+          Files.createDirectories(socket.getParentFile().toPath());
+        }
+        final SocketAddress address = daemon.start(FormattingDaemon.address(socket, port));
+        log.info("Formatting daemon listening on " + address);
+        Logging.flush();
+        daemon.awaitShutdown();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        Logging.flush();
+      }
+      return FormattingResult.builder()
+          .statistics(
+              FormattingStatistics.builder().startedAtMillis(System.currentTimeMillis()).build())
+          .build();
+    }
+  }
+}
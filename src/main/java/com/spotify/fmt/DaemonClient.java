@@ -0,0 +1,117 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Client for a {@link FormattingDaemon}, sending one request at a time over a single connection.
+ * Requests the daemon fails to handle throw a {@link FormatterException} with its message.
+ */
+class DaemonClient implements Closeable {
+
+  private final SocketChannel channel;
+  private final InputStream in;
+  private final OutputStream out;
+
+  private DaemonClient(SocketChannel channel) {
+    this.channel = channel;
+    this.in = new BufferedInputStream(Channels.newInputStream(channel));
+    this.out = new BufferedOutputStream(Channels.newOutputStream(channel));
+  }
+
+  static DaemonClient connect(SocketAddress address) throws IOException {
+    return new DaemonClient(SocketChannel.open(address));
+  }
+
+  /** Formats {@code source} with {@code style}. */
+  String format(String style, String source) throws IOException {
+    final byte[] bytes = source.getBytes(UTF_8);
+    return request("FORMAT " + style + " " + bytes.length, bytes);
+  }
+
+  /** Returns {@link FormattingDaemon#COMPLIANT} or {@link FormattingDaemon#NON_COMPLYING}. */
+  String check(String style, String source) throws IOException {
+    final byte[] bytes = source.getBytes(UTF_8);
+    return request("CHECK " + style + " " + bytes.length, bytes);
+  }
+
+  /** Formats or checks {@code file} in place, returning the outcome. */
+  String file(String style, File file) throws IOException {
+    return request("FILE " + style + " " + file.getAbsolutePath(), new byte[0]);
+  }
+
+  /** Statistics of the daemon as JSON. */
+  String stats() throws IOException {
+    return request("STATS", new byte[0]);
+  }
+
+  void shutdown() throws IOException {
+    request("SHUTDOWN", new byte[0]);
+  }
+
+  private synchronized String request(String request, byte[] payload) throws IOException {
+    out.write((request + "\n").getBytes(UTF_8));
+    out.write(payload);
+    out.flush();
+    final String response = FormattingDaemon.readLine(in);
+    if (response == null) {
+      throw new EOFException("The daemon closed the connection");
+    }
+    final String[] parts = response.split(" ", 2);
+    if (parts.length != 2) {
+      throw new IOException("Invalid response: " + response);
+    }
+    final String body;
+    try {
+      body = new String(FormattingDaemon.readPayload(in, Integer.parseInt(parts[1])), UTF_8);
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid response: " + response);
+    }
+    if (parts[0].equals("ERROR")) {
+      throw new FormatterException(body);
+    }
+    return body;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,62 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.File;
+import java.io.IOException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Export cache mojo that writes all entries of the cache of formatted sources, see {@code
+ * cacheDirectory}, to one archive, e.g. for CI to restore it in later jobs with {@code
+ * import-cache}.
+ */
+@Mojo(name = "export-cache", requiresProject = false, aggregator = true, threadSafe = true)
+public class ExportCache extends AbstractMojo {
+
+  /** Directory of the cache, as set for the formatting goals. */
+  @Parameter(property = "fmt.cacheDirectory", required = true)
+  private File cacheDirectory;
+
+  /** Archive to write the entries of the cache to. */
+  @Parameter(property = "fmt.cacheArchive", required = true)
+  private File cacheArchive;
+
+  @Override
+  public void execute() throws MojoFailureException {
+    try {
+      final int exported =
+          new FormatCache(cacheDirectory.toPath(), Long.MAX_VALUE).export(cacheArchive.toPath());
+      getLog().info("Exported " + exported + " cache files to " + cacheArchive);
+    } catch (IOException e) {
+      throw new MojoFailureException("Failed to export cache to " + cacheArchive, e);
+    }
+  }
+}
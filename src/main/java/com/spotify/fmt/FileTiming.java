@@ -0,0 +1,108 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import com.spotify.fmt.FormattingStatistics.Phase;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/** How long formatting a single file took, and in which {@link Phase phases}. */
+final class FileTiming implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String path;
+  private final long bytes;
+  private final long totalNanos;
+  private final Map<Phase, Long> phaseNanos;
+
+  FileTiming(String path, long bytes, long totalNanos, Map<Phase, Long> phaseNanos) {
+    this.path = path;
+    this.bytes = bytes;
+    this.totalNanos = totalNanos;
+    final Map<Phase, Long> copy = new EnumMap<>(Phase.class);
+    copy.putAll(phaseNanos);
+    this.phaseNanos = Collections.unmodifiableMap(copy);
+  }
+
+  String path() {
+    return path;
+  }
+
+  long bytes() {
+    return bytes;
+  }
+
+  long totalNanos() {
+    return totalNanos;
+  }
+
+  /** Time per phase the file went through; skipped phases are absent. */
+  Map<Phase, Long> phaseNanos() {
+    return phaseNanos;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof FileTiming)) {
+      return false;
+    }
+    final FileTiming that = (FileTiming) o;
+    return bytes == that.bytes
+        && totalNanos == that.totalNanos
+        && path.equals(that.path)
+        && phaseNanos.equals(that.phaseNanos);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = path.hashCode();
+    result = 31 * result + Long.hashCode(bytes);
+    result = 31 * result + Long.hashCode(totalNanos);
+    result = 31 * result + phaseNanos.hashCode();
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "FileTiming{"
+        + "path="
+        + path
+        + ", bytes="
+        + bytes
+        + ", totalNanos="
+        + totalNanos
+        + ", phaseNanos="
+        + phaseNanos
+        + '}';
+  }
+}
@@ -0,0 +1,152 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Heap, GC and compiler flags for the forked formatter JVM.
+ *
+ * <p>Without explicit flags the child sizes its heap and GC thread pools from the host rather than
+ * from what the build is actually allowed to use, and pays for C2 compilation even when it only
+ * formats a handful of files. Small workloads get a C1-only JVM with the serial collector, larger
+ * ones the parallel collector with thread counts bounded by the available CPUs.
+ */
+class ForkedJvmProfile {
+
+  /** Workloads with at most this many files are considered small. */
+  static final int SMALL_WORKLOAD_FILES = 200;
+
+  private static final long MB = 1024 * 1024;
+  private static final long SMALL_HEAP = 256 * MB;
+  private static final long MIN_HEAP = 128 * MB;
+  private static final long MAX_HEAP = 2048 * MB;
+
+  private final String name;
+  private final List<String> jvmArgs;
+
+  private ForkedJvmProfile(String name, List<String> jvmArgs) {
+    this.name = name;
+    this.jvmArgs = Collections.unmodifiableList(jvmArgs);
+  }
+
+  /** A profile consisting of user supplied flags only. */
+  static ForkedJvmProfile custom(List<String> jvmArgs) {
+    return new ForkedJvmProfile("custom", new ArrayList<>(jvmArgs));
+  }
+
+  /**
+   * Selects a profile for formatting {@code files} files within the given limits.
+   *
+   * @param limits the CPU and memory available to the build
+   * @param files the number of files to format, possibly capped at {@link #SMALL_WORKLOAD_FILES} +
+   *     1
+   */
+  static ForkedJvmProfile select(ContainerLimits limits, int files) {
+    final int cpus = Math.max(1, limits.cpus());
+    final long memory = limits.memoryBytes();
+    final List<String> args = new ArrayList<>();
+    args.add("-XX:ActiveProcessorCount=" + cpus);
+    if (files <= SMALL_WORKLOAD_FILES) {
+      args.add("-XX:TieredStopAtLevel=1");
+      args.add("-XX:+UseSerialGC");
+      args.add("-Xmx" + toMegabytes(memory > 0 ? Math.min(SMALL_HEAP, memory / 2) : SMALL_HEAP));
+      return new ForkedJvmProfile(
+          "small (files=" + files + ", cpus=" + cpus + ", memory=" + toMegabytes(memory) + ")",
+          args);
+    }
+    long heap = memory > 0 ? clamp(memory / 4, MIN_HEAP, MAX_HEAP) : MAX_HEAP;
+    args.add("-XX:+UseParallelGC");
+    args.add("-XX:ParallelGCThreads=" + cpus);
+    args.add("-Xmx" + toMegabytes(heap));
+    return new ForkedJvmProfile(
+        "large (files="
+            + (files > SMALL_WORKLOAD_FILES ? ">" + SMALL_WORKLOAD_FILES : files)
+            + ", cpus="
+            + cpus
+            + ", memory="
+            + toMegabytes(memory)
+            + ")",
+        args);
+  }
+
+  /**
+   * Counts the files matching {@code filesNamePattern}, giving up once it is known that the
+   * workload is not small so that large trees are not walked twice.
+   */
+  static int estimateFileCount(List<File> directories, String filesNamePattern) {
+    final Pattern pattern = Pattern.compile(filesNamePattern);
+    int count = 0;
+    for (File directory : directories) {
+      if (!directory.isDirectory()) {
+        continue;
+      }
+      try (Stream<Path> paths = Files.walk(directory.toPath())) {
+        count +=
+            (int)
+                paths
+                    .filter(p -> pattern.matcher(p.getFileName().toString()).matches())
+                    .filter(Files::isRegularFile)
+                    .limit(SMALL_WORKLOAD_FILES + 1 - count)
+                    .count();
+      } catch (IOException | UncheckedIOException e) {
+        // Sizing is best effort, assume the worst.
+        return SMALL_WORKLOAD_FILES + 1;
+      }
+      if (count > SMALL_WORKLOAD_FILES) {
+        break;
+      }
+    }
+    return count;
+  }
+
+  List<String> jvmArgs() {
+    return jvmArgs;
+  }
+
+  @Override
+  public String toString() {
+    return name + ": " + jvmArgs;
+  }
+
+  private static long clamp(long value, long min, long max) {
+    return Math.max(min, Math.min(max, value));
+  }
+
+  private static String toMegabytes(long bytes) {
+    return bytes > 0 ? Math.max(1, bytes / MB) + "m" : "unknown";
+  }
+}
@@ -33,14 +33,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
-import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -67,12 +63,16 @@ import org.apache.maven.plugin.logging.Log;
  */
 class ForkingExecutor implements Closeable {
 
+  private static volatile boolean forkedChild;
+
   private final org.apache.maven.plugin.logging.Log log;
 
   private final List<Execution<?>> executions = new ArrayList<>();
 
   private Map<String, String> environment = Collections.emptyMap();
   private List<String> javaArgs = Collections.emptyList();
+  private ForkedJvmProfile jvmProfile;
+  private Path flightRecording;
   private boolean withDefaultClasspath = true;
   private List<String> configuredClasspath = Collections.emptyList();
 
@@ -94,6 +94,21 @@ class ForkingExecutor implements Closeable {
     return this;
   }
 
+  /** Heap, GC and compiler flags to launch the sub-process with, ahead of any java args. */
+  ForkingExecutor jvmProfile(ForkedJvmProfile jvmProfile) {
+    this.jvmProfile = jvmProfile;
+    return this;
+  }
+
+  /**
+   * Records the sub-process with Flight Recorder, using the {@code profile} settings, and writes
+   * the recording to {@code file} when it exits.
+   */
+  ForkingExecutor flightRecording(Path file) {
+    this.flightRecording = file;
+    return this;
+  }
+
   ForkingExecutor classpath(Collection<String> classpath) {
     this.configuredClasspath = new ArrayList<>(classpath);
     return this;
@@ -104,6 +119,11 @@ class ForkingExecutor implements Closeable {
     return this;
   }
 
+  /** Whether this JVM is a child process started by a {@link ForkingExecutor}. */
+  static boolean inForkedChild() {
+    return forkedChild;
+  }
+
   private List<String> defaultClasspath() {
     return Arrays.asList(System.getProperty("java.class.path").split(File.pathSeparator));
   }
@@ -140,13 +160,11 @@ class ForkingExecutor implements Closeable {
 
     private final ExecutorService executor = Executors.newCachedThreadPool();
 
-    private final Path tempdir = Files.createTempDirectory("fmt-maven-plugin");
-
-    private final Path workdir = Files.createDirectory(tempdir.resolve("workdir"));
+    private final Workspace workspace = Workspace.create(log);
 
-    private final Path closureFile = tempdir.resolve("closure");
-    private final Path resultFile = tempdir.resolve("result");
-    private final Path errorFile = tempdir.resolve("error");
+    private final Path closureFile = workspace.closureFile();
+    private final Path resultFile = workspace.resultFile();
+    private final Path errorFile = workspace.errorFile();
 
     private final String home = System.getProperty("java.home");
     private final Path java = Paths.get(home, "bin", "java").toAbsolutePath().normalize();
@@ -176,7 +194,23 @@ class ForkingExecutor implements Closeable {
       final String classPathArg = String.join(File.pathSeparator, classpath);
 
       final ProcessBuilder processBuilder =
-          new ProcessBuilder(java.toString(), "-cp", classPathArg).directory(workdir.toFile());
+          new ProcessBuilder(java.toString(), "-cp", classPathArg)
+              .directory(workspace.workdir().toFile());
+
+      // Sizing of the sub-process JVM
+      if (jvmProfile != null) {
+        log.debug("Using forked JVM profile " + jvmProfile);
+        jvmProfile.jvmArgs().forEach(processBuilder.command()::add);
+      }
+
+      if (flightRecording != null) {
+        log.info("Recording forked JVM to " + flightRecording);
+        processBuilder
+            .command()
+            .add(
+                "-XX:StartFlightRecording=settings=profile,dumponexit=true,filename="
+                    + flightRecording.toAbsolutePath());
+      }
 
       // Custom jvm args
       javaArgs.forEach(processBuilder.command()::add);
@@ -199,7 +233,8 @@ class ForkingExecutor implements Closeable {
         throw new RuntimeException(e);
       }
 
-      // Copy std{err,out} line by line to avoid interleaving and corrupting line contents.
+      // Copy std{err,out} line by line to avoid interleaving and corrupting line contents. Log
+      // records of the child are replayed on our log.
       executor.submit(() -> copyLines(process.getInputStream(), System.out));
       executor.submit(() -> copyLines(process.getErrorStream(), System.err));
     }
@@ -260,44 +295,7 @@ class ForkingExecutor implements Closeable {
         process = null;
       }
       executor.shutdown();
-      tryDeleteDir(tempdir);
-    }
-  }
-
-  private void tryDeleteDir(Path path) {
-    try {
-      deleteDir(path);
-    } catch (IOException e) {
-      log.warn("Failed to delete directory: " + path, e);
-    }
-  }
-
-  private static void deleteDir(Path path) throws IOException {
-    try {
-      Files.walkFileTree(
-          path,
-          new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
-                throws IOException {
-              try {
-                Files.delete(file);
-              } catch (NoSuchFileException ignore) {
-              }
-              return FileVisitResult.CONTINUE;
-            }
-
-            @Override
-            public FileVisitResult postVisitDirectory(Path dir, IOException exc)
-                throws IOException {
-              try {
-                Files.delete(dir);
-              } catch (NoSuchFileException ignore) {
-              }
-              return FileVisitResult.CONTINUE;
-            }
-          });
-    } catch (NoSuchFileException ignore) {
+      workspace.close();
     }
   }
 
@@ -306,7 +304,9 @@ class ForkingExecutor implements Closeable {
     try {
       String line;
       while ((line = reader.readLine()) != null) {
-        out.println(line);
+        if (!LogChannel.replay(line, log)) {
+          out.println(line);
+        }
       }
     } catch (IOException e) {
       log.error("Caught exception during stream copy", e);
@@ -337,18 +337,22 @@ class ForkingExecutor implements Closeable {
           log.error("watchdog failed", e);
         }
         log.debug("child process exiting");
+        Logging.flush();
         // Exit with non-zero status code to skip shutdown hooks
         System.exit(-1);
       }
     }
 
     public static void main(String... args) {
+      forkedChild = true;
+      Logging.forwardToParent();
       log.debug("child process started: args=" + Arrays.asList(args));
       final Watchdog watchdog = new Watchdog();
       watchdog.start();
 
       if (args.length != 3) {
         log.error("args.length != 3");
+        Logging.flush();
         System.exit(3);
         return;
       }
@@ -361,6 +365,7 @@ class ForkingExecutor implements Closeable {
         errorFile = Paths.get(args[2]);
       } catch (InvalidPathException e) {
         log.error("Failed to get file path", e);
+        Logging.flush();
         System.exit(4);
         return;
       }
@@ -375,6 +380,7 @@ class ForkingExecutor implements Closeable {
         fn = Serialization.deserialize(closureFile);
       } catch (SerializationException e) {
         log.error("Failed to deserialize closure: " + closureFile, e);
+        Logging.flush();
         System.exit(5);
         return;
       }
@@ -394,6 +400,7 @@ class ForkingExecutor implements Closeable {
           Serialization.serialize(error, errorFile);
         } catch (SerializationException e) {
           log.error("failed to serialize error", e);
+          Logging.flush();
           System.exit(6);
           return;
         }
@@ -403,12 +410,14 @@ class ForkingExecutor implements Closeable {
           Serialization.serialize(result, resultFile);
         } catch (SerializationException e) {
           log.error("failed to serialize result", e);
+          Logging.flush();
           System.exit(7);
           return;
         }
       }
 
       System.err.flush();
+      Logging.flush();
       System.exit(0);
     }
   }
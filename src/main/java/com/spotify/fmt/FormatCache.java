@@ -0,0 +1,502 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A cache of formatted sources shared by all builds on a machine, e.g. of several modules, work
+ * trees and concurrent builds, keyed by the git blob id of the source, see {@link
+ * FormatManifest#hash}. Entries are kept per version of google-java-format and fingerprint of the
+ * formatting options, as the same source may be formatted differently by others.
+ *
+ * <p>Many processes may use the same cache at once. Entries are written to a temporary file first
+ * and then renamed into place, so that readers only ever see complete entries, and two processes
+ * writing the same entry write the same content. Eviction of the least recently used entries is
+ * serialized by a lock file, so that concurrent builds do not evict entries twice.
+ *
+ * <p>Most sources are already formatted, so their blob ids are kept in a memory-mapped {@link
+ * HashIndex} per namespace rather than in a file each, which keeps opening the cache and looking up
+ * sources fast with millions of them. The index is never evicted from, but is cleared once it would
+ * take more than half of the cache.
+ */
+final class FormatCache {
+
+  private static final Logger log = Logging.getLog();
+
+  private static final String LOCK = ".lock";
+  private static final String TEMPORARY = ".tmp";
+  private static final String INDEX = "formatted.idx";
+
+  /** Slots of a new index, about a megabyte for up to 45 thousand formatted sources. */
+  private static final int INITIAL_SLOT_BITS = 16;
+
+  /** Marks an entry of a source that is already formatted, to not store it twice. */
+  private static final byte COMPLIANT = 'C';
+
+  /** Marks an entry of a source that formats to the rest of the entry. */
+  private static final byte FORMATTED = 'F';
+
+  /** How stale the access time of an entry may get before a hit updates it, to save writes. */
+  private static final long ACCESS_RESOLUTION_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  /** Temporary files this old were left behind by processes that died while writing them. */
+  private static final long ABANDONED_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  private final Path root;
+  private final Path entries;
+  private final long maxBytes;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder added = new LongAdder();
+  private final HashIndex formattedSources;
+
+  FormatCache(Path root, String namespace, long maxBytes) {
+    this.root = root.toAbsolutePath().normalize();
+    this.entries = this.root.resolve(namespace.replaceAll("[^A-Za-z0-9._-]", "_"));
+    this.maxBytes = maxBytes;
+    this.formattedSources = namespace.isEmpty() ? null : openIndex(entries.resolve(INDEX));
+  }
+
+  /** The whole cache in {@code root}, to export, import or evict entries of all namespaces. */
+  FormatCache(Path root, long maxBytes) {
+    this(root, "", maxBytes);
+  }
+
+  /** The cache in {@code root} for sources formatted with {@code cfg}. */
+  static FormatCache open(FormattingConfiguration cfg) {
+    return new FormatCache(
+        cfg.cacheDirectory().toPath(),
+        FormatManifest.formatterVersion() + "-" + FormatManifest.fingerprint(cfg),
+        cfg.cacheMaxBytes());
+  }
+
+  /**
+   * Whether the source with blob id {@code hash} is known to be formatted, which unlike {@link
+   * #formatted} does not need the source, e.g. to not read files whose blob id is in the git index.
+   */
+  boolean isFormatted(String hash) {
+    if (formattedSources != null && formattedSources.contains(hash)) {
+      hits.increment();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * The formatted content of {@code input}, of which the blob id is {@code hash}, or {@code null}
+   * if it is not cached.
+   */
+  String formatted(String hash, String input) {
+    if (formattedSources != null && formattedSources.contains(hash)) {
+      hits.increment();
+      return input;
+    }
+    final Path entry = entry(hash);
+    final byte[] content;
+    try {
+      content = Files.readAllBytes(entry);
+    } catch (NoSuchFileException e) {
+      misses.increment();
+      return null;
+    } catch (IOException e) {
+      log.debug("Failed to read cache entry " + entry + ": " + e.getMessage());
+      misses.increment();
+      return null;
+    }
+    if (content.length == 0 || (content[0] != COMPLIANT && content[0] != FORMATTED)) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    touch(entry);
+    return content[0] == COMPLIANT ? input : new String(content, 1, content.length - 1, UTF_8);
+  }
+
+  /**
+   * Caches that {@code input}, of which the blob id is {@code hash}, formats to {@code formatted}.
+   */
+  void put(String hash, String input, String formatted) {
+    final Path entry = entry(hash);
+    final byte[] content;
+    if (input.equals(formatted)) {
+      if (formattedSources != null && formattedSources.add(hash)) {
+        added.increment();
+        return;
+      }
+      // The index is full until it is grown when closing the cache.
+      content = new byte[] {COMPLIANT};
+    } else {
+      final byte[] bytes = formatted.getBytes(UTF_8);
+      content = new byte[bytes.length + 1];
+      content[0] = FORMATTED;
+      System.arraycopy(bytes, 0, content, 1, bytes.length);
+    }
+    try {
+      write(entry, content);
+      added.increment();
+    } catch (IOException e) {
+      // A cache that cannot be written to only makes formatting slower.
+      log.debug("Failed to write cache entry " + entry + ": " + e.getMessage());
+    }
+  }
+
+  long hits() {
+    return hits.sum();
+  }
+
+  long misses() {
+    return misses.sum();
+  }
+
+  /** Grows the index if it filled up, and evicts entries if any were added by this process. */
+  void close() {
+    if (formattedSources != null && formattedSources.isFull()) {
+      growIndex(formattedSources.file());
+    }
+    if (added.sumThenReset() > 0) {
+      evict();
+    }
+  }
+
+  /** Maps the index in {@code file}, creating it if it does not exist yet or cannot be used. */
+  private HashIndex openIndex(Path file) {
+    try {
+      return locked(
+          true,
+          () -> {
+            if (Files.isRegularFile(file)) {
+              try {
+                return HashIndex.open(file);
+              } catch (IOException e) {
+                log.debug("Replacing index " + file + ": " + e.getMessage());
+              }
+            }
+            return HashIndex.create(file, INITIAL_SLOT_BITS);
+          });
+    } catch (IOException e) {
+      // Formatted sources are then cached in files, like other sources.
+      log.debug("Failed to open index " + file + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Replaces the full index in {@code file} by one twice its size, or by an empty one if that would
+   * take more than half of the cache, which evicts all formatted sources at once.
+   */
+  private void growIndex(Path file) {
+    try {
+      locked(
+          true,
+          () -> {
+            final HashIndex index = HashIndex.open(file);
+            if (!index.isFull()) {
+              return null; // Grown by another process meanwhile.
+            }
+            final int slotBits = index.slotBits() + 1;
+            if (slotBits > HashIndex.MAX_SLOT_BITS || Files.size(file) * 2 > maxBytes / 2) {
+              log.debug("Clearing full index " + file);
+              HashIndex.create(file, index.slotBits());
+            } else {
+              log.debug("Growing full index " + file + " to " + (1 << slotBits) + " slots");
+              HashIndex.rebuild(file, slotBits, index);
+            }
+            return null;
+          });
+    } catch (IOException e) {
+      log.warn("Failed to grow index " + file + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Deletes the least recently used entries until the cache is below its maximum size. Skipped if
+   * another process is already evicting entries.
+   */
+  void evict() {
+    try {
+      final Boolean evicted =
+          locked(
+              false,
+              () -> {
+                final List<CachedFile> files = files();
+                long bytes = files.stream().mapToLong(file -> file.size).sum();
+                if (bytes <= maxBytes) {
+                  return true;
+                }
+                // Leave some room for entries, so that not every build has to evict them.
+                final long indexBytes =
+                    files.stream()
+                        .filter(file -> isIndex(file.path))
+                        .mapToLong(file -> file.size)
+                        .sum();
+                final long target = maxBytes - Math.max(0, maxBytes - indexBytes) / 10;
+                files.sort(Comparator.comparing(file -> file.accessed));
+                int count = 0;
+                for (CachedFile file : files) {
+                  if (bytes <= target) {
+                    break;
+                  }
+                  if (isIndex(file.path)) {
+                    continue;
+                  }
+                  Files.deleteIfExists(file.path);
+                  bytes -= file.size;
+                  count++;
+                }
+                log.debug("Evicted " + count + " entries from cache " + root);
+                return true;
+              });
+      if (evicted == null) {
+        log.debug("Another process is evicting entries of cache " + root);
+      }
+    } catch (IOException | UncheckedIOException e) {
+      log.warn("Failed to evict entries from cache " + root + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Writes all files of the cache to {@code archive}, e.g. to restore it on another machine, and
+   * returns how many.
+   */
+  int export(Path archive) throws IOException {
+    final Path directory = archive.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    final Path temporary =
+        Files.createTempFile(directory, archive.getFileName().toString(), TEMPORARY);
+    int exported = 0;
+    try {
+      try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(temporary))) {
+        for (CachedFile file : files()) {
+          final byte[] content;
+          try {
+            content = Files.readAllBytes(file.path);
+          } catch (NoSuchFileException e) {
+            continue; // Evicted meanwhile.
+          }
+          final ZipEntry entry =
+              new ZipEntry(root.relativize(file.path).toString().replace('\\', '/'));
+          entry.setLastModifiedTime(file.accessed);
+          out.putNextEntry(entry);
+          out.write(content);
+          out.closeEntry();
+          exported++;
+        }
+      }
+      Files.move(temporary, archive, REPLACE_EXISTING, ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+    return exported;
+  }
+
+  /**
+   * Adds the files of {@code archive} that the cache does not have yet, and returns how many, then
+   * evicts entries if the cache grew beyond its maximum size. Indexes the cache already has are
+   * merged with those of the archive.
+   */
+  int importArchive(Path archive) throws IOException {
+    int imported = 0;
+    try (ZipInputStream in = new ZipInputStream(Files.newInputStream(archive))) {
+      for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+        if (entry.isDirectory()) {
+          continue;
+        }
+        final Path path = root.resolve(entry.getName()).normalize();
+        if (!path.startsWith(root) || path.equals(root) || isInternal(path)) {
+          throw new IOException("Invalid entry in cache archive: " + entry.getName());
+        }
+        if (isIndex(path) && Files.exists(path)) {
+          mergeIndex(path, in.readAllBytes());
+          continue;
+        }
+        if (Files.exists(path)) {
+          continue;
+        }
+        write(path, in.readAllBytes());
+        if (entry.getLastModifiedTime() != null) {
+          Files.setLastModifiedTime(path, entry.getLastModifiedTime());
+        }
+        imported++;
+      }
+    }
+    evict();
+    return imported;
+  }
+
+  /** Adds the hashes of the index {@code content} to the index in {@code file}. */
+  private void mergeIndex(Path file, byte[] content) throws IOException {
+    final Path temporary =
+        Files.createTempFile(file.getParent(), file.getFileName().toString(), TEMPORARY);
+    try {
+      Files.write(temporary, content);
+      final HashIndex imported = HashIndex.open(temporary);
+      locked(
+          true,
+          () -> {
+            imported.copyTo(HashIndex.open(file));
+            return null;
+          });
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  private Path entry(String hash) {
+    return entries.resolve(hash.substring(0, 2)).resolve(hash.substring(2));
+  }
+
+  /** Writes {@code content} to {@code path} through a temporary file renamed into place. */
+  private static void write(Path path, byte[] content) throws IOException {
+    final Path directory = path.getParent();
+    Files.createDirectories(directory);
+    final Path temporary =
+        Files.createTempFile(directory, path.getFileName().toString(), TEMPORARY);
+    try {
+      try (OutputStream out = Files.newOutputStream(temporary)) {
+        out.write(content);
+      }
+      try {
+        Files.move(temporary, path, ATOMIC_MOVE);
+      } catch (FileAlreadyExistsException e) {
+        // Written by another process meanwhile, with the same content.
+      }
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /** Marks {@code entry} as recently used, for eviction to keep it over older ones. */
+  private static void touch(Path entry) {
+    try {
+      final long now = System.currentTimeMillis();
+      if (now - Files.getLastModifiedTime(entry).toMillis() > ACCESS_RESOLUTION_MILLIS) {
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(now));
+      }
+    } catch (IOException e) {
+      // Evicted meanwhile, or not writable.
+    }
+  }
+
+  /** All entries of all namespaces, deleting temporary files abandoned by earlier processes. */
+  private List<CachedFile> files() throws IOException {
+    if (!Files.isDirectory(root)) {
+      return new ArrayList<>();
+    }
+    final long abandoned = System.currentTimeMillis() - ABANDONED_MILLIS;
+    final List<CachedFile> files = new ArrayList<>();
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path path : paths.collect(Collectors.toList())) {
+        final BasicFileAttributes attributes;
+        try {
+          attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+          continue;
+        }
+        if (!attributes.isRegularFile() || path.getFileName().toString().equals(LOCK)) {
+          continue;
+        }
+        if (path.getFileName().toString().endsWith(TEMPORARY)) {
+          if (attributes.lastModifiedTime().toMillis() < abandoned) {
+            Files.deleteIfExists(path);
+          }
+          continue;
+        }
+        files.add(new CachedFile(path, attributes.size(), attributes.lastModifiedTime()));
+      }
+    }
+    return files;
+  }
+
+  private boolean isInternal(Path path) {
+    final String name = path.getFileName().toString();
+    return name.equals(LOCK) || name.endsWith(TEMPORARY);
+  }
+
+  private static boolean isIndex(Path path) {
+    return path.getFileName().toString().equals(INDEX);
+  }
+
+  /**
+   * Runs {@code action} holding the lock of the cache, waiting for other processes to release it,
+   * or if not {@code wait}, returning {@code null} if another process holds it.
+   */
+  private <T> T locked(boolean wait, LockedAction<T> action) throws IOException {
+    Files.createDirectories(root);
+    // File locks are held by processes, so threads of this one take turns first.
+    synchronized (FormatCache.class) {
+      try (FileChannel channel =
+              FileChannel.open(
+                  root.resolve(LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+          FileLock lock = wait ? channel.lock() : channel.tryLock()) {
+        return lock != null ? action.run() : null;
+      }
+    }
+  }
+
+  private interface LockedAction<T> {
+    T run() throws IOException;
+  }
+
+  private static final class CachedFile {
+
+    private final Path path;
+    private final long size;
+    private final FileTime accessed;
+
+    CachedFile(Path path, long size, FileTime accessed) {
+      this.path = path;
+      this.size = size;
+      this.accessed = accessed;
+    }
+  }
+}
@@ -0,0 +1,363 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A manifest of the hashes of files known to be formatted, meant to be committed next to the
+ * sources. A file whose content hashes to the hash recorded for it is formatted without running the
+ * formatter on it, as long as the manifest was written by the same version of google-java-format
+ * with the same formatting options.
+ *
+ * <p>Hashes are git blob ids, so they can be compared with those in the index of a git repository.
+ * The manifest is a text file, sorted by path so that it merges like any other file:
+ *
+ * <pre>
+ * # Formatted files, maintained by fmt:format
+ * google-java-format 1.28.0
+ * config 5f1bd9e0c73a1f4b
+ * 4b825dc642cb6eb9a060e54bf8d69288fbee4904 src/main/java/Foo.java
+ * </pre>
+ *
+ * <p>A manifest is read once per process and shared by all formatting in it, e.g. of the batches of
+ * a worker, until another process changes it. Writes hold a lock and merge the entries other
+ * processes wrote meanwhile, so that concurrent builds sharing a manifest do not lose entries.
+ */
+final class FormatManifest {
+
+  private static final String COMMENT = "# Formatted files, maintained by fmt:format";
+  private static final String VERSION = "google-java-format ";
+  private static final String CONFIG = "config ";
+  private static final String POM_PROPERTIES =
+      "/META-INF/maven/com.google.googlejavaformat/google-java-format/pom.properties";
+
+  /** Manifests read by this process, by path and fingerprint of the formatting options. */
+  private static final Map<String, FormatManifest> SHARED = new ConcurrentHashMap<>();
+
+  private final Path file;
+  private final Path root;
+  private final String version;
+  private final String fingerprint;
+  private final ConcurrentMap<String, String> hashes;
+
+  /** Paths recorded since the manifest was last written, which win over those of others. */
+  private final Set<String> recorded = ConcurrentHashMap.newKeySet();
+
+  private final AtomicBoolean changed = new AtomicBoolean();
+
+  /** The state of the file when it was last read or written by this process. */
+  private volatile String stamp;
+
+  private FormatManifest(
+      Path file,
+      String version,
+      String fingerprint,
+      Map<String, String> hashes,
+      boolean changed,
+      String stamp) {
+    this.file = file.toAbsolutePath().normalize();
+    this.root = this.file.getParent();
+    this.version = version;
+    this.fingerprint = fingerprint;
+    this.hashes = new ConcurrentHashMap<>(hashes);
+    this.changed.set(changed);
+    this.stamp = stamp;
+  }
+
+  /**
+   * The manifest at {@code file} shared by all formatting with the options of {@code cfg} in this
+   * process, read again only if another process changed it since.
+   */
+  static FormatManifest shared(File file, FormattingConfiguration cfg) throws FormatterException {
+    final Path path = file.toPath().toAbsolutePath().normalize();
+    final String key = path + "\0" + fingerprint(cfg);
+    final FormatManifest manifest = SHARED.get(key);
+    if (manifest != null && Objects.equals(manifest.stamp, stamp(path))) {
+      return manifest;
+    }
+    final FormatManifest read = read(file, cfg);
+    SHARED.put(key, read);
+    return read;
+  }
+
+  /**
+   * Reads the manifest at {@code file}. A manifest that does not exist yet, or that was written by
+   * another formatter version or with other options, is read as empty, to be rewritten from
+   * scratch.
+   */
+  static FormatManifest read(File file, FormattingConfiguration cfg) throws FormatterException {
+    final String version = formatterVersion();
+    final String fingerprint = fingerprint(cfg);
+    final Path path = file.toPath();
+    final String stamp = stamp(path);
+    final Map<String, String> hashes = readHashes(path, version, fingerprint);
+    if (hashes == null) {
+      return new FormatManifest(path, version, fingerprint, Map.of(), true, stamp);
+    }
+    return new FormatManifest(path, version, fingerprint, hashes, false, stamp);
+  }
+
+  /**
+   * The hashes in the manifest at {@code path}, or {@code null} if it does not exist or was written
+   * by another formatter version or with other options.
+   */
+  private static Map<String, String> readHashes(Path path, String version, String fingerprint)
+      throws FormatterException {
+    final File file = path.toFile();
+    final List<String> lines;
+    try {
+      lines = Files.readAllLines(path, UTF_8);
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      throw new FormatterException("Failed to read manifest " + file + ": " + e.getMessage());
+    }
+    final Map<String, String> hashes = new TreeMap<>();
+    String manifestVersion = null;
+    String manifestFingerprint = null;
+    for (String line : lines) {
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      if (line.startsWith(VERSION)) {
+        manifestVersion = line.substring(VERSION.length());
+      } else if (line.startsWith(CONFIG)) {
+        manifestFingerprint = line.substring(CONFIG.length());
+      } else {
+        final int separator = line.indexOf(' ');
+        if (separator <= 0) {
+          throw new FormatterException("Invalid line in manifest " + file + ": " + line);
+        }
+        hashes.put(line.substring(separator + 1), line.substring(0, separator));
+      }
+    }
+    if (!version.equals(manifestVersion) || !fingerprint.equals(manifestFingerprint)) {
+      Logging.getLog()
+          .info(
+              "Manifest "
+                  + file
+                  + " was written by another formatter version or configuration, ignoring it.");
+      return null;
+    }
+    return hashes;
+  }
+
+  /**
+   * Whether {@code file}, of which the content hashes to {@code hash}, is known to be formatted.
+   */
+  boolean isFormatted(File file, String hash) {
+    return hash.equals(hashes.get(path(file)));
+  }
+
+  /** Records that {@code file}, of which the content hashes to {@code hash}, is formatted. */
+  void formatted(File file, String hash) {
+    final String path = path(file);
+    recorded.add(path);
+    if (!hash.equals(hashes.put(path, hash))) {
+      changed.set(true);
+    }
+  }
+
+  /** Number of files the manifest knows to be formatted. */
+  int size() {
+    return hashes.size();
+  }
+
+  /**
+   * Writes the manifest if any file was recorded since it was read, leaving out files that no
+   * longer exist. Entries that another process wrote meanwhile are kept, unless this one recorded
+   * the same file. Written to a temporary file first, so that a failed write leaves the old
+   * manifest intact.
+   */
+  void write() throws FormatterException {
+    // File locks are held by processes, so threads of this one take turns first.
+    synchronized (FormatManifest.class) {
+      try (FileChannel channel =
+              FileChannel.open(lockFile(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+          FileLock lock = channel.lock()) {
+        writeLocked();
+      } catch (IOException e) {
+        throw new FormatterException("Failed to lock manifest " + file + ": " + e.getMessage());
+      }
+    }
+  }
+
+  private void writeLocked() throws FormatterException {
+    if (!Objects.equals(stamp, stamp(file))) {
+      final Map<String, String> written = readHashes(file, version, fingerprint);
+      if (written != null) {
+        written.forEach(
+            (path, hash) -> {
+              if (!recorded.contains(path) && !hash.equals(hashes.put(path, hash))) {
+                changed.set(true);
+              }
+            });
+      }
+    }
+    if (hashes.keySet().removeIf(path -> !Files.isRegularFile(root.resolve(path)))) {
+      changed.set(true);
+    }
+    if (!changed.getAndSet(false) && Files.exists(file)) {
+      recorded.clear();
+      stamp = stamp(file);
+      return;
+    }
+    Path temporary = null;
+    try {
+      Files.createDirectories(root);
+      temporary = Files.createTempFile(root, file.getFileName().toString(), ".tmp");
+      try (Writer writer = Files.newBufferedWriter(temporary, UTF_8)) {
+        writer.write(COMMENT + "\n");
+        writer.write(VERSION + version + "\n");
+        writer.write(CONFIG + fingerprint + "\n");
+        for (Map.Entry<String, String> entry : new TreeMap<>(hashes).entrySet()) {
+          writer.write(entry.getValue() + " " + entry.getKey() + "\n");
+        }
+      }
+      Files.move(temporary, file, REPLACE_EXISTING, ATOMIC_MOVE);
+      recorded.clear();
+      stamp = stamp(file);
+    } catch (IOException e) {
+      throw new FormatterException("Failed to write manifest " + file + ": " + e.getMessage());
+    } finally {
+      if (temporary != null) {
+        try {
+          Files.deleteIfExists(temporary);
+        } catch (IOException e) {
+          Logging.getLog().debug("Failed to delete " + temporary + ": " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * The lock file of the manifest, in the temporary directory rather than next to the manifest,
+   * which is meant to be committed.
+   */
+  private Path lockFile() {
+    return Paths.get(
+        System.getProperty("java.io.tmpdir"),
+        "fmt-manifest-"
+            + Hashing.sha256().hashString(file.toString(), UTF_8).toString().substring(0, 16)
+            + ".lock");
+  }
+
+  /**
+   * Identifies the content of the manifest at {@code path} without reading it, or {@code null} if
+   * it does not exist. Manifests are replaced by renaming, which changes the file key on most
+   * platforms, so rewrites are noticed even within the resolution of modification times.
+   */
+  private static String stamp(Path path) {
+    try {
+      final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      return attributes.fileKey() + ":" + attributes.lastModifiedTime() + ":" + attributes.size();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /** The path of {@code file} relative to the directory of the manifest, with '/' separators. */
+  private String path(File file) {
+    final Path relative = root.relativize(file.toPath().toAbsolutePath().normalize());
+    return relative.toString().replace(File.separatorChar, '/');
+  }
+
+  /** The git blob id of {@code content}, which is the SHA-1 of a small header and the content. */
+  static String hash(byte[] content) {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    digest.update(("blob " + content.length + "\0").getBytes(UTF_8));
+    return BaseEncoding.base16().lowerCase().encode(digest.digest(content));
+  }
+
+  /** A short hash of the options that change how files are formatted. */
+  static String fingerprint(FormattingConfiguration cfg) {
+    final String options =
+        String.join(
+            ",",
+            "style=" + cfg.style().toLowerCase(Locale.ROOT),
+            "skipSortingImports=" + cfg.skipSortingImports(),
+            "skipRemovingUnusedImports=" + cfg.skipRemovingUnusedImports(),
+            "skipReflowingLongStrings=" + cfg.skipReflowingLongStrings());
+    return Hashing.sha256().hashString(options, UTF_8).toString().substring(0, 16);
+  }
+
+  /**
+   * The version of google-java-format on the class path, as files formatted by another may differ.
+   */
+  static String formatterVersion() {
+    try (InputStream in =
+        com.google.googlejavaformat.java.Formatter.class.getResourceAsStream(POM_PROPERTIES)) {
+      if (in != null) {
+        final Properties properties = new Properties();
+        properties.load(in);
+        final String version = properties.getProperty("version");
+        if (version != null) {
+          return version;
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return "unknown";
+  }
+}
@@ -27,88 +27,337 @@
 package com.spotify.fmt;
 
 import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
 import com.google.common.io.CharSink;
-import com.google.common.io.CharSource;
 import com.google.googlejavaformat.java.ImportOrderer;
 import com.google.googlejavaformat.java.JavaFormatterOptions;
 import com.google.googlejavaformat.java.JavaFormatterOptions.Style;
 import com.google.googlejavaformat.java.RemoveUnusedImports;
 import com.google.googlejavaformat.java.StringWrapper;
-
+import com.spotify.fmt.FormattingStatistics.Phase;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import org.apache.maven.plugin.logging.Log;
 
 class Formatter {
 
-  private static final Log log = Logging.getLog();
+  private static final Logger log = Logging.getLog();
+
+  /**
+   * google-java-format formatters are immutable, so one per style is shared by all formatting in
+   * this JVM, and stays warm for processes that format more than once, such as the watch goal.
+   */
+  private static final Map<Style, com.google.googlejavaformat.java.Formatter> FORMATTERS =
+      new ConcurrentHashMap<>();
 
   private final FormattingConfiguration cfg;
 
-  private final CopyOnWriteArrayList<String> processedFiles = new CopyOnWriteArrayList<>();
-  private final CopyOnWriteArrayList<String> nonComplyingFiles = new CopyOnWriteArrayList<>();
+  // Added to by all formatting threads, in constant time however many files there are.
+  private final ConcurrentLinkedQueue<String> processedFiles = new ConcurrentLinkedQueue<>();
+  private final ConcurrentLinkedQueue<String> nonComplyingFiles = new ConcurrentLinkedQueue<>();
+
+  private final PhaseTimer phases = new PhaseTimer();
+  private final LongAdder bytesProcessed = new LongAdder();
+  private final LongAdder verifiedFiles = new LongAdder();
+  private final LongAdder unreadFiles = new LongAdder();
+  private final SlowestFiles slowestFiles;
+  private final Tracer tracer;
+  private final FormatCache cache;
 
   Formatter(FormattingConfiguration cfg) {
     this.cfg = cfg;
+    this.slowestFiles = new SlowestFiles(cfg.slowestFiles());
+    this.tracer =
+        cfg.traceParent() != null
+            ? Tracer.continueTrace(cfg.traceParent(), cfg.traceSampleRate())
+            : Tracer.disabled();
+    this.cache = cfg.cacheDirectory() != null ? FormatCache.open(cfg) : null;
   }
 
   FormattingResult format() throws FormatterException {
+    return format(cfg.filesToFormat() != null ? inDirectoriesToFormat(cfg.filesToFormat()) : null);
+  }
+
+  /** The files that {@link #format()} would format, e.g. to hand them out to other processes. */
+  List<File> filesToFormat() throws FormatterException {
+    final Tracer.Span run = tracer.start("fmt.discover", null);
+    try {
+      return inShard(
+          cfg.filesToFormat() != null
+              ? acceptedFiles(inDirectoriesToFormat(cfg.filesToFormat()))
+              : discoverFiles(run));
+    } finally {
+      run.end();
+    }
+  }
+
+  /**
+   * Formats only {@code selectedFiles}, e.g. those that changed, skipping those that do not match
+   * the file name and path patterns. Formats all files of the directories to format if {@code
+   * selectedFiles} is null.
+   */
+  FormattingResult format(Collection<File> selectedFiles) throws FormatterException {
     JavaFormatterOptions.Style style = style();
     com.google.googlejavaformat.java.Formatter formatter = getFormatter(style);
+    final FormatManifest manifest =
+        cfg.manifestFile() != null ? FormatManifest.shared(cfg.manifestFile(), cfg) : null;
+    final GitIndex gitIndex = gitIndex(manifest);
 
-    for (File directoryToFormat : cfg.directoriesToFormat()) {
-      formatSourceFilesInDirectory(directoryToFormat, formatter, style);
+    final long startedAtMillis = System.currentTimeMillis();
+    final long start = System.nanoTime();
+    // Heap usage is only that of this run in a forked child, not in the shared JVM of the build.
+    final boolean measureHeap = ForkingExecutor.inForkedChild();
+    if (measureHeap) {
+      resetPeakHeapUsage();
     }
+    final Tracer.Span run = tracer.start("fmt.run", null);
+
+    List<File> files =
+        inShard(selectedFiles == null ? discoverFiles(run) : acceptedFiles(selectedFiles));
+    phases.record(Phase.DISCOVERY, start);
+
+    // Bound the parallel streams below to the threads granted to this execution.
+    final ForkJoinPool pool =
+        cfg.threads() > 0 ? new ForkJoinPool(cfg.threads()) : ForkJoinPool.commonPool();
+    try (ProgressReporter progress =
+            new ProgressReporter(
+                    log, files.size(), TimeUnit.SECONDS.toMillis(cfg.progressIntervalSeconds()))
+                .start();
+        StallDetector stall =
+            new StallDetector(log, TimeUnit.SECONDS.toNanos(cfg.stallTimeoutSeconds())).start()) {
+      await(
+          pool.submit(
+              () -> formatFiles(files, formatter, style, manifest, gitIndex, run, progress, stall)),
+          stall);
+    } finally {
+      if (pool != ForkJoinPool.commonPool()) {
+        pool.shutdownNow();
+      }
+    }
+    run.attribute("fmt.files", processedFiles.size())
+        .attribute("fmt.non_complying_files", nonComplyingFiles.size())
+        .attribute("fmt.threads", cfg.threads())
+        .end();
 
     logNumberOfFilesProcessed();
+    if (manifest != null) {
+      log.info(
+          String.format(
+              "Verified %d of %d files against manifest %s, %d of them without reading them.",
+              verifiedFiles.sum(), processedFiles.size(), cfg.manifestFile(), unreadFiles.sum()));
+      if (cfg.writeReformattedFiles()) {
+        manifest.write();
+      }
+    }
+    if (cache != null) {
+      log.info(
+          String.format(
+              "Found %d of %d sources in cache %s.",
+              cache.hits(), cache.hits() + cache.misses(), cfg.cacheDirectory()));
+      cache.close();
+    }
+
+    final FormattingStatistics statistics =
+        FormattingStatistics.builder()
+            .wallTimeNanos(System.nanoTime() - start)
+            .phaseNanos(phases.totals())
+            .bytesProcessed(bytesProcessed.sum())
+            .startedAtMillis(startedAtMillis)
+            .peakHeapBytes(measureHeap ? peakHeapUsage() : -1)
+            .slowestFiles(slowestFiles.slowestFirst())
+            .build();
 
     return FormattingResult.builder()
         .nonComplyingFiles(nonComplyingFiles)
         .processedFiles(processedFiles)
+        .statistics(statistics)
+        .spans(tracer.spans())
         .build();
   }
 
-  public void formatSourceFilesInDirectory(
-      File directory, com.google.googlejavaformat.java.Formatter formatter, Style style)
-      throws FormatterException {
-    if (!directory.isDirectory()) {
-      log.info("Directory '" + directory + "' is not a directory. Skipping.");
-      return;
-    }
-
-    try (Stream<Path> paths = Files.walk(Paths.get(directory.getPath()))) {
-      FileFilter fileNameFilter = getFileNameFilter();
-      FileFilter pathFilter = getPathFilter();
-      long failures =
-          paths.collect(Collectors.toList()).parallelStream()
-              .filter(p -> p.toFile().exists())
-              .map(Path::toFile)
-              .filter(fileNameFilter::accept)
-              .filter(pathFilter::accept)
-              .map(file -> formatSourceFile(file, formatter, style))
-              .filter(r -> !r)
-              .count();
-
-      if (failures > 0) {
-        throw new FormatterException(
-            "There were errors when formatting files. Error count: " + failures);
+  /**
+   * The git index to take the hashes of unchanged files from, which are only needed to look files
+   * up in the manifest or the cache.
+   */
+  private GitIndex gitIndex(FormatManifest manifest) {
+    if (!cfg.useGitIndex()) {
+      return null;
+    }
+    if (manifest == null && cache == null) {
+      log.warn("Not using git index, it is only used with a manifestFile or cacheDirectory.");
+      return null;
+    }
+    return GitIndex.find(cfg.directoriesToFormat());
+  }
+
+  /**
+   * Walks all directories to format and returns the files to format, so that files from all
+   * directories share one work pool. Files reachable from more than one directory are only returned
+   * once.
+   */
+  private List<File> discoverFiles(Tracer.Span run) throws FormatterException {
+    FileFilter fileNameFilter = getFileNameFilter();
+    FileFilter pathFilter = getPathFilter();
+    Set<File> files = new LinkedHashSet<>();
+    for (File directory : cfg.directoriesToFormat()) {
+      if (!directory.isDirectory()) {
+        log.info("Directory '" + directory + "' is not a directory. Skipping.");
+        continue;
+      }
+      final Tracer.Span walk = tracer.start("fmt.walk", run.spanId());
+      final int before = files.size();
+      try (Stream<Path> paths = Files.walk(Paths.get(directory.getPath()))) {
+        paths
+            .map(Path::toFile)
+            .filter(file -> !file.isDirectory())
+            .filter(fileNameFilter::accept)
+            .filter(pathFilter::accept)
+            .map(File::getAbsoluteFile)
+            .forEach(files::add);
+      } catch (IOException | UncheckedIOException exception) {
+        throw new FormatterException(exception.getMessage());
       }
-    } catch (IOException exception) {
-      throw new FormatterException(exception.getMessage());
+      walk.attribute("fmt.directory", directory)
+          .attribute("fmt.files", files.size() - before)
+          .end();
+    }
+    return new ArrayList<>(files);
+  }
+
+  /** The files of {@code files} in the shard to format, see {@link Sharding}. */
+  private List<File> inShard(List<File> files) {
+    if (cfg.shardCount() <= 1) {
+      return files;
+    }
+    final Sharding sharding = new Sharding(cfg.shardIndex(), cfg.shardCount(), cfg.shardBySize());
+    final List<File> shard = sharding.select(files, cfg.directoriesToFormat());
+    log.info(
+        String.format("Formatting %d of %d files in %s.", shard.size(), files.size(), sharding));
+    return shard;
+  }
+
+  /**
+   * The files to format that are in one of the directories to format. Others are skipped, as a list
+   * of changed files may span several modules.
+   */
+  private List<File> inDirectoriesToFormat(List<File> filesToFormat) {
+    final List<Path> directories =
+        cfg.directoriesToFormat().stream()
+            .map(directory -> directory.toPath().toAbsolutePath().normalize())
+            .collect(Collectors.toList());
+    final List<File> files = new ArrayList<>();
+    for (File file : filesToFormat) {
+      final Path path = file.toPath().toAbsolutePath().normalize();
+      if (directories.stream().anyMatch(path::startsWith)) {
+        files.add(file);
+      } else if (cfg.verbose()) {
+        log.debug(() -> "File '" + file + "' is not in a directory to format. Skipping.");
+      }
+    }
+    return files;
+  }
+
+  private List<File> acceptedFiles(Collection<File> selectedFiles) {
+    FileFilter fileNameFilter = getFileNameFilter();
+    FileFilter pathFilter = getPathFilter();
+    return selectedFiles.stream()
+        .filter(file -> !file.isDirectory())
+        .filter(fileNameFilter::accept)
+        .filter(pathFilter::accept)
+        .map(File::getAbsoluteFile)
+        .distinct()
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Waits for {@code formatting} to complete, or until it stalls if {@link
+   * FormattingConfiguration#failOnStall()}. Threads stuck on a file are left behind, the fork they
+   * run in exits after reporting the failure.
+   */
+  private void await(Future<?> formatting, StallDetector stall) throws FormatterException {
+    while (true) {
+      try {
+        formatting.get(100, TimeUnit.MILLISECONDS);
+        return;
+      } catch (TimeoutException e) {
+        final String description = stall.stall();
+        if (cfg.failOnStall() && description != null) {
+          formatting.cancel(true);
+          throw new FormatterException("Formatting stalled: " + description);
+        }
+      } catch (ExecutionException e) {
+        Throwables.throwIfUnchecked(e.getCause());
+        throw new RuntimeException(e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        formatting.cancel(true);
+        throw new FormatterException("Interrupted while formatting");
+      }
+    }
+  }
+
+  private void formatFiles(
+      List<File> files,
+      com.google.googlejavaformat.java.Formatter formatter,
+      Style style,
+      FormatManifest manifest,
+      GitIndex gitIndex,
+      Tracer.Span run,
+      ProgressReporter progress,
+      StallDetector stall)
+      throws FormatterException {
+    long failures =
+        files.parallelStream()
+            .filter(File::exists)
+            .map(
+                file -> {
+                  stall.started(file.getPath());
+                  try {
+                    return formatSourceFile(file, formatter, style, manifest, gitIndex, run);
+                  } finally {
+                    stall.finished();
+                    progress.fileDone();
+                  }
+                })
+            .filter(r -> !r)
+            .count();
+
+    if (failures > 0) {
+      throw new FormatterException(
+          "There were errors when formatting files. Error count: " + failures);
     }
   }
 
   private com.google.googlejavaformat.java.Formatter getFormatter(
       JavaFormatterOptions.Style style) {
-    return new com.google.googlejavaformat.java.Formatter(
-        JavaFormatterOptions.builder().style(style).build());
+    return FORMATTERS.computeIfAbsent(
+        style,
+        s ->
+            new com.google.googlejavaformat.java.Formatter(
+                JavaFormatterOptions.builder().style(s).build()));
   }
 
   private JavaFormatterOptions.Style style() throws FormatterException {
@@ -140,49 +389,174 @@ class Formatter {
   }
 
   private boolean formatSourceFile(
-      File file, com.google.googlejavaformat.java.Formatter formatter, Style style) {
+      File file,
+      com.google.googlejavaformat.java.Formatter formatter,
+      Style style,
+      FormatManifest manifest,
+      GitIndex gitIndex,
+      Tracer.Span run) {
     if (file.isDirectory()) {
       if (cfg.verbose()) {
-        log.debug("File '" + file + "' is a directory. Skipping.");
+        log.debug(() -> "File '" + file + "' is a directory. Skipping.");
       }
       return true;
     }
 
     if (cfg.verbose()) {
-      log.debug("Formatting '" + file + "'.");
+      log.debug(() -> "Formatting '" + file + "'.");
     }
 
-    CharSource source = com.google.common.io.Files.asCharSource(file, Charsets.UTF_8);
+    final long bytes = file.length();
+    final PhaseTimer.FileTimer timer = phases.startFile(file.getAbsolutePath(), bytes);
+    final Tracer.Span span =
+        tracer.sampled(file.getPath())
+            ? tracer
+                .start("fmt.file", run.spanId())
+                .attribute("code.filepath", file)
+                .attribute("fmt.bytes", bytes)
+            : null;
     try {
-      String input = source.read();
-      String formatted = formatter.formatSource(input);
-      if (!cfg.skipRemovingUnusedImports()) {
-          formatted = RemoveUnusedImports.removeUnusedImports(formatted);
+      final String blobId = gitIndex != null ? gitIndex.blobId(file) : null;
+      final byte[] content;
+      final String hash;
+      if (blobId != null && isKnownFormatted(file, blobId, manifest)) {
+        // Unchanged since it was staged, and known to be formatted when it was, no need to read it.
+        content = null;
+        hash = blobId;
+        unreadFiles.increment();
+      } else {
+        content = Files.readAllBytes(file.toPath());
+        bytesProcessed.add(content.length);
+        hash = manifest != null || cache != null ? FormatManifest.hash(content) : null;
       }
-      if (!cfg.skipSortingImports()) {
-        formatted = ImportOrderer.reorderImports(formatted, style);
+      timer.record(Phase.READ);
+      final boolean compliant;
+      if (manifest != null && manifest.isFormatted(file, hash)) {
+        // Known to be formatted by the same formatter and options, no need to format it again.
+        compliant = true;
+        verifiedFiles.increment();
+      } else if (content == null) {
+        // Found formatted in the cache by its blob id.
+        compliant = true;
+        if (manifest != null) {
+          manifest.formatted(file, hash);
+        }
+      } else {
+        String input = new String(content, Charsets.UTF_8);
+        String formatted = cache != null ? cache.formatted(hash, input) : null;
+        if (formatted == null) {
+          formatted = formatSource(input, formatter, style, timer);
+          if (cache != null) {
+            cache.put(hash, input, formatted);
+          }
+        }
+        compliant = input.equals(formatted);
+        if (!compliant) {
+          if (cfg.writeReformattedFiles()) {
+            CharSink sink = com.google.common.io.Files.asCharSink(file, Charsets.UTF_8);
+            sink.write(formatted);
+            timer.record(Phase.WRITE);
+          }
+          nonComplyingFiles.add(file.getAbsolutePath());
+        }
+        if (manifest != null && (compliant || cfg.writeReformattedFiles())) {
+          manifest.formatted(
+              file, compliant ? hash : FormatManifest.hash(formatted.getBytes(Charsets.UTF_8)));
+        }
       }
-      if (!cfg.skipReflowingLongStrings()) {
-          formatted = StringWrapper.wrap(formatted, formatter);
+      final String outcome = compliant ? FormatFileEvent.COMPLIANT : FormatFileEvent.NON_COMPLYING;
+      final long totalNanos = timer.finish(outcome);
+      if (span != null) {
+        span.attribute("fmt.outcome", outcome).end();
       }
-      if (!input.equals(formatted)) {
-        if (cfg.writeReformattedFiles()) {
-          CharSink sink = com.google.common.io.Files.asCharSink(file, Charsets.UTF_8);
-          sink.write(formatted);
-        }
-        nonComplyingFiles.add(file.getAbsolutePath());
+      if (slowestFiles.isCandidate(totalNanos)) {
+        slowestFiles.offer(timer.timing(totalNanos));
       }
       processedFiles.add(file.getAbsolutePath());
-      if (processedFiles.size() % 100 == 0) {
-        logNumberOfFilesProcessed();
-      }
     } catch (com.google.googlejavaformat.java.FormatterException | IOException e) {
+      timer.finish(FormatFileEvent.FAILED);
+      if (span != null) {
+        span.attribute("fmt.outcome", FormatFileEvent.FAILED).end();
+      }
       log.error("Failed to format file '" + file + "'.", e);
       return false;
     }
     return true;
   }
 
+  /**
+   * Whether the file with blob id {@code blobId} is known to be formatted by the manifest or the
+   * cache, so that it does not need to be read.
+   */
+  private boolean isKnownFormatted(File file, String blobId, FormatManifest manifest) {
+    return (manifest != null && manifest.isFormatted(file, blobId))
+        || (cache != null && cache.isFormatted(blobId));
+  }
+
+  /**
+   * Runs the formatting steps enabled by the configuration on source that is not read from a file,
+   * e.g. sent to the daemon by an editor.
+   */
+  String formatSource(String input)
+      throws FormatterException, com.google.googlejavaformat.java.FormatterException {
+    final Style style = style();
+    final PhaseTimer.FileTimer timer = phases.startFile("<input>", input.length());
+    try {
+      final String formatted = formatSource(input, getFormatter(style), style, timer);
+      timer.finish(
+          input.equals(formatted) ? FormatFileEvent.COMPLIANT : FormatFileEvent.NON_COMPLYING);
+      return formatted;
+    } catch (com.google.googlejavaformat.java.FormatterException e) {
+      timer.finish(FormatFileEvent.FAILED);
+      throw e;
+    }
+  }
+
+  /**
+   * Runs the formatting steps enabled by the configuration on the content of a single file, timing
+   * each of them with {@code timer}.
+   */
+  String formatSource(
+      String input,
+      com.google.googlejavaformat.java.Formatter formatter,
+      Style style,
+      PhaseTimer.FileTimer timer)
+      throws com.google.googlejavaformat.java.FormatterException {
+    String formatted = formatter.formatSource(input);
+    timer.record(Phase.FORMAT);
+    if (!cfg.skipRemovingUnusedImports()) {
+      formatted = RemoveUnusedImports.removeUnusedImports(formatted);
+      timer.record(Phase.REMOVE_UNUSED_IMPORTS);
+    }
+    if (!cfg.skipSortingImports()) {
+      formatted = ImportOrderer.reorderImports(formatted, style);
+      timer.record(Phase.SORT_IMPORTS);
+    }
+    if (!cfg.skipReflowingLongStrings()) {
+      formatted = StringWrapper.wrap(formatted, formatter);
+      timer.record(Phase.REFLOW_STRINGS);
+    }
+    return formatted;
+  }
+
+  private static void resetPeakHeapUsage() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+        pool.resetPeakUsage();
+      }
+    }
+  }
+
+  private static long peakHeapUsage() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+
   protected void logNumberOfFilesProcessed() {
     log.info(
         String.format(
@@ -54,6 +54,51 @@ interface FormattingConfiguration extends Serializable {
 
   String processingLabel();
 
+  /** Maximum number of threads to format files with, or {@code 0} to use all available CPUs. */
+  int threads();
+
+  /** Number of slowest files to keep timings of, or {@code 0} to not track them. */
+  int slowestFiles();
+
+  /** Seconds between progress reports, or {@code 0} to only report when done. */
+  int progressIntervalSeconds();
+
+  /** W3C trace context of the span to trace formatting under, or {@code null} to not trace. */
+  String traceParent();
+
+  /** Fraction of files to trace, between {@code 0} and {@code 1}. */
+  double traceSampleRate();
+
+  /** Seconds without any file finishing before formatting is considered stalled, or {@code 0} to not watch for stalls. */
+  int stallTimeoutSeconds();
+
+  /** Whether to fail formatting when it stalls, instead of only logging thread dumps. */
+  boolean failOnStall();
+
+  /** Files to format instead of walking the directories to format, or {@code null} to walk them. */
+  List<File> filesToFormat();
+
+  /** Zero based index of the shard of the files to format. */
+  int shardIndex();
+
+  /** Number of shards the files are split into, {@code 1} or less to format all files. */
+  int shardCount();
+
+  /** Whether to balance shards by file size instead of by the hash of their paths. */
+  boolean shardBySize();
+
+  /** Manifest of the hashes of formatted files to verify files against, or {@code null} to not use one. */
+  File manifestFile();
+
+  /** Whether to take the hashes of unchanged files tracked by git from its index instead of reading them. */
+  boolean useGitIndex();
+
+  /** Directory of the cache of formatted sources shared by builds, or {@code null} to not use one. */
+  File cacheDirectory();
+
+  /** Size the cache of formatted sources is kept below by evicting the least recently used entries. */
+  long cacheMaxBytes();
+
   static FormattingConfigurationBuilder builder() {
     return new FormattingConfigurationBuilder();
   }
@@ -60,6 +60,36 @@ final class FormattingConfigurationBuilder {
 
   private boolean skipReflowingLongStrings;
 
+  private int threads;
+
+  private int slowestFiles;
+
+  private int progressIntervalSeconds;
+
+  private String traceParent;
+
+  private double traceSampleRate;
+
+  private int stallTimeoutSeconds;
+
+  private boolean failOnStall;
+
+  private List<File> filesToFormat;
+
+  private int shardIndex;
+
+  private int shardCount;
+
+  private boolean shardBySize;
+
+  private File manifestFile;
+
+  private boolean useGitIndex;
+
+  private File cacheDirectory;
+
+  private long cacheMaxBytes;
+
   public FormattingConfigurationBuilder() {
   }
 
@@ -76,6 +106,22 @@ final class FormattingConfigurationBuilder {
     this.skipReflowingLongStrings = v.skipReflowingLongStrings();
     this.writeReformattedFiles = v.writeReformattedFiles();
     this.processingLabel = v.processingLabel();
+    this.threads = v.threads();
+    this.slowestFiles = v.slowestFiles();
+    this.progressIntervalSeconds = v.progressIntervalSeconds();
+    this.traceParent = v.traceParent();
+    this.traceSampleRate = v.traceSampleRate();
+    this.stallTimeoutSeconds = v.stallTimeoutSeconds();
+    this.failOnStall = v.failOnStall();
+    List<File> _filesToFormat = v.filesToFormat();
+    this.filesToFormat = (_filesToFormat == null) ? null : new ArrayList<File>(_filesToFormat);
+    this.shardIndex = v.shardIndex();
+    this.shardCount = v.shardCount();
+    this.shardBySize = v.shardBySize();
+    this.manifestFile = v.manifestFile();
+    this.useGitIndex = v.useGitIndex();
+    this.cacheDirectory = v.cacheDirectory();
+    this.cacheMaxBytes = v.cacheMaxBytes();
   }
 
   private FormattingConfigurationBuilder(FormattingConfigurationBuilder v) {
@@ -90,6 +136,22 @@ final class FormattingConfigurationBuilder {
     this.skipReflowingLongStrings = v.skipReflowingLongStrings();
     this.writeReformattedFiles = v.writeReformattedFiles();
     this.processingLabel = v.processingLabel();
+    this.threads = v.threads();
+    this.slowestFiles = v.slowestFiles();
+    this.progressIntervalSeconds = v.progressIntervalSeconds();
+    this.traceParent = v.traceParent();
+    this.traceSampleRate = v.traceSampleRate();
+    this.stallTimeoutSeconds = v.stallTimeoutSeconds();
+    this.failOnStall = v.failOnStall();
+    List<File> _filesToFormat = v.filesToFormat();
+    this.filesToFormat = (_filesToFormat == null) ? null : new ArrayList<File>(_filesToFormat);
+    this.shardIndex = v.shardIndex();
+    this.shardCount = v.shardCount();
+    this.shardBySize = v.shardBySize();
+    this.manifestFile = v.manifestFile();
+    this.useGitIndex = v.useGitIndex();
+    this.cacheDirectory = v.cacheDirectory();
+    this.cacheMaxBytes = v.cacheMaxBytes();
   }
 
   public boolean debug() {
@@ -256,9 +318,145 @@ final class FormattingConfigurationBuilder {
     return this;
   }
 
+  public int threads() {
+    return threads;
+  }
+
+  public FormattingConfigurationBuilder threads(int threads) {
+    this.threads = threads;
+    return this;
+  }
+
+  public int slowestFiles() {
+    return slowestFiles;
+  }
+
+  public FormattingConfigurationBuilder slowestFiles(int slowestFiles) {
+    this.slowestFiles = slowestFiles;
+    return this;
+  }
+
+  public int progressIntervalSeconds() {
+    return progressIntervalSeconds;
+  }
+
+  public FormattingConfigurationBuilder progressIntervalSeconds(int progressIntervalSeconds) {
+    this.progressIntervalSeconds = progressIntervalSeconds;
+    return this;
+  }
+
+  public String traceParent() {
+    return traceParent;
+  }
+
+  public FormattingConfigurationBuilder traceParent(String traceParent) {
+    this.traceParent = traceParent;
+    return this;
+  }
+
+  public double traceSampleRate() {
+    return traceSampleRate;
+  }
+
+  public FormattingConfigurationBuilder traceSampleRate(double traceSampleRate) {
+    this.traceSampleRate = traceSampleRate;
+    return this;
+  }
+
+  public int stallTimeoutSeconds() {
+    return stallTimeoutSeconds;
+  }
+
+  public FormattingConfigurationBuilder stallTimeoutSeconds(int stallTimeoutSeconds) {
+    this.stallTimeoutSeconds = stallTimeoutSeconds;
+    return this;
+  }
+
+  public boolean failOnStall() {
+    return failOnStall;
+  }
+
+  public FormattingConfigurationBuilder failOnStall(boolean failOnStall) {
+    this.failOnStall = failOnStall;
+    return this;
+  }
+
+  public List<File> filesToFormat() {
+    return filesToFormat;
+  }
+
+  public FormattingConfigurationBuilder filesToFormat(List<? extends File> filesToFormat) {
+    this.filesToFormat = (filesToFormat == null) ? null : new ArrayList<File>(filesToFormat);
+    return this;
+  }
+
+  public int shardIndex() {
+    return shardIndex;
+  }
+
+  public FormattingConfigurationBuilder shardIndex(int shardIndex) {
+    this.shardIndex = shardIndex;
+    return this;
+  }
+
+  public int shardCount() {
+    return shardCount;
+  }
+
+  public FormattingConfigurationBuilder shardCount(int shardCount) {
+    this.shardCount = shardCount;
+    return this;
+  }
+
+  public boolean shardBySize() {
+    return shardBySize;
+  }
+
+  public FormattingConfigurationBuilder shardBySize(boolean shardBySize) {
+    this.shardBySize = shardBySize;
+    return this;
+  }
+
+  public File manifestFile() {
+    return manifestFile;
+  }
+
+  public FormattingConfigurationBuilder manifestFile(File manifestFile) {
+    this.manifestFile = manifestFile;
+    return this;
+  }
+
+  public boolean useGitIndex() {
+    return useGitIndex;
+  }
+
+  public FormattingConfigurationBuilder useGitIndex(boolean useGitIndex) {
+    this.useGitIndex = useGitIndex;
+    return this;
+  }
+
+  public File cacheDirectory() {
+    return cacheDirectory;
+  }
+
+  public FormattingConfigurationBuilder cacheDirectory(File cacheDirectory) {
+    this.cacheDirectory = cacheDirectory;
+    return this;
+  }
+
+  public long cacheMaxBytes() {
+    return cacheMaxBytes;
+  }
+
+  public FormattingConfigurationBuilder cacheMaxBytes(long cacheMaxBytes) {
+    this.cacheMaxBytes = cacheMaxBytes;
+    return this;
+  }
+
   public FormattingConfiguration build() {
     List<File> _directoriesToFormat = (directoriesToFormat != null) ? Collections.unmodifiableList(new ArrayList<File>(directoriesToFormat)) : Collections.<File>emptyList();
-    return new Value(debug, style, _directoriesToFormat, verbose, filesNamePattern, filesPathPattern, skipSortingImports, skipRemovingUnusedImports, skipReflowingLongStrings, writeReformattedFiles, processingLabel);
+    List<File> _filesToFormat = (filesToFormat != null) ? Collections.unmodifiableList(new ArrayList<File>(filesToFormat)) : null;
+    return new Value(debug, style, _directoriesToFormat, verbose, filesNamePattern, filesPathPattern, skipSortingImports, skipRemovingUnusedImports, skipReflowingLongStrings, writeReformattedFiles, processingLabel, threads, slowestFiles, progressIntervalSeconds, traceParent, traceSampleRate, stallTimeoutSeconds, failOnStall, _filesToFormat, shardIndex, shardCount, shardBySize, manifestFile, useGitIndex, cacheDirectory, cacheMaxBytes);
   }
 
   public static FormattingConfigurationBuilder from(FormattingConfiguration v) {
@@ -292,6 +490,36 @@ final class FormattingConfigurationBuilder {
 
     private final boolean skipReflowingLongStrings;
 
+    private final int threads;
+
+    private final int slowestFiles;
+
+    private final int progressIntervalSeconds;
+
+    private final String traceParent;
+
+    private final double traceSampleRate;
+
+    private final int stallTimeoutSeconds;
+
+    private final boolean failOnStall;
+
+    private final List<File> filesToFormat;
+
+    private final int shardIndex;
+
+    private final int shardCount;
+
+    private final boolean shardBySize;
+
+    private final File manifestFile;
+
+    private final boolean useGitIndex;
+
+    private final File cacheDirectory;
+
+    private final long cacheMaxBytes;
+
     private Value(boolean debug,String style,
         List<File> directoriesToFormat,
         boolean verbose,
@@ -301,7 +529,22 @@ final class FormattingConfigurationBuilder {
         boolean skipRemovingUnusedImports,
         boolean skipReflowingLongStrings,
         boolean writeReformattedFiles,
-        String processingLabel) {
+        String processingLabel,
+        int threads,
+        int slowestFiles,
+        int progressIntervalSeconds,
+        String traceParent,
+        double traceSampleRate,
+        int stallTimeoutSeconds,
+        boolean failOnStall,
+        List<File> filesToFormat,
+        int shardIndex,
+        int shardCount,
+        boolean shardBySize,
+        File manifestFile,
+        boolean useGitIndex,
+        File cacheDirectory,
+        long cacheMaxBytes) {
       if (style == null) {
         throw new NullPointerException("style");
       }
@@ -325,6 +568,21 @@ final class FormattingConfigurationBuilder {
       this.skipReflowingLongStrings = skipReflowingLongStrings;
       this.writeReformattedFiles = writeReformattedFiles;
       this.processingLabel = processingLabel;
+      this.threads = threads;
+      this.slowestFiles = slowestFiles;
+      this.progressIntervalSeconds = progressIntervalSeconds;
+      this.traceParent = traceParent;
+      this.traceSampleRate = traceSampleRate;
+      this.stallTimeoutSeconds = stallTimeoutSeconds;
+      this.failOnStall = failOnStall;
+      this.filesToFormat = filesToFormat;
+      this.shardIndex = shardIndex;
+      this.shardCount = shardCount;
+      this.shardBySize = shardBySize;
+      this.manifestFile = manifestFile;
+      this.useGitIndex = useGitIndex;
+      this.cacheDirectory = cacheDirectory;
+      this.cacheMaxBytes = cacheMaxBytes;
     }
 
     @Override
@@ -382,6 +640,81 @@ final class FormattingConfigurationBuilder {
       return skipReflowingLongStrings;
     }
 
+    @Override
+    public int threads() {
+      return threads;
+    }
+
+    @Override
+    public int slowestFiles() {
+      return slowestFiles;
+    }
+
+    @Override
+    public int progressIntervalSeconds() {
+      return progressIntervalSeconds;
+    }
+
+    @Override
+    public String traceParent() {
+      return traceParent;
+    }
+
+    @Override
+    public double traceSampleRate() {
+      return traceSampleRate;
+    }
+
+    @Override
+    public int stallTimeoutSeconds() {
+      return stallTimeoutSeconds;
+    }
+
+    @Override
+    public boolean failOnStall() {
+      return failOnStall;
+    }
+
+    @Override
+    public List<File> filesToFormat() {
+      return filesToFormat;
+    }
+
+    @Override
+    public int shardIndex() {
+      return shardIndex;
+    }
+
+    @Override
+    public int shardCount() {
+      return shardCount;
+    }
+
+    @Override
+    public boolean shardBySize() {
+      return shardBySize;
+    }
+
+    @Override
+    public File manifestFile() {
+      return manifestFile;
+    }
+
+    @Override
+    public boolean useGitIndex() {
+      return useGitIndex;
+    }
+
+    @Override
+    public File cacheDirectory() {
+      return cacheDirectory;
+    }
+
+    @Override
+    public long cacheMaxBytes() {
+      return cacheMaxBytes;
+    }
+
     public FormattingConfigurationBuilder builder() {
       return new FormattingConfigurationBuilder(this);
     }
@@ -428,6 +761,51 @@ final class FormattingConfigurationBuilder {
       if (processingLabel != null ? !processingLabel.equals(that.processingLabel()) : that.processingLabel() != null) {
         return false;
       }
+      if (threads != that.threads()) {
+        return false;
+      }
+      if (slowestFiles != that.slowestFiles()) {
+        return false;
+      }
+      if (progressIntervalSeconds != that.progressIntervalSeconds()) {
+        return false;
+      }
+      if (traceParent != null ? !traceParent.equals(that.traceParent()) : that.traceParent() != null) {
+        return false;
+      }
+      if (traceSampleRate != that.traceSampleRate()) {
+        return false;
+      }
+      if (stallTimeoutSeconds != that.stallTimeoutSeconds()) {
+        return false;
+      }
+      if (failOnStall != that.failOnStall()) {
+        return false;
+      }
+      if (filesToFormat != null ? !filesToFormat.equals(that.filesToFormat()) : that.filesToFormat() != null) {
+        return false;
+      }
+      if (shardIndex != that.shardIndex()) {
+        return false;
+      }
+      if (shardCount != that.shardCount()) {
+        return false;
+      }
+      if (shardBySize != that.shardBySize()) {
+        return false;
+      }
+      if (manifestFile != null ? !manifestFile.equals(that.manifestFile()) : that.manifestFile() != null) {
+        return false;
+      }
+      if (useGitIndex != that.useGitIndex()) {
+        return false;
+      }
+      if (cacheDirectory != null ? !cacheDirectory.equals(that.cacheDirectory()) : that.cacheDirectory() != null) {
+        return false;
+      }
+      if (cacheMaxBytes != that.cacheMaxBytes()) {
+        return false;
+      }
       return true;
     }
 
@@ -445,6 +823,21 @@ final class FormattingConfigurationBuilder {
       result = 31 * result + (this.skipReflowingLongStrings ? 1231 : 1237);
       result = 31 * result + (this.writeReformattedFiles ? 1231 : 1237);
       result = 31 * result + (this.processingLabel != null ? this.processingLabel.hashCode() : 0);
+      result = 31 * result + this.threads;
+      result = 31 * result + this.slowestFiles;
+      result = 31 * result + this.progressIntervalSeconds;
+      result = 31 * result + (this.traceParent != null ? this.traceParent.hashCode() : 0);
+      result = 31 * result + Double.hashCode(this.traceSampleRate);
+      result = 31 * result + this.stallTimeoutSeconds;
+      result = 31 * result + (this.failOnStall ? 1231 : 1237);
+      result = 31 * result + (this.filesToFormat != null ? this.filesToFormat.hashCode() : 0);
+      result = 31 * result + this.shardIndex;
+      result = 31 * result + this.shardCount;
+      result = 31 * result + (this.shardBySize ? 1231 : 1237);
+      result = 31 * result + (this.manifestFile != null ? this.manifestFile.hashCode() : 0);
+      result = 31 * result + (this.useGitIndex ? 1231 : 1237);
+      result = 31 * result + (this.cacheDirectory != null ? this.cacheDirectory.hashCode() : 0);
+      result = 31 * result + Long.hashCode(this.cacheMaxBytes);
       return result;
     }
 
@@ -462,6 +855,21 @@ final class FormattingConfigurationBuilder {
       ", skipReflowingLongStrings=" + skipReflowingLongStrings +
       ", writeReformattedFiles=" + writeReformattedFiles +
       ", processingLabel=" + processingLabel +
+      ", threads=" + threads +
+      ", slowestFiles=" + slowestFiles +
+      ", progressIntervalSeconds=" + progressIntervalSeconds +
+      ", traceParent=" + traceParent +
+      ", traceSampleRate=" + traceSampleRate +
+      ", stallTimeoutSeconds=" + stallTimeoutSeconds +
+      ", failOnStall=" + failOnStall +
+      ", filesToFormat=" + filesToFormat +
+      ", shardIndex=" + shardIndex +
+      ", shardCount=" + shardCount +
+      ", shardBySize=" + shardBySize +
+      ", manifestFile=" + manifestFile +
+      ", useGitIndex=" + useGitIndex +
+      ", cacheDirectory=" + cacheDirectory +
+      ", cacheMaxBytes=" + cacheMaxBytes +
       '}';
     }
   }
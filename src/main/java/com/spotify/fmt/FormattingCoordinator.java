@@ -0,0 +1,498 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Hands out batches of files to {@link FormattingWorker workers} that connect over TCP, so that
+ * formatting a large repository is spread over several processes, on this or other machines that
+ * share the workspace, and no worker sits idle while others still have files left.
+ *
+ * <p>Workers pull a batch at a time. When checking and no batches are left, idle workers get a copy
+ * of the batch that has been running the longest, and the first copy to finish counts, so that a
+ * slow worker does not hold up the whole run. Copies are not handed out when reformatting, as two
+ * workers would then rewrite the same files. Batches of workers that disconnect or stop sending
+ * heartbeats for {@code workerTimeoutNanos} are handed out again, up to {@code maxAttempts} times.
+ * A result that does not cover all files of its batch, e.g. from a worker with a stale checkout or
+ * other source directories, fails the run.
+ *
+ * <p>Messages are lines in UTF-8. A worker starts with {@code WORKER <name>} and the coordinator
+ * answers {@code WELCOME <FORMAT|CHECK> <heartbeat millis>}. The coordinator then sends {@code
+ * BATCH <id> <count>} followed by a path per line, relative to the workspace root unless outside of
+ * it, or {@code DONE} when all files are formatted. While working on a batch the worker sends
+ * {@code BUSY <id>} every heartbeat, and finally either {@code RESULT <id> <processed>
+ * <non-complying> <bytes>} followed by the processed and then the non-complying paths, or {@code
+ * FAILED <id> <length>} followed by an error message of {@code length} bytes.
+ */
+class FormattingCoordinator implements Closeable {
+
+  private final Log log;
+  private final Path root;
+  private final int batchSize;
+  private final int maxAttempts;
+  private final long workerTimeoutNanos;
+  private final boolean writeReformattedFiles;
+
+  private final Object lock = new Object();
+  private final Deque<Batch> pending = new ArrayDeque<>();
+  private final Set<Batch> running = new LinkedHashSet<>();
+  private final List<String> processedFiles = new ArrayList<>();
+  private final List<String> nonComplyingFiles = new ArrayList<>();
+  private long bytesProcessed;
+  private boolean planned;
+  private int remaining;
+  private int workers;
+  private long lastWorkerNanos = System.nanoTime();
+  private FormatterException failure;
+
+  private final ExecutorService connections =
+      Executors.newCachedThreadPool(
+          runnable -> {
+            final Thread thread = new Thread(runnable, "fmt-coordinator-connection");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+  private ServerSocket server;
+
+  FormattingCoordinator(
+      Log log,
+      Path root,
+      int batchSize,
+      int maxAttempts,
+      long workerTimeoutNanos,
+      boolean writeReformattedFiles) {
+    this.log = log;
+    this.root = root.toAbsolutePath().normalize();
+    this.batchSize = Math.max(1, batchSize);
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.workerTimeoutNanos = workerTimeoutNanos;
+    this.writeReformattedFiles = writeReformattedFiles;
+  }
+
+  /**
+   * Starts accepting workers on {@code address}.
+   *
+   * @return the address listened on
+   */
+  synchronized InetSocketAddress start(InetSocketAddress address) throws IOException {
+    server = new ServerSocket();
+    server.bind(address);
+    final Thread thread = new Thread(this::accept, "fmt-coordinator");
+    thread.setDaemon(true);
+    thread.start();
+    return (InetSocketAddress) server.getLocalSocketAddress();
+  }
+
+  /**
+   * Formats {@code files} on the connected workers, waiting for workers to connect, and returns
+   * once all files are formatted.
+   *
+   * @throws FormatterException if a file fails to format, a batch failed on {@code maxAttempts}
+   *     workers or no worker was connected for the worker timeout
+   */
+  FormattingResult run(List<File> files) throws FormatterException, InterruptedException {
+    final long startedAtMillis = System.currentTimeMillis();
+    final long start = System.nanoTime();
+    synchronized (lock) {
+      for (int from = 0; from < files.size(); from += batchSize) {
+        final List<String> paths = new ArrayList<>();
+        for (File file : files.subList(from, Math.min(files.size(), from + batchSize))) {
+          paths.add(relativize(root, file));
+        }
+        pending.add(new Batch(pending.size(), paths));
+      }
+      remaining = pending.size();
+      planned = true;
+      lastWorkerNanos = System.nanoTime();
+      // Workers that connected early are waiting for the files.
+      lock.notifyAll();
+      log.info(
+          String.format(
+              "Handing out %d files in %d batches to workers", files.size(), pending.size()));
+      while (remaining > 0 && failure == null) {
+        lock.wait(Math.max(1, Math.min(1000, TimeUnit.NANOSECONDS.toMillis(workerTimeoutNanos))));
+        if (workers == 0 && System.nanoTime() - lastWorkerNanos > workerTimeoutNanos) {
+          failure =
+              new FormatterException(
+                  "No worker connected for "
+                      + TimeUnit.NANOSECONDS.toSeconds(workerTimeoutNanos)
+                      + "s with "
+                      + remaining
+                      + " batches left");
+        }
+      }
+      // Lets idle workers know that there is nothing left to do.
+      lock.notifyAll();
+      if (failure != null) {
+        throw failure;
+      }
+      return FormattingResult.builder()
+          .processedFiles(processedFiles)
+          .nonComplyingFiles(nonComplyingFiles)
+          .statistics(
+              FormattingStatistics.builder()
+                  .wallTimeNanos(System.nanoTime() - start)
+                  .bytesProcessed(bytesProcessed)
+                  .startedAtMillis(startedAtMillis)
+                  .build())
+          .build();
+    }
+  }
+
+  /**
+   * The path of {@code file} relative to {@code root} with {@code /} separators, or its absolute
+   * path if it is not in {@code root}.
+   */
+  static String relativize(Path root, File file) {
+    final Path path = file.toPath().toAbsolutePath().normalize();
+    return path.startsWith(root)
+        ? root.relativize(path).toString().replace(File.separatorChar, '/')
+        : path.toString();
+  }
+
+  /** The file at {@code path} as sent by {@link #relativize}, for a workspace at {@code root}. */
+  static File resolve(Path root, String path) {
+    final File file = new File(path);
+    return file.isAbsolute() ? file : root.resolve(path).toFile();
+  }
+
+  private void accept() {
+    while (!server.isClosed()) {
+      try {
+        final Socket socket = server.accept();
+        connections.submit(() -> serve(socket));
+      } catch (IOException e) {
+        if (!server.isClosed()) {
+          log.warn("Failed to accept worker", e);
+        }
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    String name = String.valueOf(socket.getRemoteSocketAddress());
+    Batch batch = null;
+    sockets.add(socket);
+    synchronized (lock) {
+      workers++;
+    }
+    try (Socket s = socket;
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+      socket.setSoTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(workerTimeoutNanos)));
+      final String hello = FormattingDaemon.readLine(in);
+      if (hello == null || !hello.startsWith("WORKER ")) {
+        log.warn("Unexpected greeting from " + name + ": " + hello);
+        return;
+      }
+      name = hello.substring("WORKER ".length()) + " (" + name + ")";
+      log.info("Worker " + name + " connected");
+      send(
+          out,
+          "WELCOME "
+              + (writeReformattedFiles ? "FORMAT" : "CHECK")
+              + " "
+              + Math.max(1, TimeUnit.NANOSECONDS.toMillis(workerTimeoutNanos) / 3));
+      while ((batch = nextBatch()) != null) {
+        send(out, "BATCH " + batch.id + " " + batch.paths.size(), batch.paths);
+        receive(in, batch, name);
+        batch = null;
+      }
+      send(out, "DONE");
+    } catch (SocketTimeoutException e) {
+      log.warn("Worker " + name + " timed out, handing out its batch again");
+    } catch (IOException | IllegalArgumentException e) {
+      log.warn("Lost worker " + name + ": " + e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      sockets.remove(socket);
+      synchronized (lock) {
+        workers--;
+        lastWorkerNanos = System.nanoTime();
+        if (batch != null) {
+          release(batch);
+        }
+        lock.notifyAll();
+      }
+    }
+  }
+
+  /** Reads the messages of a worker until it reports on {@code batch}. */
+  private void receive(InputStream in, Batch batch, String name) throws IOException {
+    while (true) {
+      final String line = FormattingDaemon.readLine(in);
+      if (line == null) {
+        throw new IOException("Connection closed");
+      }
+      final String[] parts = line.split(" ");
+      if (parts[0].equals("BUSY")) {
+        // Possibly a late heartbeat for the previous batch.
+        continue;
+      }
+      if (parts.length < 3 || Integer.parseInt(parts[1]) != batch.id) {
+        throw new IllegalArgumentException("Unexpected message: " + line);
+      }
+      switch (parts[0]) {
+        case "RESULT":
+          {
+            if (parts.length != 5) {
+              throw new IllegalArgumentException(
+                  "Expected RESULT <id> <processed> <non-complying> <bytes>");
+            }
+            final List<String> processed = readPaths(in, Integer.parseInt(parts[2]));
+            final List<String> nonComplying = readPaths(in, Integer.parseInt(parts[3]));
+            final Set<String> skipped = new LinkedHashSet<>(batch.paths);
+            skipped.removeAll(processed);
+            if (!skipped.isEmpty()) {
+              fail(
+                  batch,
+                  "Worker "
+                      + name
+                      + " skipped "
+                      + skipped.size()
+                      + " of "
+                      + batch.paths.size()
+                      + " files of its batch, starting with "
+                      + skipped.iterator().next()
+                      + ", are its sources the same as the coordinator's?");
+              return;
+            }
+            complete(batch, resolve(processed), resolve(nonComplying), Long.parseLong(parts[4]));
+            return;
+          }
+        case "FAILED":
+          {
+            fail(
+                batch,
+                new String(FormattingDaemon.readPayload(in, Integer.parseInt(parts[2])), UTF_8));
+            return;
+          }
+        default:
+          throw new IllegalArgumentException("Unexpected message: " + line);
+      }
+    }
+  }
+
+  private List<String> readPaths(InputStream in, int count) throws IOException {
+    final List<String> paths = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      final String path = FormattingDaemon.readLine(in);
+      if (path == null) {
+        throw new IOException("Connection closed");
+      }
+      paths.add(path);
+    }
+    return paths;
+  }
+
+  private List<String> resolve(List<String> paths) {
+    final List<String> files = new ArrayList<>(paths.size());
+    for (String path : paths) {
+      files.add(resolve(root, path).getPath());
+    }
+    return files;
+  }
+
+  /**
+   * The next batch for an idle worker: a pending one, or else when checking a copy of the longest
+   * running batch that no other worker is helping with yet. Waits while all batches are taken or
+   * the files to format are still being found, and returns null once all are done.
+   */
+  private Batch nextBatch() throws InterruptedException {
+    synchronized (lock) {
+      while ((!planned || remaining > 0) && failure == null) {
+        Batch batch = pending.poll();
+        if (batch != null) {
+          batch.attempts++;
+        } else if (!writeReformattedFiles) {
+          batch =
+              running.stream()
+                  .filter(b -> b.copies == 1)
+                  .min((a, b) -> Long.compare(a.startedNanos, b.startedNanos))
+                  .orElse(null);
+          if (batch != null) {
+            log.debug("Stealing batch " + batch.id + " from a slower worker");
+          }
+        }
+        if (batch != null) {
+          if (batch.copies++ == 0) {
+            batch.startedNanos = System.nanoTime();
+          }
+          running.add(batch);
+          return batch;
+        }
+        lock.wait();
+      }
+      return null;
+    }
+  }
+
+  private void complete(
+      Batch batch, List<String> processed, List<String> nonComplying, long bytes) {
+    synchronized (lock) {
+      batch.copies--;
+      if (batch.done) {
+        // Another worker finished a copy first.
+        return;
+      }
+      batch.done = true;
+      running.remove(batch);
+      remaining--;
+      processedFiles.addAll(processed);
+      nonComplyingFiles.addAll(nonComplying);
+      bytesProcessed += bytes;
+      lock.notifyAll();
+    }
+  }
+
+  /** Fails the run with {@code message}, unless another copy of {@code batch} finished first. */
+  private void fail(Batch batch, String message) {
+    synchronized (lock) {
+      batch.copies--;
+      if (batch.done) {
+        return;
+      }
+      if (failure == null) {
+        failure = new FormatterException(message);
+      }
+      lock.notifyAll();
+    }
+  }
+
+  /** Hands out {@code batch} again after the worker running it went away. */
+  private void release(Batch batch) {
+    if (--batch.copies > 0 || batch.done) {
+      return;
+    }
+    running.remove(batch);
+    if (batch.attempts >= maxAttempts) {
+      if (failure == null) {
+        failure =
+            new FormatterException(
+                "Batch of "
+                    + batch.paths.size()
+                    + " files starting with "
+                    + batch.paths.get(0)
+                    + " failed on "
+                    + batch.attempts
+                    + " workers");
+      }
+      return;
+    }
+    pending.addFirst(batch);
+  }
+
+  static void send(OutputStream out, String line) throws IOException {
+    send(out, line, Collections.emptyList());
+  }
+
+  /** Sends {@code line} followed by {@code lines}, which other threads do not interleave with. */
+  static void send(OutputStream out, String line, List<String> lines) throws IOException {
+    synchronized (out) {
+      out.write((line + "\n").getBytes(UTF_8));
+      for (String l : lines) {
+        out.write((l + "\n").getBytes(UTF_8));
+      }
+      out.flush();
+    }
+  }
+
+  @Override
+  public void close() {
+    synchronized (lock) {
+      if (failure == null && (!planned || remaining > 0)) {
+        failure = new FormatterException("Coordinator closed");
+      }
+      lock.notifyAll();
+    }
+    try {
+      if (server != null) {
+        server.close();
+      }
+    } catch (IOException e) {
+      log.warn("Failed to close the coordinator", e);
+    }
+    // Give idle workers a moment to be told that they are done.
+    connections.shutdown();
+    try {
+      connections.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // Workers still busy with copies of batches that finished elsewhere are cut off.
+    for (Socket socket : sockets) {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        log.debug("Failed to close connection to worker: " + e);
+      }
+    }
+    connections.shutdownNow();
+  }
+
+  private static final class Batch {
+    private final int id;
+    private final List<String> paths;
+    private int attempts;
+    private int copies;
+    private long startedNanos;
+    private boolean done;
+
+    private Batch(int id, List<String> paths) {
+      this.id = id;
+      this.paths = paths;
+    }
+  }
+}
@@ -0,0 +1,465 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.hash.Hashing;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Formats source sent over a loopback or Unix domain socket, so that editors and git hooks get
+ * formatted source or a compliance verdict in milliseconds from a JVM that stays warm.
+ *
+ * <p>Clients send requests of one line, some followed by a payload, and get a response line
+ * followed by a payload for each request, all in UTF-8:
+ *
+ * <ul>
+ *   <li>{@code FORMAT <style> <length>} and the source: the formatted source
+ *   <li>{@code CHECK <style> <length>} and the source: {@code COMPLIANT} or {@code NON_COMPLYING}
+ *   <li>{@code FILE <style> <path>}: formats the file like the {@code format} goal, or checks it
+ *       like the {@code check} goal if the daemon does not write files, and answers {@code
+ *       COMPLIANT}, {@code REFORMATTED}, {@code NON_COMPLYING} or {@code SKIPPED} if it is not in
+ *       the directories to format or does not match the file name and path patterns
+ *   <li>{@code STATS}: request counts, cache hits and latency percentiles as JSON
+ *   <li>{@code SHUTDOWN}: stops the daemon
+ * </ul>
+ *
+ * <p>Responses are {@code OK <length>} or {@code ERROR <length>} followed by {@code length} bytes.
+ * Formatting options other than the style are those of the configuration the daemon was started
+ * with.
+ */
+class FormattingDaemon implements Closeable {
+
+  static final String COMPLIANT = "COMPLIANT";
+  static final String NON_COMPLYING = "NON_COMPLYING";
+  static final String REFORMATTED = "REFORMATTED";
+  static final String SKIPPED = "SKIPPED";
+
+  /** Number of formatted sources to keep, e.g. for editors that format on every save. */
+  private static final int CACHED_SOURCES = 256;
+
+  /** Longest source accepted, to not buffer arbitrary amounts of data from a broken client. */
+  private static final int MAX_SOURCE_BYTES = 64 * 1024 * 1024;
+
+  private final Log log;
+  private final FormattingConfiguration configuration;
+  private final long idleTimeoutNanos;
+  private final Map<String, Formatter> formatters = new ConcurrentHashMap<>();
+  private final Map<String, String> cache =
+      Collections.synchronizedMap(
+          new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+              return size() > CACHED_SOURCES;
+            }
+          });
+  private final Stats stats = new Stats();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final CountDownLatch stopped = new CountDownLatch(1);
+  private final ExecutorService connections =
+      Executors.newCachedThreadPool(
+          runnable -> {
+            final Thread thread = new Thread(runnable, "fmt-daemon-connection");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private volatile long lastRequestNanos = System.nanoTime();
+  private ServerSocketChannel server;
+  private SocketAddress address;
+
+  FormattingDaemon(Log log, FormattingConfiguration configuration, long idleTimeoutNanos) {
+    this.log = log;
+    this.configuration = configuration;
+    this.idleTimeoutNanos = idleTimeoutNanos;
+  }
+
+  /** The loopback TCP address of {@code port} if positive, the Unix domain socket otherwise. */
+  static SocketAddress address(File socket, int port) {
+    return port > 0
+        ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+        : UnixDomainSocketAddress.of(socket.toPath());
+  }
+
+  /**
+   * Starts listening on {@code address}, a loopback {@link InetSocketAddress} or a {@link
+   * UnixDomainSocketAddress}. A socket file left behind by a daemon that is no longer running is
+   * replaced.
+   *
+   * @return the address listened on
+   */
+  synchronized SocketAddress start(SocketAddress address) throws IOException {
+    if (address instanceof UnixDomainSocketAddress) {
+      final UnixDomainSocketAddress unix = (UnixDomainSocketAddress) address;
+      if (Files.exists(unix.getPath())) {
+        if (isListening(unix)) {
+          throw new IOException("A daemon is already listening on " + unix.getPath());
+        }
+        Files.delete(unix.getPath());
+      }
+      server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    } else {
+      server = ServerSocketChannel.open();
+    }
+    server.bind(address);
+    this.address = server.getLocalAddress();
+    lastRequestNanos = System.nanoTime();
+    start("fmt-daemon", this::accept);
+    if (idleTimeoutNanos > 0) {
+      start("fmt-daemon-idle", this::watchIdle);
+    }
+    return this.address;
+  }
+
+  private static boolean isListening(UnixDomainSocketAddress address) {
+    try (SocketChannel channel = SocketChannel.open(address)) {
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /** Waits until the daemon is shut down, by a client or after the idle timeout. */
+  void awaitShutdown() throws InterruptedException {
+    stopped.await();
+  }
+
+  private void start(String name, Runnable runnable) {
+    final Thread thread = new Thread(runnable, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void accept() {
+    while (stopped.getCount() > 0) {
+      try {
+        final SocketChannel channel = server.accept();
+        connections.submit(() -> serve(channel));
+      } catch (IOException e) {
+        if (stopped.getCount() > 0 && server.isOpen()) {
+          log.warn("Failed to accept connection", e);
+        }
+        if (!server.isOpen()) {
+          return;
+        }
+      }
+    }
+  }
+
+  private void watchIdle() {
+    final long checkMillis =
+        Math.max(1, Math.min(1000, TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos) / 4));
+    try {
+      while (!stopped.await(checkMillis, TimeUnit.MILLISECONDS)) {
+        if (inFlight.get() == 0 && System.nanoTime() - lastRequestNanos > idleTimeoutNanos) {
+          log.info(
+              "No requests for "
+                  + TimeUnit.NANOSECONDS.toSeconds(idleTimeoutNanos)
+                  + "s, shutting down the formatting daemon");
+          close();
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void serve(SocketChannel channel) {
+    try (SocketChannel c = channel;
+        InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel))) {
+      String request;
+      while ((request = readLine(in)) != null) {
+        final long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        String status = "ERROR";
+        String response;
+        boolean protocolError = false;
+        try {
+          response = handle(request, in);
+          status = "OK";
+        } catch (IllegalArgumentException | EOFException e) {
+          protocolError = true;
+          response = String.valueOf(e.getMessage());
+        } catch (FormatterException | com.google.googlejavaformat.java.FormatterException e) {
+          response = String.valueOf(e.getMessage());
+        } finally {
+          inFlight.decrementAndGet();
+          lastRequestNanos = System.nanoTime();
+        }
+        stats.record(lastRequestNanos - start, !status.equals("OK"));
+        respond(out, status, response);
+        if (protocolError) {
+          // The rest of the stream cannot be told apart from a payload, so give up on it.
+          return;
+        }
+        if (request.equals("SHUTDOWN")) {
+          log.info("Shutting down the formatting daemon on request");
+          close();
+          return;
+        }
+      }
+    } catch (IOException e) {
+      log.debug("Connection failed: " + e);
+    }
+  }
+
+  private String handle(String request, InputStream in)
+      throws IOException, com.google.googlejavaformat.java.FormatterException {
+    final String[] parts = request.split(" ", 3);
+    switch (parts[0]) {
+      case "FORMAT":
+        return format(style(parts), readSource(parts, in));
+      case "CHECK":
+        {
+          final String source = readSource(parts, in);
+          return source.equals(format(style(parts), source)) ? COMPLIANT : NON_COMPLYING;
+        }
+      case "FILE":
+        if (parts.length < 3) {
+          throw new IllegalArgumentException("Expected FILE <style> <path>");
+        }
+        return file(style(parts), new File(parts[2]));
+      case "STATS":
+        return stats.json(cache.size());
+      case "SHUTDOWN":
+        return "";
+      default:
+        throw new IllegalArgumentException("Unknown request: " + parts[0]);
+    }
+  }
+
+  private String format(String style, String source)
+      throws com.google.googlejavaformat.java.FormatterException {
+    final String key = style + ':' + Hashing.sha256().hashString(source, UTF_8);
+    final String cached = cache.get(key);
+    if (cached != null) {
+      stats.cacheHits.increment();
+      return cached;
+    }
+    final String formatted = formatter(style).formatSource(source);
+    cache.put(key, formatted);
+    return formatted;
+  }
+
+  private String file(String style, File file) {
+    if (!file.isAbsolute()) {
+      throw new FormatterException("Path must be absolute: " + file);
+    }
+    // Like the files parameter, so that files outside of the directories to format are skipped.
+    final FormattingResult result =
+        new Formatter(
+                FormattingConfigurationBuilder.from(configuration(style))
+                    .filesToFormat(Collections.singletonList(file))
+                    .build())
+            .format();
+    if (result.processedFiles().isEmpty()) {
+      return SKIPPED;
+    }
+    if (result.nonComplyingFiles().isEmpty()) {
+      return COMPLIANT;
+    }
+    return configuration.writeReformattedFiles() ? REFORMATTED : NON_COMPLYING;
+  }
+
+  /** A formatter per style for sources, which unlike files leave no results behind in it. */
+  private Formatter formatter(String style) {
+    return formatters.computeIfAbsent(style, s -> new Formatter(configuration(s)));
+  }
+
+  private FormattingConfiguration configuration(String style) {
+    return FormattingConfigurationBuilder.from(configuration)
+        .style(style)
+        .progressIntervalSeconds(0)
+        .stallTimeoutSeconds(0)
+        .build();
+  }
+
+  private static String style(String[] parts) {
+    if (parts.length < 2) {
+      throw new IllegalArgumentException("Missing style in request: " + parts[0]);
+    }
+    final String style = parts[1].toLowerCase(Locale.ROOT);
+    if (!style.equals("google") && !style.equals("aosp")) {
+      // Formatters are kept per style, so only known styles get one.
+      throw new IllegalArgumentException(
+          "Unknown style '" + parts[1] + "'. Expected 'google' or 'aosp'.");
+    }
+    return style;
+  }
+
+  private static String readSource(String[] parts, InputStream in) throws IOException {
+    if (parts.length != 3) {
+      throw new IllegalArgumentException("Expected " + parts[0] + " <style> <length>");
+    }
+    final int length;
+    try {
+      length = Integer.parseInt(parts[2]);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid length: " + parts[2]);
+    }
+    if (length < 0 || length > MAX_SOURCE_BYTES) {
+      throw new IllegalArgumentException("Invalid length: " + length);
+    }
+    return new String(readPayload(in, length), UTF_8);
+  }
+
+  /** Reads a line terminated by {@code \n}, or returns null at the end of the stream. */
+  static String readLine(InputStream in) throws IOException {
+    final ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+    int b;
+    while ((b = in.read()) != '\n') {
+      if (b < 0) {
+        if (line.size() == 0) {
+          return null;
+        }
+        throw new EOFException("Unterminated line");
+      }
+      line.write(b);
+    }
+    return line.toString(UTF_8);
+  }
+
+  static byte[] readPayload(InputStream in, int length) throws IOException {
+    final byte[] payload = in.readNBytes(length);
+    if (payload.length < length) {
+      throw new EOFException("Expected " + length + " bytes, got " + payload.length);
+    }
+    return payload;
+  }
+
+  private static void respond(OutputStream out, String status, String payload) throws IOException {
+    final byte[] bytes = payload.getBytes(UTF_8);
+    out.write((status + " " + bytes.length + "\n").getBytes(UTF_8));
+    out.write(bytes);
+    out.flush();
+  }
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (stopped.getCount() == 0) {
+        return;
+      }
+      stopped.countDown();
+    }
+    try {
+      if (server != null) {
+        server.close();
+      }
+      if (address instanceof UnixDomainSocketAddress) {
+        Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+      }
+    } catch (IOException e) {
+      log.warn("Failed to close the formatting daemon", e);
+    }
+    connections.shutdownNow();
+  }
+
+  /** Request counters and the latencies of recent requests. */
+  static class Stats {
+
+    private static final int RECENT = 1024;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final long[] latencies = new long[RECENT];
+    private long recorded;
+
+    void record(long nanos, boolean failed) {
+      requests.increment();
+      if (failed) {
+        errors.increment();
+      }
+      synchronized (latencies) {
+        latencies[(int) (recorded++ % RECENT)] = nanos;
+      }
+    }
+
+    /** The latency below which {@code percentile} percent of recent requests completed. */
+    long percentileNanos(double percentile) {
+      final long[] recent;
+      synchronized (latencies) {
+        recent = Arrays.copyOf(latencies, (int) Math.min(recorded, RECENT));
+      }
+      if (recent.length == 0) {
+        return 0;
+      }
+      Arrays.sort(recent);
+      final int rank = (int) Math.ceil(percentile / 100 * recent.length);
+      return recent[Math.max(0, rank - 1)];
+    }
+
+    String json(int cachedSources) {
+      return String.format(
+          Locale.ROOT,
+          "{\"requests\":%d,\"errors\":%d,\"cacheHits\":%d,\"cachedSources\":%d,"
+              + "\"latencyMillis\":{\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"max\":%.3f}}",
+          requests.sum(),
+          errors.sum(),
+          cacheHits.sum(),
+          cachedSources,
+          percentileNanos(50) / 1e6,
+          percentileNanos(90) / 1e6,
+          percentileNanos(99) / 1e6,
+          percentileNanos(100) / 1e6);
+    }
+  }
+}
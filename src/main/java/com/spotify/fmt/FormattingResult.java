@@ -35,6 +35,11 @@ interface FormattingResult extends Serializable {
 
   List<String> nonComplyingFiles();
 
+  FormattingStatistics statistics();
+
+  /** Spans traced while formatting, see {@link FormattingConfiguration#traceParent()}. */
+  List<TraceSpan> spans();
+
   static FormattingResultBuilder builder() {
     return new FormattingResultBuilder();
   }
@@ -43,6 +43,10 @@ final class FormattingResultBuilder {
 
   private List<String> nonComplyingFiles;
 
+  private FormattingStatistics statistics;
+
+  private List<TraceSpan> spans;
+
   public FormattingResultBuilder() {
   }
 
@@ -51,11 +55,16 @@ final class FormattingResultBuilder {
     this.processedFiles = (_processedFiles == null) ? null : new ArrayList<String>(_processedFiles);
     List<String> _nonComplyingFiles = v.nonComplyingFiles();
     this.nonComplyingFiles = (_nonComplyingFiles == null) ? null : new ArrayList<String>(_nonComplyingFiles);
+    this.statistics = v.statistics();
+    List<TraceSpan> _spans = v.spans();
+    this.spans = (_spans == null) ? null : new ArrayList<TraceSpan>(_spans);
   }
 
   private FormattingResultBuilder(FormattingResultBuilder v) {
     this.processedFiles = new ArrayList<String>(v.processedFiles());
     this.nonComplyingFiles = new ArrayList<String>(v.nonComplyingFiles());
+    this.statistics = v.statistics();
+    this.spans = new ArrayList<TraceSpan>(v.spans());
   }
 
   public List<String> processedFiles() {
@@ -196,10 +205,44 @@ final class FormattingResultBuilder {
     return this;
   }
 
+  public FormattingStatistics statistics() {
+    return statistics;
+  }
+
+  public FormattingResultBuilder statistics(FormattingStatistics statistics) {
+    if (statistics == null) {
+      throw new NullPointerException("statistics");
+    }
+    this.statistics = statistics;
+    return this;
+  }
+
+  public List<TraceSpan> spans() {
+    if (this.spans == null) {
+      this.spans = new ArrayList<TraceSpan>();
+    }
+    return spans;
+  }
+
+  public FormattingResultBuilder spans(Collection<? extends TraceSpan> spans) {
+    if (spans == null) {
+      throw new NullPointerException("spans");
+    }
+    for (TraceSpan item : spans) {
+      if (item == null) {
+        throw new NullPointerException("spans: null item");
+      }
+    }
+    this.spans = new ArrayList<TraceSpan>(spans);
+    return this;
+  }
+
   public FormattingResult build() {
     List<String> _processedFiles = (processedFiles != null) ? Collections.unmodifiableList(new ArrayList<String>(processedFiles)) : Collections.<String>emptyList();
     List<String> _nonComplyingFiles = (nonComplyingFiles != null) ? Collections.unmodifiableList(new ArrayList<String>(nonComplyingFiles)) : Collections.<String>emptyList();
-    return new Value(_processedFiles, _nonComplyingFiles);
+    FormattingStatistics _statistics = (statistics != null) ? statistics : FormattingStatistics.builder().build();
+    List<TraceSpan> _spans = (spans != null) ? Collections.unmodifiableList(new ArrayList<TraceSpan>(spans)) : Collections.<TraceSpan>emptyList();
+    return new Value(_processedFiles, _nonComplyingFiles, _statistics, _spans);
   }
 
   public static FormattingResultBuilder from(FormattingResult v) {
@@ -215,10 +258,18 @@ final class FormattingResultBuilder {
 
     private final List<String> nonComplyingFiles;
 
+    private final FormattingStatistics statistics;
+
+    private final List<TraceSpan> spans;
+
     private Value(List<String> processedFiles,
-        List<String> nonComplyingFiles) {
+        List<String> nonComplyingFiles,
+        FormattingStatistics statistics,
+        List<TraceSpan> spans) {
       this.processedFiles = (processedFiles != null) ? processedFiles : Collections.<String>emptyList();
       this.nonComplyingFiles = (nonComplyingFiles != null) ? nonComplyingFiles : Collections.<String>emptyList();
+      this.statistics = statistics;
+      this.spans = (spans != null) ? spans : Collections.<TraceSpan>emptyList();
     }
 
     @Override
@@ -231,6 +282,16 @@ final class FormattingResultBuilder {
       return nonComplyingFiles;
     }
 
+    @Override
+    public FormattingStatistics statistics() {
+      return statistics;
+    }
+
+    @Override
+    public List<TraceSpan> spans() {
+      return spans;
+    }
+
     public FormattingResultBuilder builder() {
       return new FormattingResultBuilder(this);
     }
@@ -250,6 +311,12 @@ final class FormattingResultBuilder {
       if (nonComplyingFiles != null ? !nonComplyingFiles.equals(that.nonComplyingFiles()) : that.nonComplyingFiles() != null) {
         return false;
       }
+      if (statistics != null ? !statistics.equals(that.statistics()) : that.statistics() != null) {
+        return false;
+      }
+      if (spans != null ? !spans.equals(that.spans()) : that.spans() != null) {
+        return false;
+      }
       return true;
     }
 
@@ -258,6 +325,8 @@ final class FormattingResultBuilder {
       int result = 1;
       result = 31 * result + (this.processedFiles != null ? this.processedFiles.hashCode() : 0);
       result = 31 * result + (this.nonComplyingFiles != null ? this.nonComplyingFiles.hashCode() : 0);
+      result = 31 * result + (this.statistics != null ? this.statistics.hashCode() : 0);
+      result = 31 * result + (this.spans != null ? this.spans.hashCode() : 0);
       return result;
     }
 
@@ -266,6 +335,8 @@ final class FormattingResultBuilder {
       return "FormattingResult{" +
       "processedFiles=" + processedFiles +
       ", nonComplyingFiles=" + nonComplyingFiles +
+      ", statistics=" + statistics +
+      ", spans=" + spans +
       '}';
     }
   }
@@ -0,0 +1,77 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/** Where the time of a formatting run went, and how much work it did. */
+interface FormattingStatistics extends Serializable {
+
+  /** The stages a file goes through. Discovery is per run, all other phases per file. */
+  enum Phase {
+    DISCOVERY,
+    READ,
+    FORMAT,
+    REMOVE_UNUSED_IMPORTS,
+    SORT_IMPORTS,
+    REFLOW_STRINGS,
+    WRITE
+  }
+
+  /** Wall time of the whole run, from discovery until the last file was formatted. */
+  long wallTimeNanos();
+
+  /**
+   * Time spent per phase. Per file phases are summed over all formatting threads, so they can add
+   * up to more than the wall time.
+   */
+  Map<Phase, Long> phaseNanos();
+
+  /** Number of bytes read from source files. */
+  long bytesProcessed();
+
+  /** Epoch millis at which formatting started, used to derive the fork startup time. */
+  long startedAtMillis();
+
+  /** Time from requesting a fork until formatting started in it, or {@code 0} if not forked. */
+  long forkStartupMillis();
+
+  /** The slowest files to format, slowest first. */
+  List<FileTiming> slowestFiles();
+
+  /**
+   * Sum of the peak usage of the heap memory pools of the forked JVM that formatted the files, or
+   * {@code -1} if formatted in-process, where the peak would be that of the whole build.
+   */
+  long peakHeapBytes();
+
+  static FormattingStatisticsBuilder builder() {
+    return new FormattingStatisticsBuilder();
+  }
+}
@@ -0,0 +1,289 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/** This class provides a builder for {@link FormattingStatistics} */
+final class FormattingStatisticsBuilder {
+  private long wallTimeNanos;
+
+  private Map<FormattingStatistics.Phase, Long> phaseNanos;
+
+  private long bytesProcessed;
+
+  private long startedAtMillis;
+
+  private long forkStartupMillis;
+
+  private long peakHeapBytes;
+
+  private List<FileTiming> slowestFiles;
+
+  public FormattingStatisticsBuilder() {}
+
+  private FormattingStatisticsBuilder(FormattingStatistics v) {
+    this.wallTimeNanos = v.wallTimeNanos();
+    this.phaseNanos = copy(v.phaseNanos());
+    this.bytesProcessed = v.bytesProcessed();
+    this.startedAtMillis = v.startedAtMillis();
+    this.forkStartupMillis = v.forkStartupMillis();
+    this.peakHeapBytes = v.peakHeapBytes();
+    this.slowestFiles = new ArrayList<>(v.slowestFiles());
+  }
+
+  public long wallTimeNanos() {
+    return wallTimeNanos;
+  }
+
+  public FormattingStatisticsBuilder wallTimeNanos(long wallTimeNanos) {
+    this.wallTimeNanos = wallTimeNanos;
+    return this;
+  }
+
+  public Map<FormattingStatistics.Phase, Long> phaseNanos() {
+    if (this.phaseNanos == null) {
+      this.phaseNanos = new EnumMap<>(FormattingStatistics.Phase.class);
+    }
+    return phaseNanos;
+  }
+
+  public FormattingStatisticsBuilder phaseNanos(Map<FormattingStatistics.Phase, Long> phaseNanos) {
+    if (phaseNanos == null) {
+      throw new NullPointerException("phaseNanos");
+    }
+    this.phaseNanos = copy(phaseNanos);
+    return this;
+  }
+
+  public FormattingStatisticsBuilder putPhaseNanos(FormattingStatistics.Phase phase, long nanos) {
+    if (phase == null) {
+      throw new NullPointerException("phase");
+    }
+    phaseNanos().put(phase, nanos);
+    return this;
+  }
+
+  public long bytesProcessed() {
+    return bytesProcessed;
+  }
+
+  public FormattingStatisticsBuilder bytesProcessed(long bytesProcessed) {
+    this.bytesProcessed = bytesProcessed;
+    return this;
+  }
+
+  public long startedAtMillis() {
+    return startedAtMillis;
+  }
+
+  public FormattingStatisticsBuilder startedAtMillis(long startedAtMillis) {
+    this.startedAtMillis = startedAtMillis;
+    return this;
+  }
+
+  public long forkStartupMillis() {
+    return forkStartupMillis;
+  }
+
+  public FormattingStatisticsBuilder forkStartupMillis(long forkStartupMillis) {
+    this.forkStartupMillis = forkStartupMillis;
+    return this;
+  }
+
+  public long peakHeapBytes() {
+    return peakHeapBytes;
+  }
+
+  public FormattingStatisticsBuilder peakHeapBytes(long peakHeapBytes) {
+    this.peakHeapBytes = peakHeapBytes;
+    return this;
+  }
+
+  public List<FileTiming> slowestFiles() {
+    if (this.slowestFiles == null) {
+      this.slowestFiles = new ArrayList<>();
+    }
+    return slowestFiles;
+  }
+
+  public FormattingStatisticsBuilder slowestFiles(List<FileTiming> slowestFiles) {
+    if (slowestFiles == null) {
+      throw new NullPointerException("slowestFiles");
+    }
+    this.slowestFiles = new ArrayList<>(slowestFiles);
+    return this;
+  }
+
+  public FormattingStatistics build() {
+    Map<FormattingStatistics.Phase, Long> _phaseNanos =
+        Collections.unmodifiableMap(copy(phaseNanos()));
+    List<FileTiming> _slowestFiles = Collections.unmodifiableList(new ArrayList<>(slowestFiles()));
+    return new Value(
+        wallTimeNanos,
+        _phaseNanos,
+        bytesProcessed,
+        startedAtMillis,
+        forkStartupMillis,
+        peakHeapBytes,
+        _slowestFiles);
+  }
+
+  public static FormattingStatisticsBuilder from(FormattingStatistics v) {
+    return new FormattingStatisticsBuilder(v);
+  }
+
+  private static Map<FormattingStatistics.Phase, Long> copy(
+      Map<FormattingStatistics.Phase, Long> phaseNanos) {
+    Map<FormattingStatistics.Phase, Long> copy = new EnumMap<>(FormattingStatistics.Phase.class);
+    copy.putAll(phaseNanos);
+    return copy;
+  }
+
+  private static final class Value implements FormattingStatistics {
+    private final long wallTimeNanos;
+
+    private final Map<Phase, Long> phaseNanos;
+
+    private final long bytesProcessed;
+
+    private final long startedAtMillis;
+
+    private final long forkStartupMillis;
+
+    private final long peakHeapBytes;
+
+    private final List<FileTiming> slowestFiles;
+
+    private Value(
+        long wallTimeNanos,
+        Map<Phase, Long> phaseNanos,
+        long bytesProcessed,
+        long startedAtMillis,
+        long forkStartupMillis,
+        long peakHeapBytes,
+        List<FileTiming> slowestFiles) {
+      this.wallTimeNanos = wallTimeNanos;
+      this.phaseNanos = phaseNanos;
+      this.bytesProcessed = bytesProcessed;
+      this.startedAtMillis = startedAtMillis;
+      this.forkStartupMillis = forkStartupMillis;
+      this.peakHeapBytes = peakHeapBytes;
+      this.slowestFiles = slowestFiles;
+    }
+
+    @Override
+    public long wallTimeNanos() {
+      return wallTimeNanos;
+    }
+
+    @Override
+    public Map<Phase, Long> phaseNanos() {
+      return phaseNanos;
+    }
+
+    @Override
+    public long bytesProcessed() {
+      return bytesProcessed;
+    }
+
+    @Override
+    public long startedAtMillis() {
+      return startedAtMillis;
+    }
+
+    @Override
+    public long forkStartupMillis() {
+      return forkStartupMillis;
+    }
+
+    @Override
+    public long peakHeapBytes() {
+      return peakHeapBytes;
+    }
+
+    @Override
+    public List<FileTiming> slowestFiles() {
+      return slowestFiles;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof FormattingStatistics)) {
+        return false;
+      }
+      final FormattingStatistics that = (FormattingStatistics) o;
+      return wallTimeNanos == that.wallTimeNanos()
+          && phaseNanos.equals(that.phaseNanos())
+          && bytesProcessed == that.bytesProcessed()
+          && startedAtMillis == that.startedAtMillis()
+          && forkStartupMillis == that.forkStartupMillis()
+          && peakHeapBytes == that.peakHeapBytes()
+          && slowestFiles.equals(that.slowestFiles());
+    }
+
+    @Override
+    public int hashCode() {
+      int result = 1;
+      result = 31 * result + Long.hashCode(wallTimeNanos);
+      result = 31 * result + phaseNanos.hashCode();
+      result = 31 * result + Long.hashCode(bytesProcessed);
+      result = 31 * result + Long.hashCode(startedAtMillis);
+      result = 31 * result + Long.hashCode(forkStartupMillis);
+      result = 31 * result + Long.hashCode(peakHeapBytes);
+      result = 31 * result + slowestFiles.hashCode();
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return "FormattingStatistics{"
+          + "wallTimeNanos="
+          + wallTimeNanos
+          + ", phaseNanos="
+          + phaseNanos
+          + ", bytesProcessed="
+          + bytesProcessed
+          + ", startedAtMillis="
+          + startedAtMillis
+          + ", forkStartupMillis="
+          + forkStartupMillis
+          + ", peakHeapBytes="
+          + peakHeapBytes
+          + ", slowestFiles="
+          + slowestFiles
+          + '}';
+    }
+  }
+}
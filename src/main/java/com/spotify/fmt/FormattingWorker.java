@@ -0,0 +1,193 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.Iterables;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Formats batches of files handed out by a {@link FormattingCoordinator}, see there for the
+ * protocol, until the coordinator has none left. Paths are resolved against the workspace {@code
+ * root} of the worker, so workers on other machines may have the workspace at a different path.
+ */
+class FormattingWorker {
+
+  private static final long CONNECT_RETRY_MILLIS = 500;
+
+  private final Log log;
+  private final Path root;
+  private final String name;
+  private final BatchProcessor processor;
+
+  FormattingWorker(Log log, Path root, String name, BatchProcessor processor) {
+    this.log = log;
+    this.root = root.toAbsolutePath().normalize();
+    this.name = name;
+    this.processor = processor;
+  }
+
+  /**
+   * Connects to the coordinator at {@code address}, retrying for {@code connectTimeoutNanos} in
+   * case it is still starting, and formats batches until the coordinator is done.
+   *
+   * @return the files formatted by this worker
+   */
+  FormattingResult run(InetSocketAddress address, long connectTimeoutNanos)
+      throws IOException, InterruptedException {
+    final long startedAtMillis = System.currentTimeMillis();
+    final long start = System.nanoTime();
+    final List<String> processedFiles = new ArrayList<>();
+    final List<String> nonComplyingFiles = new ArrayList<>();
+    long bytesProcessed = 0;
+    final ScheduledExecutorService heartbeats =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              final Thread thread = new Thread(runnable, "fmt-worker-heartbeat");
+              thread.setDaemon(true);
+              return thread;
+            });
+    try (Socket socket = connect(address, connectTimeoutNanos);
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+      FormattingCoordinator.send(out, "WORKER " + name);
+      final String welcome = FormattingDaemon.readLine(in);
+      final String[] parts = welcome != null ? welcome.split(" ") : new String[0];
+      if (parts.length != 3 || !parts[0].equals("WELCOME")) {
+        throw new IOException("Unexpected greeting from coordinator: " + welcome);
+      }
+      final boolean writeReformattedFiles = parts[1].equals("FORMAT");
+      final long heartbeatMillis = Long.parseLong(parts[2]);
+      log.info("Connected to coordinator at " + address);
+      String line;
+      while ((line = FormattingDaemon.readLine(in)) != null && !line.equals("DONE")) {
+        final String[] batch = line.split(" ");
+        if (batch.length != 3 || !batch[0].equals("BATCH")) {
+          throw new IOException("Unexpected message from coordinator: " + line);
+        }
+        final String id = batch[1];
+        final List<File> files = new ArrayList<>();
+        for (int i = Integer.parseInt(batch[2]); i > 0; i--) {
+          final String path = FormattingDaemon.readLine(in);
+          if (path == null) {
+            throw new IOException("Connection closed");
+          }
+          files.add(FormattingCoordinator.resolve(root, path));
+        }
+        final ScheduledFuture<?> heartbeat =
+            heartbeats.scheduleAtFixedRate(
+                () -> heartbeat(out, id), heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        try {
+          final FormattingResult result = processor.process(files, writeReformattedFiles);
+          final List<String> lines = new ArrayList<>();
+          for (String file :
+              Iterables.concat(result.processedFiles(), result.nonComplyingFiles())) {
+            lines.add(FormattingCoordinator.relativize(root, new File(file)));
+          }
+          final long bytes = result.statistics().bytesProcessed();
+          heartbeat.cancel(false);
+          FormattingCoordinator.send(
+              out,
+              String.format(
+                  "RESULT %s %d %d %d",
+                  id, result.processedFiles().size(), result.nonComplyingFiles().size(), bytes),
+              lines);
+          processedFiles.addAll(result.processedFiles());
+          nonComplyingFiles.addAll(result.nonComplyingFiles());
+          bytesProcessed += bytes;
+        } catch (RuntimeException e) {
+          heartbeat.cancel(false);
+          final byte[] message = String.valueOf(e.getMessage()).getBytes(UTF_8);
+          synchronized (out) {
+            out.write(("FAILED " + id + " " + message.length + "\n").getBytes(UTF_8));
+            out.write(message);
+            out.flush();
+          }
+          log.error("Failed to format batch " + id + ": " + e.getMessage());
+        }
+      }
+      if (line == null) {
+        log.info("Coordinator closed the connection");
+      }
+    } finally {
+      heartbeats.shutdownNow();
+    }
+    return FormattingResult.builder()
+        .processedFiles(processedFiles)
+        .nonComplyingFiles(nonComplyingFiles)
+        .statistics(
+            FormattingStatistics.builder()
+                .wallTimeNanos(System.nanoTime() - start)
+                .bytesProcessed(bytesProcessed)
+                .startedAtMillis(startedAtMillis)
+                .build())
+        .build();
+  }
+
+  private static Socket connect(InetSocketAddress address, long timeoutNanos)
+      throws IOException, InterruptedException {
+    final long deadline = System.nanoTime() + timeoutNanos;
+    while (true) {
+      final Socket socket = new Socket();
+      try {
+        socket.connect(address, (int) CONNECT_RETRY_MILLIS * 10);
+        return socket;
+      } catch (ConnectException e) {
+        socket.close();
+        if (System.nanoTime() - deadline > 0) {
+          throw new IOException("Could not connect to coordinator at " + address, e);
+        }
+        Thread.sleep(CONNECT_RETRY_MILLIS);
+      }
+    }
+  }
+
+  private void heartbeat(OutputStream out, String id) {
+    try {
+      FormattingCoordinator.send(out, "BUSY " + id);
+    } catch (IOException e) {
+      log.debug("Failed to send heartbeat: " + e);
+    }
+  }
+}
@@ -0,0 +1,309 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.io.BaseEncoding;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The blob ids of the files tracked in a git work tree, read from its index, so that files that
+ * have not changed since they were staged can be looked up in the {@link FormatManifest} without
+ * reading or hashing them.
+ *
+ * <p>Supports index versions 2 to 4 of repositories using SHA-1, and work trees linked with {@code
+ * git worktree}. Like git, a file is only trusted to match its entry if its modification time and
+ * size are those recorded in the index, and it was not modified in the same second the index was
+ * written, as it may then have changed again without its modification time changing.
+ *
+ * <p>An index is parsed once per process and shared by all formatting in it, e.g. of the batches of
+ * a worker, until git writes it again.
+ */
+final class GitIndex {
+
+  private static final Logger log = Logging.getLog();
+
+  private static final int SIGNATURE = 0x44495243; // DIRC
+  private static final int SPLIT_INDEX = 0x6c696e6b; // link
+  private static final int ID_LENGTH = 20;
+  private static final int CHECKSUM_LENGTH = 20;
+
+  private static final int ASSUME_VALID = 0x8000;
+  private static final int EXTENDED = 0x4000;
+  private static final int STAGE = 0x3000;
+  private static final int SKIP_WORKTREE = 0x4000;
+  private static final int INTENT_TO_ADD = 0x2000;
+  private static final int FILE_TYPE = 0170000;
+  private static final int REGULAR_FILE = 0100000;
+
+  private static final Pattern SHA256_REPOSITORY =
+      Pattern.compile("(?im)^\\s*objectformat\\s*=\\s*sha256\\s*$");
+
+  /** Indexes parsed by this process, by the path of the index file. */
+  private static final Map<Path, GitIndex> PARSED = new ConcurrentHashMap<>();
+
+  private final Path workTree;
+  private final BasicFileAttributes attributes;
+  private final long timestampSeconds;
+  private final Map<String, Entry> entries;
+
+  private GitIndex(Path workTree, BasicFileAttributes attributes, Map<String, Entry> entries) {
+    this.workTree = workTree;
+    this.attributes = attributes;
+    this.timestampSeconds = attributes.lastModifiedTime().toInstant().getEpochSecond();
+    this.entries = entries;
+  }
+
+  /**
+   * The index of the git work tree that {@code directories} are in, or {@code null} if they are not
+   * in one, or if its index cannot be used. Files are then read and hashed as usual.
+   */
+  static GitIndex find(List<File> directories) {
+    if (directories.isEmpty()) {
+      return null;
+    }
+    final Path directory = directories.get(0).toPath().toAbsolutePath().normalize();
+    for (Path workTree = directory; workTree != null; workTree = workTree.getParent()) {
+      final Path dotGit = workTree.resolve(".git");
+      try {
+        if (Files.isDirectory(dotGit)) {
+          return read(workTree, dotGit);
+        }
+        if (Files.isRegularFile(dotGit)) {
+          // A linked work tree or submodule, of which .git points to its git directory.
+          final String content = new String(Files.readAllBytes(dotGit), UTF_8).trim();
+          if (!content.startsWith("gitdir:")) {
+            log.debug("Not using git index, unexpected content of " + dotGit);
+            return null;
+          }
+          return read(workTree, workTree.resolve(content.substring(7).trim()).normalize());
+        }
+      } catch (IOException e) {
+        log.warn("Not using git index of " + workTree + ": " + e.getMessage());
+        return null;
+      }
+    }
+    log.debug("Not using git index, " + directory + " is not in a git work tree");
+    return null;
+  }
+
+  private static GitIndex read(Path workTree, Path gitDirectory) throws IOException {
+    final Path commonDirectoryFile = gitDirectory.resolve("commondir");
+    final Path commonDirectory =
+        Files.isRegularFile(commonDirectoryFile)
+            ? gitDirectory
+                .resolve(new String(Files.readAllBytes(commonDirectoryFile), UTF_8).trim())
+                .normalize()
+            : gitDirectory;
+    final Path config = commonDirectory.resolve("config");
+    if (Files.isRegularFile(config)
+        && SHA256_REPOSITORY.matcher(new String(Files.readAllBytes(config), UTF_8)).find()) {
+      log.debug("Not using git index, SHA-256 repositories are not supported");
+      return null;
+    }
+    final Path index = gitDirectory.resolve("index");
+    if (!Files.isRegularFile(index)) {
+      log.debug("Not using git index, " + index + " does not exist");
+      return null;
+    }
+    final BasicFileAttributes attributes = Files.readAttributes(index, BasicFileAttributes.class);
+    final GitIndex parsed = PARSED.get(index);
+    if (parsed != null && parsed.workTree.equals(workTree) && parsed.isWrittenAs(attributes)) {
+      return parsed;
+    }
+    final GitIndex gitIndex = new GitIndex(workTree, attributes, parse(Files.readAllBytes(index)));
+    PARSED.put(index, gitIndex);
+    log.debug("Read " + gitIndex.entries.size() + " entries from " + index);
+    return gitIndex;
+  }
+
+  /**
+   * Whether the index file still has {@code attributes}, as git replaces it by renaming a new one
+   * into place, which changes its file key on most platforms.
+   */
+  private boolean isWrittenAs(BasicFileAttributes current) {
+    return Objects.equals(attributes.fileKey(), current.fileKey())
+        && attributes.lastModifiedTime().equals(current.lastModifiedTime())
+        && attributes.size() == current.size();
+  }
+
+  /**
+   * Parses the entries of an index that can be trusted to match unchanged files, leaving out
+   * conflicts, entries that git itself does not check against the file, and anything that is not a
+   * regular file.
+   */
+  static Map<String, Entry> parse(byte[] content) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.wrap(content);
+    try {
+      if (buffer.getInt() != SIGNATURE) {
+        throw new IOException("Not a git index");
+      }
+      final int version = buffer.getInt();
+      if (version < 2 || version > 4) {
+        throw new IOException("Unsupported git index version " + version);
+      }
+      final int count = buffer.getInt();
+      final Map<String, Entry> entries = new HashMap<>(Math.max(16, count * 4 / 3 + 1));
+      byte[] previousPath = new byte[0];
+      for (int i = 0; i < count; i++) {
+        final int start = buffer.position();
+        buffer.position(start + 8); // ctime
+        final int mtimeSeconds = buffer.getInt();
+        final int mtimeNanos = buffer.getInt();
+        buffer.position(buffer.position() + 8); // dev, ino
+        final int mode = buffer.getInt();
+        buffer.position(buffer.position() + 8); // uid, gid
+        final int size = buffer.getInt();
+        final byte[] id = new byte[ID_LENGTH];
+        buffer.get(id);
+        final int flags = buffer.getShort() & 0xffff;
+        final int extendedFlags =
+            (flags & EXTENDED) != 0 && version >= 3 ? buffer.getShort() & 0xffff : 0;
+        final byte[] path;
+        if (version == 4) {
+          // Paths are prefix compressed against the path of the previous entry.
+          final int strip = (int) readOffset(buffer);
+          final byte[] suffix = readPath(buffer);
+          path = Arrays.copyOf(previousPath, previousPath.length - strip + suffix.length);
+          System.arraycopy(suffix, 0, path, previousPath.length - strip, suffix.length);
+          previousPath = path;
+        } else {
+          path = readPath(buffer);
+          // Entries are padded with NULs to a multiple of eight bytes.
+          final int unpadded = buffer.position() - 1 - start;
+          buffer.position(start + ((unpadded + 8) & ~7));
+        }
+        if ((flags & (ASSUME_VALID | STAGE)) == 0
+            && (extendedFlags & (SKIP_WORKTREE | INTENT_TO_ADD)) == 0
+            && (mode & FILE_TYPE) == REGULAR_FILE) {
+          entries.put(new String(path, UTF_8), new Entry(mtimeSeconds, mtimeNanos, size, id));
+        }
+      }
+      while (buffer.remaining() > CHECKSUM_LENGTH) {
+        final int signature = buffer.getInt();
+        final int length = buffer.getInt();
+        if (signature == SPLIT_INDEX) {
+          // Most entries are then in a shared index, and entries here may replace or delete them.
+          throw new IOException("Split git indexes are not supported");
+        }
+        buffer.position(buffer.position() + length);
+      }
+      return entries;
+    } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+      throw new IOException("Truncated git index", e);
+    }
+  }
+
+  /** Reads a NUL terminated path, leaving the buffer after the NUL. */
+  private static byte[] readPath(ByteBuffer buffer) throws IOException {
+    final int start = buffer.position();
+    int end = start;
+    while (buffer.get(end) != 0) {
+      end++;
+    }
+    final byte[] path = new byte[end - start];
+    buffer.get(path);
+    buffer.get();
+    return path;
+  }
+
+  /** Reads a variable length integer as encoded by git for offsets, such as in index version 4. */
+  private static long readOffset(ByteBuffer buffer) {
+    int b = buffer.get() & 0xff;
+    long value = b & 0x7f;
+    while ((b & 0x80) != 0) {
+      b = buffer.get() & 0xff;
+      value = ((value + 1) << 7) | (b & 0x7f);
+    }
+    return value;
+  }
+
+  /**
+   * The blob id of {@code file} if it is tracked and has not changed since it was staged, without
+   * reading it, or {@code null} if it has to be read and hashed.
+   */
+  String blobId(File file) {
+    final Path path = file.toPath().toAbsolutePath().normalize();
+    if (!path.startsWith(workTree)) {
+      return null;
+    }
+    final Entry entry =
+        entries.get(workTree.relativize(path).toString().replace(File.separatorChar, '/'));
+    if (entry == null || entry.mtimeSeconds >= timestampSeconds) {
+      return null;
+    }
+    final BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (IOException e) {
+      return null;
+    }
+    final Instant mtime = attributes.lastModifiedTime().toInstant();
+    if ((mtime.getEpochSecond() & 0xffffffffL) != entry.mtimeSeconds
+        || mtime.getNano() != entry.mtimeNanos
+        || (int) attributes.size() != entry.size) {
+      return null;
+    }
+    return BaseEncoding.base16().lowerCase().encode(entry.id);
+  }
+
+  /** Number of entries that files can be matched against. */
+  int size() {
+    return entries.size();
+  }
+
+  /** The state of a file when it was staged. Sizes are truncated to 32 bits, like git does. */
+  static final class Entry {
+
+    private final long mtimeSeconds;
+    private final int mtimeNanos;
+    private final int size;
+    private final byte[] id;
+
+    Entry(int mtimeSeconds, int mtimeNanos, int size, byte[] id) {
+      this.mtimeSeconds = Integer.toUnsignedLong(mtimeSeconds);
+      this.mtimeNanos = mtimeNanos;
+      this.size = size;
+      this.id = id;
+    }
+  }
+}
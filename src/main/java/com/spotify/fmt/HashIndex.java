@@ -0,0 +1,304 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A set of content hashes in a memory-mapped file, such as the blob ids of all sources known to be
+ * formatted, that stays fast with millions of entries. Opening it maps the file instead of reading
+ * it, and lookups neither allocate nor lock, so that all formatting threads, and all processes
+ * mapping the same file, can share it.
+ *
+ * <p>The file holds a header, a Bloom filter that answers most lookups of unknown hashes without
+ * probing the table, and an open addressing table with linear probing of the first 128 bits of each
+ * hash. Slots are claimed with a compare-and-set of their first half, so that concurrent writers
+ * never overwrite each other. A reader that sees a slot being written treats it as not matching,
+ * which at worst causes a miss. The table does not grow in place; once it is {@link #isFull()
+ * full}, adds are dropped until it is {@link #rebuild rebuilt} into a larger file.
+ */
+final class HashIndex {
+
+  private static final int MAGIC = 0x464d5449; // FMTI
+  private static final int VERSION = 1;
+
+  private static final int MAGIC_OFFSET = 0;
+  private static final int VERSION_OFFSET = 4;
+  private static final int SLOT_BITS_OFFSET = 8;
+  private static final int BLOOM_LONGS_OFFSET = 12;
+  private static final int SIZE_OFFSET = 16;
+  private static final int HEADER_BYTES = 64;
+  private static final int SLOT_BYTES = 16;
+
+  /** Fraction of the slots to fill at most, beyond which probe sequences get long. */
+  private static final double MAX_LOAD = 0.7;
+
+  /** Longest probe sequence to follow, which is only reached on a table that is corrupt. */
+  private static final int MAX_PROBES = 1024;
+
+  static final int MIN_SLOT_BITS = 10;
+
+  /** Keeps the whole file within the 2 GB that a single buffer can map. */
+  static final int MAX_SLOT_BITS = 26;
+
+  private static final VarHandle LONGS =
+      MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  private final Path file;
+  private final MappedByteBuffer buffer;
+  private final int slotBits;
+  private final int slotMask;
+  private final int bloomBitMask;
+  private final int tableOffset;
+  private final long maxSize;
+
+  private HashIndex(Path file, MappedByteBuffer buffer) throws IOException {
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.capacity() < HEADER_BYTES
+        || buffer.getInt(MAGIC_OFFSET) != MAGIC
+        || buffer.getInt(VERSION_OFFSET) != VERSION) {
+      throw new IOException("Not a hash index: " + file);
+    }
+    final int slotBits = buffer.getInt(SLOT_BITS_OFFSET);
+    final int bloomLongs = buffer.getInt(BLOOM_LONGS_OFFSET);
+    if (slotBits < MIN_SLOT_BITS
+        || slotBits > MAX_SLOT_BITS
+        || Integer.bitCount(bloomLongs) != 1
+        || buffer.capacity() != bytes(slotBits, bloomLongs)) {
+      throw new IOException("Corrupt hash index: " + file);
+    }
+    this.file = file;
+    this.buffer = buffer;
+    this.slotBits = slotBits;
+    this.slotMask = (1 << slotBits) - 1;
+    this.bloomBitMask = bloomLongs * Long.SIZE - 1;
+    this.tableOffset = HEADER_BYTES + bloomLongs * Long.BYTES;
+    this.maxSize = (long) ((1L << slotBits) * MAX_LOAD);
+  }
+
+  /** Maps the index in {@code file}, which must exist. */
+  static HashIndex open(Path file) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      return new HashIndex(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Creates an empty index with {@code 2^slotBits} slots in {@code file}, replacing any index
+   * there. Written next to it and renamed into place, so that processes never map a partial index.
+   */
+  static HashIndex create(Path file, int slotBits) throws IOException {
+    return rebuild(file, slotBits, null);
+  }
+
+  /**
+   * Replaces the index in {@code file} by one with {@code 2^slotBits} slots, holding the hashes of
+   * {@code entries} unless it is {@code null}. Processes that mapped the old index keep using it
+   * until they open the index again, and hashes they add to it meanwhile are lost.
+   */
+  static HashIndex rebuild(Path file, int slotBits, HashIndex entries) throws IOException {
+    if (slotBits < MIN_SLOT_BITS || slotBits > MAX_SLOT_BITS) {
+      throw new IllegalArgumentException("Invalid number of slot bits: " + slotBits);
+    }
+    // Eight bits per slot, for about one in eighty unknown hashes to get past a full filter.
+    final int bloomLongs = (1 << slotBits) / Long.BYTES;
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    final Path temporary =
+        Files.createTempFile(
+            file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+    try {
+      try (RandomAccessFile out = new RandomAccessFile(temporary.toFile(), "rw")) {
+        out.setLength(bytes(slotBits, bloomLongs));
+        final MappedByteBuffer buffer =
+            out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, out.length());
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(SLOT_BITS_OFFSET, slotBits);
+        buffer.putInt(BLOOM_LONGS_OFFSET, bloomLongs);
+        final HashIndex index = new HashIndex(temporary, buffer);
+        if (entries != null) {
+          entries.copyTo(index);
+        }
+        buffer.force();
+      }
+      Files.move(temporary, file, REPLACE_EXISTING, ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+    return open(file);
+  }
+
+  private static long bytes(int slotBits, int bloomLongs) {
+    return HEADER_BYTES + (long) bloomLongs * Long.BYTES + ((long) SLOT_BYTES << slotBits);
+  }
+
+  /** Whether {@code hash}, a hex string of at least 32 digits, was added. */
+  boolean contains(String hash) {
+    return contains(high(hash), low(hash));
+  }
+
+  private boolean contains(long high, long low) {
+    if (!mayContain(high, low)) {
+      return false;
+    }
+    int slot = (int) low & slotMask;
+    for (int probe = 0; probe < MAX_PROBES; probe++) {
+      final int offset = tableOffset + slot * SLOT_BYTES;
+      final long slotHigh = (long) LONGS.getAcquire(buffer, offset);
+      if (slotHigh == 0) {
+        return false;
+      }
+      if (slotHigh == high && (long) LONGS.getAcquire(buffer, offset + Long.BYTES) == low) {
+        return true;
+      }
+      slot = (slot + 1) & slotMask;
+    }
+    return false;
+  }
+
+  /**
+   * Adds {@code hash}, a hex string of at least 32 digits. Returns {@code false} if the index is
+   * full, and the hash was not added.
+   */
+  boolean add(String hash) {
+    return add(high(hash), low(hash));
+  }
+
+  private boolean add(long high, long low) {
+    if (size() >= maxSize) {
+      return false;
+    }
+    int slot = (int) low & slotMask;
+    for (int probe = 0; probe < MAX_PROBES; probe++) {
+      final int offset = tableOffset + slot * SLOT_BYTES;
+      long slotHigh = (long) LONGS.getAcquire(buffer, offset);
+      if (slotHigh == 0) {
+        if (LONGS.compareAndSet(buffer, offset, 0L, high)) {
+          LONGS.setRelease(buffer, offset + Long.BYTES, low);
+          setBloomBits(high, low);
+          LONGS.getAndAdd(buffer, SIZE_OFFSET, 1L);
+          return true;
+        }
+        slotHigh = (long) LONGS.getAcquire(buffer, offset);
+      }
+      if (slotHigh == high && (long) LONGS.getAcquire(buffer, offset + Long.BYTES) == low) {
+        return true;
+      }
+      slot = (slot + 1) & slotMask;
+    }
+    return false;
+  }
+
+  private boolean mayContain(long high, long low) {
+    return isBloomBitSet((int) high)
+        && isBloomBitSet((int) (high >>> 32))
+        && isBloomBitSet((int) (low >>> 32));
+  }
+
+  private boolean isBloomBitSet(int hash) {
+    final int bit = hash & bloomBitMask;
+    final long word = (long) LONGS.getAcquire(buffer, HEADER_BYTES + (bit >>> 6) * Long.BYTES);
+    return (word & (1L << bit)) != 0;
+  }
+
+  private void setBloomBits(long high, long low) {
+    setBloomBit((int) high);
+    setBloomBit((int) (high >>> 32));
+    setBloomBit((int) (low >>> 32));
+  }
+
+  private void setBloomBit(int hash) {
+    final int bit = hash & bloomBitMask;
+    LONGS.getAndBitwiseOr(buffer, HEADER_BYTES + (bit >>> 6) * Long.BYTES, 1L << bit);
+  }
+
+  /** Adds all hashes of this index to {@code other}, e.g. to grow or merge indexes. */
+  void copyTo(HashIndex other) {
+    for (int slot = 0; slot <= slotMask; slot++) {
+      final int offset = tableOffset + slot * SLOT_BYTES;
+      final long high = (long) LONGS.getAcquire(buffer, offset);
+      final long low = (long) LONGS.getAcquire(buffer, offset + Long.BYTES);
+      if (high != 0 && !other.add(high, low)) {
+        return;
+      }
+    }
+  }
+
+  /** Number of hashes added, including the rare duplicates added by concurrent writers. */
+  long size() {
+    return (long) LONGS.getAcquire(buffer, SIZE_OFFSET);
+  }
+
+  /** Whether the index is too full to add more hashes. */
+  boolean isFull() {
+    return size() >= maxSize;
+  }
+
+  int slotBits() {
+    return slotBits;
+  }
+
+  Path file() {
+    return file;
+  }
+
+  /** The first 64 bits of {@code hash}, never zero, as zero marks empty slots. */
+  private static long high(String hash) {
+    final long high = parseHex(hash, 0);
+    return high != 0 ? high : 1;
+  }
+
+  private static long low(String hash) {
+    return parseHex(hash, 16);
+  }
+
+  private static long parseHex(String hash, int from) {
+    long value = 0;
+    for (int i = from; i < from + 16; i++) {
+      final int digit = Character.digit(hash.charAt(i), 16);
+      if (digit < 0) {
+        throw new IllegalArgumentException("Not a hex hash: " + hash);
+      }
+      value = (value << 4) | digit;
+    }
+    return value;
+  }
+}
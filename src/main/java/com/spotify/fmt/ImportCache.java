@@ -0,0 +1,69 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.File;
+import java.io.IOException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Import cache mojo that adds the entries of an archive written by {@code export-cache} to the
+ * cache of formatted sources, see {@code cacheDirectory}. Entries the cache already has are kept.
+ */
+@Mojo(name = "import-cache", requiresProject = false, aggregator = true, threadSafe = true)
+public class ImportCache extends AbstractMojo {
+
+  /** Directory of the cache, as set for the formatting goals. */
+  @Parameter(property = "fmt.cacheDirectory", required = true)
+  private File cacheDirectory;
+
+  @Parameter(defaultValue = "512", property = "fmt.cacheMaxSize")
+  private int cacheMaxSize;
+
+  /** Archive to read entries of the cache from. A missing archive is skipped, as on a first run. */
+  @Parameter(property = "fmt.cacheArchive", required = true)
+  private File cacheArchive;
+
+  @Override
+  public void execute() throws MojoFailureException {
+    if (!cacheArchive.isFile()) {
+      getLog().info("No cache archive " + cacheArchive + ", nothing to import");
+      return;
+    }
+    try {
+      final int imported =
+          new FormatCache(cacheDirectory.toPath(), cacheMaxSize * 1024L * 1024L)
+              .importArchive(cacheArchive.toPath());
+      getLog().info("Imported " + imported + " cache files from " + cacheArchive);
+    } catch (IOException e) {
+      throw new MojoFailureException("Failed to import cache from " + cacheArchive, e);
+    }
+  }
+}
@@ -0,0 +1,266 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Transports log records from a forked child to the parent as prefixed lines on the standard output
+ * of the child, so that the parent can replay them on its Maven {@link Log} at their original level
+ * rather than printing them to the console.
+ */
+class LogChannel {
+
+  /** Marks a line as a log record. Starts with a character that never appears in normal output. */
+  static final String PREFIX = "\u0000fmt:";
+
+  private static final char DEBUG = 'D';
+  private static final char INFO = 'I';
+  private static final char WARN = 'W';
+  private static final char ERROR = 'E';
+
+  private LogChannel() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Replays {@code line} on {@code log} if it is a log record.
+   *
+   * @return whether the line was a log record
+   */
+  static boolean replay(String line, Log log) {
+    if (!line.startsWith(PREFIX) || line.length() < PREFIX.length() + 1) {
+      return false;
+    }
+    final String content = unescape(line, PREFIX.length() + 1);
+    switch (line.charAt(PREFIX.length())) {
+      case DEBUG:
+        log.debug(content);
+        break;
+      case INFO:
+        log.info(content);
+        break;
+      case WARN:
+        log.warn(content);
+        break;
+      default:
+        log.error(content);
+        break;
+    }
+    return true;
+  }
+
+  static void encode(StringBuilder out, char level, CharSequence content, Throwable error) {
+    out.append(PREFIX).append(level);
+    if (content != null) {
+      escape(out, content);
+    }
+    if (error != null) {
+      if (content != null) {
+        out.append("\\n");
+      }
+      final StringWriter stackTrace = new StringWriter();
+      error.printStackTrace(new PrintWriter(stackTrace));
+      escape(out, stackTrace.toString().trim());
+    }
+    out.append(System.lineSeparator());
+  }
+
+  private static void escape(StringBuilder out, CharSequence content) {
+    for (int i = 0; i < content.length(); i++) {
+      final char c = content.charAt(i);
+      if (c == '\\') {
+        out.append("\\\\");
+      } else if (c == '\n') {
+        out.append("\\n");
+      } else if (c != '\r') {
+        out.append(c);
+      }
+    }
+  }
+
+  private static String unescape(String line, int start) {
+    final StringBuilder content = new StringBuilder(line.length() - start);
+    for (int i = start; i < line.length(); i++) {
+      final char c = line.charAt(i);
+      if (c == '\\' && i + 1 < line.length()) {
+        final char next = line.charAt(++i);
+        content.append(next == 'n' ? '\n' : next);
+      } else {
+        content.append(c);
+      }
+    }
+    return content.toString();
+  }
+
+  /**
+   * Writes log records to standard output in batches. Records are collected in memory and written
+   * with a single call per batch, at most {@link #FLUSH_INTERVAL_MILLIS} after they were logged, so
+   * that a verbose run does not make every formatting thread wait for the console.
+   */
+  static class Writer implements Log {
+
+    static final long FLUSH_INTERVAL_MILLIS = 50;
+
+    private static final int MAX_BATCH_CHARS = 32 * 1024;
+
+    private final PrintStream out;
+
+    private StringBuilder batch = new StringBuilder();
+
+    Writer(PrintStream out) {
+      this.out = out;
+      final Thread flusher =
+          new Thread(
+              () -> {
+                while (true) {
+                  try {
+                    Thread.sleep(FLUSH_INTERVAL_MILLIS);
+                  } catch (InterruptedException e) {
+                    return;
+                  }
+                  flush();
+                }
+              },
+              "fmt-log-flusher");
+      flusher.setDaemon(true);
+      flusher.start();
+    }
+
+    /** Writes all pending records. */
+    void flush() {
+      final StringBuilder pending;
+      synchronized (this) {
+        if (batch.length() == 0) {
+          return;
+        }
+        pending = batch;
+        batch = new StringBuilder();
+      }
+      // A single print of whole lines, so that other output of the child cannot end up in the
+      // middle of a record.
+      synchronized (out) {
+        out.print(pending);
+        out.flush();
+      }
+    }
+
+    private void write(char level, CharSequence content, Throwable error) {
+      final boolean full;
+      synchronized (this) {
+        encode(batch, level, content, error);
+        full = batch.length() >= MAX_BATCH_CHARS;
+      }
+      if (full) {
+        flush();
+      }
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+      return true;
+    }
+
+    @Override
+    public void debug(CharSequence content) {
+      write(DEBUG, content, null);
+    }
+
+    @Override
+    public void debug(CharSequence content, Throwable error) {
+      write(DEBUG, content, error);
+    }
+
+    @Override
+    public void debug(Throwable error) {
+      write(DEBUG, null, error);
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+      return true;
+    }
+
+    @Override
+    public void info(CharSequence content) {
+      write(INFO, content, null);
+    }
+
+    @Override
+    public void info(CharSequence content, Throwable error) {
+      write(INFO, content, error);
+    }
+
+    @Override
+    public void info(Throwable error) {
+      write(INFO, null, error);
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+      return true;
+    }
+
+    @Override
+    public void warn(CharSequence content) {
+      write(WARN, content, null);
+    }
+
+    @Override
+    public void warn(CharSequence content, Throwable error) {
+      write(WARN, content, error);
+    }
+
+    @Override
+    public void warn(Throwable error) {
+      write(WARN, null, error);
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+      return true;
+    }
+
+    @Override
+    public void error(CharSequence content) {
+      write(ERROR, content, null);
+    }
+
+    @Override
+    public void error(CharSequence content, Throwable error) {
+      write(ERROR, content, error);
+    }
+
+    @Override
+    public void error(Throwable error) {
+      write(ERROR, null, error);
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue for many producers and a single consumer.
+ *
+ * <p>Each slot carries a sequence number telling producers whether it is free for the current lap
+ * and the consumer whether it has been published, so offering and polling are a handful of atomic
+ * operations without locks (D. Vyukov's bounded queue).
+ */
+class LogRingBuffer<T> {
+
+  private final int mask;
+  private final AtomicReferenceArray<T> slots;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+
+  /** Only accessed by the consumer thread. */
+  private long head;
+
+  LogRingBuffer(int capacity) {
+    if (Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+    }
+    this.mask = capacity - 1;
+    this.slots = new AtomicReferenceArray<>(capacity);
+    this.sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Adds {@code item} to the queue.
+   *
+   * @return {@code false} if the queue is full
+   */
+  boolean offer(T item) {
+    long position = tail.get();
+    while (true) {
+      final int index = (int) position & mask;
+      final long difference = sequences.get(index) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          slots.set(index, item);
+          sequences.set(index, position + 1);
+          return true;
+        }
+        position = tail.get();
+      } else if (difference < 0) {
+        return false;
+      } else {
+        position = tail.get();
+      }
+    }
+  }
+
+  /** Removes the oldest item, or returns {@code null} if there is none. Single consumer only. */
+  T poll() {
+    final long position = head;
+    final int index = (int) position & mask;
+    if (sequences.get(index) != position + 1) {
+      return null;
+    }
+    final T item = slots.get(index);
+    slots.set(index, null);
+    sequences.set(index, position + mask + 1);
+    head = position + 1;
+    return item;
+  }
+
+  /** Number of items offered so far. */
+  long offered() {
+    return tail.get();
+  }
+}
@@ -26,12 +26,44 @@
 
 package com.spotify.fmt;
 
+import java.util.function.Supplier;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugin.logging.SystemStreamLog;
 
-class Logger extends SystemStreamLog {
+/**
+ * The log of the formatter. Records are delivered asynchronously, see {@link AsyncLog}, and {@link
+ * Logging#flush()} must be called before relying on them having been written.
+ */
+class Logger implements Log {
 
   volatile boolean debug;
 
+  private final AsyncLog async = new AsyncLog(new SystemStreamLog());
+
+  Log target() {
+    return async.target();
+  }
+
+  /** Sends all further records to {@code target}. */
+  void target(Log target) {
+    async.target(target);
+  }
+
+  /** Blocks until all records logged so far have been delivered. */
+  void flush() {
+    async.flush();
+  }
+
+  /**
+   * Logs a debug message that is only built, on a background thread, if debug logging is enabled.
+   * The supplier must only capture immutable state.
+   */
+  void debug(Supplier<? extends CharSequence> content) {
+    if (isDebugEnabled()) {
+      async.debug(content, null);
+    }
+  }
+
   @Override
   public boolean isDebugEnabled() {
     return debug;
@@ -40,21 +72,81 @@ class Logger extends SystemStreamLog {
   @Override
   public void debug(CharSequence content) {
     if (isDebugEnabled()) {
-      super.debug(content);
+      async.debug(content, null);
     }
   }
 
   @Override
   public void debug(CharSequence content, Throwable error) {
     if (isDebugEnabled()) {
-      super.debug(content, error);
+      async.debug(content, error);
     }
   }
 
   @Override
   public void debug(Throwable error) {
     if (isDebugEnabled()) {
-      super.debug(error);
+      async.debug(null, error);
     }
   }
+
+  @Override
+  public boolean isInfoEnabled() {
+    return async.target().isInfoEnabled();
+  }
+
+  @Override
+  public void info(CharSequence content) {
+    async.info(content, null);
+  }
+
+  @Override
+  public void info(CharSequence content, Throwable error) {
+    async.info(content, error);
+  }
+
+  @Override
+  public void info(Throwable error) {
+    async.info(null, error);
+  }
+
+  @Override
+  public boolean isWarnEnabled() {
+    return async.target().isWarnEnabled();
+  }
+
+  @Override
+  public void warn(CharSequence content) {
+    async.warn(content, null);
+  }
+
+  @Override
+  public void warn(CharSequence content, Throwable error) {
+    async.warn(content, error);
+  }
+
+  @Override
+  public void warn(Throwable error) {
+    async.warn(null, error);
+  }
+
+  @Override
+  public boolean isErrorEnabled() {
+    return async.target().isErrorEnabled();
+  }
+
+  @Override
+  public void error(CharSequence content) {
+    async.error(content, null);
+  }
+
+  @Override
+  public void error(CharSequence content, Throwable error) {
+    async.error(content, error);
+  }
+
+  @Override
+  public void error(Throwable error) {
+    async.error(null, error);
+  }
 }
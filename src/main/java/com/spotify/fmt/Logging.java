@@ -26,17 +26,73 @@
 
 package com.spotify.fmt;
 
+import java.util.concurrent.locks.ReentrantLock;
 import org.apache.maven.plugin.logging.Log;
 
 class Logging {
 
   private static final Logger log = new Logger();
 
-  static Log getLog() {
+  private static volatile LogChannel.Writer channel;
+
+  static Logger getLog() {
     return log;
   }
 
   public static void configure(boolean debugLoggingEnabled) {
     log.debug = debugLoggingEnabled;
   }
+
+  /** Held while the log is redirected, as the log is shared by everything in the JVM. */
+  private static final ReentrantLock redirected = new ReentrantLock();
+
+  /**
+   * Sends all records to {@code target}, e.g. the output of the command line tool, until the
+   * returned redirect is closed, which restores the previous target and debug logging. Blocks while
+   * another thread has redirected the log, so that tools run in-process do not log to each other.
+   */
+  static Redirect redirect(Log target, boolean debugLoggingEnabled) {
+    redirected.lock();
+    final Redirect redirect = new Redirect(log.target(), log.debug);
+    log.target(target);
+    log.debug = debugLoggingEnabled;
+    return redirect;
+  }
+
+  /** Sends all records to the parent process. Only to be called in a forked child process. */
+  static void forwardToParent() {
+    channel = new LogChannel.Writer(System.out);
+    log.target(channel);
+  }
+
+  /** Writes any records that have not been written, or sent to the parent process, yet. */
+  static void flush() {
+    log.flush();
+    final LogChannel.Writer channel = Logging.channel;
+    if (channel != null) {
+      channel.flush();
+    }
+  }
+
+  /** Restores the log as it was before {@link #redirect}. */
+  static final class Redirect implements AutoCloseable {
+
+    private final Log previousTarget;
+    private final boolean previousDebug;
+
+    private Redirect(Log previousTarget, boolean previousDebug) {
+      this.previousTarget = previousTarget;
+      this.previousDebug = previousDebug;
+    }
+
+    @Override
+    public void close() {
+      try {
+        log.target(previousTarget);
+        log.debug = previousDebug;
+      } finally {
+        redirected.unlock();
+      }
+    }
+  }
 }
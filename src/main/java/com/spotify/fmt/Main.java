@@ -0,0 +1,221 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line tool running the {@link Formatter} without Maven, e.g. in pre-commit hooks. Also
+ * available in-process as the {@code fmt} {@link java.util.spi.ToolProvider}.
+ *
+ * <p>On JDK 16 and later google-java-format needs access to javac internals, see {@link
+ * AbstractFMT#javaArgs()}. The manifest of the {@code cli} jar grants it when run with {@code java
+ * -jar}, other JVMs running the tool must be started with them.
+ */
+public class Main {
+
+  static final int OK = 0;
+  static final int NON_COMPLYING = 1;
+  static final int USAGE_ERROR = 2;
+  static final int FAILED = 3;
+
+  static final String USAGE =
+      String.join(
+          System.lineSeparator(),
+          "Usage: fmt [options] <file or directory>...",
+          "",
+          "Formats Java files in place with google-java-format, or checks that they are formatted.",
+          "Directories are searched for files matching the patterns, files are formatted if they",
+          "match them.",
+          "",
+          "Options:",
+          "  --check                         Only check, exit with 1 if files are not formatted",
+          "  --style <google|aosp>           Style to format with (default: google)",
+          "  --files-name-pattern <regex>    Names of files to format (default: .*\\.java)",
+          "  --files-path-pattern <regex>    Paths of files to format (default: .*)",
+          "  --skip-sorting-imports          Do not sort imports",
+          "  --skip-removing-unused-imports  Do not remove unused imports",
+          "  --skip-reflowing-long-strings   Do not reflow long strings (default)",
+          "  --reflow-long-strings           Reflow long strings",
+          "  --threads <n>                   Formatting threads (default: number of CPUs)",
+          "  --verbose                       Log the files being formatted, with --debug",
+          "  --debug                         Log debug output",
+          "  --help                          Print this help",
+          "",
+          "Exit status: 0 if done, 1 if --check found files that are not formatted, 2 for",
+          "invalid arguments and 3 if files failed to format.",
+          "");
+
+  public static void main(String... args) {
+    final Charset charset = Charset.defaultCharset();
+    final int status =
+        run(
+            new PrintWriter(new OutputStreamWriter(System.out, charset), true),
+            new PrintWriter(new OutputStreamWriter(System.err, charset), true),
+            args);
+    System.exit(status);
+  }
+
+  /** Runs the tool, logging to {@code out} and {@code err}, and returns the exit status. */
+  static int run(PrintWriter out, PrintWriter err, String... args) {
+    final FormattingConfigurationBuilder configuration =
+        FormattingConfiguration.builder()
+            .style("google")
+            .filesNamePattern(".*\\.java")
+            .filesPathPattern(".*")
+            .skipReflowingLongStrings(true)
+            .writeReformattedFiles(true)
+            .processingLabel("reformatted");
+    final List<File> directories = new ArrayList<>();
+    final List<File> files = new ArrayList<>();
+    boolean debug = false;
+    try {
+      boolean options = true;
+      for (int i = 0; i < args.length; i++) {
+        final String arg = args[i];
+        if (!options || !arg.startsWith("--")) {
+          final File file = new File(arg);
+          if (file.isDirectory()) {
+            directories.add(file);
+          } else if (file.isFile()) {
+            files.add(file);
+          } else {
+            throw new IllegalArgumentException("No such file or directory: " + arg);
+          }
+          continue;
+        }
+        switch (arg) {
+          case "--":
+            options = false;
+            break;
+          case "--check":
+            configuration.writeReformattedFiles(false).processingLabel("non-complying");
+            break;
+          case "--style":
+            configuration.style(value(args, ++i, arg));
+            break;
+          case "--files-name-pattern":
+            configuration.filesNamePattern(value(args, ++i, arg));
+            break;
+          case "--files-path-pattern":
+            configuration.filesPathPattern(value(args, ++i, arg));
+            break;
+          case "--skip-sorting-imports":
+            configuration.skipSortingImports(true);
+            break;
+          case "--skip-removing-unused-imports":
+            configuration.skipRemovingUnusedImports(true);
+            break;
+          case "--skip-reflowing-long-strings":
+            configuration.skipReflowingLongStrings(true);
+            break;
+          case "--reflow-long-strings":
+            configuration.skipReflowingLongStrings(false);
+            break;
+          case "--threads":
+            configuration.threads(threads(value(args, ++i, arg)));
+            break;
+          case "--verbose":
+            configuration.verbose(true);
+            break;
+          case "--debug":
+            debug = true;
+            break;
+          case "--help":
+            out.print(USAGE);
+            out.flush();
+            return OK;
+          default:
+            throw new IllegalArgumentException("Unknown option: " + arg);
+        }
+      }
+      if (directories.isEmpty() && files.isEmpty()) {
+        throw new IllegalArgumentException("No files or directories to format");
+      }
+    } catch (IllegalArgumentException e) {
+      err.println("fmt: " + e.getMessage());
+      err.print(USAGE);
+      err.flush();
+      return USAGE_ERROR;
+    }
+
+    final FormattingConfiguration cfg =
+        configuration.debug(debug).directoriesToFormat(directories).build();
+    try (Logging.Redirect redirect = Logging.redirect(new PrintWriterLog(out, err, debug), debug)) {
+      return format(cfg, files);
+    } finally {
+      out.flush();
+      err.flush();
+    }
+  }
+
+  /** Formats the directories of {@code cfg} and {@code files}, logging to the redirected log. */
+  private static int format(FormattingConfiguration cfg, List<File> files) {
+    final Logger log = Logging.getLog();
+    try {
+      final List<String> nonComplying = new ArrayList<>();
+      if (!cfg.directoriesToFormat().isEmpty()) {
+        nonComplying.addAll(new Formatter(cfg).format().nonComplyingFiles());
+      }
+      if (!files.isEmpty()) {
+        nonComplying.addAll(new Formatter(cfg).format(files).nonComplyingFiles());
+      }
+      if (cfg.writeReformattedFiles() || nonComplying.isEmpty()) {
+        return OK;
+      }
+      nonComplying.forEach(path -> log.error("Non complying file: " + path));
+      return NON_COMPLYING;
+    } catch (FormatterException e) {
+      log.error(e.getMessage());
+      return FAILED;
+    }
+  }
+
+  private static String value(String[] args, int index, String option) {
+    if (index >= args.length) {
+      throw new IllegalArgumentException("Missing value of " + option);
+    }
+    return args[index];
+  }
+
+  private static int threads(String value) {
+    try {
+      final int threads = Integer.parseInt(value);
+      if (threads < 0) {
+        throw new IllegalArgumentException("Invalid number of threads: " + value);
+      }
+      return threads;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid number of threads: " + value);
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Merge mojo that combines the results written by the shards of a sharded run, see {@code
+ * shardCount}, into one report. Fails the build like {@code check} if any shard of a check found
+ * files that are not formatted, and if the result of any shard is missing.
+ */
+@Mojo(name = "merge", threadSafe = true)
+public class Merge extends Check {
+
+  private static final Pattern SHARD_RESULT = Pattern.compile("fmt-(.+)-shard-(\\d+)\\.ser");
+
+  /**
+   * Directory with the results of all shards, named like the default {@code shardResultFile}.
+   * Defaults to the build directory.
+   */
+  @Parameter(property = "fmt.shardResultsDirectory")
+  private File shardResultsDirectory;
+
+  private String mergedGoal;
+
+  @Override
+  public void execute() throws MojoFailureException {
+    final File directory = shardResultsDirectory != null ? shardResultsDirectory : buildDirectory();
+    final List<ShardResult> shards = readShardResults(directory);
+    if (shards.isEmpty()) {
+      throw new MojoFailureException("No shard results in " + directory + ", failing build");
+    }
+    validate(shards);
+    mergedGoal = shards.get(0).goal();
+    final FormattingResult result = ShardResult.merge(shards);
+    getLog()
+        .info(
+            String.format(
+                "Merged results of %d shards of %s: processed %d files (%d %s).",
+                shards.size(),
+                mergedGoal,
+                result.processedFiles().size(),
+                result.nonComplyingFiles().size(),
+                isCheck() ? getProcessingLabel() : "reformatted"));
+    report(result);
+  }
+
+  private static List<ShardResult> readShardResults(File directory) throws MojoFailureException {
+    final List<ShardResult> shards = new ArrayList<>();
+    if (!directory.isDirectory()) {
+      return shards;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory.toPath())) {
+      for (Path file : files) {
+        final Matcher matcher = SHARD_RESULT.matcher(file.getFileName().toString());
+        if (matcher.matches()) {
+          shards.add(ShardResult.read(file));
+        }
+      }
+    } catch (IOException | SerializationException e) {
+      throw new MojoFailureException("Failed to read shard results from " + directory, e);
+    }
+    shards.sort(Comparator.comparingInt(ShardResult::index));
+    return shards;
+  }
+
+  /** Fails unless {@code shards} are all shards of one run, each exactly once. */
+  static void validate(List<ShardResult> shards) throws MojoFailureException {
+    final Set<String> goals = new TreeSet<>();
+    final Set<Integer> counts = new TreeSet<>();
+    for (ShardResult shard : shards) {
+      goals.add(shard.goal());
+      counts.add(shard.count());
+    }
+    if (goals.size() > 1) {
+      throw new MojoFailureException("Found shard results of several goals: " + goals);
+    }
+    if (counts.size() > 1) {
+      throw new MojoFailureException("Found shard results of several shard counts: " + counts);
+    }
+    final int count = counts.iterator().next();
+    final int[] results = new int[count];
+    for (ShardResult shard : shards) {
+      if (shard.index() < 0 || shard.index() >= count) {
+        throw new MojoFailureException(
+            "Found result of shard " + shard.index() + " of only " + count + " shards");
+      }
+      results[shard.index()]++;
+    }
+    final List<Integer> missing = new ArrayList<>();
+    final List<Integer> duplicate = new ArrayList<>();
+    for (int index = 0; index < count; index++) {
+      if (results[index] == 0) {
+        missing.add(index);
+      } else if (results[index] > 1) {
+        duplicate.add(index);
+      }
+    }
+    if (!missing.isEmpty()) {
+      throw new MojoFailureException(
+          "Missing results of shards " + missing + " of " + count + ", failing build");
+    }
+    if (!duplicate.isEmpty()) {
+      throw new MojoFailureException("Found several results of shards " + duplicate);
+    }
+  }
+
+  private boolean isCheck() {
+    return mergedGoal.startsWith("check");
+  }
+
+  @Override
+  protected void postExecute(FormattingResult result) throws MojoFailureException {
+    if (isCheck()) {
+      super.postExecute(result);
+    }
+  }
+}
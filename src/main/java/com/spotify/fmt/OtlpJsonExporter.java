@@ -0,0 +1,141 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Appends spans to a local file in the OTLP JSON Lines format of the OpenTelemetry file exporter:
+ * one {@code ExportTraceServiceRequest} per line, so that every execution of a build can add its
+ * spans to the same file.
+ */
+class OtlpJsonExporter {
+
+  private static final int SPAN_KIND_INTERNAL = 1;
+
+  private final String serviceName;
+  private final String version;
+
+  OtlpJsonExporter(String serviceName, String version) {
+    this.serviceName = serviceName;
+    this.version = version;
+  }
+
+  void append(Path file, List<TraceSpan> spans) throws IOException {
+    if (spans.isEmpty()) {
+      return;
+    }
+    final ByteBuffer line = ByteBuffer.wrap(json(spans).getBytes(StandardCharsets.UTF_8));
+    final Path parent = file.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    // Executions of a parallel build may append at the same time, possibly from other JVMs.
+    synchronized (OtlpJsonExporter.class) {
+      try (FileChannel channel =
+              FileChannel.open(
+                  file,
+                  StandardOpenOption.CREATE,
+                  StandardOpenOption.WRITE,
+                  StandardOpenOption.APPEND);
+          FileLock lock = channel.lock()) {
+        while (line.hasRemaining()) {
+          channel.write(line);
+        }
+      }
+    }
+  }
+
+  String json(List<TraceSpan> spans) {
+    final StringBuilder json = new StringBuilder();
+    json.append("{\"resourceSpans\":[{\"resource\":{\"attributes\":[");
+    attribute(json, "service.name", serviceName);
+    json.append(',');
+    attribute(json, "service.version", version);
+    json.append("]},\"scopeSpans\":[{\"scope\":{\"name\":\"com.spotify.fmt\"},\"spans\":[");
+    String separator = "";
+    for (TraceSpan span : spans) {
+      json.append(separator);
+      span(json, span);
+      separator = ",";
+    }
+    json.append("]}]}]}\n");
+    return json.toString();
+  }
+
+  private static void span(StringBuilder json, TraceSpan span) {
+    json.append("{\"traceId\":\"").append(span.traceId()).append('"');
+    json.append(",\"spanId\":\"").append(span.spanId()).append('"');
+    if (span.parentSpanId() != null) {
+      json.append(",\"parentSpanId\":\"").append(span.parentSpanId()).append('"');
+    }
+    json.append(",\"name\":\"").append(escape(span.name())).append('"');
+    json.append(",\"kind\":").append(SPAN_KIND_INTERNAL);
+    // 64 bit integers are strings in the JSON mapping of protobuf
+    json.append(",\"startTimeUnixNano\":\"").append(span.startEpochNanos()).append('"');
+    json.append(",\"endTimeUnixNano\":\"").append(span.endEpochNanos()).append('"');
+    json.append(",\"attributes\":[");
+    String separator = "";
+    for (Map.Entry<String, String> attribute : span.attributes().entrySet()) {
+      json.append(separator);
+      attribute(json, attribute.getKey(), attribute.getValue());
+      separator = ",";
+    }
+    json.append("]}");
+  }
+
+  private static void attribute(StringBuilder json, String key, String value) {
+    json.append("{\"key\":\"")
+        .append(escape(key))
+        .append("\",\"value\":{\"stringValue\":\"")
+        .append(escape(value))
+        .append("\"}}");
+  }
+
+  private static String escape(String value) {
+    final StringBuilder escaped = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        escaped.append('\\').append(c);
+      } else if (c < 0x20) {
+        escaped.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+      } else {
+        escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+}
@@ -0,0 +1,132 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import com.spotify.fmt.FormattingStatistics.Phase;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Accumulates the time spent per {@link Phase}, from any number of threads. */
+class PhaseTimer {
+
+  private final LongAdder[] nanos = new LongAdder[Phase.values().length];
+
+  PhaseTimer() {
+    for (int i = 0; i < nanos.length; i++) {
+      nanos[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Adds the time since {@code startNanos} to {@code phase}.
+   *
+   * @return the current {@link System#nanoTime()}, to be used as start of the next phase
+   */
+  long record(Phase phase, long startNanos) {
+    final long now = System.nanoTime();
+    nanos[phase.ordinal()].add(now - startNanos);
+    return now;
+  }
+
+  /** Starts timing the phases of formatting {@code path}, starting with {@link Phase#READ}. */
+  FileTimer startFile(String path, long bytes) {
+    return new FileTimer(path, bytes);
+  }
+
+  Map<Phase, Long> totals() {
+    final Map<Phase, Long> totals = new EnumMap<>(Phase.class);
+    for (Phase phase : Phase.values()) {
+      totals.put(phase, nanos[phase.ordinal()].sum());
+    }
+    return totals;
+  }
+
+  /**
+   * Times the phases of a single file, adding them to the totals of the {@link PhaseTimer} and
+   * emitting Flight Recorder events for the file and each of its phases.
+   */
+  class FileTimer {
+
+    private final String path;
+    private final long bytes;
+    private final long startNanos;
+    private final long[] fileNanos = new long[Phase.values().length];
+    private final FormatFileEvent fileEvent = new FormatFileEvent();
+    private long phaseStartNanos;
+    private FormatPhaseEvent phaseEvent = new FormatPhaseEvent();
+
+    private FileTimer(String path, long bytes) {
+      this.path = path;
+      this.bytes = bytes;
+      fileEvent.begin();
+      phaseEvent.begin();
+      this.startNanos = System.nanoTime();
+      this.phaseStartNanos = startNanos;
+    }
+
+    /** Ends {@code phase}, and starts the next one. */
+    void record(Phase phase) {
+      final long previous = phaseStartNanos;
+      phaseStartNanos = PhaseTimer.this.record(phase, previous);
+      fileNanos[phase.ordinal()] += phaseStartNanos - previous;
+      if (phaseEvent.shouldCommit()) {
+        phaseEvent.path = path;
+        phaseEvent.phase = phase.name();
+        phaseEvent.commit();
+      }
+      phaseEvent = new FormatPhaseEvent();
+      phaseEvent.begin();
+    }
+
+    /**
+     * Ends timing the file with {@code outcome}, one of the outcomes of {@link FormatFileEvent}.
+     *
+     * @return the total time spent on the file
+     */
+    long finish(String outcome) {
+      final long totalNanos = phaseStartNanos - startNanos;
+      if (fileEvent.shouldCommit()) {
+        fileEvent.path = path;
+        fileEvent.size = bytes;
+        fileEvent.outcome = outcome;
+        fileEvent.commit();
+      }
+      return totalNanos;
+    }
+
+    FileTiming timing(long totalNanos) {
+      final Map<Phase, Long> breakdown = new EnumMap<>(Phase.class);
+      for (Phase phase : Phase.values()) {
+        if (fileNanos[phase.ordinal()] > 0) {
+          breakdown.put(phase, fileNanos[phase.ordinal()]);
+        }
+      }
+      return new FileTiming(path, bytes, totalNanos, breakdown);
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.PrintWriter;
+import org.apache.maven.plugin.logging.Log;
+
+/** Log of the command line tool, with information on one writer and problems on another. */
+class PrintWriterLog implements Log {
+
+  private final PrintWriter out;
+  private final PrintWriter err;
+  private final boolean debug;
+
+  PrintWriterLog(PrintWriter out, PrintWriter err, boolean debug) {
+    this.out = out;
+    this.err = err;
+    this.debug = debug;
+  }
+
+  @Override
+  public boolean isDebugEnabled() {
+    return debug;
+  }
+
+  @Override
+  public void debug(CharSequence content) {
+    debug(content, null);
+  }
+
+  @Override
+  public void debug(CharSequence content, Throwable error) {
+    if (debug) {
+      print(err, "debug: ", content, error);
+    }
+  }
+
+  @Override
+  public void debug(Throwable error) {
+    debug(null, error);
+  }
+
+  @Override
+  public boolean isInfoEnabled() {
+    return true;
+  }
+
+  @Override
+  public void info(CharSequence content) {
+    info(content, null);
+  }
+
+  @Override
+  public void info(CharSequence content, Throwable error) {
+    print(out, "", content, error);
+  }
+
+  @Override
+  public void info(Throwable error) {
+    info(null, error);
+  }
+
+  @Override
+  public boolean isWarnEnabled() {
+    return true;
+  }
+
+  @Override
+  public void warn(CharSequence content) {
+    warn(content, null);
+  }
+
+  @Override
+  public void warn(CharSequence content, Throwable error) {
+    print(err, "warning: ", content, error);
+  }
+
+  @Override
+  public void warn(Throwable error) {
+    warn(null, error);
+  }
+
+  @Override
+  public boolean isErrorEnabled() {
+    return true;
+  }
+
+  @Override
+  public void error(CharSequence content) {
+    error(content, null);
+  }
+
+  @Override
+  public void error(CharSequence content, Throwable error) {
+    print(err, "error: ", content, error);
+  }
+
+  @Override
+  public void error(Throwable error) {
+    error(null, error);
+  }
+
+  private static void print(
+      PrintWriter writer, String prefix, CharSequence content, Throwable error) {
+    synchronized (writer) {
+      if (content != null) {
+        writer.println(prefix + content);
+      }
+      if (error != null) {
+        error.printStackTrace(writer);
+      }
+      writer.flush();
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Logs how many of the discovered files have been formatted at a fixed interval, with the current
+ * rate and an estimate of the time remaining. When forked, the records reach the build log through
+ * the {@link LogChannel}.
+ */
+class ProgressReporter implements AutoCloseable {
+
+  private final Log log;
+  private final int total;
+  private final long intervalMillis;
+  private final AtomicInteger done = new AtomicInteger();
+  private final long startNanos = System.nanoTime();
+  private ScheduledExecutorService scheduler;
+
+  ProgressReporter(Log log, int total, long intervalMillis) {
+    this.log = log;
+    this.total = total;
+    this.intervalMillis = intervalMillis;
+  }
+
+  /** Starts reporting, unless the interval is {@code 0}. */
+  ProgressReporter start() {
+    if (intervalMillis > 0 && total > 0) {
+      scheduler =
+          Executors.newSingleThreadScheduledExecutor(
+              runnable -> {
+                Thread thread = new Thread(runnable, "fmt-progress");
+                thread.setDaemon(true);
+                return thread;
+              });
+      scheduler.scheduleAtFixedRate(
+          this::report, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+    return this;
+  }
+
+  /** Records that a file has been formatted, or failed to. */
+  void fileDone() {
+    done.incrementAndGet();
+  }
+
+  void report() {
+    log.info(describe(done.get(), total, System.nanoTime() - startNanos));
+  }
+
+  static String describe(int done, int total, long elapsedNanos) {
+    final double seconds = elapsedNanos / 1e9;
+    final double rate = seconds > 0 ? done / seconds : 0;
+    final String remaining =
+        rate > 0 ? "about " + duration((long) Math.ceil((total - done) / rate)) + " remaining" : "";
+    return String.format(
+        Locale.ROOT,
+        "Formatted %d of %d files (%d%%), %.1f files/s%s",
+        done,
+        total,
+        total > 0 ? done * 100L / total : 100,
+        rate,
+        remaining.isEmpty() ? "" : ", " + remaining);
+  }
+
+  private static String duration(long seconds) {
+    if (seconds < 60) {
+      return seconds + "s";
+    }
+    if (seconds < 3600) {
+      return String.format(Locale.ROOT, "%dm%02ds", seconds / 60, seconds % 60);
+    }
+    return String.format(Locale.ROOT, "%dh%02dm", seconds / 3600, seconds % 3600 / 60);
+  }
+
+  @Override
+  public void close() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Source directories collected from all projects of a reactor, remembering which module each
+ * directory belongs to so that results of a single formatting run can be reported per module.
+ */
+class ReactorSources {
+
+  private final Map<Path, String> moduleByDirectory = new LinkedHashMap<>();
+
+  /** Adds a source directory of {@code module}; duplicates are ignored. */
+  void add(String module, File directory) {
+    moduleByDirectory.putIfAbsent(normalize(directory), module);
+  }
+
+  /**
+   * The directories to format. Directories nested inside another directory are dropped since
+   * walking the outer directory already covers them.
+   */
+  List<File> directories() {
+    List<File> directories = new ArrayList<>();
+    for (Path directory : moduleByDirectory.keySet()) {
+      if (moduleByDirectory.keySet().stream()
+          .noneMatch(other -> !other.equals(directory) && directory.startsWith(other))) {
+        directories.add(directory.toFile());
+      }
+    }
+    return directories;
+  }
+
+  /** Returns the module owning {@code file}, i.e. the one with the most specific directory. */
+  String moduleOf(String file) {
+    Path path = normalize(new File(file));
+    Path best = null;
+    for (Path directory : moduleByDirectory.keySet()) {
+      if (path.startsWith(directory)
+          && (best == null || directory.getNameCount() > best.getNameCount())) {
+        best = directory;
+      }
+    }
+    return best == null ? "<unknown>" : moduleByDirectory.get(best);
+  }
+
+  /** Counts {@code files} per module, sorted by module. */
+  Map<String, Integer> countByModule(List<String> files) {
+    Map<String, Integer> counts = new TreeMap<>();
+    for (String file : files) {
+      counts.merge(moduleOf(file), 1, Integer::sum);
+    }
+    return counts;
+  }
+
+  private static Path normalize(File directory) {
+    return directory.toPath().toAbsolutePath().normalize();
+  }
+}
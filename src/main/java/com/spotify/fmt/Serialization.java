@@ -31,6 +31,7 @@ import static java.nio.file.StandardOpenOption.WRITE;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputFilter;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
@@ -65,16 +66,32 @@ class Serialization {
   }
 
   static <T> T deserialize(Path filePath) throws SerializationException {
+    return deserialize(filePath, null);
+  }
+
+  /**
+   * Deserializes {@code filePath}, rejecting classes that {@code filter} does not allow, for files
+   * that may have been written by someone else. No filter allows all classes.
+   */
+  static <T> T deserialize(Path filePath, ObjectInputFilter filter) throws SerializationException {
     try {
-      return deserialize(Files.newInputStream(filePath));
+      return deserialize(Files.newInputStream(filePath), filter);
     } catch (IOException e) {
       throw new SerializationException("Deserialization failed", e);
     }
   }
 
-  @SuppressWarnings("unchecked")
   static <T> T deserialize(InputStream inputStream) throws SerializationException {
+    return deserialize(inputStream, null);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T deserialize(InputStream inputStream, ObjectInputFilter filter)
+      throws SerializationException {
     try (ObjectInputStream ois = new ObjectInputStream(inputStream)) {
+      if (filter != null) {
+        ois.setObjectInputFilter(filter);
+      }
       return (T) ois.readObject();
     } catch (Throwable t) {
       throw new SerializationException("Deserialization failed", t);
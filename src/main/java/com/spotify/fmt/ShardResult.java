@@ -0,0 +1,175 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import com.spotify.fmt.FormattingStatistics.Phase;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of formatting one shard of the files of a sharded run, as written by each worker for
+ * the {@code merge} goal to combine.
+ */
+final class ShardResult implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The classes a shard result consists of. Results are exchanged between CI machines, so reading
+   * one must not instantiate anything else.
+   */
+  private static final ObjectInputFilter FILTER =
+      ObjectInputFilter.Config.createFilter(
+          "maxdepth=16;"
+              + "com.spotify.fmt.ShardResult;"
+              + "com.spotify.fmt.FormattingResultBuilder$Value;"
+              + "com.spotify.fmt.FormattingStatisticsBuilder$Value;"
+              + "com.spotify.fmt.FormattingStatistics$Phase;"
+              + "com.spotify.fmt.FileTiming;"
+              + "com.spotify.fmt.TraceSpan;"
+              + "java.lang.*;"
+              + "java.util.*;"
+              + "!*");
+
+  private final String goal;
+  private final int index;
+  private final int count;
+  private final FormattingResult result;
+
+  ShardResult(String goal, int index, int count, FormattingResult result) {
+    this.goal = goal;
+    this.index = index;
+    this.count = count;
+    this.result = result;
+  }
+
+  /** The goal that formatted the shard, such as {@code check}. */
+  String goal() {
+    return goal;
+  }
+
+  int index() {
+    return index;
+  }
+
+  int count() {
+    return count;
+  }
+
+  FormattingResult result() {
+    return result;
+  }
+
+  /** The name of the file a shard writes its result to by default. */
+  static String fileName(String goal, int index) {
+    return "fmt-" + goal + "-shard-" + index + ".ser";
+  }
+
+  static ShardResult read(Path file) throws SerializationException {
+    return Serialization.deserialize(file, FILTER);
+  }
+
+  /**
+   * Writes this result to {@code file}, replacing the result of an earlier run. Written to a
+   * temporary file first, so that a merge never reads a partially written result.
+   */
+  void write(Path file) throws IOException, SerializationException {
+    final Path directory = file.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    final Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    try {
+      try (OutputStream out = Files.newOutputStream(temporary)) {
+        Serialization.serialize(this, out);
+      }
+      Files.move(temporary, file, REPLACE_EXISTING, ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Combines the results of all shards of a run into the result of formatting all files at once.
+   * Shards run at the same time on different machines, so the wall time, peak heap and fork startup
+   * are those of the slowest shard, while the work done per phase adds up.
+   */
+  static FormattingResult merge(List<ShardResult> shards) {
+    final List<String> processedFiles = new ArrayList<>();
+    final List<String> nonComplyingFiles = new ArrayList<>();
+    final List<TraceSpan> spans = new ArrayList<>();
+    final Map<Phase, Long> phaseNanos = new EnumMap<>(Phase.class);
+    long wallTimeNanos = 0;
+    long bytesProcessed = 0;
+    long startedAtMillis = Long.MAX_VALUE;
+    long forkStartupMillis = 0;
+    long peakHeapBytes = -1;
+    int slowestFilesCapacity = 0;
+    for (ShardResult shard : shards) {
+      final FormattingResult result = shard.result();
+      final FormattingStatistics statistics = result.statistics();
+      processedFiles.addAll(result.processedFiles());
+      nonComplyingFiles.addAll(result.nonComplyingFiles());
+      spans.addAll(result.spans());
+      statistics.phaseNanos().forEach((phase, nanos) -> phaseNanos.merge(phase, nanos, Long::sum));
+      wallTimeNanos = Math.max(wallTimeNanos, statistics.wallTimeNanos());
+      bytesProcessed += statistics.bytesProcessed();
+      startedAtMillis = Math.min(startedAtMillis, statistics.startedAtMillis());
+      forkStartupMillis = Math.max(forkStartupMillis, statistics.forkStartupMillis());
+      peakHeapBytes = Math.max(peakHeapBytes, statistics.peakHeapBytes());
+      slowestFilesCapacity = Math.max(slowestFilesCapacity, statistics.slowestFiles().size());
+    }
+    final SlowestFiles slowestFiles = new SlowestFiles(slowestFilesCapacity);
+    for (ShardResult shard : shards) {
+      shard.result().statistics().slowestFiles().forEach(slowestFiles::offer);
+    }
+    return FormattingResult.builder()
+        .processedFiles(processedFiles)
+        .nonComplyingFiles(nonComplyingFiles)
+        .spans(spans)
+        .statistics(
+            FormattingStatistics.builder()
+                .wallTimeNanos(wallTimeNanos)
+                .phaseNanos(phaseNanos)
+                .bytesProcessed(bytesProcessed)
+                .startedAtMillis(shards.isEmpty() ? 0 : startedAtMillis)
+                .forkStartupMillis(forkStartupMillis)
+                .peakHeapBytes(peakHeapBytes)
+                .slowestFiles(slowestFiles.slowestFirst())
+                .build())
+        .build();
+  }
+}
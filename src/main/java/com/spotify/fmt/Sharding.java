@@ -0,0 +1,162 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.hash.Hashing;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Splits the files to format between {@code count} shards, so that several workers that see the
+ * same files, e.g. CI machines that checked out the same commit, each format a disjoint share of
+ * them and together format all of them.
+ *
+ * <p>Files are assigned by a stable hash of their path relative to the directory to format that
+ * contains them, so the assignment does not depend on where the workers checked out the repository,
+ * nor on the order files are discovered in. When balancing by size, files are instead assigned
+ * largest first to the shard with the fewest bytes so far, which evens out shards of repositories
+ * with a few very large files, at the cost of a file's shard depending on all others.
+ */
+final class Sharding {
+
+  private final int index;
+  private final int count;
+  private final boolean bySize;
+
+  Sharding(int index, int count, boolean bySize) {
+    if (count < 1) {
+      throw new IllegalArgumentException("Shard count must be positive: " + count);
+    }
+    if (index < 0 || index >= count) {
+      throw new IllegalArgumentException(
+          "Shard index must be between 0 and " + (count - 1) + ": " + index);
+    }
+    this.index = index;
+    this.count = count;
+    this.bySize = bySize;
+  }
+
+  /** The files of {@code files} in this shard, in their original order. */
+  List<File> select(List<File> files, List<File> directories) {
+    if (count == 1) {
+      return files;
+    }
+    final List<Path> roots =
+        directories.stream()
+            .map(directory -> directory.toPath().toAbsolutePath().normalize())
+            .collect(Collectors.toList());
+    final List<Entry> entries = new ArrayList<>(files.size());
+    for (File file : files) {
+      entries.add(new Entry(file, relativePath(file, roots)));
+    }
+    final Set<File> selected = bySize ? selectBySize(entries) : selectByHash(entries);
+    return files.stream().filter(selected::contains).collect(Collectors.toList());
+  }
+
+  private Set<File> selectByHash(List<Entry> entries) {
+    final Set<File> selected = new HashSet<>();
+    for (Entry entry : entries) {
+      if (Math.floorMod(entry.hash, count) == index) {
+        selected.add(entry.file);
+      }
+    }
+    return selected;
+  }
+
+  private Set<File> selectBySize(List<Entry> entries) {
+    for (Entry entry : entries) {
+      // Empty files still cost a read and a parse.
+      entry.size = Math.max(1, entry.file.length());
+    }
+    entries.sort(
+        Comparator.comparingLong((Entry entry) -> entry.size)
+            .reversed()
+            .thenComparing(entry -> entry.relativePath));
+    final long[] load = new long[count];
+    final Set<File> selected = new HashSet<>();
+    for (Entry entry : entries) {
+      int shard = 0;
+      for (int i = 1; i < count; i++) {
+        if (load[i] < load[shard]) {
+          shard = i;
+        }
+      }
+      load[shard] += entry.size;
+      if (shard == index) {
+        selected.add(entry.file);
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * The path of {@code file} relative to the innermost of {@code roots} that contains it, with
+   * {@code /} separators, or its absolute path if none does.
+   */
+  static String relativePath(File file, List<Path> roots) {
+    final Path path = file.toPath().toAbsolutePath().normalize();
+    Path root = null;
+    for (Path candidate : roots) {
+      if (path.startsWith(candidate)
+          && (root == null || candidate.getNameCount() > root.getNameCount())) {
+        root = candidate;
+      }
+    }
+    final Path relative = root != null ? root.relativize(path) : path;
+    return relative.toString().replace(File.separatorChar, '/');
+  }
+
+  static int hash(String relativePath) {
+    return Hashing.murmur3_32_fixed().hashString(relativePath, UTF_8).asInt();
+  }
+
+  @Override
+  public String toString() {
+    return "shard " + index + " of " + count;
+  }
+
+  private static final class Entry {
+    private final File file;
+    private final String relativePath;
+    private final int hash;
+    private long size;
+
+    private Entry(File file, String relativePath) {
+      this.file = file;
+      this.relativePath = relativePath;
+      this.hash = hash(relativePath);
+    }
+  }
+}
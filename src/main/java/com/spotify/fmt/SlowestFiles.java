@@ -0,0 +1,82 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the {@code capacity} slowest {@link FileTiming files} offered to it, from any number of
+ * threads. Most files are faster than the slowest ones seen so far, so they are rejected by
+ * comparing against a volatile threshold without taking the lock.
+ */
+class SlowestFiles {
+
+  private static final Comparator<FileTiming> FASTEST_FIRST =
+      Comparator.comparingLong(FileTiming::totalNanos);
+
+  private final int capacity;
+  private final PriorityQueue<FileTiming> slowest;
+  private volatile long threshold = Long.MIN_VALUE;
+
+  SlowestFiles(int capacity) {
+    this.capacity = capacity;
+    this.slowest = new PriorityQueue<>(Math.max(1, capacity), FASTEST_FIRST);
+  }
+
+  /** Returns whether a file that took {@code totalNanos} would currently be kept. */
+  boolean isCandidate(long totalNanos) {
+    return capacity > 0 && totalNanos > threshold;
+  }
+
+  void offer(FileTiming timing) {
+    if (!isCandidate(timing.totalNanos())) {
+      return;
+    }
+    synchronized (slowest) {
+      slowest.add(timing);
+      if (slowest.size() > capacity) {
+        slowest.poll();
+      }
+      if (slowest.size() == capacity) {
+        threshold = slowest.peek().totalNanos();
+      }
+    }
+  }
+
+  /** The kept files, slowest first. */
+  List<FileTiming> slowestFirst() {
+    final List<FileTiming> files;
+    synchronized (slowest) {
+      files = new ArrayList<>(slowest);
+    }
+    files.sort(FASTEST_FIRST.reversed());
+    return files;
+  }
+}
@@ -0,0 +1,171 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Watches source directories, including directories created while watching, for files that are
+ * created or modified. Changes are handed out in batches once a burst of them has settled, so that
+ * saving many files at once, or an editor writing a file in several steps, formats each file once.
+ */
+class SourceWatcher implements Closeable {
+
+  private final Log log;
+  private final long debounceMillis;
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+
+  SourceWatcher(Log log, List<File> roots, long debounceMillis) throws IOException {
+    this.log = log;
+    this.debounceMillis = debounceMillis;
+    this.watchService = FileSystems.getDefault().newWatchService();
+    try {
+      for (File root : roots) {
+        if (root.isDirectory()) {
+          register(root.toPath(), null);
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      watchService.close();
+      throw e;
+    }
+  }
+
+  /** Number of directories watched. */
+  int directories() {
+    return directories.size();
+  }
+
+  /**
+   * Waits for files to be created or modified, and then until none have been for the debounce time.
+   *
+   * @return the changed files, never empty
+   * @throws java.nio.file.ClosedWatchServiceException if the watcher is closed while waiting
+   */
+  Set<File> awaitChanges() throws InterruptedException {
+    final Set<File> changed = new TreeSet<>();
+    while (changed.isEmpty()) {
+      WatchKey key = watchService.take();
+      while (key != null) {
+        collect(key, changed);
+        key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+    return changed;
+  }
+
+  private void collect(WatchKey key, Set<File> changed) {
+    final Path directory = directories.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (directory == null) {
+        continue;
+      }
+      if (event.kind() == OVERFLOW) {
+        log.debug("Missed changes in " + directory + ", rescanning it");
+        addFiles(directory, changed);
+        continue;
+      }
+      final Path path = directory.resolve((Path) event.context());
+      if (Files.isDirectory(path)) {
+        if (event.kind() == ENTRY_CREATE) {
+          registerQuietly(path, changed);
+        }
+      } else if (Files.isRegularFile(path)) {
+        changed.add(path.toFile());
+      }
+    }
+    if (!key.reset()) {
+      directories.remove(key);
+    }
+  }
+
+  /**
+   * Watches a new directory and everything below it. Files may be written into it before it is
+   * watched, so they all count as changed.
+   */
+  private void registerQuietly(Path directory, Set<File> changed) {
+    try {
+      register(directory, changed);
+    } catch (IOException | UncheckedIOException e) {
+      log.warn("Failed to watch " + directory, e);
+    }
+  }
+
+  private void register(Path root, Set<File> changed) throws IOException {
+    try (Stream<Path> paths = Files.walk(root)) {
+      paths.forEach(
+          path -> {
+            if (Files.isDirectory(path)) {
+              try {
+                directories.put(path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), path);
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            } else if (changed != null && Files.isRegularFile(path)) {
+              changed.add(path.toFile());
+            }
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private void addFiles(Path directory, Set<File> changed) {
+    try (Stream<Path> paths = Files.list(directory)) {
+      paths.filter(Files::isRegularFile).map(Path::toFile).forEach(changed::add);
+    } catch (IOException | UncheckedIOException e) {
+      log.warn("Failed to rescan " + directory, e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+  }
+}
@@ -0,0 +1,167 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Watches formatting threads for files that take too long. When no file has completed for the stall
+ * timeout, the stacks of all threads are logged together with the file each formatting thread is
+ * working on, once per stall.
+ */
+class StallDetector implements AutoCloseable {
+
+  private final Log log;
+  private final long timeoutNanos;
+  private final Map<Thread, InFlight> inFlight = new ConcurrentHashMap<>();
+  private volatile long lastProgressNanos = System.nanoTime();
+  private volatile String stall;
+  private boolean reported;
+  private Thread watcher;
+
+  StallDetector(Log log, long timeoutNanos) {
+    this.log = log;
+    this.timeoutNanos = timeoutNanos;
+  }
+
+  /** Starts watching, unless the timeout is {@code 0}. */
+  StallDetector start() {
+    if (timeoutNanos > 0) {
+      watcher = new Thread(this::watch, "fmt-stall-detector");
+      watcher.setDaemon(true);
+      watcher.start();
+    }
+    return this;
+  }
+
+  /** Records that the current thread started formatting {@code path}. */
+  void started(String path) {
+    inFlight.put(Thread.currentThread(), new InFlight(path, System.nanoTime()));
+  }
+
+  /** Records that the current thread is done with its file. */
+  void finished() {
+    inFlight.remove(Thread.currentThread());
+    lastProgressNanos = System.nanoTime();
+  }
+
+  /** Description of the current stall, or {@code null} if formatting is progressing. */
+  String stall() {
+    return stall;
+  }
+
+  /**
+   * Checks for a stall at {@code nowNanos}, logging thread dumps the first time one is detected.
+   *
+   * @return whether formatting is stalled
+   */
+  synchronized boolean check(long nowNanos) {
+    final long idleNanos = nowNanos - lastProgressNanos;
+    if (idleNanos < timeoutNanos || inFlight.isEmpty()) {
+      stall = null;
+      reported = false;
+      return false;
+    }
+    final List<String> files = new ArrayList<>();
+    inFlight.forEach(
+        (thread, file) ->
+            files.add(
+                file.path
+                    + " (for "
+                    + seconds(nowNanos - file.startNanos)
+                    + " on "
+                    + thread.getName()
+                    + ")"));
+    stall = "No file finished formatting in " + seconds(idleNanos) + ", formatting " + files;
+    if (!reported) {
+      reported = true;
+      log.warn(stall + ". Thread dump:\n" + threadDump(nowNanos));
+    }
+    return true;
+  }
+
+  private void watch() {
+    final long pollMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeoutNanos) / 4);
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        Thread.sleep(pollMillis);
+        check(System.nanoTime());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private String threadDump(long nowNanos) {
+    final StringBuilder dump = new StringBuilder();
+    for (Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+      final Thread thread = entry.getKey();
+      dump.append('"').append(thread.getName()).append("\" ").append(thread.getState());
+      final InFlight file = inFlight.get(thread);
+      if (file != null) {
+        dump.append(" formatting ")
+            .append(file.path)
+            .append(" for ")
+            .append(seconds(nowNanos - file.startNanos));
+      }
+      dump.append('\n');
+      for (StackTraceElement frame : entry.getValue()) {
+        dump.append("\tat ").append(frame).append('\n');
+      }
+      dump.append('\n');
+    }
+    return dump.toString();
+  }
+
+  private static String seconds(long nanos) {
+    return String.format(Locale.ROOT, "%.1fs", nanos / 1e9);
+  }
+
+  @Override
+  public void close() {
+    if (watcher != null) {
+      watcher.interrupt();
+    }
+  }
+
+  private static class InFlight {
+
+    private final String path;
+    private final long startNanos;
+
+    private InFlight(String path, long startNanos) {
+      this.path = path;
+      this.startNanos = startNanos;
+    }
+  }
+}
@@ -0,0 +1,269 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import com.spotify.fmt.FormattingStatistics.Phase;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the {@link FormattingStatistics} of a run as JSON or in the Prometheus text file format,
+ * so that the cost of formatting can be charted across builds.
+ */
+class StatisticsReport {
+
+  static final String JSON = "json";
+  static final String PROMETHEUS = "prometheus";
+
+  private static final double NANOS_PER_SECOND = 1e9;
+
+  private final String project;
+  private final String goal;
+  private final FormattingResult result;
+
+  StatisticsReport(String project, String goal, FormattingResult result) {
+    this.project = project;
+    this.goal = goal;
+    this.result = result;
+  }
+
+  static boolean isSupportedFormat(String format) {
+    return JSON.equals(format) || PROMETHEUS.equals(format);
+  }
+
+  /**
+   * Writes the report to {@code file}. The file is replaced atomically where supported, so that
+   * collectors never read a partial report.
+   */
+  void write(Path file, String format) throws IOException {
+    final String content = PROMETHEUS.equals(format) ? prometheus() : json();
+    final Path parent = file.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    final Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+    try {
+      Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+      try {
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  String json() {
+    final FormattingStatistics statistics = result.statistics();
+    final StringBuilder json = new StringBuilder("{\n");
+    json.append("  \"project\": \"").append(escapeJson(project)).append("\",\n");
+    json.append("  \"goal\": \"").append(escapeJson(goal)).append("\",\n");
+    json.append("  \"filesProcessed\": ").append(result.processedFiles().size()).append(",\n");
+    json.append("  \"filesNonComplying\": ")
+        .append(result.nonComplyingFiles().size())
+        .append(",\n");
+    json.append("  \"bytesProcessed\": ").append(statistics.bytesProcessed()).append(",\n");
+    json.append("  \"wallTimeSeconds\": ")
+        .append(seconds(statistics.wallTimeNanos()))
+        .append(",\n");
+    json.append("  \"filesPerSecond\": ").append(number(filesPerSecond())).append(",\n");
+    json.append("  \"forkStartupSeconds\": ")
+        .append(number(statistics.forkStartupMillis() / 1000.0))
+        .append(",\n");
+    json.append("  \"peakHeapBytes\": ")
+        .append(
+            statistics.peakHeapBytes() >= 0 ? String.valueOf(statistics.peakHeapBytes()) : "null")
+        .append(",\n");
+    json.append("  \"phaseSeconds\": {");
+    String separator = "\n";
+    for (Map.Entry<Phase, Long> phase : statistics.phaseNanos().entrySet()) {
+      json.append(separator)
+          .append("    \"")
+          .append(name(phase.getKey()))
+          .append("\": ")
+          .append(seconds(phase.getValue()));
+      separator = ",\n";
+    }
+    json.append("\n  },\n");
+    json.append("  \"slowestFiles\": [");
+    separator = "\n";
+    for (FileTiming file : statistics.slowestFiles()) {
+      json.append(separator)
+          .append("    {\"path\": \"")
+          .append(escapeJson(file.path()))
+          .append("\", \"bytes\": ")
+          .append(file.bytes())
+          .append(", \"seconds\": ")
+          .append(seconds(file.totalNanos()))
+          .append(", \"phaseSeconds\": {");
+      String phaseSeparator = "";
+      for (Map.Entry<Phase, Long> phase : file.phaseNanos().entrySet()) {
+        json.append(phaseSeparator)
+            .append('"')
+            .append(name(phase.getKey()))
+            .append("\": ")
+            .append(seconds(phase.getValue()));
+        phaseSeparator = ", ";
+      }
+      json.append("}}");
+      separator = ",\n";
+    }
+    json.append(statistics.slowestFiles().isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+    return json.toString();
+  }
+
+  String prometheus() {
+    final FormattingStatistics statistics = result.statistics();
+    final String labels =
+        "project=\"" + escapeLabel(project) + "\",goal=\"" + escapeLabel(goal) + "\"";
+    final StringBuilder text = new StringBuilder();
+    gauge(
+        text,
+        "fmt_files_processed",
+        "Number of files processed.",
+        labels,
+        result.processedFiles().size());
+    gauge(
+        text,
+        "fmt_files_non_complying",
+        "Number of files that were not formatted.",
+        labels,
+        result.nonComplyingFiles().size());
+    gauge(
+        text,
+        "fmt_bytes_processed",
+        "Number of bytes read from source files.",
+        labels,
+        statistics.bytesProcessed());
+    gauge(
+        text,
+        "fmt_wall_seconds",
+        "Wall time of the formatting run.",
+        labels,
+        statistics.wallTimeNanos() / NANOS_PER_SECOND);
+    gauge(
+        text,
+        "fmt_files_per_second",
+        "Files processed per second of wall time.",
+        labels,
+        filesPerSecond());
+    gauge(
+        text,
+        "fmt_fork_startup_seconds",
+        "Time until formatting started in the fork.",
+        labels,
+        statistics.forkStartupMillis() / 1000.0);
+    if (statistics.peakHeapBytes() >= 0) {
+      gauge(
+          text,
+          "fmt_peak_heap_bytes",
+          "Peak heap usage of the forked formatting JVM.",
+          labels,
+          statistics.peakHeapBytes());
+    }
+    header(text, "fmt_phase_seconds", "Time per phase, summed over formatting threads.");
+    for (Map.Entry<Phase, Long> phase : statistics.phaseNanos().entrySet()) {
+      text.append("fmt_phase_seconds{")
+          .append(labels)
+          .append(",phase=\"")
+          .append(name(phase.getKey()))
+          .append("\"} ")
+          .append(seconds(phase.getValue()))
+          .append('\n');
+    }
+    if (!statistics.slowestFiles().isEmpty()) {
+      header(text, "fmt_slowest_file_seconds", "Time to format each of the slowest files.");
+      for (FileTiming file : statistics.slowestFiles()) {
+        text.append("fmt_slowest_file_seconds{")
+            .append(labels)
+            .append(",path=\"")
+            .append(escapeLabel(file.path()))
+            .append("\"} ")
+            .append(seconds(file.totalNanos()))
+            .append('\n');
+      }
+    }
+    return text.toString();
+  }
+
+  private double filesPerSecond() {
+    final long wallTimeNanos = result.statistics().wallTimeNanos();
+    return wallTimeNanos > 0
+        ? result.processedFiles().size() * NANOS_PER_SECOND / wallTimeNanos
+        : 0;
+  }
+
+  private static void gauge(
+      StringBuilder text, String name, String help, String labels, double value) {
+    header(text, name, help);
+    text.append(name).append('{').append(labels).append("} ").append(number(value)).append('\n');
+  }
+
+  private static void header(StringBuilder text, String name, String help) {
+    text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    text.append("# TYPE ").append(name).append(" gauge\n");
+  }
+
+  private static String name(Phase phase) {
+    return phase.name().toLowerCase(Locale.ROOT);
+  }
+
+  private static String seconds(long nanos) {
+    return number(nanos / NANOS_PER_SECOND);
+  }
+
+  private static String number(double value) {
+    if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      return Long.toString((long) value);
+    }
+    return String.format(Locale.ROOT, "%.6f", value);
+  }
+
+  private static String escapeJson(String value) {
+    final StringBuilder escaped = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        escaped.append('\\').append(c);
+      } else if (c < 0x20) {
+        escaped.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+      } else {
+        escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+
+  private static String escapeLabel(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
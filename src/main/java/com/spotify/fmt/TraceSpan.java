@@ -0,0 +1,108 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A finished span of a trace, in the shape of an OpenTelemetry span. */
+final class TraceSpan implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String traceId;
+  private final String spanId;
+  private final String parentSpanId;
+  private final String name;
+  private final long startEpochNanos;
+  private final long endEpochNanos;
+  private final Map<String, String> attributes;
+
+  TraceSpan(
+      String traceId,
+      String spanId,
+      String parentSpanId,
+      String name,
+      long startEpochNanos,
+      long endEpochNanos,
+      Map<String, String> attributes) {
+    this.traceId = traceId;
+    this.spanId = spanId;
+    this.parentSpanId = parentSpanId;
+    this.name = name;
+    this.startEpochNanos = startEpochNanos;
+    this.endEpochNanos = endEpochNanos;
+    this.attributes = Collections.unmodifiableMap(new LinkedHashMap<>(attributes));
+  }
+
+  String traceId() {
+    return traceId;
+  }
+
+  String spanId() {
+    return spanId;
+  }
+
+  /** Id of the parent span, or {@code null} for a root span. */
+  String parentSpanId() {
+    return parentSpanId;
+  }
+
+  String name() {
+    return name;
+  }
+
+  long startEpochNanos() {
+    return startEpochNanos;
+  }
+
+  long endEpochNanos() {
+    return endEpochNanos;
+  }
+
+  Map<String, String> attributes() {
+    return attributes;
+  }
+
+  @Override
+  public String toString() {
+    return "TraceSpan{"
+        + "name="
+        + name
+        + ", spanId="
+        + spanId
+        + ", parentSpanId="
+        + parentSpanId
+        + ", durationNanos="
+        + (endEpochNanos - startEpochNanos)
+        + ", attributes="
+        + attributes
+        + '}';
+  }
+}
@@ -0,0 +1,195 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Collects the spans of one trace in memory, to be exported by {@link OtlpJsonExporter}. The trace
+ * is continued from a W3C {@code traceparent}, which is also how it is handed to a forked JVM.
+ */
+class Tracer {
+
+  private static final Pattern TRACE_PARENT =
+      Pattern.compile("00-([0-9a-f]{32})-([0-9a-f]{16})-[0-9a-f]{2}");
+
+  private static final Tracer DISABLED = new Tracer(null, null, 0);
+
+  private final String traceId;
+  private final String parentSpanId;
+  private final double sampleRate;
+  private final ConcurrentLinkedQueue<TraceSpan> spans = new ConcurrentLinkedQueue<>();
+
+  // Wall clock time is only read once, spans are timed with the monotonic clock from there.
+  private final long epochNanosAtStart = System.currentTimeMillis() * 1_000_000;
+  private final long nanoTimeAtStart = System.nanoTime();
+
+  private Tracer(String traceId, String parentSpanId, double sampleRate) {
+    this.traceId = traceId;
+    this.parentSpanId = parentSpanId;
+    this.sampleRate = sampleRate;
+  }
+
+  static Tracer disabled() {
+    return DISABLED;
+  }
+
+  /**
+   * Continues the trace of {@code traceParent}, or starts a new trace if it is {@code null} or not
+   * a valid W3C trace context.
+   *
+   * @param sampleRate fraction of the spans passing {@link #sampled(String)}
+   */
+  static Tracer continueTrace(String traceParent, double sampleRate) {
+    final Matcher matcher = TRACE_PARENT.matcher(traceParent == null ? "" : traceParent.trim());
+    if (matcher.matches()) {
+      return new Tracer(matcher.group(1), matcher.group(2), sampleRate);
+    }
+    return new Tracer(randomId(16), null, sampleRate);
+  }
+
+  boolean isEnabled() {
+    return traceId != null;
+  }
+
+  /** The span that spans started without a parent are children of, or {@code null}. */
+  String parentSpanId() {
+    return parentSpanId;
+  }
+
+  /** The W3C trace context to continue the trace under {@code spanId} elsewhere. */
+  String traceParent(String spanId) {
+    return "00-" + traceId + "-" + spanId + "-01";
+  }
+
+  /**
+   * Whether to trace the item identified by {@code key}. The decision only depends on the key, so
+   * that the same files are traced in every build.
+   */
+  boolean sampled(String key) {
+    if (!isEnabled() || sampleRate <= 0) {
+      return false;
+    }
+    // Mix the bits of the hash, as the hashes of similar paths differ in the low bits only.
+    int hash = key.hashCode();
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    hash ^= hash >>> 16;
+    return (hash & 0x7fffffff) < sampleRate * (1L << 31);
+  }
+
+  /** Starts a span under {@code parentSpanId}, or under the parent of the trace if null. */
+  Span start(String name, String parentSpanId) {
+    return new Span(name, parentSpanId != null ? parentSpanId : this.parentSpanId, now());
+  }
+
+  /** Records a span that has already ended. */
+  void record(
+      String name,
+      String parentSpanId,
+      long startEpochNanos,
+      long endEpochNanos,
+      Map<String, String> attributes) {
+    if (isEnabled()) {
+      spans.add(
+          new TraceSpan(
+              traceId,
+              randomId(8),
+              parentSpanId,
+              name,
+              startEpochNanos,
+              endEpochNanos,
+              attributes));
+    }
+  }
+
+  /** Adds spans recorded by another tracer of this trace, e.g. in a forked JVM. */
+  void addAll(List<TraceSpan> spans) {
+    if (isEnabled()) {
+      this.spans.addAll(spans);
+    }
+  }
+
+  List<TraceSpan> spans() {
+    return new ArrayList<>(spans);
+  }
+
+  long now() {
+    return epochNanosAtStart + (System.nanoTime() - nanoTimeAtStart);
+  }
+
+  private static String randomId(int bytes) {
+    final StringBuilder id = new StringBuilder(bytes * 2);
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < bytes; i++) {
+      id.append(String.format(Locale.ROOT, "%02x", random.nextInt(256)));
+    }
+    return id.toString();
+  }
+
+  /** A span that has been started and not yet ended. */
+  class Span {
+
+    private final String name;
+    private final String parentSpanId;
+    private final String spanId = isEnabled() ? randomId(8) : null;
+    private final long startEpochNanos;
+    private final Map<String, String> attributes = new LinkedHashMap<>();
+
+    private Span(String name, String parentSpanId, long startEpochNanos) {
+      this.name = name;
+      this.parentSpanId = parentSpanId;
+      this.startEpochNanos = startEpochNanos;
+    }
+
+    String spanId() {
+      return spanId;
+    }
+
+    Span attribute(String key, Object value) {
+      attributes.put(key, String.valueOf(value));
+      return this;
+    }
+
+    void end() {
+      if (isEnabled()) {
+        spans.add(
+            new TraceSpan(traceId, spanId, parentSpanId, name, startEpochNanos, now(), attributes));
+      }
+    }
+  }
+}
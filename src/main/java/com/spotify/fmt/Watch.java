@@ -0,0 +1,161 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Watch mojo that formats all files once and then keeps running, reformatting files as they are
+ * created or modified, until it is stopped. Only changed files are formatted, in a JVM that stays
+ * warm, so a save is formatted in milliseconds instead of the seconds that {@code fmt:format}
+ * spends on starting Maven and a fork.
+ */
+@Mojo(name = "watch", threadSafe = true)
+public class Watch extends AbstractFMT {
+
+  /** Only report changed files that are not formatted, instead of reformatting them. */
+  @Parameter(defaultValue = "false", property = "fmt.checkOnly")
+  private boolean checkOnly;
+
+  /**
+   * Milliseconds without further changes to wait for before formatting changed files, so that a
+   * burst of saves is formatted once.
+   */
+  @Parameter(defaultValue = "200", property = "fmt.debounce")
+  private int debounce;
+
+  @Override
+  SerializableCallable<FormattingResult> formattingCallable(FormattingConfiguration configuration) {
+    return new WatchingCallable(configuration, debounce);
+  }
+
+  @Override
+  protected boolean isLongRunning() {
+    return true;
+  }
+
+  @Override
+  protected boolean shouldWriteReformattedFiles() {
+    return !checkOnly;
+  }
+
+  /**
+   * Provides the name of the label used when a non-formatted file is found.
+   *
+   * @return the label to use in the log
+   */
+  @Override
+  protected String getProcessingLabel() {
+    return checkOnly ? "non-complying" : "reformatted";
+  }
+
+  /** Formats all files, then changed files until interrupted, in whichever JVM it is called in. */
+  static class WatchingCallable implements SerializableCallable<FormattingResult> {
+
+    private final FormattingConfiguration configuration;
+    private final long debounceMillis;
+
+    WatchingCallable(FormattingConfiguration configuration, long debounceMillis) {
+      this.configuration = configuration;
+      this.debounceMillis = debounceMillis;
+    }
+
+    @Override
+    public FormattingResult call() throws IOException, FormatterException {
+      Logging.configure(configuration.debug());
+      final Logger log = Logging.getLog();
+      // Modification times of the files we reformatted, to not format them again.
+      final Map<File, Long> reformatted = new HashMap<>();
+      // Watch before the first pass, so that files changed while it runs are formatted again.
+      try (SourceWatcher watcher =
+          new SourceWatcher(log, configuration.directoriesToFormat(), debounceMillis)) {
+        FormattingResult result = format(null, reformatted);
+        if (result == null) {
+          result =
+              FormattingResult.builder()
+                  .statistics(
+                      FormattingStatistics.builder()
+                          .startedAtMillis(System.currentTimeMillis())
+                          .build())
+                  .build();
+        }
+        log.info("Watching " + watcher.directories() + " directories for changes");
+        Logging.flush();
+        while (true) {
+          final Set<File> changed;
+          try {
+            changed = watcher.awaitChanges();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return result;
+          } catch (ClosedWatchServiceException e) {
+            return result;
+          }
+          changed.removeIf(file -> reformatted.remove(file, file.lastModified()));
+          if (!changed.isEmpty()) {
+            final FormattingResult batch = format(changed, reformatted);
+            result = batch != null ? batch : result;
+          }
+          Logging.flush();
+        }
+      } finally {
+        Logging.flush();
+      }
+    }
+
+    /**
+     * Formats {@code files}, or all files if null, and logs each file that was not formatted.
+     * Returns null if some files failed to format, e.g. while they are being edited.
+     */
+    private FormattingResult format(Set<File> files, Map<File, Long> reformatted) {
+      final Logger log = Logging.getLog();
+      try {
+        final FormattingResult result = new Formatter(configuration).format(files);
+        for (String path : result.nonComplyingFiles()) {
+          if (configuration.writeReformattedFiles()) {
+            final File file = new File(path);
+            reformatted.put(file, file.lastModified());
+            log.info("Reformatted " + path);
+          } else {
+            log.warn("Non complying file: " + path);
+          }
+        }
+        return result;
+      } catch (FormatterException e) {
+        log.error(e.getMessage());
+        return null;
+      }
+    }
+  }
+}
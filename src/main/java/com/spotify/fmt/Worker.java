@@ -0,0 +1,169 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Worker mojo that formats batches of files handed out by a process running the {@code coordinator}
+ * goal, until it has none left. Runs with the configuration of the project it is started in, which
+ * should be the same as the coordinator's, in a workspace with the same sources.
+ */
+@Mojo(name = "worker", aggregator = true, threadSafe = true)
+public class Worker extends AbstractFMT {
+
+  /** Address of the coordinator, as {@code host:port}. */
+  @Parameter(defaultValue = "localhost:7345", property = "fmt.coordinator")
+  private String coordinator;
+
+  /** Name of this worker in the logs of the coordinator. Defaults to the host and process id. */
+  @Parameter(property = "fmt.workerName")
+  private String workerName;
+
+  /** Seconds to keep trying to connect to the coordinator, e.g. while it is still starting. */
+  @Parameter(defaultValue = "300", property = "fmt.workerConnectTimeout")
+  private int workerConnectTimeout;
+
+  @Override
+  SerializableCallable<FormattingResult> formattingCallable(FormattingConfiguration configuration) {
+    return new WorkerCallable(
+        configuration,
+        executionRootDirectory(),
+        coordinator,
+        workerName,
+        TimeUnit.SECONDS.toNanos(workerConnectTimeout));
+  }
+
+  @Override
+  protected boolean isAggregator() {
+    return true;
+  }
+
+  @Override
+  protected boolean isLongRunning() {
+    return true;
+  }
+
+  @Override
+  protected boolean shouldWriteReformattedFiles() {
+    // Decided by the coordinator.
+    return false;
+  }
+
+  /**
+   * Provides the name of the label used when a non-formatted file is found.
+   *
+   * @return the label to use in the log
+   */
+  @Override
+  protected String getProcessingLabel() {
+    return "non-complying or reformatted";
+  }
+
+  /** Parses {@code host:port}. */
+  static InetSocketAddress address(String coordinator) throws MojoFailureException {
+    final int colon = coordinator.lastIndexOf(':');
+    try {
+      return InetSocketAddress.createUnresolved(
+          coordinator.substring(0, colon), Integer.parseInt(coordinator.substring(colon + 1)));
+    } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+      throw new MojoFailureException(
+          "Invalid coordinator: " + coordinator + ", must be `host:port`");
+    }
+  }
+
+  /** Runs a {@link FormattingWorker} with a {@link Formatter} until the coordinator is done. */
+  static class WorkerCallable implements SerializableCallable<FormattingResult> {
+
+    private final FormattingConfiguration configuration;
+    private final File root;
+    private final String coordinator;
+    private final String name;
+    private final long connectTimeoutNanos;
+
+    WorkerCallable(
+        FormattingConfiguration configuration,
+        File root,
+        String coordinator,
+        String name,
+        long connectTimeoutNanos) {
+      this.configuration = configuration;
+      this.root = root;
+      this.coordinator = coordinator;
+      this.name = name;
+      this.connectTimeoutNanos = connectTimeoutNanos;
+    }
+
+    @Override
+    public FormattingResult call() throws Exception {
+      Logging.configure(configuration.debug());
+      final InetSocketAddress address = address(coordinator);
+      try {
+        return new FormattingWorker(
+                Logging.getLog(), root.toPath(), name != null ? name : defaultName(), this::format)
+            .run(
+                new InetSocketAddress(address.getHostString(), address.getPort()),
+                connectTimeoutNanos);
+      } finally {
+        Logging.flush();
+      }
+    }
+
+    /**
+     * Formats a batch like the goal of the coordinator does. Files outside of the source
+     * directories of this worker are skipped, like with {@code files}.
+     */
+    private FormattingResult format(List<File> files, boolean writeReformattedFiles) {
+      return new Formatter(
+              FormattingConfigurationBuilder.from(configuration)
+                  .writeReformattedFiles(writeReformattedFiles)
+                  .processingLabel(writeReformattedFiles ? "reformatted" : "non-complying")
+                  .filesToFormat(files)
+                  .build())
+          .format();
+    }
+
+    private static String defaultName() {
+      String host;
+      try {
+        host = InetAddress.getLocalHost().getHostName();
+      } catch (IOException e) {
+        host = "worker";
+      }
+      return host + "-" + ManagementFactory.getRuntimeMXBean().getPid();
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * The temporary directory of a forked execution, holding the serialized closure, result and error
+ * and the working directory of the sub-process. Deleted when closed.
+ */
+class Workspace implements Closeable {
+
+  private final Log log;
+  private final Path tempdir;
+  private final Path workdir;
+
+  private Workspace(Log log, Path tempdir, Path workdir) {
+    this.log = log;
+    this.tempdir = tempdir;
+    this.workdir = workdir;
+  }
+
+  static Workspace create(Log log) throws IOException {
+    final Path tempdir = Files.createTempDirectory("fmt-maven-plugin");
+    return new Workspace(log, tempdir, Files.createDirectory(tempdir.resolve("workdir")));
+  }
+
+  Path workdir() {
+    return workdir;
+  }
+
+  Path closureFile() {
+    return tempdir.resolve("closure");
+  }
+
+  Path resultFile() {
+    return tempdir.resolve("result");
+  }
+
+  Path errorFile() {
+    return tempdir.resolve("error");
+  }
+
+  @Override
+  public void close() {
+    try {
+      deleteDir(tempdir);
+    } catch (IOException e) {
+      log.warn("Failed to delete directory: " + tempdir, e);
+    }
+  }
+
+  private static void deleteDir(Path path) throws IOException {
+    try {
+      Files.walkFileTree(
+          path,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                throws IOException {
+              try {
+                Files.delete(file);
+              } catch (NoSuchFileException ignore) {
+              }
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc)
+                throws IOException {
+              try {
+                Files.delete(dir);
+              } catch (NoSuchFileException ignore) {
+              }
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    } catch (NoSuchFileException ignore) {
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+public class AsyncLogTest {
+
+  @Test
+  public void ringBufferRejectsWhenFull() {
+    LogRingBuffer<String> ring = new LogRingBuffer<>(2);
+    assertThat(ring.offer("a")).isTrue();
+    assertThat(ring.offer("b")).isTrue();
+    assertThat(ring.offer("c")).isFalse();
+    assertThat(ring.poll()).isEqualTo("a");
+    assertThat(ring.offer("c")).isTrue();
+    assertThat(ring.poll()).isEqualTo("b");
+    assertThat(ring.poll()).isEqualTo("c");
+    assertThat(ring.poll()).isNull();
+  }
+
+  @Test
+  public void ringBufferKeepsOrderOfEachProducer() throws Exception {
+    LogRingBuffer<int[]> ring = new LogRingBuffer<>(64);
+    int producers = 4;
+    int items = 10_000;
+    ExecutorService executor = Executors.newFixedThreadPool(producers);
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      executor.submit(
+          () -> {
+            for (int i = 0; i < items; i++) {
+              while (!ring.offer(new int[] {producer, i})) {
+                Thread.yield();
+              }
+            }
+          });
+    }
+
+    int[] next = new int[producers];
+    int received = 0;
+    while (received < producers * items) {
+      int[] item = ring.poll();
+      if (item != null) {
+        assertThat(item[1]).isEqualTo(next[item[0]]);
+        next[item[0]]++;
+        received++;
+      }
+    }
+    executor.shutdown();
+    assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  public void wakesUpIdleDrainer() throws Exception {
+    BlockingQueue<String> delivered = new LinkedBlockingQueue<>();
+    AsyncLog log =
+        new AsyncLog(
+            new SystemStreamLog() {
+              @Override
+              public void info(CharSequence content) {
+                delivered.add(content.toString());
+              }
+            });
+
+    for (int i = 0; i < 100; i++) {
+      log.info("message " + i, null);
+      // Without flushing, so only the producer can wake up the drainer once it parked.
+      assertThat(delivered.poll(10, TimeUnit.SECONDS)).isEqualTo("message " + i);
+      if (i % 10 == 0) {
+        Thread.sleep(20);
+      }
+    }
+  }
+
+  @Test
+  public void flushDeliversRecordsInOrder() {
+    List<String> delivered = new ArrayList<>();
+    AsyncLog log =
+        new AsyncLog(
+            new SystemStreamLog() {
+              @Override
+              public void info(CharSequence content) {
+                delivered.add("info: " + content);
+              }
+
+              @Override
+              public void debug(CharSequence content) {
+                delivered.add("debug: " + content);
+              }
+            });
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 20_000; i++) {
+      log.info("message " + i, null);
+      expected.add("info: message " + i);
+    }
+    Supplier<String> deferred = () -> "deferred";
+    log.debug(deferred, null);
+    expected.add("debug: deferred");
+
+    log.flush();
+
+    assertThat(delivered).containsExactlyElementsIn(expected).inOrder();
+  }
+}
@@ -0,0 +1,95 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ContainerLimitsTest {
+
+  private static final long GB = 1024L * 1024 * 1024;
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void readsCgroupV2Limits() throws IOException {
+    Path root = temporaryFolder.getRoot().toPath();
+    Files.write(root.resolve("cpu.max"), "350000 100000\n".getBytes());
+    Files.write(root.resolve("memory.max"), String.valueOf(2 * GB).getBytes());
+
+    ContainerLimits limits = ContainerLimits.detect(root, 96, 256 * GB);
+
+    assertThat(limits.cpus()).isEqualTo(4);
+    assertThat(limits.memoryBytes()).isEqualTo(2 * GB);
+  }
+
+  @Test
+  public void readsCgroupV1Limits() throws IOException {
+    Path root = temporaryFolder.getRoot().toPath();
+    Files.createDirectories(root.resolve("cpu"));
+    Files.createDirectories(root.resolve("memory"));
+    Files.write(root.resolve("cpu/cpu.cfs_quota_us"), "200000".getBytes());
+    Files.write(root.resolve("cpu/cpu.cfs_period_us"), "100000".getBytes());
+    Files.write(root.resolve("memory/memory.limit_in_bytes"), "9223372036854771712".getBytes());
+
+    ContainerLimits limits = ContainerLimits.detect(root, 96, 256 * GB);
+
+    assertThat(limits.cpus()).isEqualTo(2);
+    assertThat(limits.memoryBytes()).isEqualTo(256 * GB);
+  }
+
+  @Test
+  public void fallsBackToHostWithoutCgroups() {
+    ContainerLimits limits = ContainerLimits.detect(temporaryFolder.getRoot().toPath(), 8, 16 * GB);
+
+    assertThat(limits.cpus()).isEqualTo(8);
+    assertThat(limits.memoryBytes()).isEqualTo(16 * GB);
+  }
+
+  @Test
+  public void smallWorkloadUsesSerialGcAndC1() {
+    ForkedJvmProfile profile = ForkedJvmProfile.select(new ContainerLimits(4, 2 * GB), 10);
+
+    assertThat(profile.jvmArgs())
+        .containsAtLeast(
+            "-XX:ActiveProcessorCount=4", "-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC");
+  }
+
+  @Test
+  public void largeWorkloadBoundsGcThreadsAndHeap() {
+    ForkedJvmProfile profile = ForkedJvmProfile.select(new ContainerLimits(4, 2 * GB), 5000);
+
+    assertThat(profile.jvmArgs())
+        .containsAtLeast("-XX:ActiveProcessorCount=4", "-XX:ParallelGCThreads=4", "-Xmx512m");
+  }
+}
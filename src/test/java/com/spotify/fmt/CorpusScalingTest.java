@@ -0,0 +1,147 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.maven.plugin.testing.SilentLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that formatting scales to large source trees: heap usage is bounded by running in a fork
+ * with a small heap, and the time per file must not grow much with the number of files. The tree of
+ * a hundred thousand files takes minutes, so it only runs with {@code -Dfmt.scalingTests}.
+ */
+public class CorpusScalingTest {
+
+  private static final boolean ENABLED = System.getProperty("fmt.scalingTests") != null;
+
+  private static final String MAX_HEAP = "-Xmx256m";
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void generatesSameCorpusForSameSeed() throws IOException {
+    final Path first = temporaryFolder.newFolder("first").toPath();
+    final Path second = temporaryFolder.newFolder("second").toPath();
+
+    new SyntheticCorpus().seed(7).files(50).modules(3).generate(first);
+    new SyntheticCorpus().seed(7).files(50).modules(3).generate(second);
+
+    final List<Path> files = files(first);
+    assertThat(files).hasSize(50);
+    assertThat(files).isEqualTo(files(second));
+    for (Path file : files) {
+      assertThat(Files.readAllBytes(second.resolve(file)))
+          .isEqualTo(Files.readAllBytes(first.resolve(file)));
+    }
+  }
+
+  @Test
+  public void findsExactlyTheNonCompliantFiles() throws IOException {
+    final SyntheticCorpus.Generated corpus =
+        new SyntheticCorpus()
+            .files(60)
+            .modules(2)
+            .nonCompliantFraction(0.25)
+            .generate(temporaryFolder.getRoot().toPath());
+
+    final FormattingResult result = check(corpus);
+
+    assertThat(corpus.nonCompliantFiles).isGreaterThan(0);
+    assertThat(result.processedFiles()).hasSize(60);
+    assertThat(result.nonComplyingFiles()).hasSize(corpus.nonCompliantFiles);
+  }
+
+  @Test
+  public void scalesToTenThousandFiles() throws IOException {
+    assertScales(10_000);
+  }
+
+  @Test
+  public void scalesToHundredThousandFiles() throws IOException {
+    assumeTrue("Enable with -Dfmt.scalingTests", ENABLED);
+    assertScales(100_000);
+  }
+
+  private void assertScales(int files) throws IOException {
+    final FormattingResult small = check(corpus("small", files / 10));
+    final FormattingResult large = check(corpus("large", files));
+
+    assertThat(large.processedFiles()).hasSize(files);
+    final double smallNanosPerFile = (double) small.statistics().wallTimeNanos() / (files / 10);
+    final double largeNanosPerFile = (double) large.statistics().wallTimeNanos() / files;
+    assertThat(largeNanosPerFile).isLessThan(2 * smallNanosPerFile);
+  }
+
+  private SyntheticCorpus.Generated corpus(String name, int files) throws IOException {
+    return new SyntheticCorpus()
+        .files(files)
+        .modules(Math.max(1, files / 1000))
+        .packagesPerModule(50)
+        .generate(temporaryFolder.newFolder(name).toPath());
+  }
+
+  /** Checks the corpus in a fork with a small heap, so that running out of memory fails. */
+  private static FormattingResult check(SyntheticCorpus.Generated corpus) throws IOException {
+    final FormattingConfiguration configuration =
+        FormattingConfiguration.builder()
+            .directoriesToFormat(corpus.sourceDirectories)
+            .style("google")
+            .filesNamePattern(".*\\.java")
+            .filesPathPattern(".*")
+            .skipReflowingLongStrings(true)
+            .processingLabel("non-complying")
+            .build();
+    try (ForkingExecutor executor =
+        new ForkingExecutor(new SilentLog())
+            .jvmProfile(ForkedJvmProfile.custom(Arrays.asList(MAX_HEAP)))
+            .javaArgs(AbstractFMT.javaArgs())) {
+      return executor.execute(new AbstractFMT.FormattingCallable(configuration));
+    }
+  }
+
+  private static List<Path> files(Path root) throws IOException {
+    try (Stream<Path> files = Files.walk(root)) {
+      return files
+          .filter(Files::isRegularFile)
+          .map(root::relativize)
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+}
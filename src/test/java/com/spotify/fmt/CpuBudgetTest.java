@@ -0,0 +1,145 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class CpuBudgetTest {
+
+  @Test
+  public void sharesBudgetBetweenExecutions() {
+    assertThat(CpuBudget.of(3, 64)).isSameInstanceAs(CpuBudget.of(3, 64));
+    assertThat(CpuBudget.of(0, 16).threadsPerExecution(1)).isEqualTo(16);
+    assertThat(CpuBudget.of(0, 16).threadsPerExecution(4)).isEqualTo(4);
+    assertThat(CpuBudget.of(4, 64).threadsPerExecution(16)).isEqualTo(1);
+  }
+
+  @Test
+  public void capsConfiguredBudgetByMachine() {
+    assertThat(CpuBudget.of(16, 4).cpus()).isEqualTo(4);
+    assertThat(CpuBudget.of(16, 4)).isSameInstanceAs(CpuBudget.of(0, 4));
+    assertThat(CpuBudget.of(4, 64).cpus()).isEqualTo(4);
+  }
+
+  @Test
+  public void boundsExecutionsWithDifferentBudgetsByMachine() throws Exception {
+    CpuBudget.Lease first = CpuBudget.of(3, 5).acquire(3);
+
+    CompletableFuture<CpuBudget.Lease> second =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return CpuBudget.of(4, 5).acquire(4);
+              } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+              }
+            });
+    try {
+      second.get(200, TimeUnit.MILLISECONDS);
+      throw new AssertionError("acquired threads beyond the machine");
+    } catch (TimeoutException expected) {
+      // still waiting
+    }
+
+    first.close();
+    try (CpuBudget.Lease lease = second.get(10, TimeUnit.SECONDS)) {
+      assertThat(lease.threads()).isEqualTo(4);
+    }
+  }
+
+  @Test
+  public void boundsTotalThreadsByBudgetBelowConcurrency() throws Exception {
+    final int executions = 16;
+    final CpuBudget budget = new CpuBudget(4);
+    final int threads = budget.threadsPerExecution(executions);
+    final AtomicInteger leased = new AtomicInteger();
+    final AtomicInteger maxLeased = new AtomicInteger();
+
+    ExecutorService pool = Executors.newFixedThreadPool(executions);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < executions; i++) {
+        futures.add(
+            pool.submit(
+                () -> {
+                  try (CpuBudget.Lease lease = budget.acquire(threads)) {
+                    maxLeased.accumulateAndGet(leased.addAndGet(lease.threads()), Math::max);
+                    Thread.sleep(20);
+                    leased.addAndGet(-lease.threads());
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    assertThat(threads).isEqualTo(1);
+    assertThat(maxLeased.get()).isAtMost(4);
+  }
+
+  @Test
+  public void blocksUntilThreadsAreReleased() throws Exception {
+    CpuBudget budget = new CpuBudget(5);
+    CpuBudget.Lease first = budget.acquire(4);
+
+    CompletableFuture<CpuBudget.Lease> second =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return budget.acquire(4);
+              } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+              }
+            });
+    try {
+      second.get(200, TimeUnit.MILLISECONDS);
+      throw new AssertionError("acquired threads beyond the budget");
+    } catch (TimeoutException expected) {
+      // still waiting
+    }
+
+    first.close();
+    try (CpuBudget.Lease lease = second.get(10, TimeUnit.SECONDS)) {
+      assertThat(lease.threads()).isEqualTo(4);
+    }
+  }
+}
@@ -27,19 +27,36 @@
 package com.spotify.fmt;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assume.assumeFalse;
 import static org.junit.Assume.assumeTrue;
 import static org.mockito.AdditionalMatchers.not;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.apache.commons.io.IOUtils;
+import org.apache.maven.model.Plugin;
 import org.apache.maven.plugin.Mojo;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugin.testing.MojoRule;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
 
 public class FMTTest {
@@ -48,6 +65,8 @@ public class FMTTest {
 
   @Rule public MojoRule mojoRule = new MojoRule();
 
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   @Test
   public void noSource() throws Exception {
     FMT fmt = loadMojo("nosource", FORMAT);
@@ -313,6 +332,314 @@ public class FMTTest {
     Mockito.verify(logSpy).error(Mockito.contains("Non complying file"));
   }
 
+  @Test
+  public void checkAggregateChecksAllModulesInOneExecution() throws Exception {
+    CheckAggregate check =
+        checkAggregate(mojoRule.readMavenProject(loadPom("check_aggregate/module-b")));
+
+    assertThrows(MojoFailureException.class, check::execute);
+
+    // Including the additional source directory configured in module-a.
+    assertThat(check.getResult().processedFiles()).hasSize(4);
+    assertThat(check.getResult().processedFiles())
+        .contains(
+            new File(loadPom("check_aggregate"), "module-a/src/extra/java/HelloWorld3.java")
+                .getAbsolutePath());
+    assertThat(check.getResult().nonComplyingFiles()).hasSize(1);
+    assertThat(check.getResult().nonComplyingFiles().get(0)).endsWith("HelloWorld2.java");
+  }
+
+  @Test
+  public void checkAggregateHonoursSkipFlagsOfModules() throws Exception {
+    MavenProject moduleB = mojoRule.readMavenProject(loadPom("check_aggregate/module-b"));
+    moduleB.getBuild().addPlugin(fmtPlugin("skipTestSourceDirectory", "true"));
+    CheckAggregate check = checkAggregate(moduleB);
+
+    assertThrows(MojoFailureException.class, check::execute);
+
+    assertThat(check.getResult().processedFiles()).hasSize(3);
+    assertThat(check.getResult().processedFiles())
+        .doesNotContain(
+            new File(loadPom("check_aggregate"), "module-b/src/test/java/HelloWorldTest.java")
+                .getAbsolutePath());
+  }
+
+  @Test
+  public void checkAggregateFailsOnModuleWithOtherStyle() throws Exception {
+    MavenProject moduleB = mojoRule.readMavenProject(loadPom("check_aggregate/module-b"));
+    moduleB.getBuild().addPlugin(fmtPlugin("style", "aosp"));
+    CheckAggregate check = checkAggregate(moduleB);
+
+    MojoFailureException e = assertThrows(MojoFailureException.class, check::execute);
+
+    assertThat(e).hasMessageThat().contains("module-b configures style 'aosp' instead of 'google'");
+  }
+
+  @Test
+  public void formatsListedFilesInSourceDirectories() throws Exception {
+    Check check = loadMojo("simple", CHECK);
+    File root = loadPom("simple").getAbsoluteFile();
+    File list = temporaryFolder.newFile("files.txt");
+    Files.write(
+        list.toPath(),
+        Arrays.asList("src/test/java/HelloWorldTest.java", "", "pom.xml"),
+        StandardCharsets.UTF_8);
+    mojoRule.setVariableValueToObject(check, "failOnError", false);
+    mojoRule.setVariableValueToObject(check, "executionRootDirectory", root);
+    mojoRule.setVariableValueToObject(
+        check,
+        "files",
+        Arrays.asList(
+            "src/main/java/HelloWorld2.java",
+            new File(loadPom("check_notformatted"), "src/main/java/HelloWorld1.java")
+                .getAbsolutePath(),
+            "src/main/java/Deleted.java",
+            "@" + list.getAbsolutePath()));
+
+    check.execute();
+
+    assertThat(check.getResult().processedFiles())
+        .containsExactly(
+            new File(root, "src/main/java/HelloWorld2.java").getPath(),
+            new File(root, "src/test/java/HelloWorldTest.java").getPath());
+  }
+
+  @Test
+  public void formatsNothingForEmptyListOfFiles() throws Exception {
+    Check check = loadMojo("simple", CHECK);
+    mojoRule.setVariableValueToObject(
+        check, "files", Arrays.asList("@" + temporaryFolder.newFile("files.txt")));
+
+    check.execute();
+
+    assertThat(check.getResult().processedFiles()).isEmpty();
+  }
+
+  @Test(expected = MojoFailureException.class)
+  public void failsOnMissingListOfFiles() throws Exception {
+    Check check = loadMojo("simple", CHECK);
+    mojoRule.setVariableValueToObject(
+        check, "files", Arrays.asList("@" + new File(temporaryFolder.getRoot(), "missing.txt")));
+
+    check.execute();
+  }
+
+  @Test
+  public void mergesResultsOfShards() throws Exception {
+    File results = temporaryFolder.newFolder("shards");
+    Set<String> processed = new HashSet<>();
+    for (int index = 0; index < 2; index++) {
+      Check check = loadMojo("check_notformatted", CHECK);
+      mojoRule.setVariableValueToObject(check, "failOnError", false);
+      mojoRule.setVariableValueToObject(check, "buildDirectory", results);
+      mojoRule.setVariableValueToObject(check, "shardCount", 2);
+      mojoRule.setVariableValueToObject(check, "shardIndex", index);
+      check.execute();
+      for (String file : check.getResult().processedFiles()) {
+        assertThat(processed.add(file)).isTrue();
+      }
+    }
+    assertThat(processed).hasSize(1);
+    assertThat(results.list())
+        .asList()
+        .containsExactly("fmt-check-shard-0.ser", "fmt-check-shard-1.ser");
+
+    Merge merge = loadMojo("check_notformatted", "merge");
+    mojoRule.setVariableValueToObject(merge, "shardResultsDirectory", results);
+
+    assertThrows(MojoFailureException.class, merge::execute);
+
+    assertThat(merge.getResult().processedFiles()).containsExactlyElementsIn(processed);
+    assertThat(merge.getResult().nonComplyingFiles()).containsExactlyElementsIn(processed);
+  }
+
+  @Test
+  public void mergeFailsOnMissingShard() throws Exception {
+    File results = temporaryFolder.newFolder("shards");
+    Check check = loadMojo("check_formatted", CHECK);
+    mojoRule.setVariableValueToObject(
+        check, "shardResultFile", new File(results, "fmt-check-shard-2.ser"));
+    mojoRule.setVariableValueToObject(check, "shardCount", 3);
+    mojoRule.setVariableValueToObject(check, "shardIndex", 2);
+    check.execute();
+
+    Merge merge = loadMojo("check_formatted", "merge");
+    mojoRule.setVariableValueToObject(merge, "shardResultsDirectory", results);
+
+    MojoFailureException e = assertThrows(MojoFailureException.class, merge::execute);
+    assertThat(e).hasMessageThat().contains("Missing results of shards [0, 1] of 3");
+  }
+
+  @Test
+  public void mergeFailsWithoutShardResults() throws Exception {
+    File results = temporaryFolder.newFolder("shards");
+    Merge merge = loadMojo("check_formatted", "merge");
+    mojoRule.setVariableValueToObject(merge, "shardResultsDirectory", results);
+
+    MojoFailureException e = assertThrows(MojoFailureException.class, merge::execute);
+    assertThat(e).hasMessageThat().contains("No shard results in " + results);
+  }
+
+  @Test(expected = MojoFailureException.class)
+  public void failsOnShardIndexOutsideOfShards() throws Exception {
+    Check check = loadMojo("check_formatted", CHECK);
+    mojoRule.setVariableValueToObject(check, "shardCount", 2);
+    mojoRule.setVariableValueToObject(check, "shardIndex", 2);
+
+    check.execute();
+  }
+
+  @Test
+  public void formatWritesManifestOfFormattedFiles() throws Exception {
+    FMT fmt = loadMojo("simple", FORMAT);
+    File manifestFile = new File(temporaryFolder.getRoot(), "fmt-manifest.txt");
+    mojoRule.setVariableValueToObject(fmt, "manifestFile", manifestFile);
+    fmt.execute();
+
+    List<String> lines = Files.readAllLines(manifestFile.toPath(), StandardCharsets.UTF_8);
+    assertThat(lines.get(1)).isEqualTo("google-java-format " + FormatManifest.formatterVersion());
+    assertThat(lines.stream().filter(line -> line.endsWith(".java"))).hasSize(3);
+  }
+
+  @Test
+  public void checkTrustsManifestOverFormatter() throws Exception {
+    Check check = loadMojo("check_notformatted", CHECK);
+    File manifestFile = new File(temporaryFolder.getRoot(), "fmt-manifest.txt");
+    File source = new File("src/test/resources/check_notformatted/src/main/java/HelloWorld1.java");
+    FormatManifest manifest =
+        FormatManifest.read(
+            manifestFile,
+            FormattingConfiguration.builder()
+                .directoriesToFormat(Arrays.asList(source.getParentFile()))
+                .style("google")
+                .skipReflowingLongStrings(true)
+                .filesNamePattern(".*")
+                .filesPathPattern(".*")
+                .processingLabel("reformatted")
+                .build());
+    manifest.formatted(source, FormatManifest.hash(Files.readAllBytes(source.toPath())));
+    manifest.write();
+    mojoRule.setVariableValueToObject(check, "manifestFile", manifestFile);
+
+    check.execute();
+
+    assertThat(check.getResult().processedFiles()).hasSize(1);
+    assertThat(check.getResult().nonComplyingFiles()).isEmpty();
+  }
+
+  @Test
+  public void checkFindsSourcesInSharedCache() throws Exception {
+    File cacheDirectory = temporaryFolder.newFolder("cache");
+    for (int run = 0; run < 2; run++) {
+      Check check = loadMojo("check_notformatted", CHECK);
+      mojoRule.setVariableValueToObject(check, "cacheDirectory", cacheDirectory);
+
+      assertThrows(MojoFailureException.class, check::execute);
+
+      assertThat(check.getResult().nonComplyingFiles()).hasSize(1);
+    }
+    try (Stream<Path> entries = Files.walk(cacheDirectory.toPath())) {
+      assertThat(
+              entries
+                  .filter(Files::isRegularFile)
+                  .filter(path -> !path.getFileName().toString().startsWith("."))
+                  .filter(path -> !path.getFileName().toString().endsWith(".idx"))
+                  .count())
+          .isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void writesJsonReport() throws Exception {
+    Check check = loadMojo("check_formatted", CHECK);
+    File report = temporaryFolder.newFile("fmt.json");
+    mojoRule.setVariableValueToObject(check, "reportFile", report);
+
+    check.execute();
+
+    String json = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+    assertThat(json).contains("\"goal\": \"check\"");
+    assertThat(json).contains("\"filesProcessed\": 1,");
+    assertThat(json).contains("\"format\": ");
+    assertThat(json)
+        .containsMatch("\"slowestFiles\": \\[\n    \\{\"path\": \"[^\"]*HelloWorld1.java\"");
+    assertThat(check.getResult().statistics().bytesProcessed()).isGreaterThan(0L);
+    assertThat(check.getResult().statistics().forkStartupMillis()).isGreaterThan(0L);
+    assertThat(check.getResult().statistics().peakHeapBytes()).isGreaterThan(0L);
+  }
+
+  @Test
+  public void recordsForkWithFlightRecorder() throws Exception {
+    Check check = loadMojo("check_formatted", CHECK);
+    File buildDirectory = temporaryFolder.newFolder("target");
+    mojoRule.setVariableValueToObject(check, "flightRecording", true);
+    mojoRule.setVariableValueToObject(check, "buildDirectory", buildDirectory);
+
+    check.execute();
+
+    List<RecordedEvent> events =
+        RecordingFile.readAllEvents(buildDirectory.toPath().resolve("fmt-check.jfr"));
+    assertThat(
+            events.stream()
+                .filter(
+                    event -> event.getEventType().getName().equals("com.spotify.fmt.FormatFile"))
+                .map(event -> event.getString("path") + ": " + event.getString("outcome"))
+                .collect(Collectors.toList()))
+        .containsExactly(
+            new File(check.getResult().processedFiles().get(0)).getAbsolutePath() + ": compliant");
+    assertThat(
+            events.stream()
+                .filter(
+                    event -> event.getEventType().getName().equals("com.spotify.fmt.FormatPhase"))
+                .map(event -> event.getString("phase"))
+                .collect(Collectors.toList()))
+        .contains("FORMAT");
+  }
+
+  @Test
+  public void tracesForkedExecution() throws Exception {
+    Check check = loadMojo("check_formatted", CHECK);
+    File traceFile = new File(temporaryFolder.getRoot(), "trace/fmt.jsonl");
+    mojoRule.setVariableValueToObject(check, "traceFile", traceFile);
+    mojoRule.setVariableValueToObject(check, "traceSampleRate", 1.0);
+
+    check.execute();
+    check.execute();
+
+    List<String> lines = Files.readAllLines(traceFile.toPath());
+    assertThat(lines).hasSize(2);
+    String trace = lines.get(0);
+    for (String span :
+        Arrays.asList(
+            "fmt:check", "fmt.fork", "fmt.fork.startup", "fmt.run", "fmt.walk", "fmt.file")) {
+      assertThat(trace).contains("\"name\":\"" + span + "\"");
+    }
+    assertThat(trace)
+        .contains("{\"key\":\"fmt.outcome\",\"value\":{\"stringValue\":\"compliant\"}}");
+    Matcher traceIds = Pattern.compile("\"traceId\":\"([0-9a-f]{32})\"").matcher(trace);
+    Set<String> ids = new HashSet<>();
+    while (traceIds.find()) {
+      ids.add(traceIds.group(1));
+    }
+    assertThat(ids).hasSize(1);
+  }
+
+  @Test
+  public void writesPrometheusReport() throws Exception {
+    Check check = loadMojo("check_formatted", CHECK);
+    File report = temporaryFolder.newFile("fmt.prom");
+    mojoRule.setVariableValueToObject(check, "reportFile", report);
+    mojoRule.setVariableValueToObject(check, "reportFormat", "prometheus");
+
+    check.execute();
+
+    String text = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+    assertThat(text)
+        .contains("fmt_files_processed{project=\"project-to-test\",goal=\"check\"} 1\n");
+    assertThat(text)
+        .contains("fmt_phase_seconds{project=\"project-to-test\",goal=\"check\",phase=\"read\"}");
+  }
+
   @SuppressWarnings("unchecked")
   private <T extends AbstractFMT> T loadMojo(String pomFilePath, String goal) throws Exception {
     File pomFile = loadPom(pomFilePath);
@@ -322,6 +649,35 @@ public class FMTTest {
     return fmt;
   }
 
+  /**
+   * The check-aggregate goal of the check_aggregate reactor, with module-c, which is configured to
+   * be skipped, and {@code moduleB}.
+   */
+  private CheckAggregate checkAggregate(MavenProject moduleB) throws Exception {
+    CheckAggregate check = loadMojo("check_aggregate", "check-aggregate");
+    mojoRule.setVariableValueToObject(
+        check,
+        "reactorProjects",
+        Arrays.asList(
+            mojoRule.readMavenProject(loadPom("check_aggregate")),
+            mojoRule.readMavenProject(loadPom("check_aggregate/module-a")),
+            moduleB,
+            mojoRule.readMavenProject(loadPom("check_aggregate/module-c"))));
+    return check;
+  }
+
+  private static Plugin fmtPlugin(String parameter, String value) {
+    Plugin plugin = new Plugin();
+    plugin.setGroupId("com.spotify.fmt");
+    plugin.setArtifactId("fmt-maven-plugin");
+    Xpp3Dom configuration = new Xpp3Dom("configuration");
+    Xpp3Dom child = new Xpp3Dom(parameter);
+    child.setValue(value);
+    configuration.addChild(child);
+    plugin.setConfiguration(configuration);
+    return plugin;
+  }
+
   private File loadPom(String folderName) {
     return new File("src/test/resources/", folderName);
   }
@@ -32,12 +32,15 @@ import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugin.testing.SilentLog;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.Mockito;
 
 public class ForkingExecutorTest {
 
@@ -98,6 +101,30 @@ public class ForkingExecutorTest {
     assertThat(result).isEqualTo("bar");
   }
 
+  @Test
+  public void setsJvmProfile() throws IOException {
+    final List<String> result =
+        forkingExecutor
+            .jvmProfile(ForkedJvmProfile.custom(Collections.singletonList("-Xmx97m")))
+            .javaArgs("-Dfoo=bar")
+            .execute(() -> ManagementFactory.getRuntimeMXBean().getInputArguments());
+    assertThat(result).containsAtLeast("-Xmx97m", "-Dfoo=bar").inOrder();
+  }
+
+  @Test
+  public void replaysChildLogRecordsOnParentLog() throws IOException {
+    final Log log = Mockito.mock(Log.class);
+    new ForkingExecutor(log)
+        .execute(
+            () -> {
+              Logging.getLog().warn("first line\nsecond line");
+              Logging.getLog().error("failed", new FoobarException("foobar!"));
+              return null;
+            });
+    Mockito.verify(log).warn("first line\nsecond line");
+    Mockito.verify(log).error(Mockito.contains("FoobarException: foobar!"));
+  }
+
   private static class FoobarException extends RuntimeException {
 
     FoobarException(String message) {
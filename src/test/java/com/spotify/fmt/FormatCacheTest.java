@@ -0,0 +1,215 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FormatCacheTest {
+
+  private static final String UNFORMATTED = "class A{}";
+  private static final String FORMATTED = "class A {}\n";
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void sharesFormattedSourcesBetweenProcesses() throws Exception {
+    Path root = temporaryFolder.getRoot().toPath();
+    FormatCache writer = new FormatCache(root, "1.0-abc", Long.MAX_VALUE);
+    writer.put(hash(UNFORMATTED), UNFORMATTED, FORMATTED);
+    writer.put(hash(FORMATTED), FORMATTED, FORMATTED);
+
+    FormatCache reader = new FormatCache(root, "1.0-abc", Long.MAX_VALUE);
+
+    assertThat(reader.formatted(hash(UNFORMATTED), UNFORMATTED)).isEqualTo(FORMATTED);
+    assertThat(reader.formatted(hash(FORMATTED), FORMATTED)).isEqualTo(FORMATTED);
+    assertThat(reader.formatted(hash("class B{}"), "class B{}")).isNull();
+    assertThat(reader.hits()).isEqualTo(2);
+    assertThat(reader.misses()).isEqualTo(1);
+  }
+
+  @Test
+  public void indexesFormattedSourcesInsteadOfWritingThem() throws Exception {
+    Path root = temporaryFolder.getRoot().toPath();
+    new FormatCache(root, "1.0-abc", Long.MAX_VALUE).put(hash(FORMATTED), FORMATTED, FORMATTED);
+
+    assertThat(Files.exists(entry(root, FORMATTED))).isFalse();
+    assertThat(Files.exists(root.resolve("1.0-abc/formatted.idx"))).isTrue();
+    FormatCache reader = new FormatCache(root, "1.0-abc", Long.MAX_VALUE);
+    assertThat(reader.formatted(hash(FORMATTED), FORMATTED)).isEqualTo(FORMATTED);
+  }
+
+  @Test
+  public void keepsEntriesOfOtherFormattersApart() throws Exception {
+    Path root = temporaryFolder.getRoot().toPath();
+    new FormatCache(root, "1.0-abc", Long.MAX_VALUE).put(hash(UNFORMATTED), UNFORMATTED, FORMATTED);
+
+    FormatCache other = new FormatCache(root, "1.0-def", Long.MAX_VALUE);
+
+    assertThat(other.formatted(hash(UNFORMATTED), UNFORMATTED)).isNull();
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedEntries() throws Exception {
+    Path root = temporaryFolder.getRoot().toPath();
+    new FormatCache(root, "1.0-abc", Long.MAX_VALUE);
+    long indexBytes = Files.size(root.resolve("1.0-abc/formatted.idx"));
+    FormatCache cache = new FormatCache(root, "1.0-abc", indexBytes + 100);
+    List<String> sources = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      String source = "class A" + i + "{}";
+      sources.add(source);
+      cache.put(hash(source), source, source + " // formatted");
+      setAccessed(root, source, i);
+    }
+
+    cache.close();
+
+    FormatCache reader = new FormatCache(root, "1.0-abc", Long.MAX_VALUE);
+    assertThat(reader.formatted(hash(sources.get(0)), sources.get(0))).isNull();
+    assertThat(reader.formatted(hash(sources.get(9)), sources.get(9))).isNotNull();
+    assertThat(size(root)).isAtMost(indexBytes + 90);
+  }
+
+  @Test
+  public void restoresExportedEntries() throws Exception {
+    Path root = temporaryFolder.newFolder("cache").toPath();
+    Path archive = temporaryFolder.getRoot().toPath().resolve("archives/fmt-cache.zip");
+    FormatCache cache = new FormatCache(root, "1.0-abc", Long.MAX_VALUE);
+    cache.put(hash(UNFORMATTED), UNFORMATTED, FORMATTED);
+    cache.put(hash(FORMATTED), FORMATTED, FORMATTED);
+    // The source and the index of formatted sources.
+    assertThat(new FormatCache(root, Long.MAX_VALUE).export(archive)).isEqualTo(2);
+
+    Path restored = temporaryFolder.newFolder("restored").toPath();
+    assertThat(new FormatCache(restored, Long.MAX_VALUE).importArchive(archive)).isEqualTo(2);
+    assertThat(new FormatCache(restored, Long.MAX_VALUE).importArchive(archive)).isEqualTo(0);
+
+    FormatCache reader = new FormatCache(restored, "1.0-abc", Long.MAX_VALUE);
+    assertThat(reader.formatted(hash(UNFORMATTED), UNFORMATTED)).isEqualTo(FORMATTED);
+    assertThat(reader.formatted(hash(FORMATTED), FORMATTED)).isEqualTo(FORMATTED);
+  }
+
+  @Test
+  public void mergesImportedIndexOfFormattedSources() throws Exception {
+    Path root = temporaryFolder.newFolder("cache").toPath();
+    Path archive = temporaryFolder.getRoot().toPath().resolve("fmt-cache.zip");
+    new FormatCache(root, "1.0-abc", Long.MAX_VALUE).put(hash(FORMATTED), FORMATTED, FORMATTED);
+    new FormatCache(root, Long.MAX_VALUE).export(archive);
+
+    Path restored = temporaryFolder.newFolder("restored").toPath();
+    String other = "class B {}\n";
+    new FormatCache(restored, "1.0-abc", Long.MAX_VALUE).put(hash(other), other, other);
+    new FormatCache(restored, Long.MAX_VALUE).importArchive(archive);
+
+    FormatCache reader = new FormatCache(restored, "1.0-abc", Long.MAX_VALUE);
+    assertThat(reader.formatted(hash(FORMATTED), FORMATTED)).isEqualTo(FORMATTED);
+    assertThat(reader.formatted(hash(other), other)).isEqualTo(other);
+  }
+
+  @Test
+  public void rejectsArchiveEntriesOutsideOfCache() throws Exception {
+    Path archive = temporaryFolder.getRoot().toPath().resolve("fmt-cache.zip");
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive))) {
+      out.putNextEntry(new ZipEntry("../escaped"));
+      out.write(1);
+      out.closeEntry();
+    }
+    Path root = temporaryFolder.newFolder("cache").toPath();
+
+    assertThrows(
+        IOException.class, () -> new FormatCache(root, Long.MAX_VALUE).importArchive(archive));
+    assertThat(Files.exists(root.resolveSibling("escaped"))).isFalse();
+  }
+
+  @Test
+  public void concurrentWritersLeaveCompleteEntries() throws Exception {
+    Path root = temporaryFolder.getRoot().toPath();
+    StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 10_000; i++) {
+      large.append("  int field").append(i).append(";\n");
+    }
+    String formatted = "class A {\n" + large + "}\n";
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> reads = new ArrayList<>();
+      for (int i = 0; i < 64; i++) {
+        reads.add(
+            executor.submit(
+                () -> {
+                  FormatCache cache = new FormatCache(root, "1.0-abc", Long.MAX_VALUE);
+                  cache.put(hash(UNFORMATTED), UNFORMATTED, formatted);
+                  return cache.formatted(hash(UNFORMATTED), UNFORMATTED);
+                }));
+      }
+      for (Future<String> read : reads) {
+        assertThat(read.get()).isEqualTo(formatted);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(Files.walk(root).filter(path -> path.toString().endsWith(".tmp")).count())
+        .isEqualTo(0);
+  }
+
+  private static String hash(String source) {
+    return FormatManifest.hash(source.getBytes(UTF_8));
+  }
+
+  private static void setAccessed(Path root, String source, int minutes) throws IOException {
+    Files.setLastModifiedTime(entry(root, source), FileTime.fromMillis(minutes * 60_000L));
+  }
+
+  private static Path entry(Path root, String source) {
+    String hash = hash(source);
+    return root.resolve("1.0-abc").resolve(hash.substring(0, 2)).resolve(hash.substring(2));
+  }
+
+  private static long size(Path root) throws IOException {
+    return Files.walk(root)
+        .filter(Files::isRegularFile)
+        .filter(path -> !path.getFileName().toString().equals(".lock"))
+        .mapToLong(path -> path.toFile().length())
+        .sum();
+  }
+}
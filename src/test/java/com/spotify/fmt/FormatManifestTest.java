@@ -0,0 +1,157 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FormatManifestTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void hashesLikeGit() {
+    // git hash-object /dev/null
+    assertThat(FormatManifest.hash(new byte[0]))
+        .isEqualTo("e69de29bb2d1d6434b8b29ae775ad8c2e48c5391");
+    // echo hello | git hash-object --stdin
+    assertThat(FormatManifest.hash("hello\n".getBytes(UTF_8)))
+        .isEqualTo("ce013625030ba8dba906f756967f9e9ca394464a");
+  }
+
+  @Test
+  public void readsWhatItWrote() throws Exception {
+    File manifestFile = new File(temporaryFolder.newFolder("module"), "fmt-manifest.txt");
+    File source = source("module/src/A.java");
+    FormatManifest manifest = FormatManifest.read(manifestFile, configuration("google"));
+    manifest.formatted(source, "aaaa");
+    manifest.write();
+
+    FormatManifest read = FormatManifest.read(manifestFile, configuration("google"));
+
+    assertThat(read.isFormatted(source, "aaaa")).isTrue();
+    assertThat(read.isFormatted(source, "bbbb")).isFalse();
+    assertThat(read.isFormatted(source("module/src/B.java"), "aaaa")).isFalse();
+    assertThat(Files.readAllLines(manifestFile.toPath(), UTF_8)).contains("aaaa src/A.java");
+  }
+
+  @Test
+  public void ignoresManifestOfOtherConfiguration() throws Exception {
+    File manifestFile = temporaryFolder.newFile("fmt-manifest.txt");
+    File source = source("A.java");
+    FormatManifest manifest = FormatManifest.read(manifestFile, configuration("google"));
+    manifest.formatted(source, "aaaa");
+    manifest.write();
+
+    FormatManifest read = FormatManifest.read(manifestFile, configuration("aosp"));
+
+    assertThat(read.isFormatted(source, "aaaa")).isFalse();
+    assertThat(read.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void leavesOutDeletedFiles() throws Exception {
+    File manifestFile = temporaryFolder.newFile("fmt-manifest.txt");
+    File kept = source("A.java");
+    File deleted = source("B.java");
+    FormatManifest manifest = FormatManifest.read(manifestFile, configuration("google"));
+    manifest.formatted(kept, "aaaa");
+    manifest.formatted(deleted, "bbbb");
+    manifest.write();
+
+    Files.delete(deleted.toPath());
+    FormatManifest read = FormatManifest.read(manifestFile, configuration("google"));
+    read.write();
+
+    assertThat(FormatManifest.read(manifestFile, configuration("google")).size()).isEqualTo(1);
+  }
+
+  @Test
+  public void keepsEntriesWrittenByOthersMeanwhile() throws Exception {
+    File manifestFile = temporaryFolder.newFile("fmt-manifest.txt");
+    File first = source("A.java");
+    File second = source("B.java");
+    FormatManifest manifest = FormatManifest.read(manifestFile, configuration("google"));
+    FormatManifest other = FormatManifest.read(manifestFile, configuration("google"));
+    manifest.formatted(first, "aaaa");
+    other.formatted(first, "cccc");
+    other.formatted(second, "bbbb");
+    other.write();
+
+    manifest.write();
+
+    FormatManifest read = FormatManifest.read(manifestFile, configuration("google"));
+    assertThat(read.isFormatted(first, "aaaa")).isTrue();
+    assertThat(read.isFormatted(second, "bbbb")).isTrue();
+  }
+
+  @Test
+  public void sharesManifestUntilChangedByOthers() throws Exception {
+    File manifestFile = temporaryFolder.newFile("fmt-manifest.txt");
+    File source = source("A.java");
+    FormatManifest shared = FormatManifest.shared(manifestFile, configuration("google"));
+    shared.formatted(source, "aaaa");
+    shared.write();
+
+    assertThat(FormatManifest.shared(manifestFile, configuration("google")))
+        .isSameInstanceAs(shared);
+    assertThat(FormatManifest.shared(manifestFile, configuration("aosp")))
+        .isNotSameInstanceAs(shared);
+
+    FormatManifest other = FormatManifest.read(manifestFile, configuration("google"));
+    other.formatted(source, "bbbb");
+    other.write();
+
+    FormatManifest reread = FormatManifest.shared(manifestFile, configuration("google"));
+    assertThat(reread).isNotSameInstanceAs(shared);
+    assertThat(reread.isFormatted(source, "bbbb")).isTrue();
+  }
+
+  private File source(String path) throws Exception {
+    File file = new File(temporaryFolder.getRoot(), path);
+    Files.createDirectories(file.getParentFile().toPath());
+    Files.write(file.toPath(), "class A {}\n".getBytes(UTF_8));
+    return file;
+  }
+
+  private FormattingConfiguration configuration(String style) {
+    return FormattingConfiguration.builder()
+        .directoriesToFormat(Collections.singletonList(temporaryFolder.getRoot()))
+        .style(style)
+        .filesNamePattern(".*\\.java")
+        .filesPathPattern(".*")
+        .processingLabel("reformatted")
+        .build();
+  }
+}
@@ -0,0 +1,330 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import org.apache.maven.plugin.testing.SilentLog;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FormattingCoordinatorTest {
+
+  private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final CountDownLatch released = new CountDownLatch(1);
+
+  @After
+  public void tearDown() {
+    released.countDown();
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void handsOutAllFilesToWorkers() throws Exception {
+    List<File> files = files(100);
+    try (FormattingCoordinator coordinator = coordinator(7, 3, TIMEOUT_NANOS)) {
+      InetSocketAddress address = coordinator.start(loopback());
+      Future<FormattingResult> first = startWorker(address, "first", checking(0));
+      Future<FormattingResult> second = startWorker(address, "second", checking(0));
+
+      FormattingResult result = coordinator.run(files);
+
+      assertThat(result.processedFiles()).containsExactlyElementsIn(paths(files));
+      assertThat(result.nonComplyingFiles()).containsExactly(files.get(0).getPath());
+      assertThat(result.statistics().bytesProcessed()).isEqualTo(100);
+      // Both may have processed the last batches, when the idle one helped out.
+      Set<String> processed = new HashSet<>(first.get(10, TimeUnit.SECONDS).processedFiles());
+      processed.addAll(second.get(10, TimeUnit.SECONDS).processedFiles());
+      assertThat(processed).containsExactlyElementsIn(paths(files));
+    }
+  }
+
+  @Test
+  public void handsOutBatchOfLostWorkerAgain() throws Exception {
+    List<File> files = files(10);
+    try (FormattingCoordinator coordinator = coordinator(5, 3, TIMEOUT_NANOS)) {
+      InetSocketAddress address = coordinator.start(loopback());
+      Future<List<String>> lost = executor.submit(() -> takeBatchAndDisconnect(address));
+      Future<FormattingResult> run = executor.submit(() -> coordinator.run(files));
+      List<String> batch = lost.get(10, TimeUnit.SECONDS);
+      startWorker(address, "survivor", checking(0));
+
+      FormattingResult result = run.get(10, TimeUnit.SECONDS);
+
+      assertThat(batch).hasSize(5);
+      assertThat(result.processedFiles()).containsExactlyElementsIn(paths(files));
+    }
+  }
+
+  @Test
+  public void stealsBatchesFromSlowWorkers() throws Exception {
+    List<File> files = files(10);
+    try (FormattingCoordinator coordinator = coordinator(5, 3, TIMEOUT_NANOS)) {
+      InetSocketAddress address = coordinator.start(loopback());
+      CountDownLatch stuck = new CountDownLatch(1);
+      startWorker(
+          address,
+          "slow",
+          (batch, write) -> {
+            stuck.countDown();
+            Uninterruptibles.awaitUninterruptibly(released);
+            return checking(0).process(batch, write);
+          });
+      Future<FormattingResult> run = executor.submit(() -> coordinator.run(files));
+      assertThat(stuck.await(10, TimeUnit.SECONDS)).isTrue();
+      startWorker(address, "fast", checking(0));
+
+      FormattingResult result = run.get(10, TimeUnit.SECONDS);
+
+      assertThat(result.processedFiles()).containsExactlyElementsIn(paths(files));
+    }
+  }
+
+  @Test
+  public void failsOnFormattingErrors() throws Exception {
+    try (FormattingCoordinator coordinator = coordinator(5, 3, TIMEOUT_NANOS)) {
+      InetSocketAddress address = coordinator.start(loopback());
+      startWorker(
+          address,
+          "failing",
+          (batch, write) -> {
+            throw new FormatterException("Failed to format " + batch.get(0));
+          });
+
+      FormatterException e =
+          assertThrows(FormatterException.class, () -> coordinator.run(files(10)));
+      assertThat(e).hasMessageThat().startsWith("Failed to format ");
+    }
+  }
+
+  @Test
+  public void failsOnResultThatSkipsFilesOfBatch() throws Exception {
+    try (FormattingCoordinator coordinator = coordinator(5, 3, TIMEOUT_NANOS)) {
+      InetSocketAddress address = coordinator.start(loopback());
+      // Like a worker whose source directories do not contain the first file.
+      startWorker(
+          address, "stale", (batch, write) -> checking(0).process(batch.subList(1, 5), write));
+
+      FormatterException e =
+          assertThrows(FormatterException.class, () -> coordinator.run(files(10)));
+      assertThat(e).hasMessageThat().contains("skipped 1 of 5 files");
+    }
+  }
+
+  @Test
+  public void ignoresFailedCopyOfFinishedBatch() throws Exception {
+    List<File> files = files(10);
+    try (FormattingCoordinator coordinator = coordinator(5, 3, TIMEOUT_NANOS)) {
+      InetSocketAddress address = coordinator.start(loopback());
+      Future<FormattingResult> run = executor.submit(() -> coordinator.run(files));
+      try (Socket original = new Socket(address.getAddress(), address.getPort());
+          Socket other = new Socket(address.getAddress(), address.getPort());
+          Socket copy = new Socket(address.getAddress(), address.getPort())) {
+        List<String> first = takeBatch(original);
+        List<String> second = takeBatch(other);
+        // With no batches left, the idle worker helps with the one running the longest.
+        assertThat(takeBatch(copy)).isEqualTo(first);
+
+        send(original, "RESULT 0 5 0 5", first);
+        // Handed a copy of the other batch once it is done with the first.
+        assertThat(nextBatch(original.getInputStream())).isEqualTo(second);
+        copy.getOutputStream().write("FAILED 0 4\nboom".getBytes(UTF_8));
+        assertThrows(TimeoutException.class, () -> run.get(500, TimeUnit.MILLISECONDS));
+        send(other, "RESULT 1 5 0 5", second);
+
+        assertThat(run.get(10, TimeUnit.SECONDS).processedFiles())
+            .containsExactlyElementsIn(paths(files));
+      }
+    }
+  }
+
+  @Test
+  public void failsOnBatchThatKeepsLosingWorkers() throws Exception {
+    List<File> files = files(5);
+    try (FormattingCoordinator coordinator =
+        coordinator(5, 2, TimeUnit.MILLISECONDS.toNanos(500))) {
+      InetSocketAddress address = coordinator.start(loopback());
+      Future<FormattingResult> run = executor.submit(() -> coordinator.run(files));
+      // Workers that stop sending heartbeats are cut off, and their batch handed out again.
+      assertThat(executor.submit(() -> takeBatchAndFallSilent(address)).get(10, TimeUnit.SECONDS))
+          .hasSize(5);
+      executor.submit(() -> takeBatchAndFallSilent(address));
+
+      Exception e = assertThrows(Exception.class, () -> run.get(10, TimeUnit.SECONDS));
+      assertThat(e).hasCauseThat().isInstanceOf(FormatterException.class);
+      assertThat(e).hasCauseThat().hasMessageThat().contains("failed on 2 workers");
+    }
+  }
+
+  @Test
+  public void formatsWithFormatterInFork() throws Exception {
+    Path root = temporaryFolder.getRoot().toPath();
+    File file = new File(temporaryFolder.newFolder("src"), "Foo.java");
+    Files.write(file.toPath(), "class Foo{}\n".getBytes(UTF_8));
+    FormattingConfiguration configuration =
+        FormattingConfiguration.builder()
+            .directoriesToFormat(Collections.singletonList(file.getParentFile()))
+            .style("google")
+            .filesNamePattern(".*\\.java")
+            .filesPathPattern(".*")
+            .processingLabel("non-complying")
+            .build();
+    try (ForkingExecutor forkingExecutor =
+            new ForkingExecutor(new SilentLog()).javaArgs(AbstractFMT.javaArgs());
+        FormattingCoordinator coordinator =
+            new FormattingCoordinator(new SilentLog(), root, 10, 1, TIMEOUT_NANOS, true)) {
+      InetSocketAddress address = coordinator.start(loopback());
+      Future<FormattingResult> worker =
+          executor.submit(
+              () ->
+                  forkingExecutor.execute(
+                      new Worker.WorkerCallable(
+                          configuration,
+                          temporaryFolder.getRoot(),
+                          "localhost:" + address.getPort(),
+                          "fork",
+                          TIMEOUT_NANOS)));
+
+      FormattingResult result = coordinator.run(Collections.singletonList(file));
+
+      assertThat(result.nonComplyingFiles()).containsExactly(file.getPath());
+      assertThat(new String(Files.readAllBytes(file.toPath()), UTF_8)).isEqualTo("class Foo {}\n");
+      assertThat(worker.get(30, TimeUnit.SECONDS).processedFiles()).containsExactly(file.getPath());
+    }
+  }
+
+  private FormattingCoordinator coordinator(int batchSize, int maxAttempts, long timeoutNanos) {
+    return new FormattingCoordinator(
+        new SilentLog(),
+        temporaryFolder.getRoot().toPath(),
+        batchSize,
+        maxAttempts,
+        timeoutNanos,
+        false);
+  }
+
+  private Future<FormattingResult> startWorker(
+      InetSocketAddress address, String name, BatchProcessor processor) {
+    FormattingWorker worker =
+        new FormattingWorker(new SilentLog(), temporaryFolder.getRoot().toPath(), name, processor);
+    return executor.submit(() -> worker.run(address, TIMEOUT_NANOS));
+  }
+
+  /** Processes every file, reporting the file with {@code index} as not formatted. */
+  private BatchProcessor checking(int index) {
+    String nonComplying = new File(temporaryFolder.getRoot(), "File" + index + ".java").getPath();
+    return (batch, write) ->
+        FormattingResult.builder()
+            .processedFiles(paths(batch))
+            .nonComplyingFiles(
+                paths(batch).stream().filter(nonComplying::equals).collect(Collectors.toList()))
+            .statistics(FormattingStatistics.builder().bytesProcessed(batch.size()).build())
+            .build();
+  }
+
+  private List<String> takeBatchAndDisconnect(InetSocketAddress address) throws Exception {
+    try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+      return takeBatch(socket);
+    }
+  }
+
+  /** Takes a batch and waits for the coordinator to give up on it. */
+  private List<String> takeBatchAndFallSilent(InetSocketAddress address) throws Exception {
+    try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+      List<String> batch = takeBatch(socket);
+      assertThat(socket.getInputStream().read()).isEqualTo(-1);
+      return batch;
+    }
+  }
+
+  private static List<String> takeBatch(Socket socket) throws Exception {
+    OutputStream out = socket.getOutputStream();
+    InputStream in = socket.getInputStream();
+    out.write("WORKER raw\n".getBytes(UTF_8));
+    out.flush();
+    assertThat(FormattingDaemon.readLine(in)).startsWith("WELCOME CHECK ");
+    return nextBatch(in);
+  }
+
+  private static List<String> nextBatch(InputStream in) throws Exception {
+    String[] batch = FormattingDaemon.readLine(in).split(" ");
+    List<String> paths = new ArrayList<>();
+    for (int i = Integer.parseInt(batch[2]); i > 0; i--) {
+      paths.add(FormattingDaemon.readLine(in));
+    }
+    return paths;
+  }
+
+  private static void send(Socket socket, String line, List<String> lines) throws Exception {
+    FormattingCoordinator.send(socket.getOutputStream(), line, lines);
+  }
+
+  private List<File> files(int count) {
+    List<File> files = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      files.add(new File(temporaryFolder.getRoot(), "File" + i + ".java"));
+    }
+    return files;
+  }
+
+  private static List<String> paths(List<File> files) {
+    return files.stream().map(File::getPath).collect(Collectors.toList());
+  }
+
+  private static InetSocketAddress loopback() {
+    return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+  }
+}
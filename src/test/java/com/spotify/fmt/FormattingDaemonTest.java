@@ -0,0 +1,224 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.testing.SilentLog;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FormattingDaemonTest {
+
+  private static final String UNFORMATTED = "class Foo{int bar(){return 1;}}\n";
+  private static final String FORMATTED = "class Foo {\n  int bar() {\n    return 1;\n  }\n}\n";
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final ForkingExecutor forkingExecutor =
+      new ForkingExecutor(new SilentLog()).javaArgs(AbstractFMT.javaArgs());
+
+  @After
+  public void tearDown() {
+    forkingExecutor.close();
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void formatsAndChecksInFork() throws Exception {
+    final File socket = new File(temporaryFolder.getRoot(), "fmt.sock");
+    final Future<FormattingResult> daemon = startInFork(socket, 0, 0);
+
+    try (DaemonClient client = connect(FormattingDaemon.address(socket, 0))) {
+      assertThat(client.format("google", UNFORMATTED)).isEqualTo(FORMATTED);
+      assertThat(client.format("aosp", UNFORMATTED))
+          .isEqualTo("class Foo {\n    int bar() {\n        return 1;\n    }\n}\n");
+      assertThat(client.check("google", UNFORMATTED)).isEqualTo(FormattingDaemon.NON_COMPLYING);
+      assertThat(client.check("google", FORMATTED)).isEqualTo(FormattingDaemon.COMPLIANT);
+
+      final FormatterException error =
+          assertThrows(FormatterException.class, () -> client.format("google", "class {"));
+      assertThat(error).hasMessageThat().isNotEmpty();
+
+      final Path file = temporaryFolder.newFile("Foo.java").toPath();
+      Files.write(file, UNFORMATTED.getBytes(UTF_8));
+      assertThat(client.file("google", file.toFile())).isEqualTo(FormattingDaemon.REFORMATTED);
+      assertThat(new String(Files.readAllBytes(file), UTF_8)).isEqualTo(FORMATTED);
+      assertThat(client.file("google", file.toFile())).isEqualTo(FormattingDaemon.COMPLIANT);
+      assertThat(client.file("google", temporaryFolder.newFile("Foo.txt")))
+          .isEqualTo(FormattingDaemon.SKIPPED);
+
+      final String stats = client.stats();
+      assertThat(stats).contains("\"requests\":8,\"errors\":1,\"cacheHits\":1,");
+      assertThat(stats).contains("\"p99\":");
+
+      client.shutdown();
+    }
+    assertThat(daemon.get(30, TimeUnit.SECONDS).processedFiles()).isEmpty();
+    assertThat(socket.exists()).isFalse();
+  }
+
+  @Test
+  public void listensOnLoopbackPort() throws Exception {
+    final int port;
+    try (ServerSocket free = new ServerSocket(0)) {
+      port = free.getLocalPort();
+    }
+    final Future<FormattingResult> daemon = startInFork(null, port, 0);
+
+    try (DaemonClient client = connect(FormattingDaemon.address(null, port))) {
+      assertThat(client.format("google", UNFORMATTED)).isEqualTo(FORMATTED);
+      client.shutdown();
+    }
+    daemon.get(30, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void shutsDownWhenIdle() throws Exception {
+    try (FormattingDaemon daemon =
+        new FormattingDaemon(
+            new SilentLog(), configuration(), TimeUnit.MILLISECONDS.toNanos(200))) {
+      daemon.start(FormattingDaemon.address(new File(temporaryFolder.getRoot(), "fmt.sock"), 0));
+      final long start = System.nanoTime();
+      daemon.awaitShutdown();
+      assertThat(System.nanoTime() - start).isAtLeast(TimeUnit.MILLISECONDS.toNanos(150));
+    }
+  }
+
+  @Test
+  public void rejectsInvalidRequests() throws Exception {
+    final File socket = new File(temporaryFolder.getRoot(), "fmt.sock");
+    try (FormattingDaemon daemon = new FormattingDaemon(new SilentLog(), configuration(), 0)) {
+      final SocketAddress address = daemon.start(FormattingDaemon.address(socket, 0));
+      try (DaemonClient client = DaemonClient.connect(address)) {
+        final FormatterException error =
+            assertThrows(FormatterException.class, () -> client.format("pretty", "class Foo {}"));
+        assertThat(error).hasMessageThat().contains("Unknown style 'pretty'");
+      }
+      try (DaemonClient client = DaemonClient.connect(address)) {
+        assertThat(client.stats()).startsWith("{\"requests\":1,\"errors\":1,\"cacheHits\":0,");
+      }
+    }
+  }
+
+  @Test
+  public void skipsFilesOutsideDirectoriesToFormat() throws Exception {
+    final File sources = temporaryFolder.newFolder("src");
+    final Path outside = temporaryFolder.newFile("Outside.java").toPath();
+    Files.write(outside, UNFORMATTED.getBytes(UTF_8));
+    final FormattingConfiguration configuration =
+        FormattingConfigurationBuilder.from(configuration())
+            .directoriesToFormat(Collections.singletonList(sources))
+            .build();
+    try (FormattingDaemon daemon = new FormattingDaemon(new SilentLog(), configuration, 0)) {
+      final SocketAddress address =
+          daemon.start(
+              FormattingDaemon.address(new File(temporaryFolder.getRoot(), "fmt.sock"), 0));
+      try (DaemonClient client = DaemonClient.connect(address)) {
+        assertThat(client.file("google", outside.toFile())).isEqualTo(FormattingDaemon.SKIPPED);
+        assertThat(client.file("google", new File(sources, "../Outside.java")))
+            .isEqualTo(FormattingDaemon.SKIPPED);
+      }
+    }
+    assertThat(new String(Files.readAllBytes(outside), UTF_8)).isEqualTo(UNFORMATTED);
+  }
+
+  @Test
+  public void refusesSocketOfRunningDaemon() throws Exception {
+    final SocketAddress address =
+        FormattingDaemon.address(new File(temporaryFolder.getRoot(), "fmt.sock"), 0);
+    try (FormattingDaemon daemon = new FormattingDaemon(new SilentLog(), configuration(), 0);
+        FormattingDaemon other = new FormattingDaemon(new SilentLog(), configuration(), 0)) {
+      daemon.start(address);
+      final IOException error = assertThrows(IOException.class, () -> other.start(address));
+      assertThat(error).hasMessageThat().contains("already listening");
+    }
+  }
+
+  @Test
+  public void reportsLatencyPercentiles() {
+    final FormattingDaemon.Stats stats = new FormattingDaemon.Stats();
+    for (int i = 1; i <= 100; i++) {
+      stats.record(TimeUnit.MILLISECONDS.toNanos(i), false);
+    }
+
+    assertThat(stats.percentileNanos(50)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+    assertThat(stats.percentileNanos(99)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(99));
+    assertThat(stats.json(0))
+        .contains(
+            "\"latencyMillis\":{\"p50\":50.000,\"p90\":90.000,\"p99\":99.000,\"max\":100.000}");
+  }
+
+  private Future<FormattingResult> startInFork(File socket, int port, long idleTimeoutNanos) {
+    return executor.submit(
+        () ->
+            forkingExecutor.execute(
+                new Daemon.DaemonCallable(configuration(), socket, port, idleTimeoutNanos)));
+  }
+
+  /** Connects once the forked daemon is listening. */
+  private static DaemonClient connect(SocketAddress address) throws Exception {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+    while (true) {
+      try {
+        return DaemonClient.connect(address);
+      } catch (IOException e) {
+        if (System.nanoTime() > deadline) {
+          throw e;
+        }
+        Thread.sleep(50);
+      }
+    }
+  }
+
+  private FormattingConfiguration configuration() {
+    return FormattingConfiguration.builder()
+        .directoriesToFormat(Collections.singletonList(temporaryFolder.getRoot()))
+        .style("google")
+        .filesNamePattern(".*\\.java")
+        .filesPathPattern(".*")
+        .writeReformattedFiles(true)
+        .processingLabel("reformatted")
+        .build();
+  }
+}
@@ -0,0 +1,226 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.testing.SilentLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GitIndexTest {
+
+  private static final FileTime STAGED = FileTime.from(Instant.parse("2024-01-01T00:00:00Z"));
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void readsBlobIdsOfUnchangedFilesFromAllIndexVersions() throws Exception {
+    for (int version = 2; version <= 4; version++) {
+      File repository = temporaryFolder.newFolder("v" + version);
+      git(repository, "init", "-q");
+      List<File> files =
+          Arrays.asList(
+              write(
+                  repository, "src/main/java/com/example/Application.java", "class Application {}"),
+              write(repository, "src/main/java/com/example/App.java", "class App {}"),
+              write(repository, "src/test/java/com/example/AppTest.java", "class AppTest {}"));
+      git(repository, "add", ".");
+      git(repository, "update-index", "--index-version", String.valueOf(version));
+
+      GitIndex index = GitIndex.find(Collections.singletonList(new File(repository, "src")));
+
+      assertThat(index.size()).isEqualTo(3);
+      for (File file : files) {
+        assertThat(index.blobId(file))
+            .isEqualTo(FormatManifest.hash(Files.readAllBytes(file.toPath())));
+      }
+    }
+  }
+
+  @Test
+  public void readsFilesThatChangedOrAreNotTracked() throws Exception {
+    File repository = temporaryFolder.getRoot();
+    git(repository, "init", "-q");
+    File changed = write(repository, "Changed.java", "class Changed {}");
+    File touched = write(repository, "Touched.java", "class Touched {}");
+    git(repository, "add", ".");
+    File untracked = write(repository, "Untracked.java", "class Untracked {}");
+
+    write(repository, "Changed.java", "class Changed { }");
+    Files.setLastModifiedTime(touched.toPath(), FileTime.from(Instant.now()));
+
+    GitIndex index = GitIndex.find(Collections.singletonList(repository));
+    assertThat(index.blobId(changed)).isNull();
+    assertThat(index.blobId(touched)).isNull();
+    assertThat(index.blobId(untracked)).isNull();
+  }
+
+  @Test
+  public void readsFilesModifiedWhenIndexWasWritten() throws Exception {
+    File repository = temporaryFolder.getRoot();
+    git(repository, "init", "-q");
+    File file = write(repository, "Racy.java", "class Racy {}");
+    git(repository, "add", ".");
+    // The file may have changed again after it was staged, without its timestamp changing.
+    Files.setLastModifiedTime(new File(repository, ".git/index").toPath(), STAGED);
+
+    GitIndex index = GitIndex.find(Collections.singletonList(repository));
+
+    assertThat(index.blobId(file)).isNull();
+  }
+
+  @Test
+  public void readsIndexOfLinkedWorkTree() throws Exception {
+    File repository = temporaryFolder.newFolder("repository");
+    git(repository, "init", "-q");
+    write(repository, "App.java", "class App {}");
+    git(repository, "add", ".");
+    git(
+        repository,
+        "-c",
+        "user.name=fmt",
+        "-c",
+        "user.email=fmt@example.com",
+        "commit",
+        "-qm",
+        ".");
+    File workTree = new File(temporaryFolder.getRoot(), "worktree");
+    git(repository, "worktree", "add", "-q", workTree.getPath());
+    File file = write(workTree, "App.java", "class App {}");
+    git(workTree, "add", ".");
+
+    GitIndex index = GitIndex.find(Collections.singletonList(workTree));
+
+    assertThat(index.blobId(file))
+        .isEqualTo(FormatManifest.hash(Files.readAllBytes(file.toPath())));
+    assertThat(index.blobId(new File(repository, "App.java"))).isNull();
+  }
+
+  @Test
+  public void skipsReadingUnchangedFilesFormattedInCache() throws Exception {
+    File repository = temporaryFolder.newFolder("repository");
+    git(repository, "init", "-q");
+    File file = write(repository, "src/App.java", "class App {}\n");
+    git(repository, "add", ".");
+    FormattingConfiguration configuration =
+        FormattingConfiguration.builder()
+            .directoriesToFormat(Collections.singletonList(file.getParentFile()))
+            .style("google")
+            .filesNamePattern(".*\\.java")
+            .filesPathPattern(".*")
+            .processingLabel("non-complying")
+            .useGitIndex(true)
+            .cacheDirectory(temporaryFolder.newFolder("cache"))
+            .cacheMaxBytes(1024 * 1024)
+            .build();
+
+    FormattingResult first;
+    FormattingResult second;
+    // In a fork, where google-java-format can access javac.
+    try (ForkingExecutor forkingExecutor =
+        new ForkingExecutor(new SilentLog()).javaArgs(AbstractFMT.javaArgs())) {
+      first = forkingExecutor.execute(new AbstractFMT.FormattingCallable(configuration));
+      second = forkingExecutor.execute(new AbstractFMT.FormattingCallable(configuration));
+    }
+
+    assertThat(first.statistics().bytesProcessed()).isGreaterThan(0L);
+    assertThat(second.processedFiles()).containsExactly(file.getAbsolutePath());
+    assertThat(second.nonComplyingFiles()).isEmpty();
+    assertThat(second.statistics().bytesProcessed()).isEqualTo(0L);
+  }
+
+  @Test
+  public void parsesIndexOnceUntilGitWritesIt() throws Exception {
+    File repository = temporaryFolder.getRoot();
+    git(repository, "init", "-q");
+    write(repository, "App.java", "class App {}");
+    git(repository, "add", ".");
+
+    GitIndex index = GitIndex.find(Collections.singletonList(repository));
+    assertThat(GitIndex.find(Collections.singletonList(repository))).isSameInstanceAs(index);
+
+    File added = write(repository, "Added.java", "class Added {}");
+    git(repository, "add", ".");
+    GitIndex reread = GitIndex.find(Collections.singletonList(repository));
+    assertThat(reread).isNotSameInstanceAs(index);
+    assertThat(reread.blobId(added)).isNotNull();
+  }
+
+  @Test
+  public void isNotFoundOutsideOfWorkTrees() throws Exception {
+    assertThat(GitIndex.find(Collections.singletonList(temporaryFolder.getRoot()))).isNull();
+  }
+
+  @Test
+  public void rejectsTruncatedIndex() throws Exception {
+    File repository = temporaryFolder.getRoot();
+    git(repository, "init", "-q");
+    write(repository, "App.java", "class App {}");
+    git(repository, "add", ".");
+    byte[] content = Files.readAllBytes(new File(repository, ".git/index").toPath());
+
+    assertThrows(IOException.class, () -> GitIndex.parse(Arrays.copyOf(content, 40)));
+  }
+
+  /** Writes a file with a timestamp well before the index is written, so that it is not racy. */
+  private static File write(File directory, String path, String content) throws IOException {
+    final Path file = directory.toPath().resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(UTF_8));
+    Files.setLastModifiedTime(file, STAGED);
+    return file.toFile();
+  }
+
+  private static void git(File directory, String... args) throws Exception {
+    final List<String> command = new ArrayList<>();
+    command.add("git");
+    command.addAll(Arrays.asList(args));
+    final Process process =
+        new ProcessBuilder(command).directory(directory).redirectErrorStream(true).start();
+    final String output = new String(process.getInputStream().readAllBytes(), UTF_8);
+    assertThat(process.waitFor(30, TimeUnit.SECONDS)).isTrue();
+    assertWithMessage(String.join(" ", command) + ": " + output)
+        .that(process.exitValue())
+        .isEqualTo(0);
+  }
+}
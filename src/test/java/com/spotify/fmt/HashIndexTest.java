@@ -0,0 +1,144 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HashIndexTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void findsAddedHashes() throws Exception {
+    HashIndex index = HashIndex.create(file(), HashIndex.MIN_SLOT_BITS);
+
+    for (int i = 0; i < 500; i++) {
+      assertThat(index.add(hash(i))).isTrue();
+    }
+
+    for (int i = 0; i < 500; i++) {
+      assertThat(index.contains(hash(i))).isTrue();
+    }
+    for (int i = 500; i < 5_000; i++) {
+      assertThat(index.contains(hash(i))).isFalse();
+    }
+    assertThat(index.add(hash(0))).isTrue();
+    assertThat(index.size()).isEqualTo(500);
+  }
+
+  @Test
+  public void sharesHashesWithOtherMappings() throws Exception {
+    Path file = file();
+    HashIndex writer = HashIndex.create(file, HashIndex.MIN_SLOT_BITS);
+    HashIndex reader = HashIndex.open(file);
+
+    writer.add(hash(1));
+
+    assertThat(reader.contains(hash(1))).isTrue();
+    assertThat(HashIndex.open(file).contains(hash(1))).isTrue();
+  }
+
+  @Test
+  public void keepsHashesWhenRebuiltLarger() throws Exception {
+    Path file = file();
+    HashIndex index = HashIndex.create(file, HashIndex.MIN_SLOT_BITS);
+    int added = 0;
+    while (index.add(hash(added))) {
+      added++;
+    }
+    assertThat(index.isFull()).isTrue();
+    assertThat(added).isEqualTo((int) ((1 << HashIndex.MIN_SLOT_BITS) * 0.7));
+
+    HashIndex rebuilt = HashIndex.rebuild(file, HashIndex.MIN_SLOT_BITS + 1, index);
+
+    assertThat(rebuilt.isFull()).isFalse();
+    assertThat(rebuilt.size()).isEqualTo(added);
+    for (int i = 0; i < added; i++) {
+      assertThat(rebuilt.contains(hash(i))).isTrue();
+    }
+    assertThat(rebuilt.add(hash(added))).isTrue();
+  }
+
+  @Test
+  public void addsConcurrentlyWithoutLosingHashes() throws Exception {
+    HashIndex index = HashIndex.create(file(), 16);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> writers = new ArrayList<>();
+      for (int thread = 0; thread < 8; thread++) {
+        final int first = thread * 5_000;
+        writers.add(
+            executor.submit(
+                () -> {
+                  for (int i = first; i < first + 5_000; i++) {
+                    index.add(hash(i));
+                  }
+                }));
+      }
+      for (Future<?> writer : writers) {
+        writer.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(index.size()).isEqualTo(40_000);
+    for (int i = 0; i < 40_000; i++) {
+      assertThat(index.contains(hash(i))).isTrue();
+    }
+  }
+
+  @Test
+  public void rejectsFilesThatAreNotIndexes() throws Exception {
+    Path file = file();
+    Files.write(file, "not an index".getBytes(UTF_8));
+
+    assertThrows(IOException.class, () -> HashIndex.open(file));
+  }
+
+  private Path file() {
+    return temporaryFolder.getRoot().toPath().resolve("formatted.idx");
+  }
+
+  private static String hash(int i) {
+    return FormatManifest.hash(("class A" + i + " {}\n").getBytes(UTF_8));
+  }
+}
@@ -0,0 +1,229 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.spi.ToolProvider;
+import org.apache.maven.plugin.testing.SilentLog;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MainTest {
+
+  private static final String UNFORMATTED = "class Foo{int bar(){return 1;}}\n";
+  private static final String FORMATTED = "class Foo {\n  int bar() {\n    return 1;\n  }\n}\n";
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final ForkingExecutor forkingExecutor =
+      new ForkingExecutor(new SilentLog()).javaArgs(AbstractFMT.javaArgs());
+
+  @After
+  public void tearDown() {
+    forkingExecutor.close();
+  }
+
+  @Test
+  public void printsUsage() {
+    final StringWriter out = new StringWriter();
+
+    final int status =
+        Main.run(new PrintWriter(out), new PrintWriter(new StringWriter()), "--help");
+
+    assertThat(status).isEqualTo(Main.OK);
+    assertThat(out.toString()).startsWith("Usage: fmt [options] <file or directory>...");
+  }
+
+  @Test
+  public void rejectsInvalidArguments() throws IOException {
+    final String directory = temporaryFolder.getRoot().getPath();
+
+    assertThat(run("--bogus", directory)).contains("fmt: Unknown option: --bogus");
+    assertThat(run("--style")).contains("fmt: Missing value of --style");
+    assertThat(run("--threads", "many", directory)).contains("fmt: Invalid number of threads");
+    assertThat(run(directory + "/Missing.java")).contains("fmt: No such file or directory");
+    assertThat(run()).contains("fmt: No files or directories to format");
+  }
+
+  @Test
+  public void isToolProvider() {
+    final Optional<ToolProvider> tool = ToolProvider.findFirst("fmt");
+
+    assertThat(tool).isPresent();
+    assertThat(
+            tool.get()
+                .run(
+                    new PrintWriter(new StringWriter()),
+                    new PrintWriter(new StringWriter()),
+                    "--help"))
+        .isEqualTo(Main.OK);
+  }
+
+  @Test
+  public void restoresLogOfCaller() throws IOException {
+    final Logger log = Logging.getLog();
+    final SilentLog target = new SilentLog();
+    final StringWriter out = new StringWriter();
+
+    try (Logging.Redirect redirect = Logging.redirect(target, false)) {
+      final int status =
+          Main.run(
+              new PrintWriter(out),
+              new PrintWriter(new StringWriter()),
+              "--debug",
+              temporaryFolder.newFolder("src").getPath());
+
+      assertThat(status).isEqualTo(Main.OK);
+      assertThat(log.target()).isSameInstanceAs(target);
+      assertThat(log.isDebugEnabled()).isFalse();
+    }
+    assertThat(out.toString()).contains("Processed 0 files");
+  }
+
+  @Test
+  public void checksWithoutWriting() throws IOException {
+    final Path file = write("src/Foo.java", UNFORMATTED);
+    write("src/Formatted.java", FORMATTED);
+
+    final List<String> result = runInFork("--check", file.getParent().toString());
+
+    assertThat(result.get(0)).isEqualTo(String.valueOf(Main.NON_COMPLYING));
+    assertThat(result.get(1)).contains("Processed 2 files (1 non-complying).");
+    assertThat(result.get(2)).contains("error: Non complying file: " + file.toAbsolutePath());
+    assertThat(read(file)).isEqualTo(UNFORMATTED);
+  }
+
+  @Test
+  public void formatsDirectoriesAndFiles() throws IOException {
+    final Path inDirectory = write("src/Foo.java", UNFORMATTED);
+    final Path file = write("other/Bar.java", UNFORMATTED);
+    final Path skipped = write("other/Bar.txt", UNFORMATTED);
+
+    final List<String> result =
+        runInFork(
+            "--style",
+            "google",
+            inDirectory.getParent().toString(),
+            file.toString(),
+            skipped.toString());
+
+    assertThat(result.get(0)).isEqualTo(String.valueOf(Main.OK));
+    assertThat(read(inDirectory)).isEqualTo(FORMATTED);
+    assertThat(read(file)).isEqualTo(FORMATTED);
+    assertThat(read(skipped)).isEqualTo(UNFORMATTED);
+  }
+
+  @Test
+  public void failsOnInvalidSource() throws IOException {
+    final Path file = write("src/Foo.java", "class {");
+
+    final List<String> result = runInFork(file.toString());
+
+    assertThat(result.get(0)).isEqualTo(String.valueOf(Main.FAILED));
+    assertThat(result.get(2)).contains("error: Failed to format file '" + file + "'.");
+  }
+
+  @Test
+  public void runsAsJavaJar() throws Exception {
+    // Built in the package phase, so only there in the cli-jar execution of surefire.
+    final File jar = new File(System.getProperty("fmt.cliJar", ""));
+    assumeTrue("No cli jar at " + jar, jar.isFile());
+    final Path file = write("src/Foo.java", UNFORMATTED);
+
+    final Process process =
+        new ProcessBuilder(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-jar",
+                jar.getPath(),
+                file.getParent().toString())
+            .redirectErrorStream(true)
+            .start();
+    final String output = new String(process.getInputStream().readAllBytes(), UTF_8);
+
+    assertThat(process.waitFor(60, TimeUnit.SECONDS)).isTrue();
+    assertWithMessage(output).that(process.exitValue()).isEqualTo(Main.OK);
+    assertThat(output).contains("Processed 1 files (1 reformatted).");
+    assertThat(read(file)).isEqualTo(FORMATTED);
+  }
+
+  private static String run(String... args) {
+    final StringWriter err = new StringWriter();
+    final int status = Main.run(new PrintWriter(new StringWriter()), new PrintWriter(err), args);
+    assertThat(status).isEqualTo(Main.USAGE_ERROR);
+    return err.toString();
+  }
+
+  /** Runs the tool in a fork, where google-java-format can access javac. */
+  private List<String> runInFork(String... args) throws IOException {
+    return forkingExecutor.execute(new RunMain(args));
+  }
+
+  private Path write(String path, String content) throws IOException {
+    final Path file = temporaryFolder.getRoot().toPath().resolve(path);
+    Files.createDirectories(file.getParent());
+    return Files.write(file, content.getBytes(UTF_8));
+  }
+
+  private static String read(Path file) throws IOException {
+    return new String(Files.readAllBytes(file), UTF_8);
+  }
+
+  /** Returns the exit status, output and error output of the tool. */
+  static class RunMain implements SerializableCallable<List<String>> {
+
+    private final String[] args;
+
+    RunMain(String[] args) {
+      this.args = args;
+    }
+
+    @Override
+    public List<String> call() {
+      final StringWriter out = new StringWriter();
+      final StringWriter err = new StringWriter();
+      final int status = Main.run(new PrintWriter(out), new PrintWriter(err), args);
+      return Arrays.asList(String.valueOf(status), out.toString(), err.toString());
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Performance measurements per machine class, stored as a properties file that is committed to the
+ * repository. Measurements are only comparable within a machine class, so every key is prefixed
+ * with one, e.g. {@code linux-amd64-8cpu-java17.filesPerSecond}.
+ */
+class PerformanceBaseline {
+
+  enum Metric {
+    FILES_PER_SECOND("filesPerSecond", true),
+    ALLOCATED_BYTES_PER_FILE("allocatedBytesPerFile", false),
+    FORK_LATENCY_MILLIS("forkLatencyMillis", false);
+
+    final String key;
+    final boolean higherIsBetter;
+
+    Metric(String key, boolean higherIsBetter) {
+      this.key = key;
+      this.higherIsBetter = higherIsBetter;
+    }
+  }
+
+  private final Map<String, String> values = new TreeMap<>();
+
+  static PerformanceBaseline load(Path file) throws IOException {
+    final PerformanceBaseline baseline = new PerformanceBaseline();
+    if (Files.exists(file)) {
+      final Properties properties = new Properties();
+      try (Reader reader = Files.newBufferedReader(file, UTF_8)) {
+        properties.load(reader);
+      }
+      for (String key : properties.stringPropertyNames()) {
+        baseline.values.put(key, properties.getProperty(key));
+      }
+    }
+    return baseline;
+  }
+
+  /**
+   * The class of the machine running this JVM. Can be overridden with {@code -Dfmt.machineClass},
+   * e.g. to share a baseline between CI runners that only differ in their host name.
+   */
+  static String machineClass() {
+    final String override = System.getProperty("fmt.machineClass");
+    if (override != null && !override.isEmpty()) {
+      return override;
+    }
+    final String os = System.getProperty("os.name").toLowerCase(Locale.ROOT).replaceAll("\\W", "");
+    final String javaVersion = System.getProperty("java.specification.version");
+    return String.format(
+        Locale.ROOT,
+        "%s-%s-%dcpu-java%s",
+        os,
+        System.getProperty("os.arch"),
+        Runtime.getRuntime().availableProcessors(),
+        javaVersion.startsWith("1.") ? javaVersion.substring(2) : javaVersion);
+  }
+
+  /** The recorded measurements of a machine class, empty if there are none. */
+  Map<Metric, Double> measurements(String machineClass) {
+    final Map<Metric, Double> measurements = new EnumMap<>(Metric.class);
+    for (Metric metric : Metric.values()) {
+      final String value = values.get(machineClass + "." + metric.key);
+      if (value != null) {
+        measurements.put(metric, Double.parseDouble(value));
+      }
+    }
+    return measurements;
+  }
+
+  /** Replaces the measurements of a machine class. */
+  void record(String machineClass, Map<Metric, Double> measurements) {
+    for (Metric metric : Metric.values()) {
+      values.remove(machineClass + "." + metric.key);
+    }
+    measurements.forEach(
+        (metric, value) ->
+            values.put(machineClass + "." + metric.key, String.format(Locale.ROOT, "%.1f", value)));
+  }
+
+  /**
+   * Describes every measurement that is worse than recorded for the machine class by more than
+   * {@code tolerance}, a fraction of the recorded value.
+   */
+  List<String> regressions(String machineClass, Map<Metric, Double> measured, double tolerance) {
+    final Map<Metric, Double> recorded = measurements(machineClass);
+    final List<String> regressions = new ArrayList<>();
+    measured.forEach(
+        (metric, value) -> {
+          final Double baseline = recorded.get(metric);
+          if (baseline == null) {
+            return;
+          }
+          final boolean regressed =
+              metric.higherIsBetter
+                  ? value < baseline * (1 - tolerance)
+                  : value > baseline * (1 + tolerance);
+          if (regressed) {
+            regressions.add(
+                String.format(
+                    Locale.ROOT,
+                    "%s: %.1f, baseline %.1f (%+.0f%%)",
+                    metric.key,
+                    value,
+                    baseline,
+                    (value / baseline - 1) * 100));
+          }
+        });
+    return regressions;
+  }
+
+  /** Writes the baseline sorted by key, so that recording a machine class gives a small diff. */
+  void store(Path file) throws IOException {
+    final Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), "baseline", ".tmp");
+    try (Writer writer = Files.newBufferedWriter(tmp, UTF_8)) {
+      writer.write(
+          "# Performance baseline per machine class, see CONTRIBUTING.md.\n"
+              + "# Record with: mvn test -Dtest=PerformanceRegressionTest"
+              + " -Dfmt.performanceGate=record\n");
+      for (Map.Entry<String, String> entry : values.entrySet()) {
+        writer.write(entry.getKey() + "=" + entry.getValue() + "\n");
+      }
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
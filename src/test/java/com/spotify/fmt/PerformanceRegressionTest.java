@@ -0,0 +1,275 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.googlejavaformat.java.JavaFormatterOptions;
+import com.google.googlejavaformat.java.JavaFormatterOptions.Style;
+import com.spotify.fmt.PerformanceBaseline.Metric;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.maven.plugin.testing.SilentLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Compares the throughput, allocation and fork latency of this tree to the baseline recorded in
+ * {@code performance-baseline.properties} for the same machine class. Measuring takes a while and
+ * is only meaningful on a quiet machine, so it is skipped unless enabled with {@code
+ * -Dfmt.performanceGate}; {@code -Dfmt.performanceGate=record} records the baseline instead. The
+ * baseline is not committed, it is recorded on the machine that runs the gate.
+ */
+public class PerformanceRegressionTest {
+
+  private static final Path BASELINE =
+      Paths.get(
+          System.getProperty("basedir", ""), "src/test/resources/performance-baseline.properties");
+
+  private static final String GATE = System.getProperty("fmt.performanceGate");
+
+  private static final double TOLERANCE =
+      Double.parseDouble(System.getProperty("fmt.performanceTolerance", "0.25"));
+
+  private static final int FILES = 2000;
+  private static final int RUNS = 3;
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void reportsRegressionsBeyondTolerance() {
+    final PerformanceBaseline baseline = new PerformanceBaseline();
+    baseline.record("ci", measurements(1000, 50_000, 400));
+
+    assertThat(baseline.regressions("ci", measurements(900, 55_000, 440), 0.2)).isEmpty();
+    assertThat(baseline.regressions("ci", measurements(700, 50_000, 400), 0.2))
+        .containsExactly("filesPerSecond: 700.0, baseline 1000.0 (-30%)");
+    assertThat(baseline.regressions("ci", measurements(1000, 100_000, 600), 0.2))
+        .containsExactly(
+            "allocatedBytesPerFile: 100000.0, baseline 50000.0 (+100%)",
+            "forkLatencyMillis: 600.0, baseline 400.0 (+50%)");
+  }
+
+  @Test
+  public void ignoresOtherMachineClasses() {
+    final PerformanceBaseline baseline = new PerformanceBaseline();
+    baseline.record("fast", measurements(1000, 50_000, 400));
+
+    assertThat(baseline.measurements("slow")).isEmpty();
+    assertThat(baseline.regressions("slow", measurements(1, 1e9, 1e9), 0.2)).isEmpty();
+  }
+
+  @Test
+  public void storesAndLoadsBaseline() throws IOException {
+    final Path file = temporaryFolder.getRoot().toPath().resolve("baseline.properties");
+    final PerformanceBaseline baseline = PerformanceBaseline.load(file);
+    baseline.record("b", measurements(1000, 50_000, 400));
+    baseline.record("a", measurements(2000, 40_000, 300));
+    baseline.store(file);
+
+    final PerformanceBaseline loaded = PerformanceBaseline.load(file);
+    assertThat(loaded.measurements("a")).isEqualTo(measurements(2000, 40_000, 300));
+    assertThat(loaded.measurements("b")).isEqualTo(measurements(1000, 50_000, 400));
+    assertThat(new String(Files.readAllBytes(file), UTF_8))
+        .contains("a.allocatedBytesPerFile=40000.0\na.filesPerSecond=2000.0\n");
+  }
+
+  @Test
+  public void meetsBaseline() throws Exception {
+    assumeTrue("Enable with -Dfmt.performanceGate", GATE != null);
+    final String machineClass = PerformanceBaseline.machineClass();
+    final PerformanceBaseline baseline = PerformanceBaseline.load(BASELINE);
+    final Map<Metric, Double> measured = measure();
+
+    if ("record".equals(GATE)) {
+      baseline.record(machineClass, measured);
+      baseline.store(BASELINE);
+      System.out.printf("Recorded baseline for %s: %s%n", machineClass, measured);
+      return;
+    }
+    assertWithMessage(
+            "No baseline for %s, record one with -Dfmt.performanceGate=record", machineClass)
+        .that(baseline.measurements(machineClass))
+        .isNotEmpty();
+    assertWithMessage(
+            "Performance regressed by more than %s%% on %s",
+            Math.round(TOLERANCE * 100), machineClass)
+        .that(baseline.regressions(machineClass, measured, TOLERANCE))
+        .isEmpty();
+  }
+
+  private Map<Metric, Double> measure() throws IOException {
+    final SyntheticCorpus.Generated corpus =
+        new SyntheticCorpus().files(FILES).modules(4).generate(temporaryFolder.getRoot().toPath());
+    final Map<Metric, Double> measured;
+    try (ForkingExecutor executor =
+        new ForkingExecutor(new SilentLog()).javaArgs(AbstractFMT.javaArgs())) {
+      measured = executor.execute(new Measure(corpus.sourceDirectories));
+    }
+    measured.put(Metric.FORK_LATENCY_MILLIS, forkLatencyMillis());
+    return measured;
+  }
+
+  /**
+   * Measures formatting in a fork, where google-java-format gets the exports it needs and the
+   * measurements are not skewed by the tests that ran before.
+   */
+  static class Measure implements SerializableCallable<Map<Metric, Double>> {
+
+    private final List<File> sourceDirectories;
+
+    Measure(List<File> sourceDirectories) {
+      this.sourceDirectories = sourceDirectories;
+    }
+
+    @Override
+    public Map<Metric, Double> call() throws Exception {
+      final Map<Metric, Double> measured = new EnumMap<>(Metric.class);
+      measured.put(Metric.FILES_PER_SECOND, filesPerSecond());
+      final double allocated = allocatedBytesPerFile();
+      if (allocated >= 0) {
+        measured.put(Metric.ALLOCATED_BYTES_PER_FILE, allocated);
+      }
+      return measured;
+    }
+
+    /** The best of a few single-threaded runs over the corpus, after one run to warm up. */
+    private double filesPerSecond() throws FormatterException {
+      final FormattingConfiguration configuration =
+          configuration().directoriesToFormat(sourceDirectories).threads(1).build();
+      long fastest = Long.MAX_VALUE;
+      for (int run = 0; run <= RUNS; run++) {
+        final long nanos = new Formatter(configuration).format().statistics().wallTimeNanos();
+        if (run > 0) {
+          fastest = Math.min(fastest, nanos);
+        }
+      }
+      return FILES / (fastest / 1e9);
+    }
+
+    /**
+     * The bytes allocated by the formatting steps per file, measured on this thread after
+     * formatting the corpus once to warm up. Negative if the JVM cannot measure allocation per
+     * thread.
+     */
+    private double allocatedBytesPerFile() throws Exception {
+      final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+        return -1;
+      }
+      final com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+      if (!allocation.isThreadAllocatedMemorySupported()) {
+        return -1;
+      }
+      allocation.setThreadAllocatedMemoryEnabled(true);
+
+      final List<String> sources = new ArrayList<>();
+      for (File directory : sourceDirectories) {
+        try (Stream<Path> files = Files.walk(directory.toPath())) {
+          for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+            sources.add(new String(Files.readAllBytes(file), UTF_8));
+          }
+        }
+      }
+      final Formatter formatter = new Formatter(configuration().build());
+      final com.google.googlejavaformat.java.Formatter javaFormatter =
+          new com.google.googlejavaformat.java.Formatter(
+              JavaFormatterOptions.builder().style(Style.GOOGLE).build());
+      final PhaseTimer phases = new PhaseTimer();
+
+      long allocated = 0;
+      for (int run = 0; run < 2; run++) {
+        final long before = allocation.getCurrentThreadAllocatedBytes();
+        for (String source : sources) {
+          final PhaseTimer.FileTimer timer = phases.startFile("Measured.java", source.length());
+          formatter.formatSource(source, javaFormatter, Style.GOOGLE, timer);
+          timer.finish(FormatFileEvent.COMPLIANT);
+        }
+        allocated = allocation.getCurrentThreadAllocatedBytes() - before;
+      }
+      return (double) allocated / sources.size();
+    }
+  }
+
+  /** The median latency of forking to run a trivial callable, after one fork to warm up. */
+  private static double forkLatencyMillis() throws IOException {
+    final long[] nanos = new long[5];
+    for (int run = -1; run < nanos.length; run++) {
+      final long start = System.nanoTime();
+      try (ForkingExecutor executor =
+          new ForkingExecutor(new SilentLog()).javaArgs(AbstractFMT.javaArgs())) {
+        executor.execute(new Trivial());
+      }
+      if (run >= 0) {
+        nanos[run] = System.nanoTime() - start;
+      }
+    }
+    Arrays.sort(nanos);
+    return nanos[nanos.length / 2] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  private static FormattingConfigurationBuilder configuration() {
+    return FormattingConfiguration.builder()
+        .style("google")
+        .filesNamePattern(".*\\.java")
+        .filesPathPattern(".*")
+        .processingLabel("non-complying");
+  }
+
+  private static Map<Metric, Double> measurements(
+      double filesPerSecond, double allocatedBytesPerFile, double forkLatencyMillis) {
+    final Map<Metric, Double> measurements = new EnumMap<>(Metric.class);
+    measurements.put(Metric.FILES_PER_SECOND, filesPerSecond);
+    measurements.put(Metric.ALLOCATED_BYTES_PER_FILE, allocatedBytesPerFile);
+    measurements.put(Metric.FORK_LATENCY_MILLIS, forkLatencyMillis);
+    return measurements;
+  }
+
+  static class Trivial implements SerializableCallable<Integer> {
+
+    @Override
+    public Integer call() {
+      return 42;
+    }
+  }
+}
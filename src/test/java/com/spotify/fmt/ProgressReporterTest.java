@@ -0,0 +1,77 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.Test;
+
+public class ProgressReporterTest {
+
+  @Test
+  public void describesRateAndTimeRemaining() {
+    assertThat(ProgressReporter.describe(250, 1000, TimeUnit.SECONDS.toNanos(10)))
+        .isEqualTo("Formatted 250 of 1000 files (25%), 25.0 files/s, about 30s remaining");
+    assertThat(ProgressReporter.describe(10, 10_000, TimeUnit.SECONDS.toNanos(10)))
+        .isEqualTo("Formatted 10 of 10000 files (0%), 1.0 files/s, about 2h46m remaining");
+    assertThat(ProgressReporter.describe(0, 10, TimeUnit.SECONDS.toNanos(1)))
+        .isEqualTo("Formatted 0 of 10 files (0%), 0.0 files/s");
+  }
+
+  @Test
+  public void reportsAtInterval() {
+    Log log = mock(Log.class);
+
+    try (ProgressReporter progress = new ProgressReporter(log, 2, 10).start()) {
+      progress.fileDone();
+      verify(log, timeout(5_000).atLeastOnce())
+          .info(
+              argThat(
+                  (CharSequence line) ->
+                      line.toString().startsWith("Formatted 1 of 2 files (50%)")));
+    }
+  }
+
+  @Test
+  public void doesNotReportWithoutInterval() throws Exception {
+    Log log = mock(Log.class);
+
+    try (ProgressReporter progress = new ProgressReporter(log, 2, 0).start()) {
+      progress.fileDone();
+      Thread.sleep(50);
+    }
+
+    verifyNoInteractions(log);
+  }
+}
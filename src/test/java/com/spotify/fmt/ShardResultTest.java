@@ -0,0 +1,144 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.spotify.fmt.FormattingStatistics.Phase;
+import java.io.File;
+import java.io.InvalidClassException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShardResultTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void mergesShardsAsIfFormattedAtOnce() {
+    ShardResult first =
+        shard(0, "A.java", 1_000, 5_000, 100, 10, timing("A.java", 30), timing("C.java", 10));
+    ShardResult second = shard(1, "B.java", 3_000, 2_000, 300, 20, timing("B.java", 20));
+
+    FormattingResult result = ShardResult.merge(Arrays.asList(first, second));
+
+    assertThat(result.processedFiles()).containsExactly("A.java", "B.java").inOrder();
+    assertThat(result.nonComplyingFiles()).containsExactly("A.java", "B.java").inOrder();
+    FormattingStatistics statistics = result.statistics();
+    assertThat(statistics.wallTimeNanos()).isEqualTo(3_000);
+    assertThat(statistics.phaseNanos()).containsExactly(Phase.READ, 7_000L);
+    assertThat(statistics.bytesProcessed()).isEqualTo(400);
+    assertThat(statistics.startedAtMillis()).isEqualTo(10);
+    assertThat(statistics.peakHeapBytes()).isEqualTo(3_000);
+    assertThat(statistics.slowestFiles())
+        .containsExactly(timing("A.java", 30), timing("B.java", 20))
+        .inOrder();
+  }
+
+  @Test
+  public void replacesResultOfEarlierRun() throws Exception {
+    Path file = temporaryFolder.getRoot().toPath().resolve("fmt-check-shard-1.ser");
+
+    shard(1, "A.java", 1, 1, 1, 1).write(file);
+    shard(1, "B.java", 1, 1, 1, 1).write(file);
+
+    ShardResult read = ShardResult.read(file);
+    assertThat(read.goal()).isEqualTo("check");
+    assertThat(read.index()).isEqualTo(1);
+    assertThat(read.count()).isEqualTo(2);
+    assertThat(read.result().processedFiles()).containsExactly("B.java");
+    assertThat(temporaryFolder.getRoot().list()).asList().containsExactly("fmt-check-shard-1.ser");
+  }
+
+  @Test
+  public void readsResultWithSpansAndTimings() throws Exception {
+    Path file = temporaryFolder.getRoot().toPath().resolve("fmt-check-shard-0.ser");
+    ShardResult shard = shard(0, "A.java", 1, 1, 1, 1, timing("A.java", 30));
+    new ShardResult(
+            "check",
+            0,
+            2,
+            FormattingResultBuilder.from(shard.result())
+                .spans(
+                    Collections.singletonList(
+                        new TraceSpan(
+                            "t", "s", null, "fmt:check", 1, 2, Collections.singletonMap("k", "v"))))
+                .build())
+        .write(file);
+
+    ShardResult read = ShardResult.read(file);
+
+    assertThat(read.result().spans()).hasSize(1);
+    assertThat(read.result().statistics().slowestFiles()).containsExactly(timing("A.java", 30));
+  }
+
+  @Test
+  public void rejectsOtherClassesInResult() throws Exception {
+    Path file = temporaryFolder.getRoot().toPath().resolve("fmt-check-shard-0.ser");
+    Serialization.serialize(new File("A.java"), file);
+
+    SerializationException e =
+        assertThrows(SerializationException.class, () -> ShardResult.read(file));
+    assertThat(e).hasCauseThat().isInstanceOf(InvalidClassException.class);
+  }
+
+  private static ShardResult shard(
+      int index,
+      String file,
+      long wallTimeNanos,
+      long readNanos,
+      long bytes,
+      long startedAtMillis,
+      FileTiming... slowest) {
+    return new ShardResult(
+        "check",
+        index,
+        2,
+        FormattingResult.builder()
+            .processedFiles(Collections.singletonList(file))
+            .nonComplyingFiles(Collections.singletonList(file))
+            .statistics(
+                FormattingStatistics.builder()
+                    .wallTimeNanos(wallTimeNanos)
+                    .putPhaseNanos(Phase.READ, readNanos)
+                    .bytesProcessed(bytes)
+                    .startedAtMillis(startedAtMillis)
+                    .peakHeapBytes(wallTimeNanos)
+                    .slowestFiles(Arrays.asList(slowest))
+                    .build())
+            .build());
+  }
+
+  private static FileTiming timing(String path, long nanos) {
+    return new FileTiming(path, 1, nanos, Collections.emptyMap());
+  }
+}
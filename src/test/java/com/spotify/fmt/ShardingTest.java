@@ -0,0 +1,152 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShardingTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void splitsFilesIntoDisjointShardsCoveringAllFiles() {
+    File root = new File("/checkout/src/main/java");
+    List<File> files = files(root, 1000);
+
+    Set<File> seen = new HashSet<>();
+    for (int index = 0; index < 4; index++) {
+      List<File> shard =
+          new Sharding(index, 4, false).select(files, Collections.singletonList(root));
+      assertThat(shard.size()).isGreaterThan(200);
+      for (File file : shard) {
+        assertThat(seen.add(file)).isTrue();
+      }
+    }
+    assertThat(seen).containsExactlyElementsIn(files);
+  }
+
+  @Test
+  public void assignsFilesByPathRelativeToTheirSourceDirectory() {
+    File one = new File("/one/checkout/src/main/java");
+    File other = new File("/other/src/main/java");
+    List<File> files = files(one, 100);
+    List<File> shuffled = new ArrayList<>(files(other, 100));
+    Collections.reverse(shuffled);
+
+    List<String> selected =
+        relativePaths(one, new Sharding(1, 3, false).select(files, Collections.singletonList(one)));
+    List<String> selectedElsewhere =
+        relativePaths(
+            other, new Sharding(1, 3, false).select(shuffled, Collections.singletonList(other)));
+
+    assertThat(selectedElsewhere).containsExactlyElementsIn(selected);
+  }
+
+  @Test
+  public void balancesShardsBySize() throws IOException {
+    File root = temporaryFolder.newFolder("src");
+    List<File> files = new ArrayList<>();
+    for (int i = 0; i < 60; i++) {
+      File file = new File(root, "File" + i + ".java");
+      // A few large files that hashing would likely put on the same shard.
+      Files.write(file.toPath(), new byte[i < 3 ? 100_000 : 1_000 + i]);
+      files.add(file);
+    }
+
+    long[] bytes = new long[3];
+    Set<File> seen = new HashSet<>();
+    for (int index = 0; index < 3; index++) {
+      for (File file :
+          new Sharding(index, 3, true).select(files, Collections.singletonList(root))) {
+        assertThat(seen.add(file)).isTrue();
+        bytes[index] += file.length();
+      }
+    }
+    assertThat(seen).containsExactlyElementsIn(files);
+    for (long shard : bytes) {
+      assertThat(shard).isAtLeast(100_000L);
+      assertThat(shard).isAtMost(130_000L);
+    }
+  }
+
+  @Test
+  public void formatsAllFilesInSingleShard() {
+    File root = new File("/checkout/src/main/java");
+    List<File> files = files(root, 10);
+
+    assertThat(new Sharding(0, 1, true).select(files, Collections.singletonList(root)))
+        .isEqualTo(files);
+  }
+
+  @Test
+  public void rejectsIndexOutsideOfShards() {
+    assertThrows(IllegalArgumentException.class, () -> new Sharding(3, 3, false));
+    assertThrows(IllegalArgumentException.class, () -> new Sharding(-1, 3, false));
+    assertThrows(IllegalArgumentException.class, () -> new Sharding(0, 0, false));
+  }
+
+  @Test
+  public void relativizesToInnermostSourceDirectory() {
+    File outer = new File("/checkout/src");
+    File inner = new File(outer, "main/java");
+
+    assertThat(
+            Sharding.relativePath(
+                new File(inner, "com/spotify/Foo.java"),
+                Arrays.asList(outer.toPath(), inner.toPath())))
+        .isEqualTo("com/spotify/Foo.java");
+  }
+
+  private static List<File> files(File root, int count) {
+    List<File> files = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      files.add(new File(root, "com/spotify/package" + (i % 7) + "/File" + i + ".java"));
+    }
+    return files;
+  }
+
+  private static List<String> relativePaths(File root, List<File> files) {
+    return files.stream()
+        .map(file -> root.toPath().relativize(file.toPath()).toString())
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,67 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.Test;
+
+public class SlowestFilesTest {
+
+  @Test
+  public void keepsSlowestFilesSlowestFirst() {
+    SlowestFiles slowest = new SlowestFiles(3);
+
+    LongStream.rangeClosed(1, 10_000)
+        .parallel()
+        .forEach(nanos -> slowest.offer(timing("File" + nanos + ".java", nanos)));
+
+    List<String> paths =
+        slowest.slowestFirst().stream().map(FileTiming::path).collect(Collectors.toList());
+    assertThat(paths).containsExactly("File10000.java", "File9999.java", "File9998.java").inOrder();
+    assertThat(slowest.isCandidate(9998)).isFalse();
+    assertThat(slowest.isCandidate(9999)).isTrue();
+  }
+
+  @Test
+  public void tracksNothingWithoutCapacity() {
+    SlowestFiles slowest = new SlowestFiles(0);
+
+    slowest.offer(timing("File.java", 1));
+
+    assertThat(slowest.isCandidate(Long.MAX_VALUE)).isFalse();
+    assertThat(slowest.slowestFirst()).isEmpty();
+  }
+
+  private static FileTiming timing(String path, long nanos) {
+    return new FileTiming(path, 1, nanos, Collections.emptyMap());
+  }
+}
@@ -0,0 +1,106 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import org.apache.maven.plugin.testing.SilentLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SourceWatcherTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path root;
+  private SourceWatcher watcher;
+
+  @Before
+  public void setUp() throws IOException {
+    root = temporaryFolder.newFolder("src").toPath();
+    Files.createDirectories(root.resolve("com/example"));
+    write(root.resolve("com/example/Existing.java"));
+    watcher = new SourceWatcher(new SilentLog(), Collections.singletonList(root.toFile()), 100);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    watcher.close();
+  }
+
+  @Test
+  public void watchesAllDirectories() {
+    assertThat(watcher.directories()).isEqualTo(3);
+  }
+
+  @Test
+  public void reportsCreatedAndModifiedFiles() throws Exception {
+    final Path created = root.resolve("com/example/Created.java");
+    write(created);
+    write(root.resolve("com/example/Existing.java"));
+
+    assertThat(watcher.awaitChanges())
+        .containsExactly(created.toFile(), root.resolve("com/example/Existing.java").toFile());
+  }
+
+  @Test
+  public void reportsBurstOfSavesOnce() throws Exception {
+    final Path file = root.resolve("com/example/Existing.java");
+    for (int i = 0; i < 5; i++) {
+      write(file);
+    }
+    write(root.resolve("Other.java"));
+
+    final Set<File> changed = watcher.awaitChanges();
+
+    assertThat(changed).containsExactly(file.toFile(), root.resolve("Other.java").toFile());
+  }
+
+  @Test
+  public void watchesNewDirectories() throws Exception {
+    final Path directory = Files.createDirectories(root.resolve("com/example/sub"));
+    final Path first = write(directory.resolve("First.java"));
+    assertThat(watcher.awaitChanges()).containsExactly(first.toFile());
+
+    final Path second = write(directory.resolve("Second.java"));
+    assertThat(watcher.awaitChanges()).containsExactly(second.toFile());
+  }
+
+  private static Path write(Path file) throws IOException {
+    return Files.write(file, ("class " + System.nanoTime() + " {}\n").getBytes(UTF_8));
+  }
+}
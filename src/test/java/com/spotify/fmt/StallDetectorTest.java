@@ -0,0 +1,81 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.Test;
+
+public class StallDetectorTest {
+
+  private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(60);
+
+  private final Log log = mock(Log.class);
+  private final StallDetector detector = new StallDetector(log, TIMEOUT);
+
+  @Test
+  public void dumpsThreadsOnceWhenNoFileFinishes() {
+    detector.started("src/main/java/Slow.java");
+
+    assertThat(detector.check(System.nanoTime() + TIMEOUT + 1)).isTrue();
+    assertThat(detector.check(System.nanoTime() + TIMEOUT + 1)).isTrue();
+
+    assertThat(detector.stall()).contains("src/main/java/Slow.java");
+    assertThat(detector.stall()).contains(Thread.currentThread().getName());
+    verify(log, times(1))
+        .warn(
+            argThat(
+                (CharSequence message) ->
+                    message.toString().contains("formatting src/main/java/Slow.java for")
+                        && message.toString().contains("dumpsThreadsOnceWhenNoFileFinishes")));
+  }
+
+  @Test
+  public void recoversWhenFilesFinish() {
+    detector.started("src/main/java/Slow.java");
+    assertThat(detector.check(System.nanoTime() + TIMEOUT + 1)).isTrue();
+
+    detector.finished();
+
+    assertThat(detector.check(System.nanoTime())).isFalse();
+    assertThat(detector.stall()).isNull();
+  }
+
+  @Test
+  public void isNotStalledWithoutFilesInFlight() {
+    assertThat(detector.check(System.nanoTime() + TIMEOUT + 1)).isFalse();
+    verify(log, never()).warn(anyString());
+  }
+}
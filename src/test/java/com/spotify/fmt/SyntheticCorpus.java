@@ -0,0 +1,168 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates source trees of any size for scaling tests. The same settings always produce the same
+ * tree. Compliant files are formatted as google-java-format would, non-compliant files have their
+ * methods unindented.
+ */
+class SyntheticCorpus {
+
+  private long seed = 1;
+  private int files = 1000;
+  private int modules = 10;
+  private int packagesPerModule = 20;
+  private int medianMethods = 5;
+  private double methodsSigma = 1.0;
+  private double nonCompliantFraction = 0.1;
+
+  SyntheticCorpus seed(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  SyntheticCorpus files(int files) {
+    this.files = files;
+    return this;
+  }
+
+  SyntheticCorpus modules(int modules) {
+    this.modules = modules;
+    return this;
+  }
+
+  SyntheticCorpus packagesPerModule(int packagesPerModule) {
+    this.packagesPerModule = packagesPerModule;
+    return this;
+  }
+
+  /**
+   * Sets the distribution of file sizes: the number of methods per class is log-normally
+   * distributed with the given median and standard deviation of its logarithm, like the sizes of
+   * files in real code bases.
+   */
+  SyntheticCorpus methods(int median, double sigma) {
+    this.medianMethods = median;
+    this.methodsSigma = sigma;
+    return this;
+  }
+
+  SyntheticCorpus nonCompliantFraction(double nonCompliantFraction) {
+    this.nonCompliantFraction = nonCompliantFraction;
+    return this;
+  }
+
+  /**
+   * Writes the corpus under {@code root}, as {@code module-N/src/main/java} source directories.
+   *
+   * @return the source directories and the number of non-compliant files
+   */
+  Generated generate(Path root) throws IOException {
+    final Random random = new Random(seed);
+    final List<File> sourceDirectories = new ArrayList<>();
+    for (int module = 0; module < modules; module++) {
+      sourceDirectories.add(
+          Files.createDirectories(root.resolve(String.format("module-%02d/src/main/java", module)))
+              .toFile());
+    }
+    int nonCompliant = 0;
+    for (int i = 0; i < files; i++) {
+      final int module = i % modules;
+      final int pkg = random.nextInt(packagesPerModule);
+      final int methods =
+          (int)
+              Math.max(
+                  1,
+                  Math.min(
+                      1000,
+                      Math.round(
+                          Math.exp(
+                              Math.log(medianMethods) + methodsSigma * random.nextGaussian()))));
+      final boolean compliant = random.nextDouble() >= nonCompliantFraction;
+      if (!compliant) {
+        nonCompliant++;
+      }
+      final String packageName = String.format(Locale.ROOT, "com.example.m%02d.p%03d", module, pkg);
+      final Path directory =
+          sourceDirectories.get(module).toPath().resolve(packageName.replace('.', '/'));
+      Files.createDirectories(directory);
+      Files.write(
+          directory.resolve(className(i) + ".java"),
+          source(packageName, i, methods, compliant).getBytes(StandardCharsets.UTF_8));
+    }
+    return new Generated(sourceDirectories, nonCompliant);
+  }
+
+  private static String className(int index) {
+    return String.format(Locale.ROOT, "C%07d", index);
+  }
+
+  private static String source(String packageName, int index, int methods, boolean compliant) {
+    final String indent = compliant ? "  " : "";
+    final StringBuilder source = new StringBuilder(256 + methods * 160);
+    source.append("package ").append(packageName).append(";\n\n");
+    source.append("import java.util.ArrayList;\n");
+    source.append("import java.util.List;\n\n");
+    source.append("/** Generated class ").append(index).append(". */\n");
+    source.append("public class ").append(className(index)).append(" {\n\n");
+    source.append("  private final List<String> values = new ArrayList<>();\n");
+    for (int method = 0; method < methods; method++) {
+      source.append('\n');
+      source.append(indent).append("public int method").append(method).append("(int value) {\n");
+      source.append(indent).append("  int result = value * 31 + ").append(method).append(";\n");
+      source.append(indent).append("  if (result > 100) {\n");
+      source.append(indent).append("    values.add(String.valueOf(result));\n");
+      source.append(indent).append("  }\n");
+      source.append(indent).append("  return result;\n");
+      source.append(indent).append("}\n");
+    }
+    source.append("}\n");
+    return source.toString();
+  }
+
+  static class Generated {
+
+    final List<File> sourceDirectories;
+    final int nonCompliantFiles;
+
+    Generated(List<File> sourceDirectories, int nonCompliantFiles) {
+      this.sourceDirectories = sourceDirectories;
+      this.nonCompliantFiles = nonCompliantFiles;
+    }
+  }
+}
@@ -0,0 +1,118 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.Range;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class TracerTest {
+
+  private static final String TRACE_ID = "0af7651916cd43dd8448eb211c80319c";
+  private static final String PARENT_ID = "b7ad6b7169203331";
+
+  @Test
+  public void continuesTraceOfTraceParent() {
+    Tracer tracer = Tracer.continueTrace("00-" + TRACE_ID + "-" + PARENT_ID + "-01", 0);
+
+    Tracer.Span span = tracer.start("fmt:check", null).attribute("maven.project", "app");
+    span.end();
+
+    List<TraceSpan> spans = tracer.spans();
+    assertThat(spans).hasSize(1);
+    assertThat(spans.get(0).traceId()).isEqualTo(TRACE_ID);
+    assertThat(spans.get(0).parentSpanId()).isEqualTo(PARENT_ID);
+    assertThat(spans.get(0).spanId()).matches("[0-9a-f]{16}");
+    assertThat(spans.get(0).attributes()).containsExactly("maven.project", "app");
+    assertThat(spans.get(0).endEpochNanos()).isAtLeast(spans.get(0).startEpochNanos());
+    assertThat(tracer.traceParent(span.spanId()))
+        .isEqualTo("00-" + TRACE_ID + "-" + span.spanId() + "-01");
+  }
+
+  @Test
+  public void startsNewTraceWithoutValidTraceParent() {
+    Tracer tracer = Tracer.continueTrace("not a traceparent", 0);
+
+    tracer.start("fmt:check", null).end();
+
+    assertThat(tracer.spans().get(0).traceId()).matches("[0-9a-f]{32}");
+    assertThat(tracer.spans().get(0).parentSpanId()).isNull();
+  }
+
+  @Test
+  public void samplesSameKeysEveryTime() {
+    Tracer tracer = Tracer.continueTrace(null, 0.1);
+
+    long sampled = IntStream.range(0, 10_000).filter(i -> tracer.sampled("File" + i)).count();
+
+    assertThat(sampled).isIn(Range.closed(800L, 1200L));
+    assertThat(tracer.sampled("File1")).isEqualTo(Tracer.continueTrace(null, 0.1).sampled("File1"));
+    assertThat(Tracer.continueTrace(null, 1).sampled("File1")).isTrue();
+    assertThat(Tracer.continueTrace(null, 0).sampled("File1")).isFalse();
+  }
+
+  @Test
+  public void disabledTracerRecordsNothing() {
+    Tracer tracer = Tracer.disabled();
+
+    tracer.start("fmt:check", null).end();
+    tracer.record("fmt.fork.startup", null, 0, 1, Collections.emptyMap());
+
+    assertThat(tracer.isEnabled()).isFalse();
+    assertThat(tracer.sampled("File1")).isFalse();
+    assertThat(tracer.spans()).isEmpty();
+  }
+
+  @Test
+  public void exportsOtlpJson() {
+    TraceSpan span =
+        new TraceSpan(
+            TRACE_ID,
+            "00f067aa0ba902b7",
+            PARENT_ID,
+            "fmt:check",
+            1_000,
+            2_000,
+            Collections.singletonMap("code.filepath", "C:\\src\\\"Hello\".java"));
+
+    assertThat(
+            new OtlpJsonExporter("fmt-maven-plugin", "1.0").json(Collections.singletonList(span)))
+        .isEqualTo(
+            "{\"resourceSpans\":[{\"resource\":{\"attributes\":["
+                + "{\"key\":\"service.name\",\"value\":{\"stringValue\":\"fmt-maven-plugin\"}},"
+                + "{\"key\":\"service.version\",\"value\":{\"stringValue\":\"1.0\"}}]},"
+                + "\"scopeSpans\":[{\"scope\":{\"name\":\"com.spotify.fmt\"},\"spans\":["
+                + "{\"traceId\":\"0af7651916cd43dd8448eb211c80319c\",\"spanId\":\"00f067aa0ba902b7\","
+                + "\"parentSpanId\":\"b7ad6b7169203331\",\"name\":\"fmt:check\",\"kind\":1,"
+                + "\"startTimeUnixNano\":\"1000\",\"endTimeUnixNano\":\"2000\",\"attributes\":["
+                + "{\"key\":\"code.filepath\",\"value\":{\"stringValue\":\"C:\\\\src\\\\\\\"Hello\\\".java\"}}]}]}]}]}\n");
+  }
+}
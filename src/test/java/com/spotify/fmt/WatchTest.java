@@ -0,0 +1,127 @@
+/*-
+ * -\-\-
+ * com.spotify.fmt:fmt-maven-plugin
+ * --
+ * Copyright (C) 2016 - 2023 Spotify AB
+ * --
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * -/-/-
+ */
+
+package com.spotify.fmt;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.testing.SilentLog;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WatchTest {
+
+  private static final String UNFORMATTED = "class Foo{int bar(){return 1;}}\n";
+  private static final String FORMATTED = "class Foo {\n  int bar() {\n    return 1;\n  }\n}\n";
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final ForkingExecutor forkingExecutor =
+      new ForkingExecutor(new SilentLog()).javaArgs(AbstractFMT.javaArgs());
+
+  @After
+  public void tearDown() {
+    forkingExecutor.close();
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void formatsAllFilesThenChangedFiles() throws Exception {
+    final Path sources = temporaryFolder.newFolder("src").toPath();
+    final Path existing =
+        Files.write(sources.resolve("Existing.java"), UNFORMATTED.getBytes(UTF_8));
+    final Future<FormattingResult> watching =
+        executor.submit(
+            () ->
+                forkingExecutor.execute(
+                    new Watch.WatchingCallable(configuration(sources, true), 50)));
+
+    awaitContent(existing, FORMATTED);
+
+    final Path created =
+        Files.write(
+            Files.createDirectories(sources.resolve("sub")).resolve("Created.java"),
+            UNFORMATTED.getBytes(UTF_8));
+    awaitContent(created, FORMATTED);
+
+    Files.write(existing, UNFORMATTED.getBytes(UTF_8));
+    awaitContent(existing, FORMATTED);
+    assertThat(watching.isDone()).isFalse();
+  }
+
+  @Test
+  public void onlyReportsChangedFilesWhenCheckingOnly() throws Exception {
+    final Path sources = temporaryFolder.newFolder("src").toPath();
+    final Path existing =
+        Files.write(sources.resolve("Existing.java"), UNFORMATTED.getBytes(UTF_8));
+    executor.submit(
+        () ->
+            forkingExecutor.execute(new Watch.WatchingCallable(configuration(sources, false), 50)));
+
+    Files.write(sources.resolve("Created.java"), UNFORMATTED.getBytes(UTF_8));
+    Thread.sleep(2000);
+
+    assertThat(read(existing)).isEqualTo(UNFORMATTED);
+    assertThat(read(sources.resolve("Created.java"))).isEqualTo(UNFORMATTED);
+  }
+
+  private static FormattingConfiguration configuration(Path sources, boolean write) {
+    return FormattingConfiguration.builder()
+        .directoriesToFormat(Collections.singletonList(sources.toFile()))
+        .style("google")
+        .filesNamePattern(".*\\.java")
+        .filesPathPattern(".*")
+        .writeReformattedFiles(write)
+        .processingLabel(write ? "reformatted" : "non-complying")
+        .build();
+  }
+
+  /** Waits for the watching fork to format {@code file}, which includes starting the fork. */
+  private static void awaitContent(Path file, String content)
+      throws IOException, InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+    while (!read(file).equals(content) && System.nanoTime() < deadline) {
+      Thread.sleep(50);
+    }
+    assertThat(read(file)).isEqualTo(content);
+  }
+
+  private static String read(Path file) throws IOException {
+    return new String(Files.readAllBytes(file), UTF_8);
+  }
+}
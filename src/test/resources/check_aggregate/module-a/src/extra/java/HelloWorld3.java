@@ -0,0 +1,7 @@
+package check_aggregate.module_a.src.extra.java;
+
+public class HelloWorld3 {
+  public static void main(String[] args) {
+    System.out.println("Hello World!");
+  }
+}
@@ -0,0 +1,7 @@
+package check_aggregate.module_a.src.main.java;
+
+public class HelloWorld1 {
+  public static void main(String[] args) {
+    System.out.println("Hello World!");
+  }
+}
@@ -0,0 +1,7 @@
+package check_aggregate.module_b.src.main.java;
+
+public class HelloWorld2 {
+public static void main(String[] args) {
+System.out.println("Hello World!");
+}
+}
@@ -0,0 +1,7 @@
+package check_aggregate.module_b.src.test.java;
+
+public class HelloWorldTest {
+  public static void main(String[] args) {
+    System.out.println("Hello World!");
+  }
+}
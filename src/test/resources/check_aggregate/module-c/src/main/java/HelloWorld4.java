@@ -0,0 +1,7 @@
+package check_aggregate.module_c.src.main.java;
+
+public class HelloWorld4 {
+public static void main(String[] args) {
+System.out.println("Hello World!");
+}
+}
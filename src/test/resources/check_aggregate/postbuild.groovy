@@ -0,0 +1,4 @@
+String buildLog = new File("${basedir}/build.log").getText("UTF-8")
+assert buildLog.contains("module-a: processed 2 files (0 non-complying).")
+assert buildLog.contains("module-b: processed 2 files (1 non-complying).")
+assert !buildLog.contains("module-c:")